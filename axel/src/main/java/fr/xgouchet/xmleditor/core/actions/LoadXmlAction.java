@@ -5,12 +5,16 @@ import android.support.annotation.Nullable;
 
 import java.io.InputStream;
 
+import fr.xgouchet.axml.CompressedXmlUtils;
 import fr.xgouchet.xmleditor.core.model.XmlNode;
+import fr.xgouchet.xmleditor.core.parsers.AXmlTreeParser;
+import fr.xgouchet.xmleditor.core.parsers.XmlTreeCompressedParser;
 import fr.xgouchet.xmleditor.core.parsers.XmlTreePullParser;
 import fr.xgouchet.xmleditor.core.utils.InputStreamProvider;
 
 /**
- * This class loads a an input stream and try to convert it into an XmlNode tree.
+ * This class loads a an input stream and try to convert it into an XmlNode tree. Compressed
+ * Android XML documents are detected and read directly.
  *
  * @author Xavier Gouchet
  */
@@ -31,6 +35,9 @@ public class LoadXmlAction implements AsyncAction<InputStreamProvider<?>, XmlNod
             input.mark(DETECTION_BUFFER_MAX_SIZE + 1);
         }
 
+        // Detect compressed Android XML
+        boolean compressed = CompressedXmlUtils.isCompressedXml(input);
+
         // TODO detect encoding
         String encoding = null;
         // ...
@@ -44,7 +51,12 @@ public class LoadXmlAction implements AsyncAction<InputStreamProvider<?>, XmlNod
         }
 
         // Parse the document
-        XmlTreePullParser parser = new XmlTreePullParser();
+        AXmlTreeParser parser;
+        if (compressed) {
+            parser = new XmlTreeCompressedParser();
+        } else {
+            parser = new XmlTreePullParser();
+        }
         XmlNode root = parser.parse(input, encoding);
 
         // close the input stream
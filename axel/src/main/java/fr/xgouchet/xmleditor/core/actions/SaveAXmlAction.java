@@ -0,0 +1,145 @@
+package fr.xgouchet.xmleditor.core.actions;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import fr.xgouchet.axml.AXMLEncoder;
+import fr.xgouchet.axml.Attribute;
+import fr.xgouchet.xmleditor.core.model.TreeNode;
+import fr.xgouchet.xmleditor.core.model.TreeNodeVisitor;
+import fr.xgouchet.xmleditor.core.xml.XmlAttribute;
+import fr.xgouchet.xmleditor.core.xml.XmlCData;
+import fr.xgouchet.xmleditor.core.xml.XmlContent;
+import fr.xgouchet.xmleditor.core.xml.XmlElement;
+import fr.xgouchet.xmleditor.core.xml.XmlNamespace;
+import fr.xgouchet.xmleditor.core.xml.XmlText;
+import fr.xgouchet.xmleditor.core.xml.XmlUtils;
+
+/**
+ * Saves a document as compressed Android XML, a compact format which is much faster to load than
+ * the xml text.
+ * <p/>
+ * Only the elements, attributes, namespaces and texts (including CData) are kept : the compressed
+ * format has no room for comments, processing instructions, doctypes or the document declaration.
+ *
+ * @author Xavier Gouchet
+ */
+public class SaveAXmlAction implements AsyncAction<SaveXmlAction.Input, Void> {
+
+    @Nullable
+    @Override
+    public Void performAction(final @NonNull SaveXmlAction.Input input) throws Exception {
+
+        AXmlEncoderVisitor visitor = new AXmlEncoderVisitor(new AXMLEncoder(input.mOutputStream));
+
+        visitor.encode(input.mNode);
+
+        return null;
+    }
+
+    /**
+     * An XmlNode visitor which forwards the content of the XML document to an AXMLEncoder
+     */
+    static class AXmlEncoderVisitor extends TreeNodeVisitor<XmlContent> {
+
+        private final AXMLEncoder mEncoder;
+
+        public AXmlEncoderVisitor(final @NonNull AXMLEncoder encoder) {
+            mEncoder = encoder;
+        }
+
+        /**
+         * Encodes the whole tree underneath the given node, as a complete document
+         *
+         * @param node the root node of the tree to encode
+         */
+        public void encode(final @NonNull TreeNode<XmlContent> node) throws Exception {
+            mEncoder.startDocument();
+            visit(node);
+            mEncoder.endDocument();
+        }
+
+        @Override
+        protected void onVisitNode(final @NonNull TreeNode<XmlContent> node, final int depth) throws Exception {
+            XmlContent content = node.getData();
+            switch (content.getType()) {
+                case XmlUtils.XML_ELEMENT:
+                    startElement((XmlElement) content);
+                    break;
+                case XmlUtils.XML_TEXT:
+                    mEncoder.text(((XmlText) content).getText());
+                    break;
+                case XmlUtils.XML_CDATA:
+                    mEncoder.text(((XmlCData) content).getText());
+                    break;
+                default:
+                    // Ignore
+                    break;
+            }
+        }
+
+        @Override
+        protected void onNodeVisited(final @NonNull TreeNode<XmlContent> node, final int depth) throws Exception {
+            if (node.getData().getType() == XmlUtils.XML_ELEMENT) {
+                endElement((XmlElement) node.getData());
+            }
+        }
+
+        /**
+         * @param element the element being opened
+         * @throws IOException
+         */
+        private void startElement(final @NonNull XmlElement element) throws IOException {
+            for (XmlNamespace namespace : element.getDeclaredNamespaces()) {
+                mEncoder.startPrefixMapping(getPrefix(namespace), namespace.getUri());
+            }
+
+            // namespace declarations are not stored as attributes
+            List<Attribute> attributes = new ArrayList<>();
+            for (XmlAttribute attribute : element.getAttributes()) {
+                if (isNamespaceDeclaration(attribute)) {
+                    continue;
+                }
+                attributes.add(new Attribute(attribute.getName(), attribute.getValue(),
+                        attribute.getNamespaceUri(), attribute.getNamespacePrefix()));
+            }
+
+            mEncoder.startElement(element.getLocalName(),
+                    attributes.toArray(new Attribute[attributes.size()]),
+                    element.getNamespaceUri(),
+                    element.getNamespacePrefix());
+        }
+
+        /**
+         * @param element the element being closed
+         * @throws IOException
+         */
+        private void endElement(final @NonNull XmlElement element) throws IOException {
+            mEncoder.endElement(element.getLocalName(),
+                    element.getNamespaceUri(),
+                    element.getNamespacePrefix());
+
+            List<XmlNamespace> declared = element.getDeclaredNamespaces();
+            for (int i = declared.size() - 1; i >= 0; --i) {
+                XmlNamespace namespace = declared.get(i);
+                mEncoder.endPrefixMapping(getPrefix(namespace), namespace.getUri());
+            }
+        }
+
+        private static boolean isNamespaceDeclaration(final @NonNull XmlAttribute attribute) {
+            XmlNamespace namespace = attribute.getNamespace();
+            return XmlUtils.ATTR_XMLNS.equals(attribute.getQualifiedName())
+                    || ((namespace != null) && namespace.isXmlns());
+        }
+
+        @NonNull
+        private static String getPrefix(final @NonNull XmlNamespace namespace) {
+            // the default namespace has no prefix
+            return (namespace.getPrefix() == null) ? "" : namespace.getPrefix();
+        }
+    }
+}
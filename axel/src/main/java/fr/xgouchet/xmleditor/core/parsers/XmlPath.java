@@ -0,0 +1,365 @@
+package fr.xgouchet.xmleditor.core.parsers;
+
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import fr.xgouchet.xmleditor.core.xml.XmlUtils;
+
+/**
+ * A compiled path expression, using the forward only subset of XPath which can be evaluated on a
+ * stream of pull events (see {@link XmlPathEvaluator}) :
+ * <ul>
+ * <li>child (<code>/</code>) and descendant (<code>//</code>) steps, from the document</li>
+ * <li>name tests (<code>item</code>, <code>android:name</code>, <code>*</code>)</li>
+ * <li>attribute predicates (<code>[@enabled]</code>, <code>[@name='value']</code>,
+ * <code>[@name!='value']</code>)</li>
+ * <li>positional predicates (<code>[2]</code>), counting among the siblings matching the step
+ * (and the predicates before it)</li>
+ * <li>an optional last attribute step (<code>/@name</code>, <code>/@*</code>)</li>
+ * </ul>
+ * The documents are read without namespace processing, so a name without prefix matches the
+ * local part of any prefixed name (eg : <code>@name</code> matches <code>android:name</code>),
+ * while a prefixed name must match exactly.
+ * <p/>
+ * For instance : <code>//intent-filter/action/@name</code>, or
+ * <code>/manifest/application/activity[@exported='true'][1]</code>
+ *
+ * @author Xavier Gouchet
+ */
+public final class XmlPath {
+
+    // the active steps are tracked in a long bitmask
+    static final int MAX_STEPS = 63;
+
+    private static final String ANY_NAME = "*";
+
+    private final String mExpression;
+    private final Step[] mSteps;
+    private final String mAttributeName;
+    private final boolean mSelfAttributes;
+    private final int mPositionsCount;
+
+    private XmlPath(final String expression, final Step[] steps, final String attributeName,
+                    final boolean selfAttributes, final int positionsCount) {
+        mExpression = expression;
+        mSteps = steps;
+        mAttributeName = attributeName;
+        mSelfAttributes = selfAttributes;
+        mPositionsCount = positionsCount;
+    }
+
+    /**
+     * @param expression the path expression
+     * @return the compiled path
+     * @throws IllegalArgumentException if the expression is invalid, or not in the supported subset
+     */
+    @NonNull
+    public static XmlPath compile(final @NonNull String expression) {
+        if (expression == null) {
+            throw new NullPointerException();
+        }
+
+        return new Compiler(expression).compile();
+    }
+
+    /**
+     * @return the expression this path was compiled from
+     */
+    @NonNull
+    public String getExpression() {
+        return mExpression;
+    }
+
+    /**
+     * @return true if this path selects attributes (ie : it ends with an attribute step)
+     */
+    public boolean selectsAttributes() {
+        return mAttributeName != null;
+    }
+
+    @Override
+    public String toString() {
+        return "XmlPath{" + mExpression + "}";
+    }
+
+    Step[] getSteps() {
+        return mSteps;
+    }
+
+    /**
+     * @return true if the attributes are selected with a descendant step (eg : "item//@name"), in
+     * which case the attributes of the element matching the step before are selected too
+     */
+    boolean selectsSelfAttributes() {
+        return mSelfAttributes;
+    }
+
+    /**
+     * @return the number of positional predicates, each one needing a counter per open element
+     */
+    int getPositionsCount() {
+        return mPositionsCount;
+    }
+
+    /**
+     * @param qualifiedName a raw attribute name, as read by a non namespace aware parser
+     * @return true if the attribute is selected by the last step of this path
+     */
+    boolean matchesAttribute(final @NonNull String qualifiedName) {
+        return matchesName(mAttributeName, qualifiedName);
+    }
+
+    /**
+     * @param test          a name test (local name, qualified name or *)
+     * @param qualifiedName a raw name, as read by a non namespace aware parser
+     * @return true if the name test accepts the name
+     */
+    static boolean matchesName(final @NonNull String test, final @NonNull String qualifiedName) {
+        if (ANY_NAME.equals(test) || test.equals(qualifiedName)) {
+            return true;
+        }
+
+        // a name test without prefix matches the local part of a prefixed name
+        if (test.indexOf(XmlUtils.PREFIX_SEPARATOR) < 0) {
+            int separator = qualifiedName.indexOf(XmlUtils.PREFIX_SEPARATOR);
+            return (separator >= 0) && (qualifiedName.length() - separator - 1 == test.length())
+                    && qualifiedName.endsWith(test);
+        }
+        return false;
+    }
+
+    /**
+     * A location step : the axis, the name test and the predicates
+     */
+    static final class Step {
+
+        final boolean mDescendant;
+        final String mName;
+        final Predicate[] mPredicates;
+
+        Step(final boolean descendant, final String name, final Predicate[] predicates) {
+            mDescendant = descendant;
+            mName = name;
+            mPredicates = predicates;
+        }
+    }
+
+    /**
+     * A predicate : either an attribute test, or a position among the matching siblings
+     */
+    static final class Predicate {
+
+        // the attribute test, or null for a positional predicate
+        final String mAttributeName;
+        // the expected value, or null to only test the attribute presence
+        final String mAttributeValue;
+        final boolean mNegated;
+
+        final int mPosition;
+        // the index of the counter of this positional predicate, in the evaluator
+        final int mCounter;
+
+        Predicate(final String attributeName, final String attributeValue, final boolean negated) {
+            mAttributeName = attributeName;
+            mAttributeValue = attributeValue;
+            mNegated = negated;
+            mPosition = 0;
+            mCounter = -1;
+        }
+
+        Predicate(final int position, final int counter) {
+            mAttributeName = null;
+            mAttributeValue = null;
+            mNegated = false;
+            mPosition = position;
+            mCounter = counter;
+        }
+
+        boolean isPositional() {
+            return mAttributeName == null;
+        }
+    }
+
+    /**
+     * A simple recursive descent compiler
+     */
+    private static final class Compiler {
+
+        private final String mExpression;
+        private int mPosition;
+        private int mPositionsCount;
+
+        Compiler(final String expression) {
+            mExpression = expression.trim();
+        }
+
+        XmlPath compile() {
+            List<Step> steps = new ArrayList<>();
+            String attributeName = null;
+            boolean selfAttributes = false;
+
+            if (mExpression.length() == 0) {
+                throw error("Empty expression");
+            }
+
+            // a relative path starts from the document too
+            boolean first = true;
+            while (mPosition < mExpression.length()) {
+                boolean descendant;
+                if (consume("//")) {
+                    descendant = true;
+                } else if (consume("/")) {
+                    descendant = false;
+                } else if (first) {
+                    descendant = false;
+                } else {
+                    throw error("Expecting '/'");
+                }
+                first = false;
+
+                if (consume("@")) {
+                    attributeName = readName();
+                    if (descendant) {
+                        // "//@name" is the attributes of the context element and of its descendants
+                        selfAttributes = !steps.isEmpty();
+                        steps.add(new Step(true, ANY_NAME, new Predicate[0]));
+                    }
+                    if (mPosition < mExpression.length()) {
+                        throw error("An attribute step must be the last one");
+                    }
+                    break;
+                }
+
+                steps.add(readStep(descendant));
+            }
+
+            if (steps.isEmpty()) {
+                throw error("Expecting an element step");
+            }
+            if (steps.size() > MAX_STEPS) {
+                throw error("Too many steps (max " + MAX_STEPS + ")");
+            }
+
+            return new XmlPath(mExpression, steps.toArray(new Step[steps.size()]), attributeName,
+                    selfAttributes, mPositionsCount);
+        }
+
+        private Step readStep(final boolean descendant) {
+            String name = readName();
+
+            List<Predicate> predicates = new ArrayList<>();
+            while (consume("[")) {
+                predicates.add(readPredicate());
+                if (!consume("]")) {
+                    throw error("Expecting ']'");
+                }
+            }
+
+            return new Step(descendant, name, predicates.toArray(new Predicate[predicates.size()]));
+        }
+
+        private Predicate readPredicate() {
+            skipSpaces();
+            Predicate predicate;
+            if (consume("@")) {
+                String attributeName = readName();
+                skipSpaces();
+
+                boolean negated = consume("!=");
+                if (negated || consume("=")) {
+                    skipSpaces();
+                    predicate = new Predicate(attributeName, readLiteral(), negated);
+                } else {
+                    predicate = new Predicate(attributeName, null, false);
+                }
+            } else {
+                int start = mPosition;
+                while ((mPosition < mExpression.length()) && Character.isDigit(mExpression.charAt(mPosition))) {
+                    mPosition++;
+                }
+                if (start == mPosition) {
+                    throw error("Unsupported predicate (only attributes tests and positions are)");
+                }
+
+                int position = Integer.parseInt(mExpression.substring(start, mPosition));
+                if (position < 1) {
+                    throw error("Positions start at 1");
+                }
+                predicate = new Predicate(position, mPositionsCount++);
+            }
+            skipSpaces();
+            return predicate;
+        }
+
+        @NonNull
+        private String readLiteral() {
+            if (mPosition >= mExpression.length()) {
+                throw error("Expecting a literal");
+            }
+
+            char quote = mExpression.charAt(mPosition);
+            if ((quote != '\'') && (quote != '"')) {
+                throw error("Expecting a quoted literal");
+            }
+
+            int end = mExpression.indexOf(quote, mPosition + 1);
+            if (end < 0) {
+                throw error("Unterminated literal");
+            }
+
+            String literal = mExpression.substring(mPosition + 1, end);
+            mPosition = end + 1;
+            return literal;
+        }
+
+        private String readName() {
+            if (consume(ANY_NAME)) {
+                return ANY_NAME;
+            }
+
+            int start = mPosition;
+            if ((start < mExpression.length()) && !isNameStart(mExpression.charAt(start))) {
+                throw error("Expecting a name");
+            }
+
+            while (mPosition < mExpression.length()) {
+                char c = mExpression.charAt(mPosition);
+                if (isNameStart(c) || Character.isDigit(c) || (c == '-') || (c == '.')
+                        || (c == XmlUtils.PREFIX_SEPARATOR)) {
+                    mPosition++;
+                } else {
+                    break;
+                }
+            }
+
+            if (start == mPosition) {
+                throw error("Expecting a name");
+            }
+            return mExpression.substring(start, mPosition);
+        }
+
+        private static boolean isNameStart(final char c) {
+            return Character.isLetter(c) || (c == '_');
+        }
+
+        private boolean consume(final String token) {
+            if (mExpression.startsWith(token, mPosition)) {
+                mPosition += token.length();
+                return true;
+            }
+            return false;
+        }
+
+        private void skipSpaces() {
+            while ((mPosition < mExpression.length()) && Character.isWhitespace(mExpression.charAt(mPosition))) {
+                mPosition++;
+            }
+        }
+
+        private IllegalArgumentException error(final String message) {
+            return new IllegalArgumentException(message + " at position " + mPosition + " in \"" + mExpression + "\"");
+        }
+    }
+}
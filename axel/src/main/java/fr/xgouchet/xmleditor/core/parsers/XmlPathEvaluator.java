@@ -0,0 +1,241 @@
+package fr.xgouchet.xmleditor.core.parsers;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+import org.xmlpull.v1.XmlPullParserFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import fr.xgouchet.xmleditor.core.xml.XmlUtils;
+
+/**
+ * Evaluates an {@link XmlPath} in a single pass over the events of an XmlPullParser, without
+ * building any tree : the matches are reported as soon as their start tag is read.
+ * <p/>
+ * Only the open elements are tracked (the steps of the path which can still match their children,
+ * and the sibling counters of the positional predicates), so the memory used only depends on the
+ * depth of the document, and the subtrees which can't hold any match are read without evaluating
+ * anything.
+ * <p/>
+ * It is not Thread safe, meaning you should not try to evaluate two streams with the same evaluator
+ * at the same time.
+ *
+ * @author Xavier Gouchet
+ */
+public class XmlPathEvaluator {
+
+    /**
+     * Receives the matches of a path
+     */
+    public interface MatchListener {
+
+        /**
+         * @param parser         the pull parser, on the START_TAG event of the matching element (or
+         *                       of the element holding the matching attribute)
+         * @param attributeIndex the index of the matching attribute in the parser, or -1 when the
+         *                       path selects elements
+         * @return true to go on with the evaluation, false to stop it
+         */
+        boolean onMatch(@NonNull XmlPullParser parser, int attributeIndex) throws IOException;
+    }
+
+    private final XmlPullParser mPullParser;
+
+    // for each open element (0 is the document) : the bitmask of the steps its children can match
+    private long[] mActiveSteps = new long[16];
+    // for each open element : the counters of the positional predicates among its children
+    private int[] mCounters = new int[0];
+
+    /**
+     * @throws XmlPullParserException if the XmlPullParser cannot be created on this device
+     */
+    public XmlPathEvaluator() throws XmlPullParserException {
+        XmlPullParserFactory factory = XmlPullParserFactory.newInstance();
+        factory.setNamespaceAware(false);
+        mPullParser = factory.newPullParser();
+    }
+
+    /**
+     * @param pullParser the XmlPullParser to read the documents with (eg: an AXMLPullParser to
+     *                   read compressed Android XML)
+     */
+    public XmlPathEvaluator(final @NonNull XmlPullParser pullParser) {
+        mPullParser = pullParser;
+    }
+
+    /**
+     * @param path        the path to evaluate
+     * @param inputStream the input stream to read
+     * @param encoding    the encoding of the stream (if the stream contains text), or null
+     * @param listener    the listener receiving the matches
+     */
+    public void evaluate(final @NonNull XmlPath path,
+                         final @NonNull InputStream inputStream,
+                         final @Nullable String encoding,
+                         final @NonNull MatchListener listener)
+            throws XmlParseException, IOException {
+
+        if ((path == null) || (inputStream == null) || (listener == null)) {
+            throw new NullPointerException();
+        }
+
+        try {
+            mPullParser.setInput(inputStream, encoding);
+            evaluate(path, listener);
+        } catch (XmlPullParserException e) {
+            throw new XmlParseException(e);
+        }
+    }
+
+    private void evaluate(final XmlPath path, final MatchListener listener)
+            throws XmlPullParserException, IOException {
+        XmlPath.Step[] steps = path.getSteps();
+        int stepsCount = steps.length;
+        long finalStep = 1L << stepsCount;
+        long selfAttributesStep = path.selectsSelfAttributes() ? (1L << (stepsCount - 1)) : 0;
+        int countersSize = path.getPositionsCount();
+
+        // the document can only match the first step
+        int depth = 0;
+        mActiveSteps[0] = 1L;
+        ensureCounters(0, countersSize);
+
+        // the depth inside a subtree which can't hold any match
+        int skippedDepth = 0;
+
+        int eventType = mPullParser.getEventType();
+        while (eventType != XmlPullParser.END_DOCUMENT) {
+            if (eventType == XmlPullParser.START_TAG) {
+                if (skippedDepth > 0) {
+                    skippedDepth++;
+                } else {
+                    long active = mActiveSteps[depth];
+                    long matched = 0;
+                    long carried = 0;
+                    for (int i = 0; i < stepsCount; ++i) {
+                        if ((active & (1L << i)) == 0) {
+                            continue;
+                        }
+                        if (steps[i].mDescendant) {
+                            carried |= 1L << i;
+                        }
+                        if (matchesStep(steps[i], depth, countersSize)) {
+                            matched |= 1L << (i + 1);
+                        }
+                    }
+
+                    if (((matched & (finalStep | selfAttributesStep)) != 0)
+                            && !reportMatch(path, listener)) {
+                        return;
+                    }
+
+                    long childrenActive = (matched | carried) & ~finalStep;
+                    if (childrenActive == 0) {
+                        skippedDepth = 1;
+                    } else {
+                        depth++;
+                        if (depth == mActiveSteps.length) {
+                            mActiveSteps = Arrays.copyOf(mActiveSteps, depth * 2);
+                        }
+                        mActiveSteps[depth] = childrenActive;
+                        ensureCounters(depth, countersSize);
+                    }
+                }
+            } else if (eventType == XmlPullParser.END_TAG) {
+                if (skippedDepth > 0) {
+                    skippedDepth--;
+                } else {
+                    depth--;
+                }
+            }
+
+            eventType = mPullParser.next();
+        }
+    }
+
+    /**
+     * @return true if the current element matches the given step
+     */
+    private boolean matchesStep(final XmlPath.Step step, final int parentDepth, final int countersSize) {
+        if (!XmlPath.matchesName(step.mName, getQualifiedName())) {
+            return false;
+        }
+
+        for (XmlPath.Predicate predicate : step.mPredicates) {
+            if (predicate.isPositional()) {
+                int counter = (parentDepth * countersSize) + predicate.mCounter;
+                mCounters[counter]++;
+                if (mCounters[counter] != predicate.mPosition) {
+                    return false;
+                }
+            } else if (!matchesAttribute(predicate)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private boolean matchesAttribute(final XmlPath.Predicate predicate) {
+        int count = mPullParser.getAttributeCount();
+        for (int i = 0; i < count; ++i) {
+            if (!XmlPath.matchesName(predicate.mAttributeName, mPullParser.getAttributeName(i))) {
+                continue;
+            }
+
+            if ((predicate.mAttributeValue == null)
+                    || (predicate.mAttributeValue.equals(mPullParser.getAttributeValue(i)) != predicate.mNegated)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return false if the listener stopped the evaluation
+     */
+    private boolean reportMatch(final XmlPath path, final MatchListener listener) throws IOException {
+        if (!path.selectsAttributes()) {
+            return listener.onMatch(mPullParser, -1);
+        }
+
+        int count = mPullParser.getAttributeCount();
+        for (int i = 0; i < count; ++i) {
+            if (path.matchesAttribute(mPullParser.getAttributeName(i))
+                    && !listener.onMatch(mPullParser, i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the name of the current element, with its prefix
+     */
+    private String getQualifiedName() {
+        String name = mPullParser.getName();
+        // only namespace aware parsers split the prefix
+        String prefix = mPullParser.getPrefix();
+        return (prefix == null) ? name : (prefix + XmlUtils.PREFIX_SEPARATOR + name);
+    }
+
+    /**
+     * Resets the positional counters of the children of the element at the given depth
+     */
+    private void ensureCounters(final int depth, final int countersSize) {
+        if (countersSize == 0) {
+            return;
+        }
+
+        int end = (depth + 1) * countersSize;
+        if (end > mCounters.length) {
+            mCounters = Arrays.copyOf(mCounters, Math.max(end, mCounters.length * 2));
+        }
+        Arrays.fill(mCounters, depth * countersSize, end, 0);
+    }
+}
@@ -0,0 +1,182 @@
+package fr.xgouchet.xmleditor.core.parsers;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.text.TextUtils;
+import android.util.Log;
+
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.UnknownFormatFlagsException;
+
+import fr.xgouchet.axml.AXMLParser;
+import fr.xgouchet.axml.Attribute;
+import fr.xgouchet.axml.AttributeCursor;
+import fr.xgouchet.xmleditor.core.model.XmlNode;
+import fr.xgouchet.xmleditor.core.xml.XmlAttribute;
+import fr.xgouchet.xmleditor.core.xml.XmlUtils;
+
+/**
+ * Builds an XmlNode tree directly from a compressed Android XML document, driven by the events of
+ * an AXMLParser (without rendering the document as text first).
+ *
+ * @author Xavier Gouchet
+ */
+public class XmlTreeCompressedParser extends AXmlTreeParser {
+
+    private static final String TAG = XmlTreeCompressedParser.class.getSimpleName();
+
+    public static final String DEFAULT_VERSION = "1.0";
+    public static final String DEFAULT_ENCODING = "utf-8";
+
+    private final AXMLParser mParser;
+
+    /**
+     * The namespaces declared for the next element, as xmlns attributes
+     */
+    private final List<XmlAttribute> mPendingDeclarations = new ArrayList<>();
+
+    public XmlTreeCompressedParser() {
+        this(new AXMLParser());
+    }
+
+    /**
+     * @param parser the AXMLParser to read the documents with
+     */
+    public XmlTreeCompressedParser(final @NonNull AXMLParser parser) {
+        mParser = parser;
+    }
+
+    /**
+     * @param inputStream the input stream to parse from
+     * @param encoding    ignored, the encoding is declared in the compressed document
+     * @return the root XmlNode of the document
+     */
+    @Override
+    public XmlNode parse(final @NonNull InputStream inputStream,
+                         final @Nullable String encoding)
+            throws XmlParseException, IOException {
+
+        mPendingDeclarations.clear();
+
+        try {
+            mParser.parse(inputStream, mListener);
+        } catch (UnknownFormatFlagsException e) {
+            // not a compressed Android XML document
+            throw new XmlParseException(new XmlPullParserException(e.getMessage(), null, e));
+        }
+
+        return getDocument();
+    }
+
+    /**
+     * @param localName  the element local name
+     * @param attributes the element attributes, including the namespaces declarations
+     * @param uri        the element namespace uri, or null
+     * @param prefix     the element namespace prefix, or null
+     */
+    private void startCompressedElement(final @NonNull String localName,
+                                        final @NonNull Collection<XmlAttribute> attributes,
+                                        final @Nullable String uri,
+                                        final @Nullable String prefix) {
+        attributes.addAll(mPendingDeclarations);
+        mPendingDeclarations.clear();
+
+        if (uri == null) {
+            startElement(localName, attributes);
+        } else {
+            startElement(localName, prefix, uri, attributes);
+        }
+    }
+
+    @NonNull
+    private static XmlAttribute createAttribute(final @NonNull String name,
+                                                final @NonNull String value,
+                                                final @Nullable String uri,
+                                                final @Nullable String prefix) {
+        if (uri == null) {
+            return new XmlAttribute(name, value);
+        } else {
+            return new XmlAttribute(name, value, prefix, uri);
+        }
+    }
+
+    private final AXMLParser.CursorListener mListener = new AXMLParser.CursorListener() {
+
+        @Override
+        public void startDocument() {
+            XmlTreeCompressedParser.this.startDocument();
+        }
+
+        @Override
+        public void endDocument() {
+            // the compressed document has no declaration, but it was written in utf-8 originally
+            addDocumentDeclaration(DEFAULT_VERSION, DEFAULT_ENCODING, null);
+            XmlTreeCompressedParser.this.endDocument();
+        }
+
+        @Override
+        public void startPrefixMapping(final String prefix, final String uri) {
+            Log.d(TAG, "Namespace declaration [" + prefix + "]->" + uri);
+
+            if (TextUtils.isEmpty(prefix)) {
+                mPendingDeclarations.add(new XmlAttribute(XmlUtils.ATTR_XMLNS, uri));
+            } else {
+                mPendingDeclarations.add(new XmlAttribute(prefix, uri, XmlUtils.PREFIX_XMLNS, ""));
+            }
+        }
+
+        @Override
+        public void endPrefixMapping(final String prefix, final String uri) {
+            // the namespaces are removed with the element declaring them
+        }
+
+        @Override
+        public void startElement(final String localName,
+                                 final Attribute[] attributes,
+                                 final String uri,
+                                 final String prefix) {
+            Collection<XmlAttribute> xmlAttributes = new HashSet<>();
+            for (Attribute attribute : attributes) {
+                xmlAttributes.add(createAttribute(attribute.getName(), attribute.getValue(),
+                        attribute.getNamespaceUri(), attribute.getPrefix()));
+            }
+
+            startCompressedElement(localName, xmlAttributes, uri, prefix);
+        }
+
+        @Override
+        public void startElement(final String localName,
+                                 final AttributeCursor attributes,
+                                 final String uri,
+                                 final String prefix) {
+            int count = attributes.getCount();
+            Collection<XmlAttribute> xmlAttributes = new HashSet<>();
+            for (int i = 0; i < count; ++i) {
+                xmlAttributes.add(createAttribute(attributes.getName(i), attributes.getValue(i),
+                        attributes.getNamespaceUri(i), attributes.getPrefix(i)));
+            }
+
+            startCompressedElement(localName, xmlAttributes, uri, prefix);
+        }
+
+        @Override
+        public void endElement(final String localName, final String uri, final String prefix) {
+            XmlTreeCompressedParser.this.endElement();
+        }
+
+        @Override
+        public void text(final String data) {
+            if (data.trim().length() == 0) {
+                return;
+            }
+            addText(data);
+        }
+    };
+}
@@ -49,6 +49,14 @@ public class XmlTreePullParser extends AXmlTreeParser {
         mPullParser = factory.newPullParser();
     }
 
+    /**
+     * @param pullParser the XmlPullParser to read the documents with (eg: an AXMLPullParser to
+     *                   read compressed Android XML). It must not process namespaces.
+     */
+    public XmlTreePullParser(final @NonNull XmlPullParser pullParser) {
+        mPullParser = pullParser;
+    }
+
     @Override
     public XmlNode parse(final @NonNull InputStream inputStream,
                          final @Nullable String encoding)
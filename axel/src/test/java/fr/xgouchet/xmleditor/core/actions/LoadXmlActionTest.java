@@ -52,4 +52,26 @@ public class LoadXmlActionTest {
                 .hasChildrenCount(0);
 
     }
-}
\ No newline at end of file
+
+    @Test
+    public void shouldLoadCompressedXml() throws Exception {
+        File file = new File("../testres/axml/namespaces.xml");
+        FileInputStreamProvider provider = new FileInputStreamProvider(file);
+
+        // perform action
+        XmlNode output = mLoader.performAction(provider);
+
+        // Verify parsed doc
+        assertThat(output)
+                .isDocument()
+                .hasChildrenCount(2);
+
+        assertThat(output.getChild(0))
+                .isDocDecl("1.0", "utf-8", null)
+                .hasChildrenCount(0);
+
+        assertThat(output.getChild(1))
+                .isElement("root")
+                .hasChildrenCount(2);
+    }
+}
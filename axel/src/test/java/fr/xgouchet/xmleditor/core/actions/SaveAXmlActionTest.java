@@ -0,0 +1,63 @@
+package fr.xgouchet.xmleditor.core.actions;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Collections;
+
+import fr.xgouchet.axml.AXMLParser;
+import fr.xgouchet.xmleditor.AxelTestApplication;
+import fr.xgouchet.xmleditor.BuildConfig;
+import fr.xgouchet.xmleditor.core.model.XmlNode;
+import fr.xgouchet.xmleditor.core.model.XmlNodeFactory;
+import fr.xgouchet.xmleditor.core.xml.XmlAttribute;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+
+/**
+ * @author Xavier Gouchet
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, emulateSdk = 18, application = AxelTestApplication.class, manifest = "kamoulox/AndroidManifest.xml")
+public class SaveAXmlActionTest {
+
+    private SaveAXmlAction mAction;
+
+    @Before
+    public void setUp() {
+        mAction = new SaveAXmlAction();
+    }
+
+    @Test
+    public void shouldSaveDocument() throws Exception {
+        XmlNode doc = XmlNodeFactory.createDocument();
+        XmlNodeFactory.createDocumentDeclaration(doc, "1.0", "utf-8");
+        XmlNodeFactory.createComment(doc, "Test");
+        XmlNode root = XmlNodeFactory.createElement(doc, "root", null, null,
+                Collections.singleton(new XmlAttribute("foo", "http://foo.com", "xmlns", "")));
+        XmlNode div = XmlNodeFactory.createElement(root, "div", "foo", "http://foo.com",
+                Collections.singleton(new XmlAttribute("id", "42", "foo", "http://foo.com")));
+        XmlNodeFactory.createText(div, "Hello World");
+        XmlNodeFactory.createProcessingInstruction(root, "php", "echo('!');");
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        mAction.performAction(new SaveXmlAction.Input(doc, outputStream));
+
+        ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+        new AXMLParser().parse(new ByteArrayInputStream(outputStream.toByteArray()), decoded);
+
+        String string = new String(decoded.toByteArray(), "UTF-8");
+        assertThat(string)
+                .isEqualTo("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n" +
+                        "<root xmlns:foo=\"http://foo.com\">\n" +
+                        "  <foo:div foo:id=\"42\">Hello World</foo:div>\n" +
+                        "</root>\n");
+    }
+}
@@ -0,0 +1,206 @@
+package fr.xgouchet.xmleditor.core.parsers;
+
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.List;
+
+import fr.xgouchet.xmleditor.AxelTestApplication;
+import fr.xgouchet.xmleditor.BuildConfig;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, emulateSdk = 18, application = AxelTestApplication.class)
+public class XmlPathEvaluatorTest {
+
+    private static final String MANIFEST = "<?xml version=\"1.0\" encoding=\"utf-8\"?>\n"
+            + "<manifest xmlns:android=\"http://schemas.android.com/apk/res/android\" package=\"fr.xgouchet\">\n"
+            + "  <application android:label=\"Axel\">\n"
+            + "    <activity android:name=\".Main\" android:exported=\"true\">\n"
+            + "      <intent-filter>\n"
+            + "        <action android:name=\"android.intent.action.MAIN\"/>\n"
+            + "        <category android:name=\"android.intent.category.LAUNCHER\"/>\n"
+            + "      </intent-filter>\n"
+            + "    </activity>\n"
+            + "    <activity android:name=\".Editor\" android:exported=\"false\">\n"
+            + "      <intent-filter>\n"
+            + "        <action android:name=\"android.intent.action.EDIT\"/>\n"
+            + "        <action android:name=\"android.intent.action.VIEW\"/>\n"
+            + "      </intent-filter>\n"
+            + "    </activity>\n"
+            + "    <activity android:name=\".Settings\"/>\n"
+            + "    <service android:name=\".Sync\" android:exported=\"true\"/>\n"
+            + "  </application>\n"
+            + "</manifest>\n";
+
+    private XmlPathEvaluator mEvaluator;
+
+    @Before
+    public void setUp() throws XmlPullParserException {
+        mEvaluator = new XmlPathEvaluator();
+    }
+
+    @Test
+    public void shouldMatchChildSteps() throws IOException, XmlParseException {
+        assertThat(evaluate("/manifest/application/activity"))
+                .containsExactly("activity", "activity", "activity");
+        assertThat(evaluate("/manifest/activity")).isEmpty();
+        assertThat(evaluate("/application")).isEmpty();
+        assertThat(evaluate("manifest/application/*"))
+                .containsExactly("activity", "activity", "activity", "service");
+    }
+
+    @Test
+    public void shouldMatchDescendantSteps() throws IOException, XmlParseException {
+        assertThat(evaluate("//action")).hasSize(3);
+        assertThat(evaluate("/manifest//intent-filter/*"))
+                .containsExactly("action", "category", "action", "action");
+        assertThat(evaluate("//application//action")).hasSize(3);
+    }
+
+    @Test
+    public void shouldMatchAttributeSteps() throws IOException, XmlParseException {
+        assertThat(evaluate("//activity/@name"))
+                .containsExactly("android:name=.Main", "android:name=.Editor", "android:name=.Settings");
+        assertThat(evaluate("/manifest/@package"))
+                .containsExactly("package=fr.xgouchet");
+        assertThat(evaluate("//service/@*"))
+                .containsExactly("android:name=.Sync", "android:exported=true");
+        assertThat(evaluate("//activity[@exported='true']//@name"))
+                .containsExactly("android:name=.Main",
+                        "android:name=android.intent.action.MAIN",
+                        "android:name=android.intent.category.LAUNCHER");
+    }
+
+    @Test
+    public void shouldMatchAttributePredicates() throws IOException, XmlParseException {
+        assertThat(evaluate("//*[@exported]/@android:name"))
+                .containsExactly("android:name=.Main", "android:name=.Editor", "android:name=.Sync");
+        assertThat(evaluate("//*[@exported=\"true\"]/@name"))
+                .containsExactly("android:name=.Main", "android:name=.Sync");
+        assertThat(evaluate("//activity[@exported!='true']/@name"))
+                .containsExactly("android:name=.Editor");
+        assertThat(evaluate("//activity[@plop:exported]")).isEmpty();
+    }
+
+    @Test
+    public void shouldMatchPositionalPredicates() throws IOException, XmlParseException {
+        assertThat(evaluate("//activity[2]/@name"))
+                .containsExactly("android:name=.Editor");
+        assertThat(evaluate("//intent-filter/action[1]/@name"))
+                .containsExactly("android:name=android.intent.action.MAIN",
+                        "android:name=android.intent.action.EDIT");
+        assertThat(evaluate("//activity[@exported][2]/@name"))
+                .containsExactly("android:name=.Editor");
+        assertThat(evaluate("//activity[4]")).isEmpty();
+    }
+
+    @Test
+    public void shouldStopWhenListenerAsksTo() throws IOException, XmlParseException {
+        final List<String> names = new ArrayList<>();
+        mEvaluator.evaluate(XmlPath.compile("//@name"), stream(MANIFEST), "UTF-8",
+                new XmlPathEvaluator.MatchListener() {
+                    @Override
+                    public boolean onMatch(final XmlPullParser parser, final int attributeIndex) {
+                        names.add(parser.getAttributeValue(attributeIndex));
+                        return names.size() < 2;
+                    }
+                });
+
+        assertThat(names).containsExactly(".Main", "android.intent.action.MAIN");
+    }
+
+    @Test
+    public void shouldEvaluateFiles() throws IOException, XmlParseException {
+        File file = new File("../testres/axel/empty.xml");
+
+        assertThat(evaluate("/root", new FileInputStream(file))).containsExactly("root");
+        assertThat(evaluate("//*", new FileInputStream(file))).containsExactly("root");
+    }
+
+    @Test
+    public void shouldReuseEvaluator() throws IOException, XmlParseException {
+        assertThat(evaluate("//category")).hasSize(1);
+        assertThat(evaluate("//category")).hasSize(1);
+    }
+
+    @Test(expected = XmlParseException.class)
+    public void shouldFailOnMalformedDocument() throws IOException, XmlParseException {
+        evaluate("//foo", stream("<foo><bar></foo>"));
+    }
+
+    @Test
+    public void shouldRejectUnsupportedExpressions() {
+        String[] expressions = new String[]{
+                "",
+                "/",
+                "//foo/",
+                "/foo/@bar/baz",
+                "/foo[bar]",
+                "/foo[0]",
+                "/foo[@bar='baz]",
+                "/foo/../bar",
+                "/foo[@bar",
+        };
+
+        for (String expression : expressions) {
+            try {
+                XmlPath.compile(expression);
+                fail("Expected an IllegalArgumentException for " + expression);
+            } catch (IllegalArgumentException e) {
+                assertThat(e.getMessage()).contains("position");
+            }
+        }
+    }
+
+    private List<String> evaluate(final String expression) throws IOException, XmlParseException {
+        return evaluate(expression, stream(MANIFEST));
+    }
+
+    /**
+     * @return the names of the matching elements, or the "name=value" of the matching attributes
+     */
+    private List<String> evaluate(final String expression, final InputStream inputStream)
+            throws IOException, XmlParseException {
+        final List<String> matches = new ArrayList<>();
+
+        mEvaluator.evaluate(XmlPath.compile(expression), inputStream, "UTF-8",
+                new XmlPathEvaluator.MatchListener() {
+                    @Override
+                    public boolean onMatch(final XmlPullParser parser, final int attributeIndex) {
+                        if (attributeIndex < 0) {
+                            matches.add(parser.getName());
+                        } else {
+                            matches.add(parser.getAttributeName(attributeIndex) + "="
+                                    + parser.getAttributeValue(attributeIndex));
+                        }
+                        return true;
+                    }
+                });
+
+        return matches;
+    }
+
+    private static ByteArrayInputStream stream(final String xml) {
+        try {
+            return new ByteArrayInputStream(xml.getBytes("UTF-8"));
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package fr.xgouchet.xmleditor.core.parsers;
+
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+import fr.xgouchet.xmleditor.AxelTestApplication;
+import fr.xgouchet.xmleditor.BuildConfig;
+import fr.xgouchet.xmleditor.core.model.XmlNode;
+import fr.xgouchet.xmleditor.core.xml.XmlAttribute;
+
+import static fr.xgouchet.xmleditor.test.Assertions.assertThat;
+
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, emulateSdk = 18, application = AxelTestApplication.class)
+public class XmlTreeCompressedParserTest {
+
+    private static final String ANDROID_URI = "http://schemas.android.com/apk/res/android";
+
+    private XmlTreeCompressedParser mParser;
+
+    @Before
+    public void setUp() {
+        mParser = new XmlTreeCompressedParser();
+    }
+
+    @Test
+    public void shouldParseNamespaces() throws IOException, XmlParseException {
+        // Select file
+        File file = new File("../testres/axml/namespaces.xml");
+        FileInputStream inputStream = new FileInputStream(file);
+
+        // Parse
+        XmlNode doc = mParser.parse(inputStream, null);
+
+        // Asserts
+        assertThat(doc)
+                .isDocument()
+                .hasChildrenCount(2);
+
+        assertThat(doc.getChild(0))
+                .isDocDecl("1.0", "utf-8", null)
+                .hasChildrenCount(0);
+
+        XmlNode root = doc.getChild(1);
+        assertThat(root)
+                .isElement("root")
+                .hasAttributes(new XmlAttribute("bar", "42", "xmlns", ""))
+                .hasChildrenCount(2);
+
+        assertThat(root.getChild(0))
+                .isElement("subTag")
+                .hasChildrenCount(0);
+
+        XmlNode tagWithNs = root.getChild(1);
+        assertThat(tagWithNs)
+                .isElement("tagWithNs")
+                .hasAttributes(new XmlAttribute("foo", "815", "xmlns", ""))
+                .hasChildrenCount(1);
+
+        assertThat(tagWithNs.getChild(0))
+                .isElement("foo:plop", "815")
+                .hasChildrenCount(0);
+    }
+
+    @Test
+    public void shouldParseTypedAttributes() throws IOException, XmlParseException {
+        // Select file
+        File file = new File("../testres/axml/typed_attrs_2.xml");
+        FileInputStream inputStream = new FileInputStream(file);
+
+        // Parse
+        XmlNode doc = mParser.parse(inputStream, null);
+
+        // Asserts
+        XmlNode set = doc.getChild(1);
+        assertThat(set)
+                .isElement("set")
+                .hasChildrenCount(1);
+
+        assertThat(set.getChild(0))
+                .isElement("translate")
+                .hasAttributes(
+                        new XmlAttribute("interpolator", "@android:interpolator/0x010C000C", "android", ANDROID_URI),
+                        new XmlAttribute("duration", "300", "android", ANDROID_URI),
+                        new XmlAttribute("fromXDelta", "42%", "android", ANDROID_URI));
+    }
+
+    @Test(expected = IOException.class)
+    public void shouldFailOnTruncatedDocument() throws IOException, XmlParseException {
+        byte[] truncated = new byte[]{0x03, 0x00, 0x08, 0x00, 0x00, 0x01, 0x00, 0x00, 0x01, 0x00, 0x1C, 0x00};
+
+        mParser.parse(new ByteArrayInputStream(truncated), null);
+    }
+
+    @Test(expected = XmlParseException.class)
+    public void shouldFailOnTextDocument() throws IOException, XmlParseException {
+        byte[] text = "<root><child/></root>".getBytes("UTF-8");
+
+        mParser.parse(new ByteArrayInputStream(text), null);
+    }
+}
@@ -0,0 +1,331 @@
+package fr.xgouchet.axml;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Decodes all the compressed Android XML entries of an archive (APK, zip, ...) concurrently, on a
+ * bounded pool of worker threads. The parsers are taken from an AXMLParserPool owned by the decoder,
+ * so they are reused from one entry, and one archive, to the next.
+ * <p/>
+ * Each entry is decoded independently : an error on one entry doesn't prevent the others from
+ * being decoded, and is reported in the matching EntryResult.
+ *
+ * @author Xavier Gouchet
+ */
+public class AXMLBatchDecoder {
+
+    private static final int COPY_BUFFER_SIZE = 8 * 1024;
+    // the largest array most VMs can allocate
+    private static final int MAX_ENTRY_SIZE = Integer.MAX_VALUE - 8;
+
+    /**
+     * Provides the output stream to write each decoded entry into. It is called concurrently from
+     * the worker threads.
+     */
+    public interface EntrySink {
+
+        /**
+         * @param entryName the name of the entry in the archive
+         * @return the output stream to write the decoded entry into (it will automatically be
+         * closed once the entry is decoded)
+         */
+        OutputStream openEntry(String entryName) throws IOException;
+    }
+
+    /**
+     * The result of the decoding of a single entry
+     */
+    public static final class EntryResult {
+
+        private final String mEntryName;
+        private final Exception mError;
+
+        EntryResult(final String entryName, final Exception error) {
+            mEntryName = entryName;
+            mError = error;
+        }
+
+        /**
+         * @return the name of the entry in the archive
+         */
+        public String getEntryName() {
+            return mEntryName;
+        }
+
+        /**
+         * @return true if the entry was decoded successfully
+         */
+        public boolean isSuccessful() {
+            return mError == null;
+        }
+
+        /**
+         * @return the error which occurred while decoding this entry, or null
+         */
+        public Exception getError() {
+            return mError;
+        }
+
+        @Override
+        public String toString() {
+            return "EntryResult{" + mEntryName + ((mError == null) ? "" : " : " + mError) + "}";
+        }
+    }
+
+    private final int mParallelism;
+
+    // the pooled parsers share a ReferenceCache : the same resource references appear in most
+    // entries, and are rendered once for all the workers
+    private final AXMLParserPool mParserPool;
+
+    /**
+     * Creates a decoder using as many workers as available processors
+     */
+    public AXMLBatchDecoder() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param parallelism the maximum number of entries decoded concurrently
+     */
+    public AXMLBatchDecoder(final int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1");
+        }
+        mParallelism = parallelism;
+        mParserPool = new AXMLParserPool(parallelism);
+    }
+
+    /**
+     * @param resourceTable the table used to render the resource references with their names
+     *                      (eg : the archive resources.arsc), or null
+     */
+    public void setResourceTable(final ResourceTable resourceTable) {
+        mParserPool.setResourceTable(resourceTable);
+    }
+
+    /**
+     * Decodes all the compressed XML entries of the given archive into the given directory,
+     * keeping the entries relative paths
+     *
+     * @param archive   the archive to read
+     * @param outputDir the directory to write the decoded entries into
+     * @return the result of each decoded entry, in the archive order
+     */
+    public List<EntryResult> decode(final File archive, final File outputDir)
+            throws IOException, InterruptedException {
+
+        if (outputDir == null) {
+            throw new NullPointerException();
+        }
+
+        return decode(archive, new DirectorySink(outputDir));
+    }
+
+    /**
+     * Decodes all the compressed XML entries of the given archive into the given sink
+     *
+     * @param archive the archive to read
+     * @param sink    the sink providing an output stream for each entry
+     * @return the result of each decoded entry, in the archive order
+     */
+    public List<EntryResult> decode(final File archive, final EntrySink sink)
+            throws IOException, InterruptedException {
+
+        if ((archive == null) || (sink == null)) {
+            throw new NullPointerException();
+        }
+
+        final ZipFile zipFile = new ZipFile(archive);
+        ExecutorService executor = Executors.newFixedThreadPool(mParallelism);
+
+        try {
+            // submit one task per entry, keeping the archive order
+            List<Future<EntryResult>> futures = new ArrayList<>();
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            while (entries.hasMoreElements()) {
+                final ZipEntry entry = entries.nextElement();
+                if (entry.isDirectory()) {
+                    continue;
+                }
+
+                futures.add(executor.submit(new Callable<EntryResult>() {
+                    @Override
+                    public EntryResult call() {
+                        return decodeEntry(zipFile, entry, sink);
+                    }
+                }));
+            }
+
+            // gather the results
+            List<EntryResult> results = new ArrayList<>();
+            for (Future<EntryResult> future : futures) {
+                EntryResult result;
+                try {
+                    result = future.get();
+                } catch (ExecutionException e) {
+                    throw new IOException("Unexpected error while decoding " + archive, e.getCause());
+                }
+
+                if (result != null) {
+                    results.add(result);
+                }
+            }
+
+            return results;
+        } finally {
+            executor.shutdownNow();
+            zipFile.close();
+        }
+    }
+
+    /**
+     * @return the pool of parsers used by the workers
+     */
+    AXMLParserPool getParserPool() {
+        return mParserPool;
+    }
+
+    /**
+     * Decodes a single entry
+     *
+     * @return the result, or null if the entry is not a compressed XML document
+     */
+    private EntryResult decodeEntry(final ZipFile zipFile,
+                                    final ZipEntry entry,
+                                    final EntrySink sink) {
+        String name = entry.getName();
+
+        OutputStream output = null;
+        try {
+            byte[] content = readCompressedXmlEntry(zipFile, entry);
+            if (content == null) {
+                return null;
+            }
+
+            output = sink.openEntry(name);
+            mParserPool.parseBuffer(ByteBuffer.wrap(content), new OutputStreamListener(output));
+            output = null;
+
+            return new EntryResult(name, null);
+        } catch (Exception e) {
+            return new EntryResult(name, e);
+        } finally {
+            if (output != null) {
+                try {
+                    output.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the content of the given entry, only if it's a compressed XML document
+     *
+     * @return the entry content, or null if the entry doesn't start with the compressed Android
+     * XML magic word
+     */
+    private static byte[] readCompressedXmlEntry(final ZipFile zipFile, final ZipEntry entry)
+            throws IOException {
+        InputStream input = zipFile.getInputStream(entry);
+        try {
+            // check the header first, to avoid allocating and inflating the whole entry for nothing
+            byte[] header = new byte[CompressedXmlUtils.HEADER_SIZE];
+            if ((readFully(input, header, 0, header.length) < header.length)
+                    || !CompressedXmlUtils.isCompressedXml(header)) {
+                return null;
+            }
+
+            long size = entry.getSize();
+            if (size > MAX_ENTRY_SIZE) {
+                throw new IOException("Entry " + entry.getName() + " is too large (" + size + " bytes)");
+            }
+
+            if (size >= header.length) {
+                // the size is known, read directly in the final array
+                byte[] content = new byte[(int) size];
+                System.arraycopy(header, 0, content, 0, header.length);
+                int read = readFully(input, content, header.length, content.length - header.length);
+                if (read < content.length - header.length) {
+                    throw new IOException("Unexpected end of entry " + entry.getName());
+                }
+                return content;
+            }
+
+            ByteArrayOutputStream content = new ByteArrayOutputStream(COPY_BUFFER_SIZE);
+            content.write(header);
+            byte[] buffer = new byte[COPY_BUFFER_SIZE];
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                content.write(buffer, 0, read);
+            }
+            return content.toByteArray();
+        } finally {
+            input.close();
+        }
+    }
+
+    /**
+     * @return the number of bytes read, less than the given length only if the stream ended
+     */
+    private static int readFully(final InputStream input, final byte[] buffer,
+                                 final int offset, final int length) throws IOException {
+        int total = 0;
+        while (total < length) {
+            int read = input.read(buffer, offset + total, length - total);
+            if (read == -1) {
+                break;
+            }
+            total += read;
+        }
+        return total;
+    }
+
+    /**
+     * Writes each entry in a directory, keeping the entries relative paths
+     */
+    private static class DirectorySink implements EntrySink {
+
+        private final File mOutputDir;
+
+        DirectorySink(final File outputDir) {
+            mOutputDir = outputDir;
+        }
+
+        @Override
+        public OutputStream openEntry(final String entryName) throws IOException {
+            File output = new File(mOutputDir, entryName);
+
+            // prevent malicious entries to be written outside of the output directory
+            String outputDirPath = mOutputDir.getCanonicalPath() + File.separator;
+            if (!output.getCanonicalPath().startsWith(outputDirPath)) {
+                throw new IOException("Entry " + entryName + " is outside of the output directory");
+            }
+
+            File parent = output.getParentFile();
+            if (!parent.isDirectory() && !parent.mkdirs()) {
+                throw new IOException("Unable to create directory " + parent);
+            }
+
+            return new FileOutputStream(output);
+        }
+    }
+}
@@ -0,0 +1,405 @@
+package fr.xgouchet.axml;
+
+import android.support.annotation.IntDef;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An AXMLParser.Listener implementation which writes a compressed Android XML document in an
+ * output stream. The strings are deduplicated in a single string pool.
+ * <p/>
+ * The encoder can be fed with the events of any source (eg : a tree walker). When it is given to
+ * an AXMLParser, it receives the raw attributes (as a CursorListener) and keeps the typed values
+ * (references, dimensions, colors, ...) as is ; otherwise all attribute values are written as
+ * strings.
+ * <p/>
+ * The resource ids of the attribute names given by the AttributeCursor are kept : as in the
+ * documents built by aapt, these names are put at the start of the string pool, and the resource
+ * map listing their ids is written right after the string pool.
+ * <p/>
+ * The document is written (and the stream closed) when the endDocument event is received.
+ *
+ * @author Xavier Gouchet
+ */
+public class AXMLEncoder implements AXMLParser.CursorListener {
+
+    @IntDef({AXMLParser.ENCODING_UTF8, AXMLParser.ENCODING_UTF16_LE})
+    public @interface StringsEncoding {
+    }
+
+    private static final int NO_INDEX = 0xFFFFFFFF;
+    // the names with a resource id are written as (RESOURCE_NAME_BASE - index in the resource map)
+    // until their final index in the pool is known
+    private static final int RESOURCE_NAME_BASE = -2;
+
+    private static final int HEADER_WORDS = 2;
+    private static final int STRING_TABLE_HEADER_WORDS = 7;
+    private static final int NAMESPACE_WORDS = 6;
+    private static final int START_TAG_WORDS = 9;
+    private static final int END_TAG_WORDS = 6;
+    private static final int TEXT_WORDS = 7;
+
+    // attributes start (0x14) and attribute size (0x14)
+    private static final int ATTRIBUTES_LAYOUT = 0x00140014;
+    // a null typed value, 8 bytes long
+    private static final int TEXT_TYPED_VALUE = 0x00000008;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final Charset UTF16LE = Charset.forName("UTF-16LE");
+
+    private final OutputStream mOutputStream;
+
+    @StringsEncoding
+    private int mStringsEncoding = AXMLParser.ENCODING_UTF16_LE;
+
+    private final List<String> mStrings = new ArrayList<>();
+    private final Map<String, Integer> mStringsIndices = new HashMap<>();
+    private final List<String> mResourceNames = new ArrayList<>();
+    private final List<Integer> mResourceIds = new ArrayList<>();
+    private final Map<Integer, Integer> mResourceIndices = new HashMap<>();
+
+    private int[] mWords = new int[1024];
+    private int mWordsCount;
+    private int mLineNumber;
+
+    /**
+     * @param outputStream the stream to write the compressed document into
+     */
+    public AXMLEncoder(final OutputStream outputStream) {
+        if (outputStream == null) {
+            throw new NullPointerException();
+        }
+        mOutputStream = outputStream;
+    }
+
+    /**
+     * @param stringsEncoding the encoding of the string pool : ENCODING_UTF16_LE (default) or
+     *                        ENCODING_UTF8 (more compact for latin documents)
+     */
+    public void setStringsEncoding(@StringsEncoding final int stringsEncoding) {
+        mStringsEncoding = stringsEncoding;
+    }
+
+    @Override
+    public void startDocument() {
+        mStrings.clear();
+        mStringsIndices.clear();
+        mResourceNames.clear();
+        mResourceIds.clear();
+        mResourceIndices.clear();
+        mWordsCount = 0;
+        mLineNumber = 1;
+    }
+
+    @Override
+    public void endDocument() throws IOException {
+        int resourcesCount = mResourceIds.size();
+        if (resourcesCount > 0) {
+            remapStringIndices(resourcesCount);
+        }
+
+        byte[] stringTable = encodeStringTable();
+        int resourceMapSize = (resourcesCount == 0) ? 0
+                : (HEADER_WORDS + resourcesCount) * AXMLParser.WORD_SIZE;
+        int documentSize = (HEADER_WORDS * AXMLParser.WORD_SIZE) + stringTable.length
+                + resourceMapSize + (mWordsCount * AXMLParser.WORD_SIZE);
+
+        ByteBuffer document = ByteBuffer.allocate(documentSize).order(ByteOrder.LITTLE_ENDIAN);
+        document.putInt(AXMLParser.WORD_START_DOCUMENT);
+        document.putInt(documentSize);
+        document.put(stringTable);
+        if (resourcesCount > 0) {
+            document.putInt(AXMLParser.WORD_RES_TABLE);
+            document.putInt(resourceMapSize);
+            for (int resourceId : mResourceIds) {
+                document.putInt(resourceId);
+            }
+        }
+        document.asIntBuffer().put(mWords, 0, mWordsCount);
+
+        mOutputStream.write(document.array());
+        mOutputStream.flush();
+        mOutputStream.close();
+    }
+
+    @Override
+    public void startPrefixMapping(final String prefix, final String uri) {
+        writeWords(AXMLParser.WORD_START_NAMESPACE, NAMESPACE_WORDS * AXMLParser.WORD_SIZE,
+                mLineNumber, NO_INDEX, getStringIndex(prefix == null ? "" : prefix), getStringIndex(uri));
+    }
+
+    @Override
+    public void endPrefixMapping(final String prefix, final String uri) {
+        writeWords(AXMLParser.WORD_END_NAMESPACE, NAMESPACE_WORDS * AXMLParser.WORD_SIZE,
+                mLineNumber, NO_INDEX, getStringIndex(prefix == null ? "" : prefix), getStringIndex(uri));
+    }
+
+    @Override
+    public void startElement(final String localName,
+                             final Attribute[] attributes,
+                             final String uri,
+                             final String prefix) {
+        int count = (attributes == null) ? 0 : attributes.length;
+        writeStartTagHeader(localName, uri, count);
+
+        for (int i = 0; i < count; ++i) {
+            Attribute attribute = attributes[i];
+            int valueIndex = getValueIndex(attribute.getName(), attribute.getValue());
+            writeWords(getNullableStringIndex(attribute.getNamespaceUri()),
+                    getStringIndex(attribute.getName()),
+                    valueIndex,
+                    AXMLParser.TYPE_STRING,
+                    valueIndex);
+        }
+    }
+
+    @Override
+    public void startElement(final String localName,
+                             final AttributeCursor attributes,
+                             final String uri,
+                             final String prefix) {
+        int count = attributes.getCount();
+        writeStartTagHeader(localName, uri, count);
+
+        for (int i = 0; i < count; ++i) {
+            int type = attributes.getValueType(i);
+            int valueIndex, data;
+            if (type == AXMLParser.TYPE_STRING) {
+                // the string indices are not the same in the source document
+                data = getValueIndex(attributes.getName(i), attributes.getValue(i));
+                valueIndex = data;
+            } else if (attributes.getValueStringIndex(i) == AXMLParser.ATTR_TYPED_VALUE) {
+                data = attributes.getValueData(i);
+                valueIndex = AXMLParser.ATTR_TYPED_VALUE;
+            } else {
+                data = attributes.getValueData(i);
+                valueIndex = getValueIndex(attributes.getName(i), attributes.getValue(i));
+            }
+
+            int resourceId = attributes.getNameResource(i);
+            int nameIndex = (resourceId == 0) ? getStringIndex(attributes.getName(i))
+                    : getResourceNameIndex(attributes.getName(i), resourceId);
+
+            writeWords(getNullableStringIndex(attributes.getNamespaceUri(i)),
+                    nameIndex,
+                    valueIndex,
+                    type,
+                    data);
+        }
+    }
+
+    @Override
+    public void endElement(final String localName, final String uri, final String prefix) {
+        writeWords(AXMLParser.WORD_END_TAG, END_TAG_WORDS * AXMLParser.WORD_SIZE,
+                mLineNumber++, NO_INDEX, getNullableStringIndex(uri), getStringIndex(localName));
+    }
+
+    @Override
+    public void text(final String data) {
+        if (data == null) {
+            throw new IllegalArgumentException("Can't encode a null text");
+        }
+        writeWords(AXMLParser.WORD_TEXT, TEXT_WORDS * AXMLParser.WORD_SIZE,
+                mLineNumber++, NO_INDEX, getStringIndex(data), TEXT_TYPED_VALUE, 0);
+    }
+
+    private void writeStartTagHeader(final String localName, final String uri, final int attributesCount) {
+        int blockSize = (START_TAG_WORDS + (attributesCount * AttributeCursor.ATTRIBUTE_WORDS))
+                * AXMLParser.WORD_SIZE;
+        writeWords(AXMLParser.WORD_START_TAG, blockSize, mLineNumber++, NO_INDEX,
+                getNullableStringIndex(uri), getStringIndex(localName),
+                ATTRIBUTES_LAYOUT, attributesCount, 0);
+    }
+
+    /**
+     * @return the index of the given string in the pool, adding it if needed
+     */
+    private int getStringIndex(final String string) {
+        if (string == null) {
+            throw new IllegalArgumentException("Can't encode a null string");
+        }
+        Integer index = mStringsIndices.get(string);
+        if (index == null) {
+            index = mStrings.size();
+            mStrings.add(string);
+            mStringsIndices.put(string, index);
+        }
+        return index;
+    }
+
+    /**
+     * @return the index of the given attribute value in the pool, adding it if needed
+     */
+    private int getValueIndex(final String name, final String value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Can't encode the null value of the attribute " + name);
+        }
+        return getStringIndex(value);
+    }
+
+    private int getNullableStringIndex(final String string) {
+        return (string == null) ? NO_INDEX : getStringIndex(string);
+    }
+
+    /**
+     * @return the temporary index of an attribute name with a resource id, adding it to the
+     * resource map if needed
+     */
+    private int getResourceNameIndex(final String name, final int resourceId) {
+        Integer index = mResourceIndices.get(resourceId);
+        if (index == null) {
+            index = mResourceIds.size();
+            mResourceIds.add(resourceId);
+            mResourceNames.add(name);
+            mResourceIndices.put(resourceId, index);
+        }
+        return RESOURCE_NAME_BASE - index;
+    }
+
+    /**
+     * Updates the string indices written in the chunks, once the names with a resource id are
+     * known to take the first places of the pool
+     */
+    private void remapStringIndices(final int resourcesCount) {
+        int position = 0;
+        while (position < mWordsCount) {
+            switch (mWords[position]) {
+                case AXMLParser.WORD_START_TAG:
+                    remapStringIndex(position + 4, resourcesCount);
+                    remapStringIndex(position + 5, resourcesCount);
+                    int attributesEnd = position + START_TAG_WORDS
+                            + (mWords[position + 7] * AttributeCursor.ATTRIBUTE_WORDS);
+                    for (int attr = position + START_TAG_WORDS; attr < attributesEnd;
+                         attr += AttributeCursor.ATTRIBUTE_WORDS) {
+                        remapStringIndex(attr, resourcesCount);
+                        remapStringIndex(attr + 1, resourcesCount);
+                        remapStringIndex(attr + 2, resourcesCount);
+                        if (mWords[attr + 3] == AXMLParser.TYPE_STRING) {
+                            remapStringIndex(attr + 4, resourcesCount);
+                        }
+                    }
+                    break;
+                case AXMLParser.WORD_TEXT:
+                    remapStringIndex(position + 4, resourcesCount);
+                    break;
+                default:
+                    // namespaces (prefix, uri) and end tags (uri, name)
+                    remapStringIndex(position + 4, resourcesCount);
+                    remapStringIndex(position + 5, resourcesCount);
+                    break;
+            }
+            position += mWords[position + 1] / AXMLParser.WORD_SIZE;
+        }
+    }
+
+    private void remapStringIndex(final int position, final int resourcesCount) {
+        int index = mWords[position];
+        if (index >= 0) {
+            mWords[position] = index + resourcesCount;
+        } else if (index != NO_INDEX) {
+            mWords[position] = RESOURCE_NAME_BASE - index;
+        }
+    }
+
+    private void writeWords(final int... words) {
+        if ((mWordsCount + words.length) > mWords.length) {
+            mWords = Arrays.copyOf(mWords, Math.max(mWords.length * 2, mWordsCount + words.length));
+        }
+        System.arraycopy(words, 0, mWords, mWordsCount, words.length);
+        mWordsCount += words.length;
+    }
+
+    /**
+     * @return the string table block, with its header
+     */
+    private byte[] encodeStringTable() {
+        int resourcesCount = mResourceNames.size();
+        int count = resourcesCount + mStrings.size();
+        byte[][] encoded = new byte[count][];
+        int dataSize = 0;
+        for (int i = 0; i < count; ++i) {
+            encoded[i] = encodeString((i < resourcesCount) ? mResourceNames.get(i)
+                    : mStrings.get(i - resourcesCount));
+            dataSize += encoded[i].length;
+        }
+
+        // the block is aligned on words
+        dataSize = (dataSize + AXMLParser.WORD_SIZE - 1) & ~(AXMLParser.WORD_SIZE - 1);
+
+        int stringsStart = (STRING_TABLE_HEADER_WORDS + count) * AXMLParser.WORD_SIZE;
+        int blockSize = stringsStart + dataSize;
+
+        ByteBuffer block = ByteBuffer.allocate(blockSize).order(ByteOrder.LITTLE_ENDIAN);
+        block.putInt(AXMLParser.WORD_STRING_TABLE);
+        block.putInt(blockSize);
+        block.putInt(count);
+        block.putInt(0); // styles count
+        block.putInt(mStringsEncoding);
+        block.putInt(stringsStart);
+        block.putInt(0); // styles start
+
+        int offset = 0;
+        for (byte[] string : encoded) {
+            block.putInt(offset);
+            offset += string.length;
+        }
+        for (byte[] string : encoded) {
+            block.put(string);
+        }
+
+        return block.array();
+    }
+
+    /**
+     * Encodes a string, with its length prefix and null terminator. Lengths above 0x7F (UTF-8) or
+     * 0x7FFF (UTF-16) are written on two units, the first one with its high bit set.
+     */
+    private byte[] encodeString(final String string) {
+        int charsCount = string.length();
+
+        if (mStringsEncoding == AXMLParser.ENCODING_UTF8) {
+            byte[] data = string.getBytes(UTF8);
+            int charsLengthSize = (charsCount > 0x7F) ? 2 : 1;
+            int bytesLengthSize = (data.length > 0x7F) ? 2 : 1;
+
+            byte[] result = new byte[charsLengthSize + bytesLengthSize + data.length + 1];
+            int offset = writeUtf8Length(result, 0, charsCount);
+            offset = writeUtf8Length(result, offset, data.length);
+            System.arraycopy(data, 0, result, offset, data.length);
+            return result;
+        } else {
+            byte[] data = string.getBytes(UTF16LE);
+            int lengthSize = (charsCount > 0x7FFF) ? 4 : 2;
+
+            byte[] result = new byte[lengthSize + data.length + 2];
+            int offset = 0;
+            if (lengthSize == 4) {
+                int high = 0x8000 | ((charsCount >> 16) & 0x7FFF);
+                result[offset++] = (byte) high;
+                result[offset++] = (byte) (high >> 8);
+            }
+            result[offset++] = (byte) charsCount;
+            result[offset++] = (byte) (charsCount >> 8);
+            System.arraycopy(data, 0, result, offset, data.length);
+            return result;
+        }
+    }
+
+    private static int writeUtf8Length(final byte[] target, final int offset, final int length) {
+        int position = offset;
+        if (length > 0x7F) {
+            target[position++] = (byte) (0x80 | ((length >> 8) & 0x7F));
+        }
+        target[position++] = (byte) length;
+        return position;
+    }
+}
@@ -4,20 +4,33 @@ import android.support.annotation.IntDef;
 
 import org.w3c.dom.Document;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
 import java.io.UnsupportedEncodingException;
-import java.text.DecimalFormat;
-import java.util.HashMap;
-import java.util.Map;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
 import java.util.UnknownFormatFlagsException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import javax.xml.parsers.ParserConfigurationException;
 
 /**
  * The AXML Parser can parse a file or InputStream as a compressed Android XML file
  * <p/>
+ * Three input modes are available : an InputStream is read through a sliding buffer, a
+ * ByteBuffer (or a memory mapped file) is decoded in place, without any copy, and the bytes can
+ * also be pushed to the parser as they arrive (see {@link #startFeed(Listener)}), without blocking
+ * a thread on a stream.
+ * <p/>
  * This class is not thread safe, so if you want to parse multiple documents concurrently,
  * we recommend you create one AXMLParser instance per document.
  *
@@ -61,35 +74,109 @@ public class AXMLParser {
     // The different units for dimensions
     public static final String[] DIMENSION_UNIT = new String[]{"px", "dp", "sp", "pt", "in", "mm"};
 
-    // In the android.R class, this is the order the ids are set... apparently
-    // TODO test those values with files compiled for older versions of Android...
-    private static final String[] ANDROID_REF_TYPES = new String[]{
-            null, "attr", "id", "style", "string", "dimen", "color", "array", "drawable",
-            "layout", "anim", "animator", "interpolator", "mipmap", "integer", "transition"
-    };
-
     // equivalent to 2Ko ints
     private static final int BUFFER_SIZE = 4 * 2048;
 
+    // the prefix of a namespace uri which is not declared in the current scope
+    private static final int UNMAPPED_NAMESPACE = Integer.MIN_VALUE;
+
+    // the handlers of the known blocks, indexed by chunk type (the low half of the block id)
+    private static final ChunkHandler[] CHUNK_HANDLERS = new ChunkHandler[0x200];
+
+    static {
+        registerChunkHandler(new ChunkHandler(WORD_START_DOCUMENT, 2 * WORD_SIZE) {
+            @Override
+            void parse(final AXMLParser parser) throws IOException {
+                parser.parseStartDocument();
+            }
+        });
+        registerChunkHandler(new ChunkHandler(WORD_RES_TABLE, 2 * WORD_SIZE) {
+            @Override
+            void parse(final AXMLParser parser) throws IOException {
+                parser.parseResourceTable();
+            }
+        });
+        registerChunkHandler(new ChunkHandler(WORD_STRING_TABLE, 7 * WORD_SIZE) {
+            @Override
+            void parse(final AXMLParser parser) throws IOException {
+                parser.parseStringTable();
+            }
+        });
+        registerChunkHandler(new ChunkHandler(WORD_START_NAMESPACE, 6 * WORD_SIZE) {
+            @Override
+            void parse(final AXMLParser parser) throws IOException {
+                parser.parseNamespace(true);
+            }
+        });
+        registerChunkHandler(new ChunkHandler(WORD_END_NAMESPACE, 6 * WORD_SIZE) {
+            @Override
+            void parse(final AXMLParser parser) throws IOException {
+                parser.parseNamespace(false);
+            }
+        });
+        registerChunkHandler(new ChunkHandler(WORD_START_TAG, 9 * WORD_SIZE) {
+            @Override
+            void parse(final AXMLParser parser) throws IOException {
+                parser.parseStartTag();
+            }
+        });
+        registerChunkHandler(new ChunkHandler(WORD_END_TAG, 6 * WORD_SIZE) {
+            @Override
+            void parse(final AXMLParser parser) throws IOException {
+                parser.parseEndTag();
+            }
+        });
+        registerChunkHandler(new ChunkHandler(WORD_TEXT, 7 * WORD_SIZE) {
+            @Override
+            void parse(final AXMLParser parser) throws IOException {
+                parser.parseText();
+            }
+        });
+    }
+
     private InputStream mInputStream;
     private Listener mListener;
+    private CursorListener mCursorListener;
+    private RawTextListener mRawTextListener;
+    private IndexedListener mIndexedListener;
+    private final AttributeCursor mAttributeCursor = new AttributeCursor(this);
+    private final SymbolTable mSymbolTable = new SymbolTable(this);
 
 
-    private final byte[] mBuffer = new byte[BUFFER_SIZE];
+    private byte[] mBuffer = new byte[BUFFER_SIZE];
+    private ByteBuffer mData = wrapBuffer(mBuffer);
     private int mBufferStartPosition = BUFFER_SIZE;
     private int mBufferEndPosition = BUFFER_SIZE;
 
     private boolean mParsingComplete = false;
+    private boolean mParsingStopped = false;
     private boolean mEndOfStreamReached = false;
+    private boolean mFeeding = false;
 
 
     private int mStringsCount;
-    private String[] mStringsTable;
+    private String[] mStringsTable = new String[0];
+    private int[] mStringsOffsets = new int[0];
+    private byte[] mStringsBlock = new byte[0];
+    private ByteBuffer mStringsData;
+    private int mStringsEncoding;
+    private final StringPoolDecoder mStringsDecoder = new StringPoolDecoder();
 
     private int mResourcesCount;
-    private int[] mResourcesTable;
+    private int[] mResourcesTable = new int[0];
+
+    // the prefix index mapped to each namespace uri index, and the stack of the shadowed mappings
+    private int[] mNamespacePrefixes = new int[0];
+    private int[] mNamespaceStack = new int[16];
+    private int mNamespaceStackSize;
 
-    private Map<String, String> mNamespaces = new HashMap<>();
+    private ElementFilter mElementFilter;
+    private String[] mElementPath = new String[16];
+    private boolean[] mElementReported = new boolean[16];
+    private int mElementDepth;
+    private int mSkippedDepth;
+    private boolean mSkippedEndReported;
+    private boolean mInStartElement;
 
     private int mReadBytes;
     private int mDocSize;
@@ -105,6 +192,31 @@ public class AXMLParser {
     @LogVerbosity
     private int mVerbosity = LOG_NONE;
 
+    @IntDef({STRINGS_LAZY, STRINGS_EAGER})
+    public @interface StringsDecoding {
+    }
+
+    public static final int STRINGS_LAZY = 0;
+    public static final int STRINGS_EAGER = 1;
+
+    @StringsDecoding
+    private int mStringsDecoding = STRINGS_LAZY;
+
+    public static final int DEFAULT_PARALLEL_STRINGS_THRESHOLD = 32 * 1024;
+
+    // below this size, a range isn't worth a task
+    private static final int MIN_STRINGS_RANGE = 4 * 1024;
+
+    private ExecutorService mStringsExecutor;
+    private int mParallelStringsThreshold = DEFAULT_PARALLEL_STRINGS_THRESHOLD;
+    private StringPoolDecoder[] mRangeDecoders = new StringPoolDecoder[0];
+
+    private boolean mDecodingInPlace = false;
+
+    private ParserTracer mTracer;
+    private StringInterner mStringInterner;
+    private final TypedValueFormatter mValueFormatter = new TypedValueFormatter(new ReferenceCache());
+
 
     /**
      * A SAX like listener. Events will be triggered whenever
@@ -172,6 +284,141 @@ public class AXMLParser {
 
     }
 
+    /**
+     * A Listener variant receiving the attributes of each element through a reusable
+     * AttributeCursor, giving access to the raw typed values, without allocating any Attribute.
+     * <p/>
+     * When such a listener is used, the {@link #startElement(String, Attribute[], String, String)}
+     * method is never called.
+     */
+    public interface CursorListener extends Listener {
+
+        /**
+         * Receive notification of the beginning of an element.
+         *
+         * @param localName  the local name of the element (without prefix)
+         * @param attributes the attributes attached to the element. This cursor is reused for
+         *                   every element, and is only valid during this call
+         * @param uri        the Namespace URI, or null if the element has no Namespace
+         * @param prefix     the Namespace prefix, or null if the element has no Namespace
+         */
+        void startElement(String localName, AttributeCursor attributes, String uri, String prefix) throws IOException;
+    }
+
+    /**
+     * A Listener variant receiving the names as string pool indices (see {@link SymbolTable}), and
+     * the attributes through a reusable AttributeCursor, so that no String is decoded unless the
+     * listener asks for it.
+     * <p/>
+     * When such a listener is used, the startDocument and endDocument methods are the only
+     * methods of the Listener interface which are called. The indices of the missing namespaces
+     * and prefixes are {@link SymbolTable#NO_SYMBOL}.
+     */
+    public interface IndexedListener extends Listener {
+
+        /**
+         * Receive the symbol table of the document, before the first element.
+         *
+         * @param symbols the strings of the document, only valid until the end of the document
+         */
+        void symbolTable(SymbolTable symbols) throws IOException;
+
+        /**
+         * Begin the scope of a prefix-URI Namespace mapping.
+         *
+         * @param prefixIndex the index of the Namespace prefix being declared
+         * @param uriIndex    the index of the Namespace URI the prefix is mapped to
+         */
+        void startPrefixMapping(int prefixIndex, int uriIndex) throws IOException;
+
+        /**
+         * End the scope of a prefix-URI mapping.
+         *
+         * @param prefixIndex the index of the prefix that was being mapped
+         * @param uriIndex    the index of the Namespace URI the prefix is mapped to
+         */
+        void endPrefixMapping(int prefixIndex, int uriIndex) throws IOException;
+
+        /**
+         * Receive notification of the beginning of an element.
+         *
+         * @param nameIndex   the index of the local name of the element
+         * @param attributes  the attributes attached to the element. This cursor is reused for
+         *                    every element, and is only valid during this call
+         * @param uriIndex    the index of the Namespace URI, or NO_SYMBOL
+         * @param prefixIndex the index of the Namespace prefix, or NO_SYMBOL
+         */
+        void startElement(int nameIndex, AttributeCursor attributes, int uriIndex, int prefixIndex) throws IOException;
+
+        /**
+         * Receive notification of the end of an element.
+         *
+         * @param nameIndex   the index of the local name of the element
+         * @param uriIndex    the index of the Namespace URI, or NO_SYMBOL
+         * @param prefixIndex the index of the Namespace prefix, or NO_SYMBOL
+         */
+        void endElement(int nameIndex, int uriIndex, int prefixIndex) throws IOException;
+
+        /**
+         * Receive notification of text.
+         *
+         * @param dataIndex the index of the text data
+         */
+        void text(int dataIndex) throws IOException;
+    }
+
+    /**
+     * A listener receiving the text blocks as string pool indices, to copy the raw strings (see
+     * {@link #hasRawUtf8Strings()}) instead of decoding them
+     */
+    interface RawTextListener extends CursorListener {
+
+        /**
+         * Receive notification of text.
+         *
+         * @param parser      the parser holding the string pool
+         * @param stringIndex the index of the text data in the string pool
+         */
+        void text(AXMLParser parser, int stringIndex) throws IOException;
+    }
+
+    /**
+     * Parses the blocks with a given id (chunk type and header size), the parser being positioned
+     * at the start of the block, with at least the fixed part of the block in the buffer
+     */
+    private abstract static class ChunkHandler {
+
+        final int mId;
+        // the size of the fixed words read by the handler, the smallest valid block size
+        final int mMinimumSize;
+
+        ChunkHandler(final int id, final int minimumSize) {
+            mId = id;
+            mMinimumSize = minimumSize;
+        }
+
+        abstract void parse(AXMLParser parser) throws IOException;
+    }
+
+    private static void registerChunkHandler(final ChunkHandler handler) {
+        CHUNK_HANDLERS[handler.mId & 0xFFFF] = handler;
+    }
+
+    /**
+     * @param id the block id
+     * @return the handler parsing the blocks with this id, or null if the chunk type is unknown (or
+     * known, but with an unexpected header size)
+     */
+    private static ChunkHandler getChunkHandler(final int id) {
+        int type = id & 0xFFFF;
+        if (type >= CHUNK_HANDLERS.length) {
+            return null;
+        }
+
+        ChunkHandler handler = CHUNK_HANDLERS[type];
+        return ((handler != null) && (handler.mId == id)) ? handler : null;
+    }
+
     /**
      * Parses the given input stream and build a DOM representation of the XML document
      *
@@ -193,6 +440,28 @@ public class AXMLParser {
         return listener.getDocument();
     }
 
+    /**
+     * Parses the given input stream and build a compact, read only representation of the XML
+     * document, using a fraction of the memory of a DOM representation
+     *
+     * @param inputStream the input stream to parse (it will automatically be closed at the end of
+     *                    the parsing)
+     * @return the compact representation of the document
+     */
+    public CompactDocument parseCompact(final InputStream inputStream)
+            throws IOException {
+
+        if (inputStream == null) {
+            throw new NullPointerException();
+        }
+
+        CompactDocumentListener listener = new CompactDocumentListener();
+
+        parse(inputStream, listener);
+
+        return listener.getDocument();
+    }
+
     /**
      * Parses the given input stream and writes a standard xml representation into the output-stream
      *
@@ -231,96 +500,586 @@ public class AXMLParser {
             throw new NullPointerException();
         }
 
+        setInput(inputStream, listener);
+
+        try {
+            processBuffer();
+        } finally {
+            releaseInput();
+        }
+    }
+
+    /**
+     * Parses the given file and trigger events on the given listener. The file is memory mapped
+     * and decoded in place, which is faster than going through an InputStream.
+     *
+     * @param file     the file to parse
+     * @param listener the listener to trigger on each parsing event
+     */
+    public void parseFile(final File file,
+                          final AXMLParser.Listener listener)
+            throws IOException {
+
+        if ((file == null) || (listener == null)) {
+            throw new NullPointerException();
+        }
+
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            parseChannel(randomAccessFile.getChannel(), listener);
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    /**
+     * Parses the content of the given channel (from its current position to its end) and trigger
+     * events on the given listener. The channel is memory mapped and decoded in place.
+     *
+     * @param channel  the channel to parse (it will not be closed at the end of the parsing)
+     * @param listener the listener to trigger on each parsing event
+     */
+    public void parseChannel(final FileChannel channel,
+                             final AXMLParser.Listener listener)
+            throws IOException {
+
+        if ((channel == null) || (listener == null)) {
+            throw new NullPointerException();
+        }
+
+        long position = channel.position();
+        ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, position, channel.size() - position);
+
+        parseBuffer(mapped, listener);
+    }
+
+    /**
+     * Parses the given buffer (from its current position to its limit) and trigger events on the
+     * given listener. The buffer content is decoded in place, and the buffer position is left
+     * untouched.
+     *
+     * @param buffer   the buffer to parse
+     * @param listener the listener to trigger on each parsing event
+     */
+    public void parseBuffer(final ByteBuffer buffer,
+                            final AXMLParser.Listener listener)
+            throws IOException {
+
+        if ((buffer == null) || (listener == null)) {
+            throw new NullPointerException();
+        }
+
+        setInput(buffer, listener);
+
+        try {
+            processBuffer();
+        } finally {
+            releaseInput();
+        }
+    }
+
+    /**
+     * Parses a single element of the given buffer (with its attributes and its whole subtree), and
+     * trigger events on the given listener. Using the index, only the string pool, the namespaces
+     * declared around the element and the element blocks are read ; the events are triggered as
+     * if the element was the root of the document (including the startDocument and endDocument
+     * events, and the element filter paths).
+     *
+     * @param buffer   the buffer holding the indexed document (from its current position to its
+     *                 limit), decoded in place
+     * @param index    the index of the document, see {@link ElementIndex#build(ByteBuffer)}
+     * @param element  the index of the element to parse, in document order
+     * @param listener the listener to trigger on each parsing event
+     */
+    public void parseElement(final ByteBuffer buffer,
+                             final ElementIndex index,
+                             final int element,
+                             final AXMLParser.Listener listener)
+            throws IOException {
+
+        if ((buffer == null) || (index == null) || (listener == null)) {
+            throw new NullPointerException();
+        }
+
+        int startOffset = index.getStartOffset(element);
+        int endOffset = index.getEndOffset(element);
+
+        setInput(buffer, listener);
+
+        try {
+            if ((mBufferEndPosition < index.getDocumentSize())
+                    || (readWord(0, 1) != index.getDocumentSize())) {
+                throw new IllegalArgumentException("The index doesn't match this document");
+            }
+
+            // the start document, string pool and resources blocks
+            while (!mParsingStopped && (mReadBytes < index.getPrologueSize())) {
+                processBlock();
+            }
+
+            // the namespaces declared around the element
+            int[] namespaces = new int[index.getNamespacesCount()];
+            int namespacesCount = 0;
+            for (int i = 0; i < namespaces.length; ++i) {
+                if ((index.getNamespaceStartOffset(i) < startOffset)
+                        && (index.getNamespaceEndOffset(i) > endOffset)) {
+                    namespaces[namespacesCount++] = i;
+                }
+            }
+
+            for (int i = 0; (i < namespacesCount) && !mParsingStopped; ++i) {
+                seek(index.getNamespaceStartOffset(namespaces[i]));
+                processBlock();
+            }
+
+            // the element subtree, up to its end tag
+            seek(startOffset);
+            while (!mParsingStopped && (mReadBytes <= endOffset)) {
+                processBlock();
+            }
+
+            for (int i = namespacesCount - 1; (i >= 0) && !mParsingStopped; --i) {
+                seek(index.getNamespaceEndOffset(namespaces[i]));
+                processBlock();
+            }
+
+            if (!mParsingStopped) {
+                mListener.endDocument();
+                mParsingComplete = true;
+            }
+        } finally {
+            releaseInput();
+        }
+    }
+
+    /**
+     * Prepares this parser to receive a document incrementally, through the {@link #feed(ByteBuffer)}
+     * method. The parsing ends with {@link #endFeed()}.
+     *
+     * @param listener the listener to trigger on each parsing event
+     */
+    public void startFeed(final AXMLParser.Listener listener) {
+        if (listener == null) {
+            throw new NullPointerException();
+        }
+
+        setInput((InputStream) null, listener);
+        mBufferStartPosition = 0;
+        mBufferEndPosition = 0;
+        mFeeding = true;
+    }
+
+    /**
+     * Pushes the next bytes of the document (from the chunk current position to its limit). The
+     * events of all the blocks completed by these bytes are triggered on the listener right away,
+     * and the bytes of the last incomplete block are kept until the next feed. The chunk is
+     * consumed entirely ; any byte past the end of the document is ignored.
+     *
+     * @param chunk the next bytes of the document
+     */
+    public void feed(final ByteBuffer chunk) throws IOException {
+        if (chunk == null) {
+            throw new NullPointerException();
+        }
+
+        if (!mFeeding) {
+            throw new IllegalStateException("The parser is not expecting any feed, call startFeed() first");
+        }
+
+        if (mParsingComplete || mParsingStopped) {
+            chunk.position(chunk.limit());
+            return;
+        }
+
+        appendToBuffer(chunk);
+
+        try {
+            while (!mParsingComplete && !mParsingStopped && isNextBlockAvailable()) {
+                processNextBlock();
+            }
+        } catch (IOException | RuntimeException e) {
+            mFeeding = false;
+            releaseInput();
+            throw e;
+        }
+    }
+
+    /**
+     * Ends the incremental parsing started with {@link #startFeed(Listener)}
+     *
+     * @throws IOException if the fed bytes don't hold a complete document
+     */
+    public void endFeed() throws IOException {
+        if (!mFeeding) {
+            throw new IllegalStateException("The parser is not expecting any feed, call startFeed() first");
+        }
+
+        mFeeding = false;
+        boolean complete = mParsingComplete || mParsingStopped;
+        releaseInput();
+
+        if (!complete) {
+            throw new IOException("Unexpected End Of Stream");
+        }
+    }
+
+    /**
+     * Appends the given bytes after the pending ones, growing the buffer if needed
+     *
+     * @param chunk the bytes to append
+     */
+    private void appendToBuffer(final ByteBuffer chunk) {
+        int remainingLength = mBufferEndPosition - mBufferStartPosition;
+        int requiredLength = remainingLength + chunk.remaining();
+
+        if (requiredLength > mBuffer.length) {
+            byte[] buffer = new byte[Math.max(requiredLength, mBuffer.length * 2)];
+            System.arraycopy(mBuffer, mBufferStartPosition, buffer, 0, remainingLength);
+            mBuffer = buffer;
+            mData = wrapBuffer(mBuffer);
+        } else if (mBufferStartPosition > 0) {
+            System.arraycopy(mBuffer, mBufferStartPosition, mBuffer, 0, remainingLength);
+        }
+        mBufferStartPosition = 0;
+        mBufferEndPosition = remainingLength;
+
+        int length = chunk.remaining();
+        chunk.get(mBuffer, mBufferEndPosition, length);
+        mBufferEndPosition += length;
+    }
+
+    /**
+     * @return true if the next block has been entirely fed
+     */
+    private boolean isNextBlockAvailable() throws IOException {
+        int available = mBufferEndPosition - mBufferStartPosition;
+        if (available < (2 * WORD_SIZE)) {
+            return false;
+        }
+
+        // the start document size is the whole document size, only its header is needed
+        int requiredLength;
+        if (readWord(mBufferStartPosition, 0) == WORD_START_DOCUMENT) {
+            requiredLength = 2 * WORD_SIZE;
+        } else if (mReadBytes == 0) {
+            // without a start document block, the size of the first block can't be checked
+            throw new UnknownFormatFlagsException("This document doesn't seem to be an Android XML document");
+        } else {
+            requiredLength = readWord(mBufferStartPosition, 1);
+
+            // don't wait (and buffer the fed bytes) for a block which can't exist
+            if ((requiredLength < (2 * WORD_SIZE))
+                    || ((mDocSize > 0) && (requiredLength > (mDocSize - mReadBytes)))) {
+                throw new IOException("Invalid block size " + requiredLength + " at position 0x"
+                        + Integer.toHexString(mReadBytes));
+            }
+        }
+
+        return available >= requiredLength;
+    }
+
+    /**
+     * Prepares this parser to read the given input stream, block by block
+     *
+     * @param inputStream the input stream to parse
+     * @param listener    the listener to trigger on each parsing event
+     */
+    void setInput(final InputStream inputStream,
+                  final AXMLParser.Listener listener) {
         resetInternalState();
 
         mListener = listener;
+        mCursorListener = (listener instanceof CursorListener) ? (CursorListener) listener : null;
+        mRawTextListener = (listener instanceof RawTextListener) ? (RawTextListener) listener : null;
+        mIndexedListener = (listener instanceof IndexedListener) ? (IndexedListener) listener : null;
         mInputStream = inputStream;
+        mData = wrapBuffer(mBuffer);
+        mDecodingInPlace = false;
+    }
 
-        processBuffer();
+    /**
+     * Prepares this parser to read the given buffer in place, block by block
+     *
+     * @param buffer   the buffer to parse (from its current position to its limit)
+     * @param listener the listener to trigger on each parsing event
+     */
+    void setInput(final ByteBuffer buffer,
+                  final AXMLParser.Listener listener) {
+        resetInternalState();
 
-        try {
-            mInputStream.close();
-        } catch (IOException e) {
-            e.printStackTrace();
+        mListener = listener;
+        mCursorListener = (listener instanceof CursorListener) ? (CursorListener) listener : null;
+        mRawTextListener = (listener instanceof RawTextListener) ? (RawTextListener) listener : null;
+        mIndexedListener = (listener instanceof IndexedListener) ? (IndexedListener) listener : null;
+
+        // the whole document is already available : no need to ever refill the buffer
+        mData = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+        mBufferStartPosition = 0;
+        mBufferEndPosition = mData.limit();
+        mEndOfStreamReached = true;
+        mDecodingInPlace = true;
+    }
+
+    /**
+     * Releases the current input (closing the input stream if any)
+     */
+    void releaseInput() {
+        if (mInputStream != null) {
+            try {
+                mInputStream.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            mInputStream = null;
+        }
+
+        mListener = null;
+        mCursorListener = null;
+        mRawTextListener = null;
+        mIndexedListener = null;
+        mFeeding = false;
+        mData = wrapBuffer(mBuffer);
+        mStringsData = null;
+        mStringsDecoder.setData(null, ENCODING_UTF16_LE);
+    }
+
+    /**
+     * Forgets the strings of the last document, and drops the buffers and arrays which grew above
+     * the given size while parsing large documents, so that an idle parser doesn't hold on to them
+     *
+     * @param maxRetainedBytes the maximum size of each retained buffer
+     */
+    void trimBuffers(final int maxRetainedBytes) {
+        Arrays.fill(mStringsTable, null);
+
+        if (mBuffer.length > maxRetainedBytes) {
+            mBuffer = new byte[BUFFER_SIZE];
+            mData = wrapBuffer(mBuffer);
+        }
+
+        if (mStringsBlock.length > maxRetainedBytes) {
+            mStringsBlock = new byte[0];
+        }
+
+        int maxRetainedWords = maxRetainedBytes / WORD_SIZE;
+        if (mStringsOffsets.length > maxRetainedWords) {
+            mStringsOffsets = new int[0];
+            mStringsTable = new String[0];
+        }
+        if (mNamespacePrefixes.length > maxRetainedWords) {
+            mNamespacePrefixes = new int[0];
+        }
+        if (mResourcesTable.length > maxRetainedWords) {
+            mResourcesTable = new int[0];
+        }
+    }
+
+    /**
+     * @return the size of the buffer used to read streams
+     */
+    int getBufferSize() {
+        return mBuffer.length;
+    }
+
+    /**
+     * @return true if the whole document has been parsed (eg : when feeding the parser, true once
+     * the last block has been fed)
+     */
+    public boolean isParsingComplete() {
+        return mParsingComplete;
+    }
+
+    /**
+     * Stops the current parsing, from any listener callback : no other event is triggered (not even
+     * endDocument), and the input stream is closed as soon as the callback returns. When feeding
+     * the parser, the next fed bytes are ignored.
+     */
+    public void stopParsing() {
+        mParsingStopped = true;
+    }
+
+    /**
+     * Skips the children of the current element, from the startElement listener callback : the next
+     * event is the endElement of the same element, and the blocks in between are jumped over
+     * without being decoded.
+     */
+    public void skipSubtree() {
+        if (!mInStartElement) {
+            throw new IllegalStateException("A subtree can only be skipped from the startElement callback");
         }
 
+        skipSubtreeAfterStartTag();
+    }
+
+    /**
+     * Skips the children of the element whose start tag is the last block read, as
+     * {@link #skipSubtree()} does (used by the pull parser, which is between two blocks when the
+     * START_TAG event is handled)
+     */
+    void skipSubtreeAfterStartTag() {
+        mSkippedDepth = 1;
+        mSkippedEndReported = true;
+    }
+
+    /**
+     * @return true if the parsing was stopped by a listener, with {@link #stopParsing()}
+     */
+    public boolean isParsingStopped() {
+        return mParsingStopped;
     }
 
     private void resetInternalState() {
         mParsingComplete = false;
+        mParsingStopped = false;
         mEndOfStreamReached = false;
-        mBufferStartPosition = BUFFER_SIZE;
-        mBufferEndPosition = BUFFER_SIZE;
+        mFeeding = false;
+        mBufferStartPosition = mBuffer.length;
+        mBufferEndPosition = mBuffer.length;
+        mReadBytes = 0;
+        mDocSize = 0;
+        // the arrays are kept, to be reused by the next document
         mStringsCount = 0;
-        mStringsTable = new String[]{};
+        mStringsData = null;
         mResourcesCount = 0;
-        mResourcesTable = new int[]{};
+        mNamespaceStackSize = 0;
+        mElementDepth = 0;
+        mSkippedDepth = 0;
+        mSkippedEndReported = false;
+        mInStartElement = false;
     }
 
     /**
      * The parse loop will move block by block through the input stream
      */
     private void processBuffer() throws IOException {
+        while (!mParsingComplete && !mParsingStopped) {
+            processNextBlock();
+        }
+    }
 
-        int id;
-
-
-        while (!mParsingComplete) {
-            // if possible, update the buffer
-            updateBuffer();
-
-            // read the next block id
-            id = readWord(mBufferStartPosition, 0);
-
-            // switch on block type
-            switch (id) {
-                case WORD_START_DOCUMENT:
-                    parseStartDocument();
-                    break;
-                case WORD_RES_TABLE:
-                    parseResourceTable();
-                    break;
-                case WORD_STRING_TABLE:
-                    parseStringTable();
-                    break;
-                case WORD_START_NAMESPACE:
-                    parseNamespace(true);
-                    break;
-                case WORD_END_NAMESPACE:
-                    parseNamespace(false);
-                    break;
-                case WORD_START_TAG:
-                    parseStartTag();
-                    break;
-                case WORD_END_TAG:
-                    parseEndTag();
-                    break;
-                case WORD_TEXT:
-                    parseText();
-                    break;
-                default:
-                    if (mReadBytes == 0) {
-                        throw new UnknownFormatFlagsException("This document doesn't seem to be an Android XML document");
-                    } else {
-                        // we're encountering an unknown flag, but we have already read a few, so let's just log that
-                        moveBufferPositionByWords(1);
-                        logError(String.format("Unknown block id : 0x%x at position 0x%x", id, mBufferStartPosition))
-                        ;
-                    }
-                    break;
+    /**
+     * Reads the next block, triggering the matching events on the listener
+     */
+    void processNextBlock() throws IOException {
+
+        processBlock();
+
+        // a listener may have stopped the parsing
+        if (mParsingStopped) {
+            return;
+        }
+
+        // Check the end of document
+        if (mReadBytes >= mDocSize) {
+            mListener.endDocument();
+            mParsingComplete = true;
+            if (mTracer != null) {
+                mTracer.onDocumentEnd(mReadBytes);
             }
+        } else
+            // Check end of stream
+            if ((mBufferStartPosition >= mBufferEndPosition) && mEndOfStreamReached) {
+                throw new IOException("Unexpected End Of Stream");
+            }
+    }
 
-            // Check the end of document
-            if (mReadBytes >= mDocSize) {
-                mListener.endDocument();
-                mParsingComplete = true;
-            } else
-                // Check end of stream
-                if ((mBufferStartPosition >= mBufferEndPosition) && mEndOfStreamReached) {
-                    throw new IOException("Unexpected End Of Stream");
+    /**
+     * Reads the block at the current position, and dispatches it to its handler (or skips it)
+     */
+    private void processBlock() throws IOException {
+
+        // if possible, update the buffer
+        updateBuffer();
+
+        // every block starts with its id (chunk type and header size) and size
+        requireBytes(2 * WORD_SIZE);
+        int id = readWord(mBufferStartPosition, 0);
+        int blockSize = readWord(mBufferStartPosition, 1);
+
+        int blockStart = mReadBytes;
+        long blockStartTime = (mTracer == null) ? 0 : System.nanoTime();
+
+        ChunkHandler handler = getChunkHandler(id);
+        if ((handler == null) && (mReadBytes == 0)) {
+            throw new UnknownFormatFlagsException("This document doesn't seem to be an Android XML document");
+        }
+
+        int minimumSize = (handler == null) ? (2 * WORD_SIZE) : handler.mMinimumSize;
+        if (blockSize < minimumSize) {
+            throw new IOException("Invalid block size " + blockSize + " at position 0x"
+                    + Integer.toHexString(blockStart));
+        }
+
+        if (handler == null) {
+            skipUnknownBlock(id, blockSize, blockStart);
+        } else {
+            // the blocks of a filtered out subtree are skipped, the others are parsed
+            if (!((mSkippedDepth > 0) && skipBlock(id, blockSize))) {
+                requireBytes(minimumSize);
+                handler.parse(this);
+
+                // the start document block holds the whole document, the others are only
+                // trusted to their declared size
+                if (id != WORD_START_DOCUMENT) {
+                    skipBlockRemainder(blockSize, blockStart);
                 }
+            }
+
+            if (mTracer != null) {
+                mTracer.onChunk(id, blockStart, mReadBytes - blockStart, System.nanoTime() - blockStartTime);
+            }
+        }
+    }
+
+    /**
+     * Moves to the given position of a document decoded in place
+     *
+     * @param offset the position in the document
+     */
+    private void seek(final int offset) throws IOException {
+        if ((offset < 0) || (offset + (2 * WORD_SIZE) > mBufferEndPosition)) {
+            throw new IOException("Invalid position 0x" + Integer.toHexString(offset));
+        }
+
+        mBufferStartPosition = offset;
+        mReadBytes = offset;
+    }
+
+    /**
+     * Jumps over a block this parser doesn't know, without reading it
+     *
+     * @param id         the block id
+     * @param blockSize  the block size
+     * @param blockStart the position of the block in the document
+     */
+    private void skipUnknownBlock(final int id, final int blockSize, final int blockStart) throws IOException {
+        if (mVerbosity != LOG_NONE) {
+            logError(String.format("Unknown block id : 0x%x at position 0x%x (skipping %d bytes)", id, blockStart, blockSize));
+        }
+        if (mTracer != null) {
+            mTracer.onUnknownChunk(id, blockStart);
         }
 
+        skipBytes(blockSize);
+    }
+
+    /**
+     * Jumps over the end of a parsed block, when it is larger than what this parser reads (eg :
+     * some extra data written by a newer tool)
+     *
+     * @param blockSize  the block size
+     * @param blockStart the position of the block in the document
+     */
+    private void skipBlockRemainder(final int blockSize, final int blockStart) throws IOException {
+        int consumed = mReadBytes - blockStart;
+        if (consumed > blockSize) {
+            throw new IOException("Invalid block size " + blockSize + " at position 0x"
+                    + Integer.toHexString(blockStart));
+        }
+
+        if (consumed < blockSize) {
+            skipBytes(blockSize - consumed);
+        }
     }
 
     /**
@@ -349,15 +1108,18 @@ public class AXMLParser {
      * (or so it seems).
      * </p>
      */
-    private void parseResourceTable() {
+    private void parseResourceTable() throws IOException {
+
+        int blockSize = requireBlock();
 
-        int blockSize = readWord(mBufferStartPosition, 1);
         mResourcesCount = (blockSize / WORD_SIZE) - 2; // remove the first 2 words (id, size)
 
         moveBufferPositionByWords(2);
 
         // read resources ids
-        mResourcesTable = new int[mResourcesCount];
+        if (mResourcesTable.length < mResourcesCount) {
+            mResourcesTable = new int[mResourcesCount];
+        }
         for (int i = 0; i < mResourcesCount; ++i) {
             mResourcesTable[i] = readWord(mBufferStartPosition, i);
         }
@@ -377,43 +1139,76 @@ public class AXMLParser {
      * <li>6 : Offset to style data</li>
      * </ul>
      * The block is then followed by a list of offset in the string table, one for each string
+     * <p/>
+     * Unless the parser uses the STRINGS_EAGER decoding, only the offsets are read here, and each
+     * string is decoded the first time it is needed. Large pools can be decoded upfront on several
+     * threads (see {@link #setParallelStringsDecoding(ExecutorService, int)}).
      */
     private void parseStringTable() throws IOException {
 
         // Read block data
-        int blockSize = readWord(mBufferStartPosition, 1);
+        int blockSize = requireBlock();
+
         mStringsCount = readWord(mBufferStartPosition, 2);
         int stylesCount = readWord(mBufferStartPosition, 3);
         int encoding = readWord(mBufferStartPosition, 4);
-        int stringTableOffset = mBufferStartPosition + readWord(mBufferStartPosition, 5);
+        int stringTableOffset = readWord(mBufferStartPosition, 5);
         int styleOffset = readWord(mBufferStartPosition, 6);
 
-        // compute the charset
-        String charsetName;
-        switch (encoding) {
-            case ENCODING_UTF8:
-                charsetName = "UTF-8";
-                break;
-            case ENCODING_UTF16_LE:
-                charsetName = "UTF-16LE";
-                break;
-            default:
-                logError(String.format("Unsupported chars type %x", encoding));
-                throw new UnsupportedEncodingException();
+        if ((encoding != ENCODING_UTF8) && (encoding != ENCODING_UTF16_LE)) {
+            logError(String.format("Unsupported chars type %x", encoding));
+            throw new UnsupportedEncodingException();
         }
+        mStringsEncoding = encoding;
 
-        // read Strings table
-        int offset;
-        mStringsTable = new String[mStringsCount];
+        // keep the string data available after we move past this block
+        int blockStart;
+        if (mDecodingInPlace) {
+            mStringsData = mData;
+            blockStart = mBufferStartPosition;
+        } else {
+            if (mStringsBlock.length < blockSize) {
+                mStringsBlock = new byte[blockSize];
+            }
+            System.arraycopy(mBuffer, mBufferStartPosition, mStringsBlock, 0, blockSize);
+            mStringsData = wrapBuffer(mStringsBlock);
+            blockStart = 0;
+        }
+        mStringsDecoder.setData(mStringsData, encoding);
+
+        // read Strings offsets (reusing the arrays of the previous documents when possible)
+        if (mStringsOffsets.length < mStringsCount) {
+            mStringsOffsets = new int[mStringsCount];
+            mStringsTable = new String[mStringsCount];
+        } else {
+            Arrays.fill(mStringsTable, null);
+        }
+        if (mNamespacePrefixes.length < mStringsCount) {
+            mNamespacePrefixes = new int[mStringsCount];
+        }
+        Arrays.fill(mNamespacePrefixes, 0, mStringsCount, UNMAPPED_NAMESPACE);
         for (int i = 0; i < mStringsCount; ++i) {
-            offset = stringTableOffset + readWord(mBufferStartPosition, i + 7);
-            mStringsTable[i] = readString(offset, encoding, charsetName);
+            mStringsOffsets[i] = blockStart + stringTableOffset + readWord(mBufferStartPosition, i + 7);
+        }
+
+        if ((mStringsExecutor != null) && (mStringsCount >= mParallelStringsThreshold)) {
+            decodeStringsInParallel();
+        } else if (mStringsDecoding == STRINGS_EAGER) {
+            for (int i = 0; i < mStringsCount; ++i) {
+                getString(i);
+            }
         }
 
         // TODO read the styles
-        logInfo("Style count : " + stylesCount + "; offset : " + styleOffset);
+        if (mVerbosity == LOG_EVERYTHING) {
+            logInfo("Style count : " + stylesCount + "; offset : " + styleOffset);
+        }
 
         moveBufferPositionByBytes(blockSize);
+
+        if (mIndexedListener != null) {
+            mIndexedListener.symbolTable(mSymbolTable);
+        }
     }
 
     /**
@@ -427,7 +1222,7 @@ public class AXMLParser {
      * <li>5 : index of the namespace uri in String Table</li>
      * </ul>
      */
-    private void parseNamespace(final boolean isStartBlock) {
+    private void parseNamespace(final boolean isStartBlock) throws IOException {
 
 //        int blockSize = readWord(mBufferStartPosition, 1);
 //        int lineNumber = readWord(mBufferStartPosition, 2);
@@ -435,22 +1230,83 @@ public class AXMLParser {
         int namespacePrefixIndex = readWord(mBufferStartPosition, 4);
         int namespaceUriIndex = readWord(mBufferStartPosition, 5);
 
-        logInfo(String.format("Unknown value in namespace block : 0x%x", unknown3));
+        if (mVerbosity == LOG_EVERYTHING) {
+            logInfo(String.format("Unknown value in namespace block : 0x%x", unknown3));
+        }
+
+        if (isStartBlock) {
+            pushNamespace(namespaceUriIndex, namespacePrefixIndex);
+        } else {
+            popNamespace(namespaceUriIndex);
+        }
+
+        if (mIndexedListener != null) {
+            if (isStartBlock) {
+                mIndexedListener.startPrefixMapping(namespacePrefixIndex, namespaceUriIndex);
+            } else {
+                mIndexedListener.endPrefixMapping(namespacePrefixIndex, namespaceUriIndex);
+            }
+        } else {
+            final String namespacePrefix = getString(namespacePrefixIndex);
+            final String namespaceUri = getString(namespaceUriIndex);
+            if (isStartBlock) {
+                mListener.startPrefixMapping(namespacePrefix, namespaceUri);
+            } else {
+                mListener.endPrefixMapping(namespacePrefix, namespaceUri);
+            }
+        }
+
+        moveBufferPositionByWords(6);
+    }
+
+
+    /**
+     * Maps a namespace uri to a prefix, remembering the shadowed mapping (if any)
+     *
+     * @param uriIndex    the index of the namespace uri
+     * @param prefixIndex the index of the namespace prefix
+     */
+    private void pushNamespace(final int uriIndex, final int prefixIndex) {
+        if ((uriIndex < 0) || (uriIndex >= mStringsCount)) {
+            return;
+        }
+
+        if (mNamespaceStackSize + 2 > mNamespaceStack.length) {
+            mNamespaceStack = Arrays.copyOf(mNamespaceStack, mNamespaceStack.length * 2);
+        }
+        mNamespaceStack[mNamespaceStackSize++] = uriIndex;
+        mNamespaceStack[mNamespaceStackSize++] = mNamespacePrefixes[uriIndex];
+        mNamespacePrefixes[uriIndex] = prefixIndex;
+    }
 
-        final String namespacePrefix = getString(namespacePrefixIndex);
-        final String namespaceUri = getString(namespaceUriIndex);
+    /**
+     * Ends the mapping of a namespace uri, restoring the shadowed mapping (if any)
+     *
+     * @param uriIndex the index of the namespace uri
+     */
+    private void popNamespace(final int uriIndex) {
+        if ((uriIndex < 0) || (uriIndex >= mStringsCount)) {
+            return;
+        }
 
-        if (isStartBlock) {
-            mListener.startPrefixMapping(namespacePrefix, namespaceUri);
-            mNamespaces.put(namespaceUri, namespacePrefix);
+        if ((mNamespaceStackSize > 0) && (mNamespaceStack[mNamespaceStackSize - 2] == uriIndex)) {
+            mNamespacePrefixes[uriIndex] = mNamespaceStack[mNamespaceStackSize - 1];
+            mNamespaceStackSize -= 2;
         } else {
-            mListener.endPrefixMapping(namespacePrefix, namespaceUri);
-            mNamespaces.remove(namespaceUri);
+            mNamespacePrefixes[uriIndex] = UNMAPPED_NAMESPACE;
         }
-
-        moveBufferPositionByWords(6);
     }
 
+    /**
+     * @param uriIndex the index of a namespace uri
+     * @return the index of the prefix currently mapped to the given uri, or UNMAPPED_NAMESPACE
+     */
+    int getNamespacePrefixIndex(final int uriIndex) {
+        if ((uriIndex < 0) || (uriIndex >= mStringsCount)) {
+            return UNMAPPED_NAMESPACE;
+        }
+        return mNamespacePrefixes[uriIndex];
+    }
 
     /**
      * A start tag will start with the following words :
@@ -468,7 +1324,8 @@ public class AXMLParser {
      */
     private void parseStartTag() throws IOException {
 
-//        int blockSize = readWord(mBufferStartPosition, 1);
+        int blockSize = requireBlock();
+
 //        int lineNumber = readWord(mBufferStartPosition, 2);
         int unknown3 = readWord(mBufferStartPosition, 3);
         int namespaceUriIndex = readWord(mBufferStartPosition, 4);
@@ -477,34 +1334,67 @@ public class AXMLParser {
         int attributesCount = readWord(mBufferStartPosition, 7);
         int unknown8 = readWord(mBufferStartPosition, 8);
 
-        logInfo(String.format("Unknown values in start tag block : 0x%x, 0x%x, 0x%x", unknown3, unknown6, unknown8));
+        // the attributes must fit in the block
+        if ((attributesCount < 0)
+                || (attributesCount > ((blockSize - (9 * WORD_SIZE)) / (AttributeCursor.ATTRIBUTE_WORDS * WORD_SIZE)))) {
+            throw new IOException("Invalid attributes count " + attributesCount + " in start tag at position 0x"
+                    + Integer.toHexString(mReadBytes));
+        }
 
+        if (mVerbosity == LOG_EVERYTHING) {
+            logInfo(String.format("Unknown values in start tag block : 0x%x, 0x%x, 0x%x", unknown3, unknown6, unknown8));
+        }
 
-        String localName = getString(tagNameIndex);
-        String uri, prefix;
-        if (namespaceUriIndex == DEFAULT_NAMESPACE) {
-            uri = null;
-            prefix = null;
-        } else {
-            uri = getString(namespaceUriIndex);
-            if (mNamespaces.containsKey(uri)) {
-                prefix = mNamespaces.get(uri);
-            } else {
-                uri = null;
-                prefix = null;
-            }
+
+        if ((mElementFilter != null) && !filterStartTag(getString(tagNameIndex))) {
+            // jump over the attributes without decoding them
+            moveBufferPositionByBytes(readWord(mBufferStartPosition, 1));
+            return;
+        }
+
+        // an element in an undeclared namespace is reported without namespace
+        int prefixIndex = getNamespacePrefixIndex(namespaceUriIndex);
+        if (prefixIndex == UNMAPPED_NAMESPACE) {
+            namespaceUriIndex = DEFAULT_NAMESPACE;
+            prefixIndex = DEFAULT_NAMESPACE;
         }
 
         // offset to start of attributes
         moveBufferPositionByWords(9);
 
+        if ((mCursorListener != null) || (mIndexedListener != null)) {
+            // copy the raw attributes words in the reusable cursor
+            int[] words = mAttributeCursor.reset(attributesCount);
+            int wordsCount = attributesCount * AttributeCursor.ATTRIBUTE_WORDS;
+            for (int w = 0; w < wordsCount; w++) {
+                words[w] = readWord(mBufferStartPosition, w);
+            }
+            moveBufferPositionByWords(wordsCount);
+
+            mInStartElement = true;
+            if (mIndexedListener != null) {
+                mIndexedListener.startElement(tagNameIndex, mAttributeCursor, namespaceUriIndex, prefixIndex);
+            } else {
+                mCursorListener.startElement(getString(tagNameIndex), mAttributeCursor,
+                        getString(namespaceUriIndex), getString(prefixIndex));
+            }
+            mInStartElement = false;
+            return;
+        }
+
+        String localName = getString(tagNameIndex);
+        String uri = getString(namespaceUriIndex);
+        String prefix = getString(prefixIndex);
+
         // read attributes
         final Attribute[] attrs = new Attribute[attributesCount];
         for (int a = 0; a < attributesCount; a++) {
             attrs[a] = parseAttribute();
         }
 
+        mInStartElement = true;
         mListener.startElement(localName, attrs, uri, prefix);
+        mInStartElement = false;
     }
 
     /**
@@ -534,7 +1424,7 @@ public class AXMLParser {
             prefix = null;
         } else {
             uri = getString(namespaceUriIndex);
-            prefix = mNamespaces.get(uri);
+            prefix = getString(getNamespacePrefixIndex(namespaceUriIndex));
         }
 
         // Read value
@@ -571,10 +1461,23 @@ public class AXMLParser {
         int unknown5 = readWord(mBufferStartPosition, 5);
         int unknown6 = readWord(mBufferStartPosition, 6);
 
-        logInfo(String.format("Unknown values in text block : 0x%x, 0x%x, 0x%x", unknown3, unknown5, unknown6));
+        if (mVerbosity == LOG_EVERYTHING) {
+            logInfo(String.format("Unknown values in text block : 0x%x, 0x%x, 0x%x", unknown3, unknown5, unknown6));
+        }
+
+        if (!isTextReported()) {
+            moveBufferPositionByWords(7);
+            return;
+        }
 
-        String data = getString(textIndex);
-        mListener.text(data);
+        if (mIndexedListener != null) {
+            mIndexedListener.text(textIndex);
+        } else if (mRawTextListener != null) {
+            mRawTextListener.text(this, textIndex);
+        } else {
+            String data = getString(textIndex);
+            mListener.text(data);
+        }
 
         moveBufferPositionByWords(7);
     }
@@ -598,152 +1501,271 @@ public class AXMLParser {
         int namespaceUriIndex = readWord(mBufferStartPosition, 4);
         int tagNameIndex = readWord(mBufferStartPosition, 5);
 
-        logInfo(String.format("Unknown value in end tag block : 0x%x", unknown3));
+        if (mVerbosity == LOG_EVERYTHING) {
+            logInfo(String.format("Unknown value in end tag block : 0x%x", unknown3));
+        }
 
+        if ((mElementFilter != null) && !filterEndTag()) {
+            moveBufferPositionByWords(6);
+            return;
+        }
 
-        String localName = getString(tagNameIndex);
-        String uri, prefix;
-        if (namespaceUriIndex == DEFAULT_NAMESPACE) {
-            uri = null;
-            prefix = null;
-        } else {
-            uri = getString(namespaceUriIndex);
-            if (mNamespaces.containsKey(uri)) {
-                prefix = mNamespaces.get(uri);
-            } else {
-                uri = null;
-                prefix = null;
-            }
+        // an element in an undeclared namespace is reported without namespace
+        int prefixIndex = getNamespacePrefixIndex(namespaceUriIndex);
+        if (prefixIndex == UNMAPPED_NAMESPACE) {
+            namespaceUriIndex = DEFAULT_NAMESPACE;
+            prefixIndex = DEFAULT_NAMESPACE;
         }
 
-        mListener.endElement(localName, uri, prefix);
+        if (mIndexedListener != null) {
+            mIndexedListener.endElement(tagNameIndex, namespaceUriIndex, prefixIndex);
+        } else {
+            mListener.endElement(getString(tagNameIndex), getString(namespaceUriIndex), getString(prefixIndex));
+        }
 
         moveBufferPositionByWords(6);
     }
 
     /**
-     * @param type the type
-     * @param data the data word
-     * @return the typed value as a String (in most cases, identitcal to the way it appeared in the
-     * original xml)
+     * Pushes an element in the filtered path, and checks whether it is reported. If nothing can
+     * be reported in its subtree, the whole subtree will be skipped.
+     *
+     * @param localName the element local name
+     * @return true if the element is reported
      */
-    private String getTypedAttributeValue(final int type, final int data) {
-        String value;
+    private boolean filterStartTag(final String localName) {
+        if (mElementDepth == mElementPath.length) {
+            mElementPath = Arrays.copyOf(mElementPath, mElementDepth * 2);
+            mElementReported = Arrays.copyOf(mElementReported, mElementDepth * 2);
+        }
 
-        switch (type) {
-            case TYPE_ID_REF:
-                value = "@" + getIdReference(data);
-                break;
-            case TYPE_ATTR_REF:
-                value = "?" + getIdReference(data);
-                break;
-            // TODO find a way to unit test this
-            case TYPE_STRING:
-                value = getString(data);
-                break;
-            case TYPE_FLOAT:
-                // keep the same bits, read them as float
-                value = Float.toString(Float.intBitsToFloat(data));
-                break;
-            case TYPE_DIMEN:
-                int dimenUnit = data & 0xFF;
-                int dimenValue = data >> 8;
-                value = String.format("%d%s", dimenValue, DIMENSION_UNIT[dimenUnit]);
-                break;
-            case TYPE_PERCENT:
-                // multiple of 100%, [100% .. 838860000%]
-                if ((data & 0xFF) == 0) {
-                    int multiple = (data >> 8);
-                    value = String.format("%d00%%", multiple);
-                } else
-                    // [100.1%...25599.99%]
-                    if ((data & 0xFF) == 0x20) {
-                        double fracValue = (((double) (data >> 8)) / ((double) 0x7FFF));
-                        value = new DecimalFormat("#%").format(fracValue);
-                    } else
-                    // between -99% & 99%
-                    {
-                        double fracValue = (((double) data) / ((double) 0x7FFFFFFF));
-                        value = new DecimalFormat("#.##%").format(fracValue);
-                    }
-                break;
-            case TYPE_INT:
-            case TYPE_FLAGS:
-                value = Integer.toString(data);
-                break;
-            case TYPE_BOOL:
-                value = (data == 0) ? "false" : "true";
-                break;
-            case TYPE_COLOR_AARRGGBB:
-                value = String.format("#%08X", data);
-                break;
-            case TYPE_COLOR_RRGGBB:
-                value = String.format("#%06X", (data & 0x00FFFFFF));
+        mElementPath[mElementDepth] = localName;
+        int depth = mElementDepth + 1;
+        boolean reported = mElementFilter.matches(mElementPath, depth);
+        if (!reported && !mElementFilter.canMatchBelow(mElementPath, depth)) {
+            // the end tag will be skipped along with the subtree
+            mSkippedDepth = 1;
+            return false;
+        }
+
+        mElementReported[mElementDepth] = reported;
+        mElementDepth = depth;
+        return reported;
+    }
+
+    /**
+     * Pops an element from the filtered path
+     *
+     * @return true if the element was reported
+     */
+    private boolean filterEndTag() {
+        if (mElementDepth == 0) {
+            return false;
+        }
+
+        mElementDepth--;
+        mElementPath[mElementDepth] = null;
+        return mElementReported[mElementDepth];
+    }
+
+    /**
+     * @return true if a text in the current element is reported
+     */
+    private boolean isTextReported() {
+        return (mElementFilter == null)
+                || ((mElementDepth > 0) && mElementReported[mElementDepth - 1]);
+    }
+
+    /**
+     * Jumps over a block inside a subtree which is filtered out (or skipped by the listener), only
+     * keeping track of the depth
+     *
+     * @param id        the block id
+     * @param blockSize the block size
+     * @return true if the block was skipped, false if it must be parsed
+     */
+    private boolean skipBlock(final int id, final int blockSize) throws IOException {
+        switch (id) {
+            case WORD_START_TAG:
+                mSkippedDepth++;
                 break;
-            case TYPE_COLOR_ARGB:
-                value = String.format(
-                        "#%X%X%X%X",
-                        (data >> 24) & 0xF,
-                        (data >> 16) & 0xF,
-                        (data >> 8) & 0xF,
-                        data & 0xF);
+            case WORD_END_TAG:
+                if ((mSkippedDepth == 1) && mSkippedEndReported) {
+                    // the end of a subtree skipped by the listener is still reported
+                    mSkippedDepth = 0;
+                    mSkippedEndReported = false;
+                    return false;
+                }
+                mSkippedDepth--;
                 break;
-            case TYPE_COLOR_RGB:
-                value = String.format(
-                        "#%X%X%X",
-                        (data >> 16) & 0xF,
-                        (data >> 8) & 0xF,
-                        data & 0xF);
+            case WORD_START_NAMESPACE:
+            case WORD_END_NAMESPACE:
+            case WORD_TEXT:
+                // the namespaces declared in the subtree are also closed in the subtree
                 break;
             default:
+                return false;
+        }
+
+        skipBytes(blockSize);
+        return true;
+    }
+
+    /**
+     * @param type the type
+     * @param data the data word
+     * @return the typed value as a String (in most cases, identitcal to the way it appeared in the
+     * original xml)
+     */
+    String getTypedAttributeValue(final int type, final int data) {
+        if (type == TYPE_STRING) {
+            // TODO find a way to unit test this
+            return getString(data);
+        }
+
+        String value = mValueFormatter.format(type, data);
+        if (value == null) {
+            if (mVerbosity != LOG_NONE) {
                 logError(String.format("Attribute type unknown : 0x%x (data = 0x%X) @0x%x",
                         type, data, mBufferStartPosition));
-                value = String.format("%08X/0x%08X", type, data);
-                break;
+            }
+            value = mValueFormatter.formatRaw(type, data);
         }
 
         return value;
     }
 
     /**
-     * Return the value (without @ or ?) of a resource id reference. If the resource is an Android
-     * resource, it will return android:type/value. Otherwise, it will always be id/value
-     *
-     * @param value the int value of the resource id
-     * @return the value (eg: @android:drawable/0x01080042, @id/0x7f020193, ...)
+     * @return the number of strings in the string pool
+     */
+    int getStringsCount() {
+        return mStringsCount;
+    }
+
+    /**
+     * Decodes the whole string pool upfront, split in ranges : the ranges are decoded on the
+     * strings executor, each one with its own decoder, except the last one which is decoded on the
+     * calling thread.
      */
-    private String getIdReference(final int value) {
-        String prefix, type;
+    private void decodeStringsInParallel() throws IOException {
+        int rangesCount = Math.min(2 * Runtime.getRuntime().availableProcessors(),
+                Math.max(1, mStringsCount / MIN_STRINGS_RANGE));
+        if (rangesCount < 2) {
+            for (int i = 0; i < mStringsCount; ++i) {
+                getString(i);
+            }
+            return;
+        }
+
+        if (mRangeDecoders.length < rangesCount - 1) {
+            mRangeDecoders = Arrays.copyOf(mRangeDecoders, rangesCount - 1);
+        }
+
+        Future<?>[] futures = new Future<?>[rangesCount - 1];
+        int rangeSize = (mStringsCount + rangesCount - 1) / rangesCount;
+        boolean decoded = false;
+        try {
+            for (int r = 0; r < futures.length; ++r) {
+                if (mRangeDecoders[r] == null) {
+                    mRangeDecoders[r] = new StringPoolDecoder();
+                }
+                futures[r] = mStringsExecutor.submit(new StringsRangeTask(mRangeDecoders[r],
+                        r * rangeSize, (r + 1) * rangeSize));
+            }
 
-        int typeIndex = (value & 0x00FF0000) >> 16;
+            // the calling thread takes its share instead of waiting idle
+            for (int i = futures.length * rangeSize; i < mStringsCount; ++i) {
+                getString(i);
+            }
 
-        // get prefix
-        if ((value >= 0x01010000) && (value < 0x01100000)) {
-            prefix = "android:";
-            if ((typeIndex > 0) && (typeIndex < ANDROID_REF_TYPES.length)) {
-                type = ANDROID_REF_TYPES[typeIndex];
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            decoded = true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while decoding the string pool");
+        } catch (ExecutionException e) {
+            throw new IOException("Unexpected error while decoding the string pool", e.getCause());
+        } finally {
+            if (decoded) {
+                for (int r = 0; r < futures.length; ++r) {
+                    mRangeDecoders[r].setData(null, ENCODING_UTF16_LE);
+                }
             } else {
-                type = "id";
+                // the cancelled tasks may still be running : don't reuse their decoders
+                for (Future<?> future : futures) {
+                    if (future != null) {
+                        future.cancel(true);
+                    }
+                }
+                mRangeDecoders = new StringPoolDecoder[0];
             }
-        } else {
-            prefix = "";
-            type = "id";
         }
 
+        if (mTracer != null) {
+            for (int i = 0; i < futures.length * rangeSize; ++i) {
+                mTracer.onStringDecoded(i);
+            }
+        }
+    }
+
+    /**
+     * Decodes a range of the string pool into the strings table, with its own decoder
+     */
+    private final class StringsRangeTask implements Callable<Void> {
+
+        private final StringPoolDecoder mDecoder;
+        private final int mStart;
+        private final int mEnd;
+
+        StringsRangeTask(final StringPoolDecoder decoder, final int start, final int end) {
+            mDecoder = decoder;
+            mStart = start;
+            mEnd = end;
+        }
+
+        @Override
+        public Void call() {
+            // the pool buffer is shared : only use absolute reads on a private view
+            mDecoder.setData(mStringsData.duplicate().order(ByteOrder.LITTLE_ENDIAN), mStringsEncoding);
+            StringInterner interner = mStringInterner;
+            for (int i = mStart; i < mEnd; ++i) {
+                String result = mDecoder.decode(mStringsOffsets[i]);
+                mStringsTable[i] = (interner == null) ? result : interner.intern(result);
+            }
+            return null;
+        }
+    }
 
-        return String.format("%s%s/0x%08X", prefix, type, value);
+    /**
+     * @param stringIndex the index of an attribute name in the string pool
+     * @return the resource id mapped to this name in the resource map, or 0 if there is none
+     */
+    int getResourceId(final int stringIndex) {
+        return ((stringIndex >= 0) && (stringIndex < mResourcesCount)) ? mResourcesTable[stringIndex] : 0;
     }
 
     /**
-     * Get a string from the string table
+     * Get a string from the string table, decoding it if it wasn't read yet
      *
      * @param stringIndex the string index
      * @return the string at the given index
      */
-    private String getString(final int stringIndex) {
+    String getString(final int stringIndex) {
         String result;
         if ((stringIndex >= 0) && (stringIndex < mStringsCount)) {
             result = mStringsTable[stringIndex];
+            if (result == null) {
+                result = readString(mStringsOffsets[stringIndex]);
+                if (mStringInterner != null) {
+                    result = mStringInterner.intern(result);
+                }
+                mStringsTable[stringIndex] = result;
+                if (mTracer != null) {
+                    mTracer.onStringDecoded(stringIndex);
+                }
+            }
         } else {
             result = null;
         }
@@ -752,49 +1774,48 @@ public class AXMLParser {
 
 
     /**
-     * @param offset offset of the beginning of the string inside the StringTable (and not the whole
-     *               data array)
-     * @return the String
+     * @return true if the string pool is UTF-8 encoded and its raw bytes are available through
+     * {@link #getRawStrings()}
      */
-    private String readString(final int offset,
-                              final int encoding,
-                              final String charsetName)
-            throws UnsupportedEncodingException {
+    boolean hasRawUtf8Strings() {
+        return (mStringsEncoding == ENCODING_UTF8) && (mStringsData != null) && mStringsData.hasArray();
+    }
 
-        int bytesCount, charOffset, charsCount;
-        byte data[];
-        String result;
+    /**
+     * @return the array holding the raw string pool (only valid if hasRawUtf8Strings())
+     */
+    byte[] getRawStrings() {
+        return mStringsData.array();
+    }
 
-        // Each string is prefix by 2 bytes indicating the length of the string
-        charOffset = offset + 2;
+    /**
+     * @param stringIndex the string index
+     * @return the offset of the string UTF-8 bytes in getRawStrings()
+     */
+    int getRawStringOffset(final int stringIndex) {
+        return mStringsData.arrayOffset() + mStringsDecoder.getUtf8BytesOffset(mStringsOffsets[stringIndex]);
+    }
 
-        switch (encoding) {
-            case ENCODING_UTF8:
-                charsCount = mBuffer[offset];
-                bytesCount = mBuffer[offset + 1];
-                data = new byte[bytesCount];
-                break;
-            case ENCODING_UTF16_LE:
-                charsCount = ((mBuffer[offset + 1] << 8) & 0xFF00) | (mBuffer[offset] & 0xFF);
-                bytesCount = charsCount * 2;
-                data = new byte[bytesCount];
-                break;
-            default:
-                throw new UnsupportedEncodingException();
-        }
+    /**
+     * @param stringIndex the string index
+     * @return the number of UTF-8 bytes of the string
+     */
+    int getRawStringLength(final int stringIndex) {
+        return mStringsDecoder.getUtf8BytesCount(mStringsOffsets[stringIndex]);
+    }
 
-        // copy the string bytes
-        System.arraycopy(mBuffer, charOffset, data, 0, bytesCount);
+    /**
+     * @param offset offset of the beginning of the string inside the string data
+     * @return the String
+     */
+    private String readString(final int offset) {
+        String result = mStringsDecoder.decode(offset);
 
-        // Convert to string
-        try {
-            result = new String(data, charsetName);
+        if (mVerbosity != LOG_NONE) {
+            int charsCount = mStringsDecoder.getCharsCount(offset);
             if (result.length() != charsCount) {
                 logError("Decoding seems off, expecting " + charsCount + " characters, final String has " + result.length());
             }
-        } catch (UnsupportedEncodingException e) {
-            e.printStackTrace();
-            result = "";
         }
         return result;
     }
@@ -809,11 +1830,48 @@ public class AXMLParser {
         mReadBytes += byteCount;
     }
 
+    /**
+     * Moves the position by the given number of bytes, which may not be in the buffer yet. The
+     * bytes past the buffer are skipped in the input stream, without being read.
+     *
+     * @param byteCount the number of bytes to skip
+     */
+    private void skipBytes(final int byteCount) throws IOException {
+        int remainingLength = mBufferEndPosition - mBufferStartPosition;
+        if (byteCount <= remainingLength) {
+            moveBufferPositionByBytes(byteCount);
+            return;
+        }
+
+        if (mEndOfStreamReached || (mInputStream == null)) {
+            throw new IOException("Unexpected End Of Stream");
+        }
+
+        long toSkip = byteCount - remainingLength;
+        while (toSkip > 0) {
+            long skipped = mInputStream.skip(toSkip);
+            if (skipped <= 0) {
+                // some streams can't skip, or only tell the end of stream with read()
+                if (mInputStream.read() == -1) {
+                    mEndOfStreamReached = true;
+                    throw new IOException("Unexpected End Of Stream");
+                }
+                skipped = 1;
+            }
+            toSkip -= skipped;
+        }
+
+        // the buffer is empty, the next requireBytes() call will fill it
+        mBufferStartPosition = 0;
+        mBufferEndPosition = 0;
+        mReadBytes += byteCount;
+    }
+
     /**
      * Reads more data into the buffer
      */
     private void updateBuffer() throws IOException {
-        if (mEndOfStreamReached) {
+        if (mEndOfStreamReached || mFeeding) {
             return;
         }
 
@@ -826,7 +1884,7 @@ public class AXMLParser {
         System.arraycopy(mBuffer, mBufferStartPosition, mBuffer, 0, remainingLength);
 
         // then read from input stream into our buffer
-        int sizeToRead = BUFFER_SIZE - remainingLength;
+        int sizeToRead = mBuffer.length - remainingLength;
         int sizeRead = mInputStream.read(mBuffer, remainingLength, sizeToRead);
 
         if (sizeRead == -1) {
@@ -838,6 +1896,64 @@ public class AXMLParser {
         mBufferStartPosition = 0;
     }
 
+    /**
+     * Makes sure the given number of bytes (starting at the current position) are available in
+     * the buffer, growing it if the current block is larger than the buffer.
+     *
+     * @param byteCount the number of bytes needed
+     */
+    private void requireBytes(final int byteCount) throws IOException {
+        if ((mBufferEndPosition - mBufferStartPosition) >= byteCount) {
+            return;
+        }
+
+        if (mEndOfStreamReached) {
+            throw new IOException("Unexpected End Of Stream");
+        }
+
+        if (mFeeding) {
+            // the whole block has been fed, it is shorter than its content
+            throw new IOException("Invalid block size " + readWord(mBufferStartPosition, 1)
+                    + " at position 0x" + Integer.toHexString(mReadBytes));
+        }
+
+        int remainingLength = mBufferEndPosition - mBufferStartPosition;
+        if (byteCount > mBuffer.length) {
+            // grow the buffer to hold the whole block
+            byte[] buffer = new byte[byteCount];
+            System.arraycopy(mBuffer, mBufferStartPosition, buffer, 0, remainingLength);
+            mBuffer = buffer;
+            mData = wrapBuffer(mBuffer);
+        } else {
+            System.arraycopy(mBuffer, mBufferStartPosition, mBuffer, 0, remainingLength);
+        }
+        mBufferStartPosition = 0;
+        mBufferEndPosition = remainingLength;
+
+        // read until we have the whole block
+        int sizeRead;
+        while (mBufferEndPosition < byteCount) {
+            sizeRead = mInputStream.read(mBuffer, mBufferEndPosition, mBuffer.length - mBufferEndPosition);
+            if (sizeRead == -1) {
+                mEndOfStreamReached = true;
+                throw new IOException("Unexpected End Of Stream");
+            }
+            mBufferEndPosition += sizeRead;
+        }
+    }
+
+    /**
+     * Makes sure the whole current block is available in the buffer (its size is checked against
+     * the minimum size of its handler before parsing it)
+     *
+     * @return the block size
+     */
+    private int requireBlock() throws IOException {
+        int blockSize = readWord(mBufferStartPosition, 1);
+        requireBytes(blockSize);
+        return blockSize;
+    }
+
     /**
      * Read a 4 byte word at the given offset and index. Words are read as Little Endian 32 bit word
      *
@@ -846,13 +1962,15 @@ public class AXMLParser {
      * @return the word as an int
      */
     private int readWord(final int bufferStartOffset, final int wordIndex) {
+        return mData.getInt(bufferStartOffset + (wordIndex * WORD_SIZE));
+    }
 
-        int offset = bufferStartOffset + (wordIndex * WORD_SIZE);
-
-        return ((mBuffer[offset + 3] << 24) & 0xff000000)
-                | ((mBuffer[offset + 2] << 16) & 0x00ff0000)
-                | ((mBuffer[offset + 1] << 8) & 0x0000ff00)
-                | ((mBuffer[offset]) & 0x000000ff);
+    /**
+     * @param buffer the byte array to wrap
+     * @return a Little Endian ByteBuffer view of the given array
+     */
+    private static ByteBuffer wrapBuffer(final byte[] buffer) {
+        return ByteBuffer.wrap(buffer).order(ByteOrder.LITTLE_ENDIAN);
     }
 
     /**
@@ -863,6 +1981,77 @@ public class AXMLParser {
         mVerbosity = verbosity;
     }
 
+    /**
+     * @param tracer the tracer to notify of the parsing progress, or null (default) to disable
+     *               the instrumentation
+     */
+    public void setTracer(ParserTracer tracer) {
+        mTracer = tracer;
+    }
+
+    /**
+     * @param referenceCache the cache of rendered resource references to use. By default, each
+     *                       parser uses its own cache, shared across the documents it parses ; a
+     *                       cache can also be shared by several parsers, even on several threads.
+     */
+    public void setReferenceCache(final ReferenceCache referenceCache) {
+        mValueFormatter.setReferenceCache(referenceCache);
+    }
+
+    /**
+     * @param resourceTable the table used to render the resource references with their names
+     *                      (eg : @string/app_name instead of @id/0x7F040001), or null to render
+     *                      the raw ids (default)
+     */
+    public void setResourceTable(final ResourceTable resourceTable) {
+        mValueFormatter.setResourceTable(resourceTable);
+    }
+
+    /**
+     * @param stringInterner the interner the decoded strings go through, so that the documents
+     *                       decoded by several parsers share the same String instances, or null
+     *                       (default) to keep the strings of each document apart
+     */
+    public void setStringInterner(final StringInterner stringInterner) {
+        mStringInterner = stringInterner;
+    }
+
+    /**
+     * @param elementFilter the filter selecting the elements to report, or null to report all the
+     *                      elements (default). The elements which are filtered out are skipped
+     *                      without decoding their attributes.
+     */
+    public void setElementFilter(final ElementFilter elementFilter) {
+        mElementFilter = elementFilter;
+    }
+
+    /**
+     * Decodes the large string pools (eg : resources.arsc sized ones) upfront, split in ranges
+     * decoded concurrently on the given executor. The smaller pools are still decoded as set by
+     * {@link #setStringsDecoding(int)}, to avoid paying for the coordination.
+     *
+     * @param executor  the executor decoding the string pool ranges (it is not shut down by the
+     *                  parser), or null to always decode the strings on the parsing thread
+     *                  (default)
+     * @param threshold the minimum number of strings in a pool to decode it in parallel
+     */
+    public void setParallelStringsDecoding(final ExecutorService executor, final int threshold) {
+        if (threshold < 1) {
+            throw new IllegalArgumentException("Threshold must be at least 1");
+        }
+        mStringsExecutor = executor;
+        mParallelStringsThreshold = threshold;
+    }
+
+    /**
+     * @param stringsDecoding how the string pool should be decoded : STRINGS_LAZY (each string is
+     *                        decoded the first time it is needed) or STRINGS_EAGER (the whole
+     *                        pool is decoded upfront). Default is STRINGS_LAZY.
+     */
+    public void setStringsDecoding(@StringsDecoding int stringsDecoding) {
+        mStringsDecoding = stringsDecoding;
+    }
+
     private void logError(String log) {
         if (mVerbosity != LOG_NONE) {
             // TODO when Android Unit Test allows it, use Android Log
@@ -0,0 +1,210 @@
+package fr.xgouchet.axml;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A thread safe pool of AXMLParser instances, for services decoding many documents concurrently.
+ * <p/>
+ * A parser keeps its buffers and string arrays from one document to the next, so reusing parsers
+ * saves most of the allocations needed to decode small documents. The pooled parsers share a
+ * single ReferenceCache (and an optional ResourceTable and StringInterner), and are reset to the
+ * default configuration each time they are acquired.
+ * <p/>
+ * At most maxIdle parsers are kept in the pool : the parsers released while the pool is full are
+ * discarded. A parser which grew its buffers to decode a large document is trimmed before being
+ * pooled.
+ *
+ * @author Xavier Gouchet
+ */
+public final class AXMLParserPool {
+
+    public static final int DEFAULT_MAX_IDLE = 16;
+
+    // the buffers which grew above this size are dropped when a parser is released
+    private static final int MAX_RETAINED_BYTES = 256 * 1024;
+
+    private final BlockingQueue<AXMLParser> mIdleParsers;
+    private final ReferenceCache mReferenceCache = new ReferenceCache();
+    private volatile ResourceTable mResourceTable;
+    private volatile StringInterner mStringInterner;
+
+    private final AtomicInteger mCreatedCount = new AtomicInteger();
+    private final AtomicInteger mAcquiredCount = new AtomicInteger();
+    private final AtomicInteger mReusedCount = new AtomicInteger();
+    private final AtomicInteger mDiscardedCount = new AtomicInteger();
+
+    /**
+     * Creates a pool keeping up to DEFAULT_MAX_IDLE idle parsers
+     */
+    public AXMLParserPool() {
+        this(DEFAULT_MAX_IDLE);
+    }
+
+    /**
+     * @param maxIdle the maximum number of idle parsers kept in this pool
+     */
+    public AXMLParserPool(final int maxIdle) {
+        if (maxIdle < 1) {
+            throw new IllegalArgumentException("The pool must keep at least 1 parser");
+        }
+        mIdleParsers = new ArrayBlockingQueue<>(maxIdle);
+    }
+
+    /**
+     * @param resourceTable the table used by the pooled parsers to render the resource references
+     *                      with their names, or null
+     */
+    public void setResourceTable(final ResourceTable resourceTable) {
+        mResourceTable = resourceTable;
+    }
+
+    /**
+     * @param stringInterner the interner shared by the pooled parsers, so that the retained
+     *                       documents don't hold duplicate strings, or null
+     */
+    public void setStringInterner(final StringInterner stringInterner) {
+        mStringInterner = stringInterner;
+    }
+
+    /**
+     * @return the cache of rendered resource references shared by the pooled parsers
+     */
+    public ReferenceCache getReferenceCache() {
+        return mReferenceCache;
+    }
+
+    /**
+     * Takes an idle parser from the pool, or creates a new one. The parser must be given back with
+     * {@link #release(AXMLParser)} once the caller is done with it, and must not be used afterwards.
+     *
+     * @return a parser, for the exclusive use of the caller
+     */
+    public AXMLParser acquire() {
+        mAcquiredCount.incrementAndGet();
+
+        AXMLParser parser = mIdleParsers.poll();
+        if (parser == null) {
+            parser = new AXMLParser();
+            mCreatedCount.incrementAndGet();
+        } else {
+            mReusedCount.incrementAndGet();
+        }
+
+        // reset the configuration changed by the previous user
+        parser.setVerbosity(AXMLParser.LOG_NONE);
+        parser.setStringsDecoding(AXMLParser.STRINGS_LAZY);
+        parser.setTracer(null);
+        parser.setReferenceCache(mReferenceCache);
+        parser.setResourceTable(mResourceTable);
+        parser.setStringInterner(mStringInterner);
+        parser.setElementFilter(null);
+        parser.setParallelStringsDecoding(null, AXMLParser.DEFAULT_PARALLEL_STRINGS_THRESHOLD);
+
+        return parser;
+    }
+
+    /**
+     * Gives a parser back to the pool
+     *
+     * @param parser a parser previously acquired from this pool
+     */
+    public void release(final AXMLParser parser) {
+        if (parser == null) {
+            throw new NullPointerException();
+        }
+
+        // drop any unfinished input, and the oversized buffers
+        parser.releaseInput();
+        parser.trimBuffers(MAX_RETAINED_BYTES);
+
+        if (!mIdleParsers.offer(parser)) {
+            mDiscardedCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * Parses the given input stream with a pooled parser
+     *
+     * @param inputStream the input stream to parse (it will automatically be closed at the end of
+     *                    the parsing)
+     * @param listener    the listener to trigger on each parsing event
+     * @see AXMLParser#parse(InputStream, AXMLParser.Listener)
+     */
+    public void parse(final InputStream inputStream,
+                      final AXMLParser.Listener listener)
+            throws IOException {
+        AXMLParser parser = acquire();
+        try {
+            parser.parse(inputStream, listener);
+        } finally {
+            release(parser);
+        }
+    }
+
+    /**
+     * Parses the given buffer with a pooled parser
+     *
+     * @param buffer   the buffer to parse
+     * @param listener the listener to trigger on each parsing event
+     * @see AXMLParser#parseBuffer(ByteBuffer, AXMLParser.Listener)
+     */
+    public void parseBuffer(final ByteBuffer buffer,
+                            final AXMLParser.Listener listener)
+            throws IOException {
+        AXMLParser parser = acquire();
+        try {
+            parser.parseBuffer(buffer, listener);
+        } finally {
+            release(parser);
+        }
+    }
+
+    /**
+     * @return the number of parsers created by this pool
+     */
+    public int getCreatedCount() {
+        return mCreatedCount.get();
+    }
+
+    /**
+     * @return the number of times a parser was acquired
+     */
+    public int getAcquiredCount() {
+        return mAcquiredCount.get();
+    }
+
+    /**
+     * @return the number of times an idle parser was reused
+     */
+    public int getReusedCount() {
+        return mReusedCount.get();
+    }
+
+    /**
+     * @return the number of parsers discarded because the pool was full
+     */
+    public int getDiscardedCount() {
+        return mDiscardedCount.get();
+    }
+
+    /**
+     * @return the number of idle parsers currently in the pool
+     */
+    public int getIdleCount() {
+        return mIdleParsers.size();
+    }
+
+    @Override
+    public String toString() {
+        return "AXMLParserPool{created=" + getCreatedCount()
+                + ", acquired=" + getAcquiredCount()
+                + ", reused=" + getReusedCount()
+                + ", discarded=" + getDiscardedCount()
+                + ", idle=" + getIdleCount() + "}";
+    }
+}
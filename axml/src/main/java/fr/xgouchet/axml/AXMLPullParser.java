@@ -0,0 +1,582 @@
+package fr.xgouchet.axml;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An XmlPullParser implementation reading compressed Android XML documents. It relies on an
+ * AXMLParser, and reads the input block by block, only when the next event is requested.
+ * <p/>
+ * As in any XmlPullParser, the FEATURE_PROCESS_NAMESPACES is disabled by default. In that case,
+ * element and attribute names are reported with their prefix, and namespace declarations are
+ * reported as <code>xmlns:prefix</code> attributes.
+ * <p/>
+ * This class is not thread safe.
+ *
+ * @author Xavier Gouchet
+ */
+public class AXMLPullParser implements XmlPullParser {
+
+    private static final String ATTR_TYPE_CDATA = "CDATA";
+    private static final String XMLNS_PREFIX = "xmlns";
+    private static final Attribute[] NO_ATTRIBUTES = new Attribute[0];
+
+    private final AXMLParser mParser;
+    private final EventListener mEventListener = new EventListener();
+
+    private boolean mProcessNamespaces = false;
+    private boolean mInputSet = false;
+    private String mInputEncoding;
+
+    // current event
+    private int mEventType;
+    private String mName, mNamespaceUri, mPrefix, mText;
+    private Attribute[] mAttributes = NO_ATTRIBUTES;
+    private boolean mEndDocumentPending;
+
+    // element depth and namespaces
+    private int mDepth;
+    private boolean mDecrementDepth;
+    private int[] mNamespaceCounts = new int[8];
+    private final List<String> mNamespacePrefixes = new ArrayList<>();
+    private final List<String> mNamespaceUris = new ArrayList<>();
+    private final List<String> mPendingPrefixes = new ArrayList<>();
+    private final List<String> mPendingUris = new ArrayList<>();
+
+    public AXMLPullParser() {
+        this(new AXMLParser());
+    }
+
+    /**
+     * @param parser the underlying AXMLParser to use
+     */
+    public AXMLPullParser(final AXMLParser parser) {
+        mParser = parser;
+    }
+
+    //////////////////////////////////////////////////////////////////////////////////////
+    // Input
+    //////////////////////////////////////////////////////////////////////////////////////
+
+    @Override
+    public void setInput(final Reader in) throws XmlPullParserException {
+        throw new XmlPullParserException("Compressed Android XML is a binary format, it can't be read from a Reader");
+    }
+
+    @Override
+    public void setInput(final InputStream inputStream, final String inputEncoding)
+            throws XmlPullParserException {
+        if (inputStream == null) {
+            throw new IllegalArgumentException("The input stream can't be null");
+        }
+
+        mParser.setInput(inputStream, mEventListener);
+        resetState(inputEncoding);
+    }
+
+    /**
+     * Sets the input as a buffer, which will be decoded in place
+     *
+     * @param buffer the buffer to read (from its current position to its limit)
+     */
+    public void setInput(final ByteBuffer buffer) {
+        if (buffer == null) {
+            throw new IllegalArgumentException("The buffer can't be null");
+        }
+
+        mParser.setInput(buffer, mEventListener);
+        resetState(null);
+    }
+
+    /**
+     * Releases the current input (closing the input stream if any). This can be used to stop
+     * reading a document before its end.
+     */
+    public void close() {
+        if (mInputSet) {
+            mParser.releaseInput();
+            mInputSet = false;
+        }
+    }
+
+    private void resetState(final String inputEncoding) {
+        mInputSet = true;
+        mInputEncoding = inputEncoding;
+
+        mEventType = START_DOCUMENT;
+        clearEvent();
+        mEndDocumentPending = false;
+
+        mDepth = 0;
+        mDecrementDepth = false;
+        mNamespaceCounts[0] = 0;
+        mNamespacePrefixes.clear();
+        mNamespaceUris.clear();
+        mPendingPrefixes.clear();
+        mPendingUris.clear();
+    }
+
+    private void clearEvent() {
+        mName = null;
+        mNamespaceUri = null;
+        mPrefix = null;
+        mText = null;
+        mAttributes = NO_ATTRIBUTES;
+    }
+
+    @Override
+    public String getInputEncoding() {
+        return mInputEncoding;
+    }
+
+    //////////////////////////////////////////////////////////////////////////////////////
+    // Features and properties
+    //////////////////////////////////////////////////////////////////////////////////////
+
+    @Override
+    public void setFeature(final String name, final boolean state) throws XmlPullParserException {
+        if (FEATURE_PROCESS_NAMESPACES.equals(name)) {
+            if (mInputSet && (mEventType != START_DOCUMENT)) {
+                throw new XmlPullParserException("Features can only be changed before parsing starts");
+            }
+            mProcessNamespaces = state;
+        } else if (state) {
+            throw new XmlPullParserException("Unsupported feature : " + name);
+        }
+    }
+
+    @Override
+    public boolean getFeature(final String name) {
+        return FEATURE_PROCESS_NAMESPACES.equals(name) && mProcessNamespaces;
+    }
+
+    @Override
+    public void setProperty(final String name, final Object value) throws XmlPullParserException {
+        throw new XmlPullParserException("Unsupported property : " + name);
+    }
+
+    @Override
+    public Object getProperty(final String name) {
+        return null;
+    }
+
+    @Override
+    public void defineEntityReplacementText(final String entityName, final String replacementText)
+            throws XmlPullParserException {
+        throw new XmlPullParserException("Entity replacement is not supported in compressed Android XML");
+    }
+
+    //////////////////////////////////////////////////////////////////////////////////////
+    // Namespaces
+    //////////////////////////////////////////////////////////////////////////////////////
+
+    @Override
+    public int getNamespaceCount(final int depth) throws XmlPullParserException {
+        if ((depth < 0) || (depth > mDepth)) {
+            throw new IndexOutOfBoundsException("Invalid depth " + depth);
+        }
+        return mNamespaceCounts[depth];
+    }
+
+    @Override
+    public String getNamespacePrefix(final int pos) throws XmlPullParserException {
+        return mNamespacePrefixes.get(pos);
+    }
+
+    @Override
+    public String getNamespaceUri(final int pos) throws XmlPullParserException {
+        return mNamespaceUris.get(pos);
+    }
+
+    @Override
+    public String getNamespace(final String prefix) {
+        for (int i = mNamespacePrefixes.size() - 1; i >= 0; --i) {
+            if (prefix == null ? mNamespacePrefixes.get(i) == null : prefix.equals(mNamespacePrefixes.get(i))) {
+                return mNamespaceUris.get(i);
+            }
+        }
+        return null;
+    }
+
+    //////////////////////////////////////////////////////////////////////////////////////
+    // Current event
+    //////////////////////////////////////////////////////////////////////////////////////
+
+    @Override
+    public int getDepth() {
+        return mDepth;
+    }
+
+    @Override
+    public String getPositionDescription() {
+        StringBuilder builder = new StringBuilder();
+        builder.append(((mEventType >= 0) && (mEventType < TYPES.length)) ? TYPES[mEventType] : "UNKNOWN");
+        if (mName != null) {
+            builder.append(" ").append(getName());
+        }
+        builder.append(" (depth ").append(mDepth).append(")");
+        return builder.toString();
+    }
+
+    @Override
+    public int getLineNumber() {
+        return -1;
+    }
+
+    @Override
+    public int getColumnNumber() {
+        return -1;
+    }
+
+    @Override
+    public boolean isWhitespace() throws XmlPullParserException {
+        if (mEventType != TEXT) {
+            throw new XmlPullParserException("Whitespace check is only available on TEXT events");
+        }
+
+        for (int i = 0; i < mText.length(); ++i) {
+            if (!Character.isWhitespace(mText.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String getText() {
+        return mText;
+    }
+
+    @Override
+    public char[] getTextCharacters(final int[] holderForStartAndLength) {
+        if (mText == null) {
+            holderForStartAndLength[0] = -1;
+            holderForStartAndLength[1] = -1;
+            return null;
+        }
+
+        holderForStartAndLength[0] = 0;
+        holderForStartAndLength[1] = mText.length();
+        return mText.toCharArray();
+    }
+
+    @Override
+    public String getNamespace() {
+        if (!mProcessNamespaces) {
+            return (mName == null) ? null : "";
+        }
+        return (mNamespaceUri == null) ? ((mName == null) ? null : "") : mNamespaceUri;
+    }
+
+    @Override
+    public String getName() {
+        if ((!mProcessNamespaces) && (mPrefix != null) && (mName != null)) {
+            return mPrefix + ":" + mName;
+        }
+        return mName;
+    }
+
+    @Override
+    public String getPrefix() {
+        return mProcessNamespaces ? mPrefix : null;
+    }
+
+    @Override
+    public boolean isEmptyElementTag() throws XmlPullParserException {
+        if (mEventType != START_TAG) {
+            throw new XmlPullParserException("Empty element check is only available on START_TAG events");
+        }
+        // the compressed format doesn't keep this information
+        return false;
+    }
+
+    //////////////////////////////////////////////////////////////////////////////////////
+    // Attributes
+    //////////////////////////////////////////////////////////////////////////////////////
+
+    @Override
+    public int getAttributeCount() {
+        return (mEventType == START_TAG) ? mAttributes.length : -1;
+    }
+
+    @Override
+    public String getAttributeNamespace(final int index) {
+        String uri = getAttribute(index).getNamespaceUri();
+        return (mProcessNamespaces && (uri != null)) ? uri : "";
+    }
+
+    @Override
+    public String getAttributeName(final int index) {
+        Attribute attribute = getAttribute(index);
+        return mProcessNamespaces ? attribute.getName() : attribute.getQualifiedName();
+    }
+
+    @Override
+    public String getAttributePrefix(final int index) {
+        return mProcessNamespaces ? getAttribute(index).getPrefix() : null;
+    }
+
+    @Override
+    public String getAttributeType(final int index) {
+        getAttribute(index);
+        return ATTR_TYPE_CDATA;
+    }
+
+    @Override
+    public boolean isAttributeDefault(final int index) {
+        getAttribute(index);
+        return false;
+    }
+
+    @Override
+    public String getAttributeValue(final int index) {
+        return getAttribute(index).getValue();
+    }
+
+    @Override
+    public String getAttributeValue(final String namespace, final String name) {
+        if (mEventType != START_TAG) {
+            throw new IndexOutOfBoundsException("Attributes are only available on START_TAG events");
+        }
+
+        for (Attribute attribute : mAttributes) {
+            if (mProcessNamespaces) {
+                String uri = attribute.getNamespaceUri();
+                boolean sameNamespace = (namespace == null)
+                        || (uri == null ? namespace.length() == 0 : namespace.equals(uri));
+                if (sameNamespace && attribute.getName().equals(name)) {
+                    return attribute.getValue();
+                }
+            } else if (attribute.getQualifiedName().equals(name)) {
+                return attribute.getValue();
+            }
+        }
+        return null;
+    }
+
+    private Attribute getAttribute(final int index) {
+        if (mEventType != START_TAG) {
+            throw new IndexOutOfBoundsException("Attributes are only available on START_TAG events");
+        }
+        return mAttributes[index];
+    }
+
+    //////////////////////////////////////////////////////////////////////////////////////
+    // Navigation
+    //////////////////////////////////////////////////////////////////////////////////////
+
+    @Override
+    public int getEventType() throws XmlPullParserException {
+        return mEventType;
+    }
+
+    @Override
+    public int next() throws XmlPullParserException, IOException {
+        if (!mInputSet) {
+            throw new XmlPullParserException("No input specified");
+        }
+
+        if (mEventType == END_DOCUMENT) {
+            return mEventType;
+        }
+
+        // leave the element we just closed
+        if (mDecrementDepth) {
+            mDecrementDepth = false;
+            mDepth--;
+            trimNamespaces(mNamespaceCounts[mDepth]);
+        }
+
+        clearEvent();
+        mEventType = -1;
+
+        if (mEndDocumentPending) {
+            mEventType = END_DOCUMENT;
+        }
+
+        try {
+            while ((mEventType == -1) && !mParser.isParsingComplete()) {
+                mParser.processNextBlock();
+            }
+        } catch (RuntimeException e) {
+            // corrupted or truncated documents end up reading out of the buffer bounds
+            throw new XmlPullParserException("Invalid compressed Android XML : " + e.getMessage(), this, e);
+        }
+
+        if (mEventType == -1) {
+            mEventType = END_DOCUMENT;
+        }
+
+        if (mEventType == END_DOCUMENT) {
+            // the document is over, release the input as soon as possible
+            mParser.releaseInput();
+        }
+
+        return mEventType;
+    }
+
+    @Override
+    public int nextToken() throws XmlPullParserException, IOException {
+        // compressed documents have no comments, processing instructions or ignorable whitespaces
+        return next();
+    }
+
+    @Override
+    public void require(final int type, final String namespace, final String name)
+            throws XmlPullParserException, IOException {
+        if ((type != mEventType)
+                || ((namespace != null) && !namespace.equals(getNamespace()))
+                || ((name != null) && !name.equals(getName()))) {
+            throw new XmlPullParserException("Expected " + TYPES[type] + " but got " + getPositionDescription());
+        }
+    }
+
+    @Override
+    public String nextText() throws XmlPullParserException, IOException {
+        if (mEventType != START_TAG) {
+            throw new XmlPullParserException("Parser must be on START_TAG to read next text");
+        }
+
+        int eventType = next();
+        if (eventType == TEXT) {
+            String result = getText();
+            eventType = next();
+            if (eventType != END_TAG) {
+                throw new XmlPullParserException("Event TEXT must be immediately followed by END_TAG");
+            }
+            return result;
+        } else if (eventType == END_TAG) {
+            return "";
+        } else {
+            throw new XmlPullParserException("Parser must be on START_TAG or TEXT to read text");
+        }
+    }
+
+    @Override
+    public int nextTag() throws XmlPullParserException, IOException {
+        int eventType = next();
+        if ((eventType == TEXT) && isWhitespace()) {
+            eventType = next();
+        }
+
+        if ((eventType != START_TAG) && (eventType != END_TAG)) {
+            throw new XmlPullParserException("Expected start or end tag but got " + getPositionDescription());
+        }
+        return eventType;
+    }
+
+    /**
+     * Skips the current element and all its content. The parser must be on a START_TAG event, and
+     * after this call, it will be on the matching END_TAG event. The blocks in between are jumped
+     * over without being decoded.
+     */
+    public void skipSubTree() throws XmlPullParserException, IOException {
+        require(START_TAG, null, null);
+
+        // the underlying parser is right after the start tag block
+        mParser.skipSubtreeAfterStartTag();
+        if (next() != END_TAG) {
+            throw new XmlPullParserException("Unexpected end of document while skipping a sub tree");
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////////////////////
+    // Internal
+    //////////////////////////////////////////////////////////////////////////////////////
+
+    private void trimNamespaces(final int count) {
+        while (mNamespacePrefixes.size() > count) {
+            mNamespacePrefixes.remove(mNamespacePrefixes.size() - 1);
+            mNamespaceUris.remove(mNamespaceUris.size() - 1);
+        }
+    }
+
+    /**
+     * Receives the AXMLParser events and converts them into the current pull event
+     */
+    private class EventListener implements AXMLParser.Listener {
+
+        @Override
+        public void startDocument() {
+            // the START_DOCUMENT event is already reported before the first read
+        }
+
+        @Override
+        public void endDocument() {
+            if (mEventType == -1) {
+                mEventType = END_DOCUMENT;
+            } else {
+                mEndDocumentPending = true;
+            }
+        }
+
+        @Override
+        public void startPrefixMapping(final String prefix, final String uri) {
+            mPendingPrefixes.add(prefix);
+            mPendingUris.add(uri);
+        }
+
+        @Override
+        public void endPrefixMapping(final String prefix, final String uri) {
+            // namespaces are removed when we leave the element declaring them
+        }
+
+        @Override
+        public void startElement(final String localName,
+                                 final Attribute[] attributes,
+                                 final String uri,
+                                 final String prefix) {
+            mEventType = START_TAG;
+            mName = localName;
+            mNamespaceUri = uri;
+            mPrefix = prefix;
+
+            // enter the new element, with its namespace declarations
+            mDepth++;
+            if (mDepth >= mNamespaceCounts.length) {
+                mNamespaceCounts = Arrays.copyOf(mNamespaceCounts, mDepth * 2);
+            }
+            mNamespacePrefixes.addAll(mPendingPrefixes);
+            mNamespaceUris.addAll(mPendingUris);
+            mNamespaceCounts[mDepth] = mNamespacePrefixes.size();
+
+            if (mProcessNamespaces || mPendingPrefixes.isEmpty()) {
+                mAttributes = attributes;
+            } else {
+                // report the namespace declarations as attributes
+                int declared = mPendingPrefixes.size();
+                mAttributes = new Attribute[declared + attributes.length];
+                for (int i = 0; i < declared; ++i) {
+                    mAttributes[i] = new Attribute(mPendingPrefixes.get(i), mPendingUris.get(i), null, XMLNS_PREFIX);
+                }
+                System.arraycopy(attributes, 0, mAttributes, declared, attributes.length);
+            }
+
+            mPendingPrefixes.clear();
+            mPendingUris.clear();
+        }
+
+        @Override
+        public void endElement(final String localName, final String uri, final String prefix) {
+            mEventType = END_TAG;
+            mName = localName;
+            mNamespaceUri = uri;
+            mPrefix = prefix;
+            mDecrementDepth = true;
+        }
+
+        @Override
+        public void text(final String data) {
+            mEventType = TEXT;
+            mText = data;
+        }
+    }
+}
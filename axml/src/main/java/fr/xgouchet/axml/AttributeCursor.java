@@ -0,0 +1,185 @@
+package fr.xgouchet.axml;
+
+/**
+ * A reusable, read only view on the attributes of an element, as read by an AXMLParser.
+ * <p/>
+ * The cursor gives access to the raw values stored in the compressed document (string pool
+ * indices, value type and data word), and only renders Strings when they are asked for. It is
+ * reused for every element, so it is only valid during the
+ * {@link AXMLParser.CursorListener#startElement(String, AttributeCursor, String, String)} call.
+ *
+ * @author Xavier Gouchet
+ */
+public final class AttributeCursor {
+
+    /**
+     * An attribute is stored as 5 words : namespace uri index, name index, value index,
+     * value type and value data
+     */
+    static final int ATTRIBUTE_WORDS = 5;
+
+    private static final int WORD_NAMESPACE = 0;
+    private static final int WORD_NAME = 1;
+    private static final int WORD_VALUE_STRING = 2;
+    private static final int WORD_VALUE_TYPE = 3;
+    private static final int WORD_VALUE_DATA = 4;
+
+    private final AXMLParser mParser;
+    private int[] mWords = new int[16 * ATTRIBUTE_WORDS];
+    private int mCount;
+
+    AttributeCursor(final AXMLParser parser) {
+        mParser = parser;
+    }
+
+    /**
+     * Prepares this cursor for a new element
+     *
+     * @param count the number of attributes in the element
+     * @return the array to fill with the attributes words
+     */
+    int[] reset(final int count) {
+        int wordsCount = count * ATTRIBUTE_WORDS;
+        if (wordsCount > mWords.length) {
+            mWords = new int[wordsCount];
+        }
+        mCount = count;
+        return mWords;
+    }
+
+    /**
+     * @return the parser reading the current element
+     */
+    AXMLParser getParser() {
+        return mParser;
+    }
+
+    /**
+     * @return the number of attributes in the current element
+     */
+    public int getCount() {
+        return mCount;
+    }
+
+    /**
+     * @param index the attribute index
+     * @return the index of the attribute namespace uri in the string pool, or
+     * {@link AXMLParser#DEFAULT_NAMESPACE}
+     */
+    public int getNamespaceUriIndex(final int index) {
+        return getWord(index, WORD_NAMESPACE);
+    }
+
+    /**
+     * @param index the attribute index
+     * @return the index of the attribute name in the string pool
+     */
+    public int getNameIndex(final int index) {
+        return getWord(index, WORD_NAME);
+    }
+
+    /**
+     * @param index the attribute index
+     * @return the index of the attribute raw value in the string pool, or
+     * {@link AXMLParser#ATTR_TYPED_VALUE} if the value is only typed
+     */
+    public int getValueStringIndex(final int index) {
+        return getWord(index, WORD_VALUE_STRING);
+    }
+
+    /**
+     * @param index the attribute index
+     * @return the value type (one of the AXMLParser.TYPE_XXX constants)
+     */
+    public int getValueType(final int index) {
+        return getWord(index, WORD_VALUE_TYPE);
+    }
+
+    /**
+     * @param index the attribute index
+     * @return the value data word (eg : the int value, the color, the resource id, ...)
+     */
+    public int getValueData(final int index) {
+        return getWord(index, WORD_VALUE_DATA);
+    }
+
+    /**
+     * @param index the attribute index
+     * @return the resource id of the attribute name (eg : android.R.attr.layout_width), as listed
+     * in the resource map of the document, or 0 if the attribute has none
+     */
+    public int getNameResource(final int index) {
+        return mParser.getResourceId(getNameIndex(index));
+    }
+
+    /**
+     * @param index the attribute index
+     * @return the attribute name
+     */
+    public String getName(final int index) {
+        return mParser.getString(getNameIndex(index));
+    }
+
+    /**
+     * @param index the attribute index
+     * @return the attribute namespace uri, or null
+     */
+    public String getNamespaceUri(final int index) {
+        int namespaceUriIndex = getNamespaceUriIndex(index);
+        if (namespaceUriIndex == AXMLParser.DEFAULT_NAMESPACE) {
+            return null;
+        }
+        return mParser.getString(namespaceUriIndex);
+    }
+
+    /**
+     * @param index the attribute index
+     * @return the attribute namespace prefix, or null
+     */
+    public String getPrefix(final int index) {
+        return mParser.getString(getPrefixIndex(index));
+    }
+
+    /**
+     * @param index the attribute index
+     * @return the index of the attribute namespace prefix in the string pool, or
+     * {@link SymbolTable#NO_SYMBOL}
+     */
+    public int getPrefixIndex(final int index) {
+        int namespaceUriIndex = getNamespaceUriIndex(index);
+        if (namespaceUriIndex == AXMLParser.DEFAULT_NAMESPACE) {
+            return SymbolTable.NO_SYMBOL;
+        }
+
+        int prefixIndex = mParser.getNamespacePrefixIndex(namespaceUriIndex);
+        return (prefixIndex < 0) ? SymbolTable.NO_SYMBOL : prefixIndex;
+    }
+
+    /**
+     * @param index the attribute index
+     * @return the attribute value, rendered as a String (as in an Attribute)
+     */
+    public String getValue(final int index) {
+        int valueIndex = getValueStringIndex(index);
+        if (valueIndex == AXMLParser.ATTR_TYPED_VALUE) {
+            return mParser.getTypedAttributeValue(getValueType(index), getValueData(index));
+        } else {
+            return mParser.getString(valueIndex);
+        }
+    }
+
+    /**
+     * @param index the attribute index
+     * @return a new Attribute instance holding the attribute at the given index
+     */
+    public Attribute toAttribute(final int index) {
+        return new Attribute(getName(index), getValue(index), getNamespaceUri(index), getPrefix(index));
+    }
+
+    private int getWord(final int index, final int word) {
+        if ((index < 0) || (index >= mCount)) {
+            throw new IndexOutOfBoundsException("Invalid attribute index " + index + " (count = " + mCount + ")");
+        }
+        return mWords[(index * ATTRIBUTE_WORDS) + word];
+    }
+}
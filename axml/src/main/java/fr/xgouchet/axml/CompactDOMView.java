@@ -0,0 +1,1095 @@
+package fr.xgouchet.axml;
+
+import org.w3c.dom.Attr;
+import org.w3c.dom.CDATASection;
+import org.w3c.dom.Comment;
+import org.w3c.dom.DOMConfiguration;
+import org.w3c.dom.DOMException;
+import org.w3c.dom.DOMImplementation;
+import org.w3c.dom.Document;
+import org.w3c.dom.DocumentFragment;
+import org.w3c.dom.DocumentType;
+import org.w3c.dom.Element;
+import org.w3c.dom.EntityReference;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.w3c.dom.ProcessingInstruction;
+import org.w3c.dom.Text;
+import org.w3c.dom.TypeInfo;
+import org.w3c.dom.UserDataHandler;
+
+import java.util.Arrays;
+
+/**
+ * A thin, read only org.w3c.dom view on a {@link CompactDocument}.
+ * <p/>
+ * The view nodes are lightweight wrappers around a node handle, created on demand : two wrappers
+ * of the same node are equal, and {@link Node#isSameNode(Node)} compares the handles. Any method
+ * which would modify the document throws a DOMException (NO_MODIFICATION_ALLOWED_ERR), and a few
+ * DOM Level 3 features (user data, document position) are not supported.
+ *
+ * @author Xavier Gouchet
+ */
+final class CompactDOMView {
+
+    private CompactDOMView() {
+    }
+
+    /**
+     * The view of the document itself
+     */
+    static final class DocumentView extends NodeView implements Document {
+
+        private final CompactDocument mCompact;
+
+        DocumentView(final CompactDocument compact) {
+            super(null, CompactDocument.NO_NODE);
+            mCompact = compact;
+        }
+
+        //region Node
+
+        @Override
+        public String getNodeName() {
+            return "#document";
+        }
+
+        @Override
+        public short getNodeType() {
+            return DOCUMENT_NODE;
+        }
+
+        @Override
+        public Node getParentNode() {
+            return null;
+        }
+
+        @Override
+        public Node getFirstChild() {
+            return wrap(this, (mCompact.getNodesCount() == 0) ? CompactDocument.NO_NODE : 0);
+        }
+
+        @Override
+        public Node getPreviousSibling() {
+            return null;
+        }
+
+        @Override
+        public Node getNextSibling() {
+            return null;
+        }
+
+        @Override
+        public Document getOwnerDocument() {
+            return null;
+        }
+
+        @Override
+        public String getTextContent() {
+            return null;
+        }
+
+        @Override
+        CompactDocument getCompact() {
+            return mCompact;
+        }
+
+        //endregion
+
+        //region Document
+
+        @Override
+        public DocumentType getDoctype() {
+            return null;
+        }
+
+        @Override
+        public DOMImplementation getImplementation() {
+            return null;
+        }
+
+        @Override
+        public Element getDocumentElement() {
+            return (Element) wrap(this, mCompact.getRoot());
+        }
+
+        @Override
+        public Element createElement(final String tagName) {
+            throw readOnly();
+        }
+
+        @Override
+        public DocumentFragment createDocumentFragment() {
+            throw readOnly();
+        }
+
+        @Override
+        public Text createTextNode(final String data) {
+            throw readOnly();
+        }
+
+        @Override
+        public Comment createComment(final String data) {
+            throw readOnly();
+        }
+
+        @Override
+        public CDATASection createCDATASection(final String data) {
+            throw readOnly();
+        }
+
+        @Override
+        public ProcessingInstruction createProcessingInstruction(final String target, final String data) {
+            throw readOnly();
+        }
+
+        @Override
+        public Attr createAttribute(final String name) {
+            throw readOnly();
+        }
+
+        @Override
+        public EntityReference createEntityReference(final String name) {
+            throw readOnly();
+        }
+
+        @Override
+        public NodeList getElementsByTagName(final String tagname) {
+            return findElements(this, CompactDocument.NO_NODE, null, tagname, false);
+        }
+
+        @Override
+        public Node importNode(final Node importedNode, final boolean deep) {
+            throw readOnly();
+        }
+
+        @Override
+        public Element createElementNS(final String namespaceURI, final String qualifiedName) {
+            throw readOnly();
+        }
+
+        @Override
+        public Attr createAttributeNS(final String namespaceURI, final String qualifiedName) {
+            throw readOnly();
+        }
+
+        @Override
+        public NodeList getElementsByTagNameNS(final String namespaceURI, final String localName) {
+            return findElements(this, CompactDocument.NO_NODE, namespaceURI, localName, true);
+        }
+
+        @Override
+        public Element getElementById(final String elementId) {
+            return null;
+        }
+
+        @Override
+        public String getInputEncoding() {
+            return null;
+        }
+
+        @Override
+        public String getXmlEncoding() {
+            return null;
+        }
+
+        @Override
+        public boolean getXmlStandalone() {
+            return false;
+        }
+
+        @Override
+        public void setXmlStandalone(final boolean xmlStandalone) {
+            throw readOnly();
+        }
+
+        @Override
+        public String getXmlVersion() {
+            return "1.0";
+        }
+
+        @Override
+        public void setXmlVersion(final String xmlVersion) {
+            throw readOnly();
+        }
+
+        @Override
+        public boolean getStrictErrorChecking() {
+            return true;
+        }
+
+        @Override
+        public void setStrictErrorChecking(final boolean strictErrorChecking) {
+        }
+
+        @Override
+        public String getDocumentURI() {
+            return null;
+        }
+
+        @Override
+        public void setDocumentURI(final String documentURI) {
+            throw readOnly();
+        }
+
+        @Override
+        public Node adoptNode(final Node source) {
+            throw readOnly();
+        }
+
+        @Override
+        public DOMConfiguration getDomConfig() {
+            return null;
+        }
+
+        @Override
+        public void normalizeDocument() {
+        }
+
+        @Override
+        public Node renameNode(final Node n, final String namespaceURI, final String qualifiedName) {
+            throw readOnly();
+        }
+
+        //endregion
+    }
+
+    /**
+     * @return the view of the given node, or null for NO_NODE
+     */
+    static Node wrap(final DocumentView document, final int node) {
+        if (node == CompactDocument.NO_NODE) {
+            return null;
+        }
+
+        if (document.mCompact.getNodeType(node) == CompactDocument.ELEMENT_NODE) {
+            return new ElementView(document, node);
+        } else {
+            return new TextView(document, node);
+        }
+    }
+
+    /**
+     * @return the elements in the given node subtree (excluding the node itself) matching the
+     * given name, in document order
+     */
+    static NodeList findElements(final DocumentView document, final int root,
+                                 final String namespaceURI, final String name, final boolean localName) {
+        CompactDocument compact = document.mCompact;
+        int[] matches = new int[8];
+        int count = 0;
+
+        int first = (root == CompactDocument.NO_NODE) ? 0 : root + 1;
+        for (int node = first; node < compact.getNodesCount(); ++node) {
+            if ((root != CompactDocument.NO_NODE) && !isAncestor(compact, root, node)) {
+                break;
+            }
+            if (compact.getNodeType(node) != CompactDocument.ELEMENT_NODE) {
+                continue;
+            }
+
+            boolean matching;
+            if (localName) {
+                matching = ("*".equals(name) || name.equals(compact.getName(node)))
+                        && ("*".equals(namespaceURI) || equalsUri(namespaceURI, compact.getNamespaceUri(node)));
+            } else {
+                matching = "*".equals(name) || name.equals(getQualifiedName(compact.getPrefix(node), compact.getName(node)));
+            }
+
+            if (matching) {
+                if (count == matches.length) {
+                    matches = Arrays.copyOf(matches, count * 2);
+                }
+                matches[count++] = node;
+            }
+        }
+
+        return new ArrayNodeList(document, Arrays.copyOf(matches, count));
+    }
+
+    static String getQualifiedName(final String prefix, final String name) {
+        return (prefix == null) ? name : prefix + ':' + name;
+    }
+
+    static boolean equalsUri(final String expected, final String actual) {
+        if ((expected == null) || (expected.length() == 0)) {
+            return (actual == null) || (actual.length() == 0);
+        }
+        return expected.equals(actual);
+    }
+
+    static DOMException readOnly() {
+        return new DOMException(DOMException.NO_MODIFICATION_ALLOWED_ERR, "This document is read only");
+    }
+
+    static DOMException notSupported() {
+        return new DOMException(DOMException.NOT_SUPPORTED_ERR, "This operation is not supported");
+    }
+
+    private static boolean isAncestor(final CompactDocument compact, final int ancestor, final int node) {
+        for (int parent = compact.getParent(node); parent != CompactDocument.NO_NODE; parent = compact.getParent(parent)) {
+            if (parent == ancestor) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The common implementation of the view nodes, wrapping a node handle
+     */
+    abstract static class NodeView implements Node {
+
+        final DocumentView mDocument;
+        final int mNode;
+
+        NodeView(final DocumentView document, final int node) {
+            mDocument = document;
+            mNode = node;
+        }
+
+        CompactDocument getCompact() {
+            return mDocument.mCompact;
+        }
+
+        @Override
+        public String getNodeValue() {
+            return null;
+        }
+
+        @Override
+        public void setNodeValue(final String nodeValue) {
+            throw readOnly();
+        }
+
+        @Override
+        public Node getParentNode() {
+            int parent = getCompact().getParent(mNode);
+            return (parent == CompactDocument.NO_NODE) ? mDocument : wrap(mDocument, parent);
+        }
+
+        @Override
+        public NodeList getChildNodes() {
+            return new ChildNodeList(this);
+        }
+
+        @Override
+        public Node getFirstChild() {
+            return wrap(mDocument, getCompact().getFirstChild(mNode));
+        }
+
+        @Override
+        public Node getLastChild() {
+            Node child = getFirstChild();
+            Node last = null;
+            while (child != null) {
+                last = child;
+                child = child.getNextSibling();
+            }
+            return last;
+        }
+
+        @Override
+        public Node getPreviousSibling() {
+            Node parent = getParentNode();
+            Node previous = null;
+            for (Node child = parent.getFirstChild(); child != null; child = child.getNextSibling()) {
+                if (isSameNode(child)) {
+                    return previous;
+                }
+                previous = child;
+            }
+            return null;
+        }
+
+        @Override
+        public Node getNextSibling() {
+            return wrap(mDocument, getCompact().getNextSibling(mNode));
+        }
+
+        @Override
+        public NamedNodeMap getAttributes() {
+            return null;
+        }
+
+        @Override
+        public Document getOwnerDocument() {
+            return mDocument;
+        }
+
+        @Override
+        public Node insertBefore(final Node newChild, final Node refChild) {
+            throw readOnly();
+        }
+
+        @Override
+        public Node replaceChild(final Node newChild, final Node oldChild) {
+            throw readOnly();
+        }
+
+        @Override
+        public Node removeChild(final Node oldChild) {
+            throw readOnly();
+        }
+
+        @Override
+        public Node appendChild(final Node newChild) {
+            throw readOnly();
+        }
+
+        @Override
+        public boolean hasChildNodes() {
+            return getFirstChild() != null;
+        }
+
+        @Override
+        public Node cloneNode(final boolean deep) {
+            throw notSupported();
+        }
+
+        @Override
+        public void normalize() {
+        }
+
+        @Override
+        public boolean isSupported(final String feature, final String version) {
+            return false;
+        }
+
+        @Override
+        public String getNamespaceURI() {
+            return null;
+        }
+
+        @Override
+        public String getPrefix() {
+            return null;
+        }
+
+        @Override
+        public void setPrefix(final String prefix) {
+            throw readOnly();
+        }
+
+        @Override
+        public String getLocalName() {
+            return null;
+        }
+
+        @Override
+        public boolean hasAttributes() {
+            return false;
+        }
+
+        @Override
+        public String getBaseURI() {
+            return null;
+        }
+
+        @Override
+        public short compareDocumentPosition(final Node other) {
+            throw notSupported();
+        }
+
+        @Override
+        public String getTextContent() {
+            StringBuilder builder = new StringBuilder();
+            for (Node child = getFirstChild(); child != null; child = child.getNextSibling()) {
+                String content = child.getTextContent();
+                if (content != null) {
+                    builder.append(content);
+                }
+            }
+            return builder.toString();
+        }
+
+        @Override
+        public void setTextContent(final String textContent) {
+            throw readOnly();
+        }
+
+        @Override
+        public boolean isSameNode(final Node other) {
+            return equals(other);
+        }
+
+        @Override
+        public String lookupPrefix(final String namespaceURI) {
+            if (namespaceURI == null) {
+                return null;
+            }
+
+            for (Node node = this; node instanceof ElementView; node = node.getParentNode()) {
+                ElementView element = (ElementView) node;
+                if (namespaceURI.equals(element.getNamespaceURI()) && (element.getPrefix() != null)) {
+                    return element.getPrefix();
+                }
+                CompactDocument compact = getCompact();
+                int count = compact.getAttributesCount(element.mNode);
+                for (int i = 0; i < count; ++i) {
+                    String prefix = compact.getAttributePrefix(element.mNode, i);
+                    if ((prefix != null) && namespaceURI.equals(compact.getAttributeNamespaceUri(element.mNode, i))) {
+                        return prefix;
+                    }
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public boolean isDefaultNamespace(final String namespaceURI) {
+            return equalsUri(namespaceURI, lookupNamespaceURI(null));
+        }
+
+        @Override
+        public String lookupNamespaceURI(final String prefix) {
+            for (Node node = this; node instanceof ElementView; node = node.getParentNode()) {
+                ElementView element = (ElementView) node;
+                if ((element.getNamespaceURI() != null) && equalsPrefix(prefix, element.getPrefix())) {
+                    return element.getNamespaceURI();
+                }
+                CompactDocument compact = getCompact();
+                int count = compact.getAttributesCount(element.mNode);
+                for (int i = 0; i < count; ++i) {
+                    String uri = compact.getAttributeNamespaceUri(element.mNode, i);
+                    if ((uri != null) && equalsPrefix(prefix, compact.getAttributePrefix(element.mNode, i))) {
+                        return uri;
+                    }
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public boolean isEqualNode(final Node arg) {
+            return equals(arg);
+        }
+
+        @Override
+        public Object getFeature(final String feature, final String version) {
+            return null;
+        }
+
+        @Override
+        public Object setUserData(final String key, final Object data, final UserDataHandler handler) {
+            throw notSupported();
+        }
+
+        @Override
+        public Object getUserData(final String key) {
+            return null;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            NodeView node = (NodeView) o;
+            return (mNode == node.mNode) && (getCompact() == node.getCompact());
+        }
+
+        @Override
+        public int hashCode() {
+            return (31 * System.identityHashCode(getCompact())) + mNode;
+        }
+
+        private static boolean equalsPrefix(final String expected, final String actual) {
+            return (expected == null) ? (actual == null) : expected.equals(actual);
+        }
+    }
+
+    /**
+     * The view of an element
+     */
+    static final class ElementView extends NodeView implements Element {
+
+        ElementView(final DocumentView document, final int node) {
+            super(document, node);
+        }
+
+        @Override
+        public String getNodeName() {
+            return getTagName();
+        }
+
+        @Override
+        public short getNodeType() {
+            return ELEMENT_NODE;
+        }
+
+        @Override
+        public NamedNodeMap getAttributes() {
+            return new AttributesMap(this);
+        }
+
+        @Override
+        public boolean hasAttributes() {
+            return getCompact().getAttributesCount(mNode) > 0;
+        }
+
+        @Override
+        public String getNamespaceURI() {
+            return getCompact().getNamespaceUri(mNode);
+        }
+
+        @Override
+        public String getPrefix() {
+            return getCompact().getPrefix(mNode);
+        }
+
+        @Override
+        public String getLocalName() {
+            return getCompact().getName(mNode);
+        }
+
+        @Override
+        public String getTagName() {
+            CompactDocument compact = getCompact();
+            return (compact.getNamespaceUri(mNode) == null)
+                    ? compact.getName(mNode)
+                    : getQualifiedName(compact.getPrefix(mNode), compact.getName(mNode));
+        }
+
+        @Override
+        public String getAttribute(final String name) {
+            int index = findAttribute(name);
+            return (index < 0) ? "" : getCompact().getAttributeValue(mNode, index);
+        }
+
+        @Override
+        public void setAttribute(final String name, final String value) {
+            throw readOnly();
+        }
+
+        @Override
+        public void removeAttribute(final String name) {
+            throw readOnly();
+        }
+
+        @Override
+        public Attr getAttributeNode(final String name) {
+            int index = findAttribute(name);
+            return (index < 0) ? null : new AttrView(this, index);
+        }
+
+        @Override
+        public Attr setAttributeNode(final Attr newAttr) {
+            throw readOnly();
+        }
+
+        @Override
+        public Attr removeAttributeNode(final Attr oldAttr) {
+            throw readOnly();
+        }
+
+        @Override
+        public NodeList getElementsByTagName(final String name) {
+            return findElements(mDocument, mNode, null, name, false);
+        }
+
+        @Override
+        public String getAttributeNS(final String namespaceURI, final String localName) {
+            int index = getCompact().findAttribute(mNode, namespaceURI, localName);
+            return (index < 0) ? "" : getCompact().getAttributeValue(mNode, index);
+        }
+
+        @Override
+        public void setAttributeNS(final String namespaceURI, final String qualifiedName, final String value) {
+            throw readOnly();
+        }
+
+        @Override
+        public void removeAttributeNS(final String namespaceURI, final String localName) {
+            throw readOnly();
+        }
+
+        @Override
+        public Attr getAttributeNodeNS(final String namespaceURI, final String localName) {
+            int index = getCompact().findAttribute(mNode, namespaceURI, localName);
+            return (index < 0) ? null : new AttrView(this, index);
+        }
+
+        @Override
+        public Attr setAttributeNodeNS(final Attr newAttr) {
+            throw readOnly();
+        }
+
+        @Override
+        public NodeList getElementsByTagNameNS(final String namespaceURI, final String localName) {
+            return findElements(mDocument, mNode, namespaceURI, localName, true);
+        }
+
+        @Override
+        public boolean hasAttribute(final String name) {
+            return findAttribute(name) >= 0;
+        }
+
+        @Override
+        public boolean hasAttributeNS(final String namespaceURI, final String localName) {
+            return getCompact().findAttribute(mNode, namespaceURI, localName) >= 0;
+        }
+
+        @Override
+        public TypeInfo getSchemaTypeInfo() {
+            return null;
+        }
+
+        @Override
+        public void setIdAttribute(final String name, final boolean isId) {
+            throw readOnly();
+        }
+
+        @Override
+        public void setIdAttributeNS(final String namespaceURI, final String localName, final boolean isId) {
+            throw readOnly();
+        }
+
+        @Override
+        public void setIdAttributeNode(final Attr idAttr, final boolean isId) {
+            throw readOnly();
+        }
+
+        /**
+         * @param name the attribute qualified name
+         * @return the attribute index, or -1
+         */
+        int findAttribute(final String name) {
+            CompactDocument compact = getCompact();
+            int count = compact.getAttributesCount(mNode);
+            for (int i = 0; i < count; ++i) {
+                if (name.equals(getAttributeQualifiedName(i))) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        String getAttributeQualifiedName(final int index) {
+            CompactDocument compact = getCompact();
+            return (compact.getAttributeNamespaceUri(mNode, index) == null)
+                    ? compact.getAttributeName(mNode, index)
+                    : getQualifiedName(compact.getAttributePrefix(mNode, index), compact.getAttributeName(mNode, index));
+        }
+    }
+
+    /**
+     * The view of a text node
+     */
+    static final class TextView extends NodeView implements Text {
+
+        TextView(final DocumentView document, final int node) {
+            super(document, node);
+        }
+
+        @Override
+        public String getNodeName() {
+            return "#text";
+        }
+
+        @Override
+        public String getNodeValue() {
+            return getData();
+        }
+
+        @Override
+        public short getNodeType() {
+            return TEXT_NODE;
+        }
+
+        @Override
+        public String getTextContent() {
+            return getData();
+        }
+
+        @Override
+        public String getData() {
+            return getCompact().getText(mNode);
+        }
+
+        @Override
+        public void setData(final String data) {
+            throw readOnly();
+        }
+
+        @Override
+        public int getLength() {
+            return getData().length();
+        }
+
+        @Override
+        public String substringData(final int offset, final int count) {
+            String data = getData();
+            if ((offset < 0) || (offset > data.length()) || (count < 0)) {
+                throw new DOMException(DOMException.INDEX_SIZE_ERR, "Invalid offset or count");
+            }
+            return data.substring(offset, Math.min(data.length(), offset + count));
+        }
+
+        @Override
+        public void appendData(final String arg) {
+            throw readOnly();
+        }
+
+        @Override
+        public void insertData(final int offset, final String arg) {
+            throw readOnly();
+        }
+
+        @Override
+        public void deleteData(final int offset, final int count) {
+            throw readOnly();
+        }
+
+        @Override
+        public void replaceData(final int offset, final int count, final String arg) {
+            throw readOnly();
+        }
+
+        @Override
+        public Text splitText(final int offset) {
+            throw readOnly();
+        }
+
+        @Override
+        public boolean isElementContentWhitespace() {
+            return false;
+        }
+
+        @Override
+        public String getWholeText() {
+            return getData();
+        }
+
+        @Override
+        public Text replaceWholeText(final String content) {
+            throw readOnly();
+        }
+    }
+
+    /**
+     * The view of an attribute, wrapping its element and its index in the element
+     */
+    static final class AttrView extends NodeView implements Attr {
+
+        private final ElementView mElement;
+        private final int mIndex;
+
+        AttrView(final ElementView element, final int index) {
+            super(element.mDocument, element.mNode);
+            mElement = element;
+            mIndex = index;
+        }
+
+        @Override
+        public String getNodeName() {
+            return getName();
+        }
+
+        @Override
+        public String getNodeValue() {
+            return getValue();
+        }
+
+        @Override
+        public short getNodeType() {
+            return ATTRIBUTE_NODE;
+        }
+
+        @Override
+        public Node getParentNode() {
+            return null;
+        }
+
+        @Override
+        public Node getFirstChild() {
+            return null;
+        }
+
+        @Override
+        public Node getPreviousSibling() {
+            return null;
+        }
+
+        @Override
+        public Node getNextSibling() {
+            return null;
+        }
+
+        @Override
+        public String getNamespaceURI() {
+            return getCompact().getAttributeNamespaceUri(mNode, mIndex);
+        }
+
+        @Override
+        public String getPrefix() {
+            return getCompact().getAttributePrefix(mNode, mIndex);
+        }
+
+        @Override
+        public String getLocalName() {
+            return getCompact().getAttributeName(mNode, mIndex);
+        }
+
+        @Override
+        public String getTextContent() {
+            return getValue();
+        }
+
+        @Override
+        public String getName() {
+            return mElement.getAttributeQualifiedName(mIndex);
+        }
+
+        @Override
+        public boolean getSpecified() {
+            return true;
+        }
+
+        @Override
+        public String getValue() {
+            return getCompact().getAttributeValue(mNode, mIndex);
+        }
+
+        @Override
+        public void setValue(final String value) {
+            throw readOnly();
+        }
+
+        @Override
+        public Element getOwnerElement() {
+            return mElement;
+        }
+
+        @Override
+        public TypeInfo getSchemaTypeInfo() {
+            return null;
+        }
+
+        @Override
+        public boolean isId() {
+            return false;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            return super.equals(o) && (mIndex == ((AttrView) o).mIndex);
+        }
+
+        @Override
+        public int hashCode() {
+            return (31 * super.hashCode()) + mIndex;
+        }
+    }
+
+    /**
+     * The children of a node
+     */
+    static final class ChildNodeList implements NodeList {
+
+        private final NodeView mParent;
+
+        ChildNodeList(final NodeView parent) {
+            mParent = parent;
+        }
+
+        @Override
+        public Node item(final int index) {
+            if (index < 0) {
+                return null;
+            }
+
+            Node child = mParent.getFirstChild();
+            for (int i = 0; (i < index) && (child != null); ++i) {
+                child = child.getNextSibling();
+            }
+            return child;
+        }
+
+        @Override
+        public int getLength() {
+            int length = 0;
+            for (Node child = mParent.getFirstChild(); child != null; child = child.getNextSibling()) {
+                length++;
+            }
+            return length;
+        }
+    }
+
+    /**
+     * A static list of nodes
+     */
+    static final class ArrayNodeList implements NodeList {
+
+        private final DocumentView mDocument;
+        private final int[] mNodes;
+
+        ArrayNodeList(final DocumentView document, final int[] nodes) {
+            mDocument = document;
+            mNodes = nodes;
+        }
+
+        @Override
+        public Node item(final int index) {
+            return ((index < 0) || (index >= mNodes.length)) ? null : wrap(mDocument, mNodes[index]);
+        }
+
+        @Override
+        public int getLength() {
+            return mNodes.length;
+        }
+    }
+
+    /**
+     * The attributes of an element
+     */
+    static final class AttributesMap implements NamedNodeMap {
+
+        private final ElementView mElement;
+
+        AttributesMap(final ElementView element) {
+            mElement = element;
+        }
+
+        @Override
+        public Node getNamedItem(final String name) {
+            return mElement.getAttributeNode(name);
+        }
+
+        @Override
+        public Node setNamedItem(final Node arg) {
+            throw readOnly();
+        }
+
+        @Override
+        public Node removeNamedItem(final String name) {
+            throw readOnly();
+        }
+
+        @Override
+        public Node item(final int index) {
+            return ((index < 0) || (index >= getLength())) ? null : new AttrView(mElement, index);
+        }
+
+        @Override
+        public int getLength() {
+            return mElement.getCompact().getAttributesCount(mElement.mNode);
+        }
+
+        @Override
+        public Node getNamedItemNS(final String namespaceURI, final String localName) {
+            return mElement.getAttributeNodeNS(namespaceURI, localName);
+        }
+
+        @Override
+        public Node setNamedItemNS(final Node arg) {
+            throw readOnly();
+        }
+
+        @Override
+        public Node removeNamedItemNS(final String namespaceURI, final String localName) {
+            throw readOnly();
+        }
+    }
+}
@@ -0,0 +1,296 @@
+package fr.xgouchet.axml;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+
+/**
+ * A compact, read only representation of a decoded XML document, built by a
+ * {@link CompactDocumentListener}.
+ * <p/>
+ * Instead of one object per node, the nodes are stored in a few parallel arrays (type, name,
+ * namespace, parent, first child, next sibling, attributes), and each distinct string of the
+ * document is stored once. A node is designated by an int handle : the nodes are numbered in
+ * document order, starting at 0, and {@link #NO_NODE} stands for a missing node (eg : the parent
+ * of the root element). This takes a fraction of the heap used by an org.w3c.dom Document, so
+ * that thousands of decoded documents can be kept in memory.
+ * <p/>
+ * When a library expects an org.w3c.dom Document, {@link #asDocument()} gives a thin read only
+ * view on top of the arrays.
+ *
+ * @author Xavier Gouchet
+ */
+public final class CompactDocument {
+
+    public static final int NO_NODE = -1;
+    public static final int NO_STRING = -1;
+
+    public static final short ELEMENT_NODE = Node.ELEMENT_NODE;
+    public static final short TEXT_NODE = Node.TEXT_NODE;
+
+    /**
+     * An attribute is stored as 4 string indices : name, value, namespace uri and prefix
+     */
+    static final int ATTRIBUTE_INTS = 4;
+    static final int ATTRIBUTE_NAME = 0;
+    static final int ATTRIBUTE_VALUE = 1;
+    static final int ATTRIBUTE_URI = 2;
+    static final int ATTRIBUTE_PREFIX = 3;
+
+    private final String[] mStrings;
+
+    private final int mNodesCount;
+    private final short[] mNodeTypes;
+    // the element name, or the text data
+    private final int[] mNodeNames;
+    private final int[] mNodeUris;
+    private final int[] mNodePrefixes;
+    private final int[] mParents;
+    private final int[] mFirstChildren;
+    private final int[] mNextSiblings;
+    // the attributes of node n are in [mFirstAttributes[n], mFirstAttributes[n + 1])
+    private final int[] mFirstAttributes;
+    private final int[] mAttributes;
+
+    CompactDocument(final String[] strings,
+                    final int nodesCount,
+                    final short[] nodeTypes,
+                    final int[] nodeNames,
+                    final int[] nodeUris,
+                    final int[] nodePrefixes,
+                    final int[] parents,
+                    final int[] firstChildren,
+                    final int[] nextSiblings,
+                    final int[] firstAttributes,
+                    final int[] attributes) {
+        mStrings = strings;
+        mNodesCount = nodesCount;
+        mNodeTypes = nodeTypes;
+        mNodeNames = nodeNames;
+        mNodeUris = nodeUris;
+        mNodePrefixes = nodePrefixes;
+        mParents = parents;
+        mFirstChildren = firstChildren;
+        mNextSiblings = nextSiblings;
+        mFirstAttributes = firstAttributes;
+        mAttributes = attributes;
+    }
+
+    /**
+     * @return a read only org.w3c.dom view on this document. The view nodes are created on demand,
+     * and any attempt to modify the document throws a DOMException.
+     */
+    public Document asDocument() {
+        return new CompactDOMView.DocumentView(this);
+    }
+
+    /**
+     * @return the number of distinct strings in this document
+     */
+    public int getStringsCount() {
+        return mStrings.length;
+    }
+
+    /**
+     * @param index a string index
+     * @return the matching string, or null for NO_STRING
+     */
+    public String getString(final int index) {
+        return (index == NO_STRING) ? null : mStrings[index];
+    }
+
+    /**
+     * @return the number of nodes (elements and texts) in this document
+     */
+    public int getNodesCount() {
+        return mNodesCount;
+    }
+
+    /**
+     * @return the root element, or NO_NODE if the document is empty
+     */
+    public int getRoot() {
+        if (mNodesCount == 0) {
+            return NO_NODE;
+        }
+
+        for (int node = 0; node != NO_NODE; node = mNextSiblings[node]) {
+            if (mNodeTypes[node] == ELEMENT_NODE) {
+                return node;
+            }
+        }
+        return NO_NODE;
+    }
+
+    /**
+     * @param node a node handle
+     * @return the node type : ELEMENT_NODE or TEXT_NODE
+     */
+    public short getNodeType(final int node) {
+        return mNodeTypes[checkNode(node)];
+    }
+
+    /**
+     * @param node an element handle
+     * @return the element local name (without prefix), or null for a text node
+     */
+    public String getName(final int node) {
+        return (mNodeTypes[checkNode(node)] == ELEMENT_NODE) ? mStrings[mNodeNames[node]] : null;
+    }
+
+    /**
+     * @param node an element handle
+     * @return the index of the element local name, or NO_STRING for a text node
+     */
+    public int getNameIndex(final int node) {
+        return (mNodeTypes[checkNode(node)] == ELEMENT_NODE) ? mNodeNames[node] : NO_STRING;
+    }
+
+    /**
+     * @param node an element handle
+     * @return the element namespace uri, or null
+     */
+    public String getNamespaceUri(final int node) {
+        return getString(mNodeUris[checkNode(node)]);
+    }
+
+    /**
+     * @param node an element handle
+     * @return the element namespace prefix, or null
+     */
+    public String getPrefix(final int node) {
+        return getString(mNodePrefixes[checkNode(node)]);
+    }
+
+    /**
+     * @param node a text node handle
+     * @return the text, or null for an element
+     */
+    public String getText(final int node) {
+        return (mNodeTypes[checkNode(node)] == TEXT_NODE) ? mStrings[mNodeNames[node]] : null;
+    }
+
+    /**
+     * @param node a node handle
+     * @return the parent element, or NO_NODE for the top level nodes
+     */
+    public int getParent(final int node) {
+        return mParents[checkNode(node)];
+    }
+
+    /**
+     * @param node a node handle
+     * @return the first child node, or NO_NODE
+     */
+    public int getFirstChild(final int node) {
+        return mFirstChildren[checkNode(node)];
+    }
+
+    /**
+     * @param node a node handle
+     * @return the next node with the same parent, or NO_NODE
+     */
+    public int getNextSibling(final int node) {
+        return mNextSiblings[checkNode(node)];
+    }
+
+    /**
+     * @param node a node handle
+     * @return the number of attributes of the node (0 for a text node)
+     */
+    public int getAttributesCount(final int node) {
+        checkNode(node);
+        return mFirstAttributes[node + 1] - mFirstAttributes[node];
+    }
+
+    /**
+     * @param node  an element handle
+     * @param index the attribute index, in the element
+     * @return the attribute local name
+     */
+    public String getAttributeName(final int node, final int index) {
+        return getString(getAttributeInt(node, index, ATTRIBUTE_NAME));
+    }
+
+    /**
+     * @param node  an element handle
+     * @param index the attribute index, in the element
+     * @return the attribute value
+     */
+    public String getAttributeValue(final int node, final int index) {
+        return getString(getAttributeInt(node, index, ATTRIBUTE_VALUE));
+    }
+
+    /**
+     * @param node  an element handle
+     * @param index the attribute index, in the element
+     * @return the attribute namespace uri, or null
+     */
+    public String getAttributeNamespaceUri(final int node, final int index) {
+        return getString(getAttributeInt(node, index, ATTRIBUTE_URI));
+    }
+
+    /**
+     * @param node  an element handle
+     * @param index the attribute index, in the element
+     * @return the attribute namespace prefix, or null
+     */
+    public String getAttributePrefix(final int node, final int index) {
+        return getString(getAttributeInt(node, index, ATTRIBUTE_PREFIX));
+    }
+
+    /**
+     * @param node         an element handle
+     * @param namespaceUri the attribute namespace uri, or null
+     * @param name         the attribute local name
+     * @return the attribute index in the element, or -1 if the element has no such attribute
+     */
+    public int findAttribute(final int node, final String namespaceUri, final String name) {
+        if (name == null) {
+            throw new NullPointerException();
+        }
+
+        int count = getAttributesCount(node);
+        for (int i = 0; i < count; ++i) {
+            if (name.equals(getAttributeName(node, i))
+                    && equalsUri(namespaceUri, getAttributeNamespaceUri(node, i))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param node         an element handle
+     * @param namespaceUri the attribute namespace uri, or null
+     * @param name         the attribute local name
+     * @return the attribute value, or null if the element has no such attribute
+     */
+    public String getAttributeValue(final int node, final String namespaceUri, final String name) {
+        int index = findAttribute(node, namespaceUri, name);
+        return (index < 0) ? null : getAttributeValue(node, index);
+    }
+
+    /**
+     * @return the string indices of the given attribute
+     */
+    int getAttributeInt(final int node, final int index, final int field) {
+        if ((index < 0) || (index >= getAttributesCount(node))) {
+            throw new IndexOutOfBoundsException("Invalid attribute index " + index);
+        }
+        return mAttributes[((mFirstAttributes[node] + index) * ATTRIBUTE_INTS) + field];
+    }
+
+    private int checkNode(final int node) {
+        if ((node < 0) || (node >= mNodesCount)) {
+            throw new IndexOutOfBoundsException("Invalid node " + node + " (count = " + mNodesCount + ")");
+        }
+        return node;
+    }
+
+    private static boolean equalsUri(final String expected, final String actual) {
+        if ((expected == null) || (expected.length() == 0)) {
+            return (actual == null) || (actual.length() == 0);
+        }
+        return expected.equals(actual);
+    }
+}
@@ -0,0 +1,229 @@
+package fr.xgouchet.axml;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An AXMLParser.Listener implementation which builds a {@link CompactDocument}.
+ * <p/>
+ * When used with an AXMLParser, the attributes are read through the parser AttributeCursor, so no
+ * Attribute object is created. The listener can be reused for several documents.
+ *
+ * @author Xavier Gouchet
+ */
+public class CompactDocumentListener implements AXMLParser.CursorListener {
+
+    private final Map<String, Integer> mStringIndices = new HashMap<>();
+    private String[] mStrings = new String[64];
+
+    private int mNodesCount;
+    private short[] mNodeTypes = new short[64];
+    private int[] mNodeNames = new int[64];
+    private int[] mNodeUris = new int[64];
+    private int[] mNodePrefixes = new int[64];
+    private int[] mParents = new int[64];
+    private int[] mFirstChildren = new int[64];
+    private int[] mNextSiblings = new int[64];
+    private int[] mFirstAttributes = new int[65];
+
+    private int mAttributesCount;
+    private int[] mAttributes = new int[64 * CompactDocument.ATTRIBUTE_INTS];
+
+    // the open elements, and the last child added at each level (level 0 is the document)
+    private int[] mOpenElements = new int[16];
+    private int[] mLastChildren = new int[16];
+    private int mDepth;
+
+    private CompactDocument mDocument;
+
+    @Override
+    public void startDocument() {
+        mStringIndices.clear();
+        mNodesCount = 0;
+        mAttributesCount = 0;
+        mDepth = 0;
+        mLastChildren[0] = CompactDocument.NO_NODE;
+        mDocument = null;
+    }
+
+    @Override
+    public void endDocument() {
+        int nodesCount = mNodesCount;
+        mFirstAttributes[nodesCount] = mAttributesCount;
+
+        mDocument = new CompactDocument(
+                Arrays.copyOf(mStrings, mStringIndices.size()),
+                nodesCount,
+                Arrays.copyOf(mNodeTypes, nodesCount),
+                Arrays.copyOf(mNodeNames, nodesCount),
+                Arrays.copyOf(mNodeUris, nodesCount),
+                Arrays.copyOf(mNodePrefixes, nodesCount),
+                Arrays.copyOf(mParents, nodesCount),
+                Arrays.copyOf(mFirstChildren, nodesCount),
+                Arrays.copyOf(mNextSiblings, nodesCount),
+                Arrays.copyOf(mFirstAttributes, nodesCount + 1),
+                Arrays.copyOf(mAttributes, mAttributesCount * CompactDocument.ATTRIBUTE_INTS));
+
+        // don't retain the strings of this document until the next one
+        Arrays.fill(mStrings, null);
+        mStringIndices.clear();
+    }
+
+    @Override
+    public void startPrefixMapping(final String prefix, final String uri) {
+
+    }
+
+    @Override
+    public void endPrefixMapping(final String prefix, final String uri) {
+
+    }
+
+    @Override
+    public void startElement(final String localName,
+                             final AttributeCursor attributes,
+                             final String uri,
+                             final String prefix) {
+        int node = addNode(CompactDocument.ELEMENT_NODE, localName, uri, prefix);
+
+        int count = attributes.getCount();
+        ensureAttributesCapacity(count);
+        for (int i = 0; i < count; ++i) {
+            addAttribute(attributes.getName(i), attributes.getValue(i),
+                    attributes.getNamespaceUri(i), attributes.getPrefix(i));
+        }
+
+        pushElement(node);
+    }
+
+    @Override
+    public void startElement(final String localName,
+                             final Attribute[] attributes,
+                             final String uri,
+                             final String prefix) {
+        int node = addNode(CompactDocument.ELEMENT_NODE, localName, uri, prefix);
+
+        ensureAttributesCapacity(attributes.length);
+        for (Attribute attribute : attributes) {
+            addAttribute(attribute.getName(), attribute.getValue(),
+                    attribute.getNamespaceUri(), attribute.getPrefix());
+        }
+
+        pushElement(node);
+    }
+
+    @Override
+    public void endElement(final String localName,
+                           final String uri,
+                           final String prefix) {
+        // here we pop the last element without any checks,
+        // but as the listener is used on compiled XML, we can assume that they are valid
+        mDepth--;
+    }
+
+    @Override
+    public void text(final String data) {
+        addNode(CompactDocument.TEXT_NODE, data, null, null);
+    }
+
+    /**
+     * @return the document built from the last parsed events, or null until the end of the
+     * document
+     */
+    public CompactDocument getDocument() {
+        return mDocument;
+    }
+
+    /**
+     * Adds a node as the last child of the current element
+     *
+     * @return the new node handle
+     */
+    private int addNode(final short type, final String name, final String uri, final String prefix) {
+        int node = mNodesCount;
+        if (node + 1 >= mNodeTypes.length) {
+            int capacity = mNodeTypes.length * 2;
+            mNodeTypes = Arrays.copyOf(mNodeTypes, capacity);
+            mNodeNames = Arrays.copyOf(mNodeNames, capacity);
+            mNodeUris = Arrays.copyOf(mNodeUris, capacity);
+            mNodePrefixes = Arrays.copyOf(mNodePrefixes, capacity);
+            mParents = Arrays.copyOf(mParents, capacity);
+            mFirstChildren = Arrays.copyOf(mFirstChildren, capacity);
+            mNextSiblings = Arrays.copyOf(mNextSiblings, capacity);
+            mFirstAttributes = Arrays.copyOf(mFirstAttributes, capacity + 1);
+        }
+
+        int parent = (mDepth == 0) ? CompactDocument.NO_NODE : mOpenElements[mDepth - 1];
+        mNodeTypes[node] = type;
+        mNodeNames[node] = addString(name);
+        mNodeUris[node] = ((uri == null) || (uri.length() == 0)) ? CompactDocument.NO_STRING : addString(uri);
+        mNodePrefixes[node] = (prefix == null) ? CompactDocument.NO_STRING : addString(prefix);
+        mParents[node] = parent;
+        mFirstChildren[node] = CompactDocument.NO_NODE;
+        mNextSiblings[node] = CompactDocument.NO_NODE;
+        mFirstAttributes[node] = mAttributesCount;
+
+        // link the node to its previous sibling, or to its parent
+        int previous = mLastChildren[mDepth];
+        if (previous != CompactDocument.NO_NODE) {
+            mNextSiblings[previous] = node;
+        } else if (parent != CompactDocument.NO_NODE) {
+            mFirstChildren[parent] = node;
+        }
+        mLastChildren[mDepth] = node;
+
+        mNodesCount++;
+        return node;
+    }
+
+    private void pushElement(final int node) {
+        if (mDepth + 1 >= mLastChildren.length) {
+            mOpenElements = Arrays.copyOf(mOpenElements, mOpenElements.length * 2);
+            mLastChildren = Arrays.copyOf(mLastChildren, mLastChildren.length * 2);
+        }
+        mOpenElements[mDepth] = node;
+        mDepth++;
+        mLastChildren[mDepth] = CompactDocument.NO_NODE;
+    }
+
+    private void ensureAttributesCapacity(final int count) {
+        int required = (mAttributesCount + count) * CompactDocument.ATTRIBUTE_INTS;
+        if (required > mAttributes.length) {
+            mAttributes = Arrays.copyOf(mAttributes, Math.max(required, mAttributes.length * 2));
+        }
+    }
+
+    private void addAttribute(final String name, final String value, final String uri, final String prefix) {
+        int offset = mAttributesCount * CompactDocument.ATTRIBUTE_INTS;
+        mAttributes[offset + CompactDocument.ATTRIBUTE_NAME] = addString(name);
+        mAttributes[offset + CompactDocument.ATTRIBUTE_VALUE] = addString(value);
+        mAttributes[offset + CompactDocument.ATTRIBUTE_URI] =
+                ((uri == null) || (uri.length() == 0)) ? CompactDocument.NO_STRING : addString(uri);
+        mAttributes[offset + CompactDocument.ATTRIBUTE_PREFIX] =
+                (prefix == null) ? CompactDocument.NO_STRING : addString(prefix);
+        mAttributesCount++;
+    }
+
+    /**
+     * @return the index of the given string in the document strings, added if needed
+     */
+    private int addString(final String string) {
+        if (string == null) {
+            return CompactDocument.NO_STRING;
+        }
+
+        Integer index = mStringIndices.get(string);
+        if (index != null) {
+            return index;
+        }
+
+        int newIndex = mStringIndices.size();
+        if (newIndex == mStrings.length) {
+            mStrings = Arrays.copyOf(mStrings, newIndex * 2);
+        }
+        mStrings[newIndex] = string;
+        mStringIndices.put(string, newIndex);
+        return newIndex;
+    }
+}
@@ -2,26 +2,35 @@ package fr.xgouchet.axml;
 
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.IOException;
 import java.io.InputStream;
 
-@Deprecated
 public final class CompressedXmlUtils {
 
+	/**
+	 * The first word of a compressed Android XML document (WORD_START_DOCUMENT, little endian)
+	 */
+	private static final byte[] AXML_MAGIC = new byte[]{0x03, 0x00, 0x08, 0x00};
+
+	/**
+	 * The number of bytes needed to detect a compressed Android XML document
+	 */
+	public static final int HEADER_SIZE = AXML_MAGIC.length;
+
+	/**
+	 * @param source a file
+	 * @return if the file starts with the compressed Android XML magic word
+	 */
 	public static boolean isCompressedXml(final File source) {
 		boolean result;
 
 		try {
 			final InputStream input = new FileInputStream(source.getPath());
-			final byte[] header = new byte[4];
-			input.read(header, 0, 4);
-
-			result = true;
-			result &= (header[0] == 0x03);
-			result &= (header[1] == 0x00);
-			result &= (header[2] == 0x08);
-			result &= (header[3] == 0x00);
-
-			input.close();
+			try {
+				result = isCompressedXml(input);
+			} finally {
+				input.close();
+			}
 		} catch (Exception e) {
 			result = false;
 		}
@@ -29,6 +38,45 @@ public final class CompressedXmlUtils {
 		return result;
 	}
 
+	/**
+	 * Reads the first HEADER_SIZE bytes of the given stream (the stream is neither reset nor
+	 * closed)
+	 *
+	 * @param input an input stream, at its start
+	 * @return if the stream starts with the compressed Android XML magic word
+	 */
+	public static boolean isCompressedXml(final InputStream input) throws IOException {
+		final byte[] header = new byte[HEADER_SIZE];
+
+		int read, offset = 0;
+		while (offset < header.length) {
+			read = input.read(header, offset, header.length - offset);
+			if (read == -1) {
+				return false;
+			}
+			offset += read;
+		}
+
+		return isCompressedXml(header);
+	}
+
+	/**
+	 * @param content the content (or at least the first HEADER_SIZE bytes) of a file
+	 * @return if the content starts with the compressed Android XML magic word
+	 */
+	public static boolean isCompressedXml(final byte[] content) {
+		if (content.length < AXML_MAGIC.length) {
+			return false;
+		}
+
+		for (int i = 0; i < AXML_MAGIC.length; ++i) {
+			if (content[i] != AXML_MAGIC[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
 	private CompressedXmlUtils() {
 	}
 }
@@ -64,7 +64,7 @@ public class DOMListener implements AXMLParser.Listener {
         if ((uri == null) || (uri.length() == 0)) {
             element = mDocument.createElement(localName);
         } else {
-            element = mDocument.createElementNS(uri, String.format("%s:%s", prefix, localName));
+            element = mDocument.createElementNS(uri, prefix + ":" + localName);
         }
 
         for (Attribute attribute : attributes) {
@@ -0,0 +1,127 @@
+package fr.xgouchet.axml;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Selects the elements an AXMLParser reports (see {@link AXMLParser#setElementFilter(ElementFilter)}),
+ * with simple path patterns made of element local names separated by slashes :
+ * <ul>
+ * <li><code>manifest/uses-permission</code> : the uses-permission elements directly under the
+ * manifest root element</li>
+ * <li><code>manifest/*&#47;activity</code> : any element name matches the <code>*</code> step</li>
+ * <li><code>//item</code> : the item elements at any depth (or <code>//menu/item</code>, the item
+ * elements directly under a menu element at any depth)</li>
+ * </ul>
+ * The elements matching none of the patterns are not reported, nor their texts, but their
+ * children still are if they match. When no pattern can match anything below an element, its
+ * whole subtree is skipped without decoding any name.
+ *
+ * @author Xavier Gouchet
+ */
+public final class ElementFilter {
+
+    private static final String ANY_DEPTH = "//";
+    private static final String ANY_NAME = "*";
+
+    private final String[][] mAbsolutePatterns;
+    private final String[][] mRelativePatterns;
+
+    /**
+     * @param patterns the path patterns of the elements to report
+     */
+    public ElementFilter(final String... patterns) {
+        if (patterns == null) {
+            throw new NullPointerException();
+        }
+
+        List<String[]> absolutePatterns = new ArrayList<>();
+        List<String[]> relativePatterns = new ArrayList<>();
+        for (String pattern : patterns) {
+            if (pattern == null) {
+                throw new NullPointerException();
+            }
+
+            if (pattern.startsWith(ANY_DEPTH)) {
+                relativePatterns.add(split(pattern, pattern.substring(ANY_DEPTH.length())));
+            } else {
+                absolutePatterns.add(split(pattern, pattern));
+            }
+        }
+
+        mAbsolutePatterns = absolutePatterns.toArray(new String[absolutePatterns.size()][]);
+        mRelativePatterns = relativePatterns.toArray(new String[relativePatterns.size()][]);
+    }
+
+    /**
+     * @param path  the local names of the current element and its ancestors, from the root
+     * @param depth the depth of the current element (the number of names in path)
+     * @return true if the current element matches one of the patterns
+     */
+    boolean matches(final String[] path, final int depth) {
+        for (String[] pattern : mAbsolutePatterns) {
+            if ((pattern.length == depth) && matchesSteps(pattern, path, 0)) {
+                return true;
+            }
+        }
+
+        for (String[] pattern : mRelativePatterns) {
+            if ((pattern.length <= depth) && matchesSteps(pattern, path, depth - pattern.length)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * @param path  the local names of the current element and its ancestors, from the root
+     * @param depth the depth of the current element (the number of names in path)
+     * @return true if a descendant of the current element may match one of the patterns
+     */
+    boolean canMatchBelow(final String[] path, final int depth) {
+        if (mRelativePatterns.length > 0) {
+            return true;
+        }
+
+        for (String[] pattern : mAbsolutePatterns) {
+            if ((pattern.length > depth) && matchesSteps(pattern, path, 0, depth)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static boolean matchesSteps(final String[] pattern, final String[] path, final int offset) {
+        return matchesSteps(pattern, path, offset, pattern.length);
+    }
+
+    /**
+     * @return true if the first stepsCount steps of the pattern match the path, from the offset
+     */
+    private static boolean matchesSteps(final String[] pattern, final String[] path, final int offset,
+                                        final int stepsCount) {
+        for (int i = 0; i < stepsCount; ++i) {
+            String step = pattern[i];
+            if (!((step == ANY_NAME) || step.equals(path[offset + i]))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String[] split(final String pattern, final String steps) {
+        String[] result = steps.split("/", -1);
+        for (int i = 0; i < result.length; ++i) {
+            if (result[i].length() == 0) {
+                throw new IllegalArgumentException("Invalid pattern " + pattern);
+            }
+            if (ANY_NAME.equals(result[i])) {
+                // allows comparing by reference in matchesSteps
+                result[i] = ANY_NAME;
+            }
+        }
+        return result;
+    }
+}
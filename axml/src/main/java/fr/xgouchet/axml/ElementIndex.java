@@ -0,0 +1,338 @@
+package fr.xgouchet.axml;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * An index of the elements of a compressed Android XML document, giving random access to any
+ * element (see {@link AXMLParser#parseElement(ByteBuffer, ElementIndex, int, AXMLParser.Listener)}).
+ * <p/>
+ * The index is built in a single pass over the document blocks, without decoding any string. For
+ * each element (in document order), it holds the offsets of the start and end tag blocks, the
+ * depth (0 for the root element) and the index of the element name in the string pool, in a
+ * single int array. The offsets of the namespace declarations are kept as well, so that an element
+ * can be parsed with the namespaces in scope.
+ * <p/>
+ * An index can be written to a stream and read back, to avoid indexing the same document again.
+ *
+ * @author Xavier Gouchet
+ */
+public final class ElementIndex {
+
+    // written at the start of a persisted index : "AXEI" and the format version
+    private static final int MAGIC = 0x41584549;
+    private static final int VERSION = 1;
+
+    private static final int ELEMENT_INTS = 4;
+    private static final int INT_START = 0;
+    private static final int INT_END = 1;
+    private static final int INT_DEPTH = 2;
+    private static final int INT_NAME = 3;
+
+    private static final int NAMESPACE_INTS = 2;
+
+    private final int mDocumentSize;
+    private final int mPrologueSize;
+    private final int[] mElements;
+    private final int mCount;
+    private final int[] mNamespaces;
+    private final int mNamespacesCount;
+
+    private ElementIndex(final int documentSize, final int prologueSize,
+                         final int[] elements, final int count,
+                         final int[] namespaces, final int namespacesCount) {
+        mDocumentSize = documentSize;
+        mPrologueSize = prologueSize;
+        mElements = elements;
+        mCount = count;
+        mNamespaces = namespaces;
+        mNamespacesCount = namespacesCount;
+    }
+
+    /**
+     * Indexes the document held by the given buffer (from its current position to its limit). The
+     * buffer position is left untouched.
+     *
+     * @param buffer the buffer holding the document
+     * @return the index of the document elements
+     */
+    public static ElementIndex build(final ByteBuffer buffer) throws IOException {
+        if (buffer == null) {
+            throw new NullPointerException();
+        }
+
+        ByteBuffer data = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+        if ((data.limit() < (2 * AXMLParser.WORD_SIZE)) || (data.getInt(0) != AXMLParser.WORD_START_DOCUMENT)) {
+            throw new IOException("This document doesn't seem to be an Android XML document");
+        }
+
+        int documentSize = Math.min(data.getInt(AXMLParser.WORD_SIZE), data.limit());
+        int prologueSize = -1;
+
+        int[] elements = new int[64 * ELEMENT_INTS];
+        int count = 0;
+        int[] namespaces = new int[4 * NAMESPACE_INTS];
+        int namespacesCount = 0;
+
+        // the indices of the open elements and namespaces
+        int[] openElements = new int[16];
+        int depth = 0;
+        int[] openNamespaces = new int[4];
+        int namespacesDepth = 0;
+
+        int offset = 2 * AXMLParser.WORD_SIZE;
+        while (offset < documentSize) {
+            if (offset + (2 * AXMLParser.WORD_SIZE) > documentSize) {
+                throw new IOException("Unexpected End Of Stream");
+            }
+
+            int id = data.getInt(offset);
+            int blockSize = data.getInt(offset + AXMLParser.WORD_SIZE);
+            if ((blockSize < (2 * AXMLParser.WORD_SIZE)) || (blockSize > documentSize - offset)) {
+                throw new IOException("Invalid block size " + blockSize + " at position 0x"
+                        + Integer.toHexString(offset));
+            }
+
+            switch (id) {
+                case AXMLParser.WORD_START_NAMESPACE:
+                    if (prologueSize < 0) {
+                        prologueSize = offset;
+                    }
+                    if ((namespacesCount + 1) * NAMESPACE_INTS > namespaces.length) {
+                        namespaces = Arrays.copyOf(namespaces, namespaces.length * 2);
+                    }
+                    if (namespacesDepth == openNamespaces.length) {
+                        openNamespaces = Arrays.copyOf(openNamespaces, namespacesDepth * 2);
+                    }
+                    namespaces[namespacesCount * NAMESPACE_INTS] = offset;
+                    namespaces[(namespacesCount * NAMESPACE_INTS) + 1] = -1;
+                    openNamespaces[namespacesDepth++] = namespacesCount++;
+                    break;
+                case AXMLParser.WORD_END_NAMESPACE:
+                    if (namespacesDepth > 0) {
+                        namespaces[(openNamespaces[--namespacesDepth] * NAMESPACE_INTS) + 1] = offset;
+                    }
+                    break;
+                case AXMLParser.WORD_START_TAG:
+                    if (prologueSize < 0) {
+                        prologueSize = offset;
+                    }
+                    if ((count + 1) * ELEMENT_INTS > elements.length) {
+                        elements = Arrays.copyOf(elements, elements.length * 2);
+                    }
+                    if (depth == openElements.length) {
+                        openElements = Arrays.copyOf(openElements, depth * 2);
+                    }
+                    int element = count * ELEMENT_INTS;
+                    elements[element + INT_START] = offset;
+                    elements[element + INT_END] = -1;
+                    elements[element + INT_DEPTH] = depth;
+                    elements[element + INT_NAME] = data.getInt(offset + (5 * AXMLParser.WORD_SIZE));
+                    openElements[depth++] = count++;
+                    break;
+                case AXMLParser.WORD_END_TAG:
+                    if (depth > 0) {
+                        elements[(openElements[--depth] * ELEMENT_INTS) + INT_END] = offset;
+                    }
+                    break;
+                default:
+                    break;
+            }
+
+            offset += blockSize;
+        }
+
+        if ((depth > 0) || (namespacesDepth > 0)) {
+            throw new IOException("Unexpected End Of Stream");
+        }
+
+        return new ElementIndex(documentSize, (prologueSize < 0) ? documentSize : prologueSize,
+                elements, count, namespaces, namespacesCount);
+    }
+
+    /**
+     * Reads an index previously written with {@link #write(OutputStream)}
+     *
+     * @param inputStream the stream to read (it will not be closed)
+     * @return the index
+     */
+    public static ElementIndex read(final InputStream inputStream) throws IOException {
+        if (inputStream == null) {
+            throw new NullPointerException();
+        }
+
+        DataInputStream input = new DataInputStream(inputStream);
+        if ((input.readInt() != MAGIC) || (input.readInt() != VERSION)) {
+            throw new IOException("Unsupported element index format");
+        }
+
+        int documentSize = input.readInt();
+        int prologueSize = input.readInt();
+        if ((documentSize < (2 * AXMLParser.WORD_SIZE)) || (prologueSize < 0) || (prologueSize > documentSize)) {
+            throw new IOException("Invalid element index document size " + documentSize
+                    + " (prologue size " + prologueSize + ")");
+        }
+
+        int count = readCount(input, documentSize, 0, "elements");
+        int[] elements = new int[count * ELEMENT_INTS];
+        for (int i = 0; i < elements.length; ++i) {
+            elements[i] = input.readInt();
+        }
+
+        int namespacesCount = readCount(input, documentSize, count, "namespaces");
+        int[] namespaces = new int[namespacesCount * NAMESPACE_INTS];
+        for (int i = 0; i < namespaces.length; ++i) {
+            namespaces[i] = input.readInt();
+        }
+
+        return new ElementIndex(documentSize, prologueSize, elements, count, namespaces, namespacesCount);
+    }
+
+    /**
+     * Reads a count of elements or namespaces, checking it against the document size : each one
+     * stands for at least two blocks (start and end) in the document
+     *
+     * @param previousCount the count of elements read before
+     */
+    private static int readCount(final DataInputStream input, final int documentSize,
+                                 final int previousCount, final String name) throws IOException {
+        int count = input.readInt();
+        long maxCount = (documentSize / (4 * AXMLParser.WORD_SIZE)) - previousCount;
+        if ((count < 0) || (count > maxCount)) {
+            throw new IOException("Invalid element index " + name + " count " + count
+                    + " for a document of " + documentSize + " bytes");
+        }
+        return count;
+    }
+
+    /**
+     * Writes this index, to be read back with {@link #read(InputStream)}
+     *
+     * @param outputStream the stream to write into (it will not be closed)
+     */
+    public void write(final OutputStream outputStream) throws IOException {
+        if (outputStream == null) {
+            throw new NullPointerException();
+        }
+
+        DataOutputStream output = new DataOutputStream(outputStream);
+        output.writeInt(MAGIC);
+        output.writeInt(VERSION);
+        output.writeInt(mDocumentSize);
+        output.writeInt(mPrologueSize);
+
+        output.writeInt(mCount);
+        for (int i = 0; i < mCount * ELEMENT_INTS; ++i) {
+            output.writeInt(mElements[i]);
+        }
+
+        output.writeInt(mNamespacesCount);
+        for (int i = 0; i < mNamespacesCount * NAMESPACE_INTS; ++i) {
+            output.writeInt(mNamespaces[i]);
+        }
+        output.flush();
+    }
+
+    /**
+     * @return the number of elements in the document
+     */
+    public int getCount() {
+        return mCount;
+    }
+
+    /**
+     * @param element the element index (in document order)
+     * @return the offset of the element start tag block in the document
+     */
+    public int getStartOffset(final int element) {
+        return getInt(element, INT_START);
+    }
+
+    /**
+     * @param element the element index (in document order)
+     * @return the offset of the element end tag block in the document
+     */
+    public int getEndOffset(final int element) {
+        return getInt(element, INT_END);
+    }
+
+    /**
+     * @param element the element index (in document order)
+     * @return the depth of the element (0 for the root element)
+     */
+    public int getDepth(final int element) {
+        return getInt(element, INT_DEPTH);
+    }
+
+    /**
+     * @param element the element index (in document order)
+     * @return the index of the element name in the document string pool
+     */
+    public int getNameIndex(final int element) {
+        return getInt(element, INT_NAME);
+    }
+
+    /**
+     * @param element the element index (in document order)
+     * @return the index of the first element after the given element subtree (or getCount())
+     */
+    public int getSubtreeEnd(final int element) {
+        int depth = getDepth(element);
+        int next = element + 1;
+        while ((next < mCount) && (mElements[(next * ELEMENT_INTS) + INT_DEPTH] > depth)) {
+            next++;
+        }
+        return next;
+    }
+
+    /**
+     * @return the size of the indexed document
+     */
+    int getDocumentSize() {
+        return mDocumentSize;
+    }
+
+    /**
+     * @return the size of the blocks preceding the first element or namespace (the string pool
+     * and the resources table)
+     */
+    int getPrologueSize() {
+        return mPrologueSize;
+    }
+
+    /**
+     * @return the number of namespace declarations in the document
+     */
+    int getNamespacesCount() {
+        return mNamespacesCount;
+    }
+
+    /**
+     * @param namespace the namespace declaration index (in document order)
+     * @return the offset of the start namespace block in the document
+     */
+    int getNamespaceStartOffset(final int namespace) {
+        return mNamespaces[namespace * NAMESPACE_INTS];
+    }
+
+    /**
+     * @param namespace the namespace declaration index (in document order)
+     * @return the offset of the end namespace block in the document
+     */
+    int getNamespaceEndOffset(final int namespace) {
+        return mNamespaces[(namespace * NAMESPACE_INTS) + 1];
+    }
+
+    private int getInt(final int element, final int index) {
+        if ((element < 0) || (element >= mCount)) {
+            throw new IndexOutOfBoundsException("Invalid element index " + element + " (count = " + mCount + ")");
+        }
+        return mElements[(element * ELEMENT_INTS) + index];
+    }
+}
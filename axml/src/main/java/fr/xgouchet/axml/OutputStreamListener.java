@@ -1,26 +1,27 @@
 package fr.xgouchet.axml;
 
-import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
-import java.io.PrintStream;
-import java.io.UnsupportedEncodingException;
-import java.io.Writer;
-import java.nio.charset.Charset;
 import java.util.HashMap;
-import java.util.Locale;
 import java.util.Map;
 
 /**
  * An AXMLParser.Listener implementation which writes a text/xml representation in an output stream.
+ * <p/>
+ * The output is UTF-8 encoded in a reused byte buffer. When the document string pool is itself
+ * UTF-8 encoded, the texts and attribute values are copied (and escaped) straight from the pool
+ * bytes, without being decoded to Strings and encoded back.
  *
  * @author Xavier Gouchet
  */
-public class OutputStreamListener implements AXMLParser.Listener {
+public class OutputStreamListener implements AXMLParser.RawTextListener {
+
+    private static final int BUFFER_SIZE = 8192;
 
     private final OutputStream mOutputStream;
-    private final Writer mWriter;
+    private final byte[] mBuffer = new byte[BUFFER_SIZE];
+    private int mBufferLength = 0;
+    private boolean mUtf8Passthrough = true;
     private int mDepth = 0;
 
     private int mPreviousElement = 0;
@@ -31,20 +32,26 @@ public class OutputStreamListener implements AXMLParser.Listener {
 
     public OutputStreamListener(final OutputStream outputStream) {
         mOutputStream = outputStream;
-        mWriter = new BufferedWriter(new OutputStreamWriter(outputStream, Charset.forName("UTF-8")));
 
         mNamespaceMap = new HashMap<>();
     }
 
+    /**
+     * @param utf8Passthrough if true (default), the strings of UTF-8 string pools are copied
+     *                        without being decoded
+     */
+    public void setUtf8Passthrough(final boolean utf8Passthrough) {
+        mUtf8Passthrough = utf8Passthrough;
+    }
+
     @Override
     public void startDocument() throws IOException {
-        mWriter.write("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n");
+        write("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n");
     }
 
     @Override
     public void endDocument() throws IOException {
-        mWriter.flush();
-        mWriter.close();
+        flushBuffer();
         mOutputStream.flush();
         mOutputStream.close();
     }
@@ -64,38 +71,57 @@ public class OutputStreamListener implements AXMLParser.Listener {
                              final String uri,
                              final String prefix) throws IOException {
 
-        if (mPreviousElement == START_TAG) {
-            // close previous start tag
-            mWriter.write(">\n");
-        }
+        writeStartTag(localName, uri, prefix);
 
-        if (mPreviousElement == TEXT) {
-            // add line break
-            mWriter.write("\n");
+        // declare attributes
+        for (Attribute attribute : attributes) {
+            write(' ');
+            write(attribute.getQualifiedName());
+            write("=\"");
+            writeEscaped(attribute.getValue(), true);
+            write('"');
         }
 
-        writeIndentation();
+        // update internal state
+        mDepth++;
+        mPreviousElement = START_TAG;
+    }
 
-        mWriter.write("<");
-        writeTagName(localName, uri, prefix);
+    @Override
+    public void startElement(final String localName,
+                             final AttributeCursor attributes,
+                             final String uri,
+                             final String prefix) throws IOException {
 
-        // declare new namespaces
-        for (Map.Entry<String , String> namespace : mNamespaceMap.entrySet()){
-            mWriter.write(" xmlns:");
-            mWriter.write(namespace.getKey());
-            mWriter.write("=\"");
-            mWriter.write(namespace.getValue());
-            mWriter.write("\"");
-        }
-        mNamespaceMap.clear();
+        writeStartTag(localName, uri, prefix);
 
         // declare attributes
-        for (Attribute attribute : attributes){
-            mWriter.write(" ");
-            mWriter.write(attribute.getQualifiedName());
-            mWriter.write("=\"");
-            mWriter.write(attribute.getValue());
-            mWriter.write("\"");
+        AXMLParser parser = attributes.getParser();
+        boolean passthrough = isPassthrough(parser);
+        int count = attributes.getCount();
+        for (int i = 0; i < count; ++i) {
+            write(' ');
+            String attributePrefix = attributes.getPrefix(i);
+            if (attributePrefix != null) {
+                write(attributePrefix);
+                write(':');
+            }
+
+            int valueIndex = attributes.getValueStringIndex(i);
+            if (passthrough) {
+                writeRaw(parser, attributes.getNameIndex(i), false);
+                write("=\"");
+                if (valueIndex == AXMLParser.ATTR_TYPED_VALUE) {
+                    writeEscaped(attributes.getValue(i), true);
+                } else {
+                    writeRaw(parser, valueIndex, true);
+                }
+            } else {
+                write(attributes.getName(i));
+                write("=\"");
+                writeEscaped(attributes.getValue(i), true);
+            }
+            write('"');
         }
 
         // update internal state
@@ -113,18 +139,18 @@ public class OutputStreamListener implements AXMLParser.Listener {
         switch (mPreviousElement) {
             case START_TAG:
                 // self close
-                mWriter.write("/>\n");
+                write("/>\n");
                 break;
             case END_TAG:
                 writeIndentation();
-                mWriter.write("</");
+                write("</");
                 writeTagName(localName, uri, prefix);
-                mWriter.write(">\n");
+                write(">\n");
                 break;
             case TEXT:
-                mWriter.write("</");
+                write("</");
                 writeTagName(localName, uri, prefix);
-                mWriter.write(">\n");
+                write(">\n");
                 break;
         }
 
@@ -133,15 +159,69 @@ public class OutputStreamListener implements AXMLParser.Listener {
 
     @Override
     public void text(final String data) throws IOException {
-        if (mPreviousElement == START_TAG){
-            // close previous start tag
-            mWriter.write(">");
+        closeStartTag();
+
+        writeEscaped(data, false);
+        mPreviousElement = TEXT;
+    }
+
+    @Override
+    public void text(final AXMLParser parser, final int stringIndex) throws IOException {
+        if (!isPassthrough(parser)) {
+            text(parser.getString(stringIndex));
+            return;
         }
 
-        mWriter.write(data);
+        closeStartTag();
+
+        writeRaw(parser, stringIndex, false);
         mPreviousElement = TEXT;
     }
 
+    private boolean isPassthrough(final AXMLParser parser) {
+        return mUtf8Passthrough && parser.hasRawUtf8Strings();
+    }
+
+    /**
+     * Writes the beginning of a start tag, up to the namespaces declarations
+     *
+     * @throws IOException
+     */
+    private void writeStartTag(final String localName,
+                               final String uri,
+                               final String prefix) throws IOException {
+        if (mPreviousElement == START_TAG) {
+            // close previous start tag
+            write(">\n");
+        }
+
+        if (mPreviousElement == TEXT) {
+            // add line break
+            write('\n');
+        }
+
+        writeIndentation();
+
+        write('<');
+        writeTagName(localName, uri, prefix);
+
+        // declare new namespaces
+        for (Map.Entry<String, String> namespace : mNamespaceMap.entrySet()) {
+            write(" xmlns:");
+            write(namespace.getKey());
+            write("=\"");
+            writeEscaped(namespace.getValue(), true);
+            write('"');
+        }
+        mNamespaceMap.clear();
+    }
+
+    private void closeStartTag() throws IOException {
+        if (mPreviousElement == START_TAG) {
+            // close previous start tag
+            write('>');
+        }
+    }
 
     /**
      * Writes the proper indentation
@@ -151,7 +231,7 @@ public class OutputStreamListener implements AXMLParser.Listener {
     private void writeIndentation() throws IOException {
 
         for (int i = 0; i < mDepth; ++i) {
-            mWriter.write("  ");
+            write("  ");
         }
     }
 
@@ -168,12 +248,140 @@ public class OutputStreamListener implements AXMLParser.Listener {
                               final String prefix)
             throws IOException {
 
-        if ((uri != null) && (uri.length() > 0)){
-            mWriter.write(prefix);
-            mWriter.write(":");
+        if ((uri != null) && (uri.length() > 0)) {
+            write(prefix);
+            write(':');
         }
-        mWriter.write(localName);
+        write(localName);
     }
 
+    /**
+     * Copies the raw UTF-8 bytes of a string from the parser's string pool. As the bytes of the
+     * multi-bytes sequences are all above 0x7F, the markup characters can be escaped byte per byte.
+     *
+     * @param parser      the parser holding a UTF-8 string pool
+     * @param stringIndex the string index
+     * @param attribute   true to escape the string as an attribute value
+     * @throws IOException
+     */
+    private void writeRaw(final AXMLParser parser, final int stringIndex, final boolean attribute)
+            throws IOException {
+        byte[] source = parser.getRawStrings();
+        int offset = parser.getRawStringOffset(stringIndex);
+        int end = offset + parser.getRawStringLength(stringIndex);
+
+        int start = offset;
+        for (int i = offset; i < end; ++i) {
+            String entity = getEntity(source[i], attribute);
+            if (entity != null) {
+                writeBytes(source, start, i - start);
+                write(entity);
+                start = i + 1;
+            }
+        }
+        writeBytes(source, start, end - start);
+    }
+
+    /**
+     * Writes a string, escaping the markup characters
+     *
+     * @param attribute true to escape the string as an attribute value
+     * @throws IOException
+     */
+    private void writeEscaped(final String value, final boolean attribute) throws IOException {
+        int length = value.length();
+        for (int i = 0; i < length; ++i) {
+            char c = value.charAt(i);
+            String entity = getEntity(c, attribute);
+            if (entity != null) {
+                write(entity);
+            } else if (Character.isHighSurrogate(c) && ((i + 1) < length)
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                write(Character.toCodePoint(c, value.charAt(++i)));
+            } else {
+                write(c);
+            }
+        }
+    }
 
+    private static String getEntity(final int c, final boolean attribute) {
+        switch (c) {
+            case '&':
+                return "&amp;";
+            case '<':
+                return "&lt;";
+            case '>':
+                return "&gt;";
+            case '"':
+                return attribute ? "&quot;" : null;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Writes a string without escaping
+     *
+     * @throws IOException
+     */
+    private void write(final String value) throws IOException {
+        int length = value.length();
+        for (int i = 0; i < length; ++i) {
+            char c = value.charAt(i);
+            if (Character.isHighSurrogate(c) && ((i + 1) < length)
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                write(Character.toCodePoint(c, value.charAt(++i)));
+            } else {
+                write(c);
+            }
+        }
+    }
+
+    /**
+     * Writes a code point, UTF-8 encoded (unpaired surrogates are replaced with '?')
+     *
+     * @throws IOException
+     */
+    private void write(final int codePoint) throws IOException {
+        if ((mBufferLength + 4) > mBuffer.length) {
+            flushBuffer();
+        }
+
+        if (codePoint < 0x80) {
+            mBuffer[mBufferLength++] = (byte) codePoint;
+        } else if (codePoint < 0x800) {
+            mBuffer[mBufferLength++] = (byte) (0xC0 | (codePoint >> 6));
+            mBuffer[mBufferLength++] = (byte) (0x80 | (codePoint & 0x3F));
+        } else if ((codePoint >= Character.MIN_SURROGATE) && (codePoint <= Character.MAX_SURROGATE)) {
+            mBuffer[mBufferLength++] = '?';
+        } else if (codePoint < 0x10000) {
+            mBuffer[mBufferLength++] = (byte) (0xE0 | (codePoint >> 12));
+            mBuffer[mBufferLength++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+            mBuffer[mBufferLength++] = (byte) (0x80 | (codePoint & 0x3F));
+        } else {
+            mBuffer[mBufferLength++] = (byte) (0xF0 | (codePoint >> 18));
+            mBuffer[mBufferLength++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+            mBuffer[mBufferLength++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+            mBuffer[mBufferLength++] = (byte) (0x80 | (codePoint & 0x3F));
+        }
+    }
+
+    private void writeBytes(final byte[] source, final int offset, final int length) throws IOException {
+        if ((mBufferLength + length) > mBuffer.length) {
+            flushBuffer();
+            if (length > mBuffer.length) {
+                mOutputStream.write(source, offset, length);
+                return;
+            }
+        }
+        System.arraycopy(source, offset, mBuffer, mBufferLength, length);
+        mBufferLength += length;
+    }
+
+    private void flushBuffer() throws IOException {
+        if (mBufferLength > 0) {
+            mOutputStream.write(mBuffer, 0, mBufferLength);
+            mBufferLength = 0;
+        }
+    }
 }
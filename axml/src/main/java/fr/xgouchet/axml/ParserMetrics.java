@@ -0,0 +1,158 @@
+package fr.xgouchet.axml;
+
+/**
+ * A ParserTracer aggregating simple metrics over one or more parsed documents : the number of
+ * chunks per type, the bytes consumed, the number of decoded strings, the unknown chunks skipped
+ * and the time spent in each phase (string pool, resource table and element stream).
+ * <p/>
+ * This class is not thread safe, use one instance per parser.
+ *
+ * @author Xavier Gouchet
+ */
+public class ParserMetrics implements ParserTracer {
+
+    public static final int PHASE_STRING_POOL = 0;
+    public static final int PHASE_RESOURCE_TABLE = 1;
+    public static final int PHASE_ELEMENT_STREAM = 2;
+
+    private static final int[] CHUNK_TYPES = new int[]{
+            AXMLParser.WORD_START_DOCUMENT,
+            AXMLParser.WORD_STRING_TABLE,
+            AXMLParser.WORD_RES_TABLE,
+            AXMLParser.WORD_START_NAMESPACE,
+            AXMLParser.WORD_END_NAMESPACE,
+            AXMLParser.WORD_START_TAG,
+            AXMLParser.WORD_END_TAG,
+            AXMLParser.WORD_TEXT
+    };
+
+    private final int[] mChunkCounts = new int[CHUNK_TYPES.length];
+    private final long[] mPhaseNanos = new long[3];
+    private long mBytesConsumed;
+    private int mStringsDecoded;
+    private int mUnknownChunks;
+    private int mDocuments;
+
+    @Override
+    public void onChunk(final int chunkType, final int offset, final int size, final long durationNanos) {
+        int index = indexOf(chunkType);
+        if (index >= 0) {
+            mChunkCounts[index]++;
+        }
+
+        switch (chunkType) {
+            case AXMLParser.WORD_STRING_TABLE:
+                mPhaseNanos[PHASE_STRING_POOL] += durationNanos;
+                break;
+            case AXMLParser.WORD_RES_TABLE:
+                mPhaseNanos[PHASE_RESOURCE_TABLE] += durationNanos;
+                break;
+            default:
+                mPhaseNanos[PHASE_ELEMENT_STREAM] += durationNanos;
+                break;
+        }
+    }
+
+    @Override
+    public void onUnknownChunk(final int chunkType, final int offset) {
+        mUnknownChunks++;
+    }
+
+    @Override
+    public void onStringDecoded(final int index) {
+        mStringsDecoded++;
+    }
+
+    @Override
+    public void onDocumentEnd(final int bytesConsumed) {
+        mBytesConsumed += bytesConsumed;
+        mDocuments++;
+    }
+
+    /**
+     * @param chunkType the chunk type (one of the AXMLParser.WORD_XXX constants)
+     * @return the number of chunks of the given type read so far
+     */
+    public int getChunkCount(final int chunkType) {
+        int index = indexOf(chunkType);
+        return (index < 0) ? 0 : mChunkCounts[index];
+    }
+
+    /**
+     * @param phase the phase (PHASE_STRING_POOL, PHASE_RESOURCE_TABLE or PHASE_ELEMENT_STREAM)
+     * @return the time spent in the given phase so far, in nanoseconds
+     */
+    public long getPhaseNanos(final int phase) {
+        return mPhaseNanos[phase];
+    }
+
+    /**
+     * @return the number of bytes consumed in all the completely parsed documents
+     */
+    public long getBytesConsumed() {
+        return mBytesConsumed;
+    }
+
+    /**
+     * @return the number of strings decoded from the string pools
+     */
+    public int getStringsDecoded() {
+        return mStringsDecoded;
+    }
+
+    /**
+     * @return the number of unknown chunks skipped
+     */
+    public int getUnknownChunks() {
+        return mUnknownChunks;
+    }
+
+    /**
+     * @return the number of completely parsed documents
+     */
+    public int getDocuments() {
+        return mDocuments;
+    }
+
+    /**
+     * Resets all the metrics
+     */
+    public void reset() {
+        for (int i = 0; i < mChunkCounts.length; ++i) {
+            mChunkCounts[i] = 0;
+        }
+        for (int i = 0; i < mPhaseNanos.length; ++i) {
+            mPhaseNanos[i] = 0;
+        }
+        mBytesConsumed = 0;
+        mStringsDecoded = 0;
+        mUnknownChunks = 0;
+        mDocuments = 0;
+    }
+
+    @Override
+    public String toString() {
+        return "ParserMetrics{"
+                + "documents=" + mDocuments
+                + ", bytes=" + mBytesConsumed
+                + ", startTags=" + getChunkCount(AXMLParser.WORD_START_TAG)
+                + ", endTags=" + getChunkCount(AXMLParser.WORD_END_TAG)
+                + ", texts=" + getChunkCount(AXMLParser.WORD_TEXT)
+                + ", namespaces=" + getChunkCount(AXMLParser.WORD_START_NAMESPACE)
+                + ", stringsDecoded=" + mStringsDecoded
+                + ", unknownChunks=" + mUnknownChunks
+                + ", stringPoolNanos=" + mPhaseNanos[PHASE_STRING_POOL]
+                + ", resourceTableNanos=" + mPhaseNanos[PHASE_RESOURCE_TABLE]
+                + ", elementStreamNanos=" + mPhaseNanos[PHASE_ELEMENT_STREAM]
+                + "}";
+    }
+
+    private static int indexOf(final int chunkType) {
+        for (int i = 0; i < CHUNK_TYPES.length; ++i) {
+            if (CHUNK_TYPES[i] == chunkType) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
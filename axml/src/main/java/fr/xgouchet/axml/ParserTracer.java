@@ -0,0 +1,45 @@
+package fr.xgouchet.axml;
+
+/**
+ * A ParserTracer is notified by an AXMLParser of its progress through a document. It can be
+ * used to collect metrics (see {@link ParserMetrics}) or to locate slow or unusual documents.
+ * <p/>
+ * The callbacks are made on the parsing thread, in the middle of the parsing, so they should
+ * return as fast as possible.
+ *
+ * @author Xavier Gouchet
+ */
+public interface ParserTracer {
+
+    /**
+     * Called after a known block (chunk) has been read
+     *
+     * @param chunkType     the chunk type (one of the AXMLParser.WORD_XXX constants)
+     * @param offset        the offset of the chunk in the document
+     * @param size          the number of bytes consumed by the chunk
+     * @param durationNanos the time spent reading the chunk (and in the listener callbacks)
+     */
+    void onChunk(int chunkType, int offset, int size, long durationNanos);
+
+    /**
+     * Called when an unknown block id is skipped
+     *
+     * @param chunkType the unknown chunk type
+     * @param offset    the offset of the chunk in the document
+     */
+    void onUnknownChunk(int chunkType, int offset);
+
+    /**
+     * Called when a string from the string pool is decoded
+     *
+     * @param index the index of the string in the pool
+     */
+    void onStringDecoded(int index);
+
+    /**
+     * Called when the end of the document is reached
+     *
+     * @param bytesConsumed the total number of bytes read
+     */
+    void onDocumentEnd(int bytesConsumed);
+}
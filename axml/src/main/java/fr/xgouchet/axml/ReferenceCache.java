@@ -0,0 +1,144 @@
+package fr.xgouchet.axml;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded cache of rendered resource references (eg : <code>@android:drawable/0x01080042</code>),
+ * keyed by the reference prefix and the int resource id.
+ * <p/>
+ * The same references appear in most documents of an application, so a single cache can be
+ * shared by several parsers, across documents and threads (eg : by all the workers of an
+ * AXMLBatchDecoder). Lookups and insertions are lock free ; once the cache is full, new references
+ * are still rendered but not cached anymore.
+ *
+ * @author Xavier Gouchet
+ */
+public final class ReferenceCache {
+
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    private static final int MAX_PROBES = 8;
+
+    private final AtomicReferenceArray<Entry> mEntries;
+    private final int mMask;
+    private final int mCapacity;
+    private final AtomicInteger mSize = new AtomicInteger();
+
+    /**
+     * Creates a cache holding up to DEFAULT_CAPACITY references
+     */
+    public ReferenceCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity the maximum number of references held in this cache
+     */
+    public ReferenceCache(final int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be at least 1");
+        }
+
+        // keep the table at most half full to keep the probe sequences short
+        int tableSize = Integer.highestOneBit(capacity) << 1;
+        if (tableSize < (capacity << 1)) {
+            tableSize <<= 1;
+        }
+        mEntries = new AtomicReferenceArray<>(tableSize);
+        mMask = tableSize - 1;
+        mCapacity = capacity;
+    }
+
+    /**
+     * @param prefix the reference prefix ('@' or '?')
+     * @param id     the resource id
+     * @return the cached reference, or null
+     */
+    String get(final char prefix, final int id) {
+        int slot = hash(prefix, id);
+        for (int probe = 0; probe < MAX_PROBES; ++probe) {
+            Entry entry = mEntries.get(slot);
+            if (entry == null) {
+                return null;
+            }
+            if ((entry.mId == id) && (entry.mPrefix == prefix)) {
+                return entry.mValue;
+            }
+            slot = (slot + 1) & mMask;
+        }
+        return null;
+    }
+
+    /**
+     * Adds a reference in this cache, unless the cache is full
+     *
+     * @param prefix the reference prefix ('@' or '?')
+     * @param id     the resource id
+     * @param value  the rendered reference
+     */
+    void put(final char prefix, final int id, final String value) {
+        Entry newEntry = null;
+        int slot = hash(prefix, id);
+        for (int probe = 0; probe < MAX_PROBES; ++probe) {
+            Entry entry = mEntries.get(slot);
+            if (entry == null) {
+                if (mSize.get() >= mCapacity) {
+                    return;
+                }
+                if (newEntry == null) {
+                    newEntry = new Entry(prefix, id, value);
+                }
+                if (mEntries.compareAndSet(slot, null, newEntry)) {
+                    mSize.incrementAndGet();
+                    return;
+                }
+                // another thread took this slot, check it again
+                entry = mEntries.get(slot);
+                if (entry == null) {
+                    return;
+                }
+            }
+            if ((entry.mId == id) && (entry.mPrefix == prefix)) {
+                return;
+            }
+            slot = (slot + 1) & mMask;
+        }
+    }
+
+    /**
+     * @return the number of references currently cached
+     */
+    public int getSize() {
+        return mSize.get();
+    }
+
+    /**
+     * Removes all the cached references
+     */
+    public void clear() {
+        for (int i = 0; i <= mMask; ++i) {
+            if (mEntries.getAndSet(i, null) != null) {
+                mSize.decrementAndGet();
+            }
+        }
+    }
+
+    private int hash(final char prefix, final int id) {
+        int hash = (id ^ (prefix << 24)) * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & mMask;
+    }
+
+    private static final class Entry {
+
+        final char mPrefix;
+        final int mId;
+        final String mValue;
+
+        Entry(final char prefix, final int id, final String value) {
+            mPrefix = prefix;
+            mId = id;
+            mValue = value;
+        }
+    }
+}
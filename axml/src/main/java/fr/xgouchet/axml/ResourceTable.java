@@ -0,0 +1,443 @@
+package fr.xgouchet.axml;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * An index of the resources declared in a compiled resources table (the resources.arsc file of an
+ * application), used to resolve the resource ids to their names (eg : 0x7F040001 to
+ * string/app_name).
+ * <p/>
+ * The table file is memory mapped, and only the key of each resource is indexed, in int arrays
+ * addressed by the package, type and entry of the resource id. The names are decoded from the
+ * mapped file the first time they are needed, and the rendered references are kept, so a
+ * reference is only built once whatever the number of documents using it. A table can be shared
+ * by several parsers, even on several threads.
+ *
+ * @author Xavier Gouchet
+ */
+public final class ResourceTable {
+
+    private static final int RES_STRING_POOL_TYPE = 0x0001;
+    private static final int RES_TABLE_TYPE = 0x0002;
+    private static final int RES_TABLE_PACKAGE_TYPE = 0x0200;
+    private static final int RES_TABLE_TYPE_TYPE = 0x0201;
+
+    private static final int CHUNK_HEADER_SIZE = 8;
+    // the type chunk header, up to the entries offset (the configuration size varies)
+    private static final int TYPE_HEADER_SIZE = 20;
+    // the size and flags (16 bits each), and the key index
+    private static final int ENTRY_HEADER_SIZE = 8;
+    private static final int NO_ENTRY = 0xFFFFFFFF;
+    private static final int FLAG_SPARSE = 0x01;
+    private static final int FLAG_UTF8 = 0x100;
+
+    // the package name is written as 128 UTF-16 chars
+    private static final int PACKAGE_NAME_LENGTH = 128;
+    private static final int APPLICATION_PACKAGE_ID = 0x7F;
+
+    private static final char PREFIX_ID_REF = '@';
+
+    private final ByteBuffer mData;
+    private final Package[] mPackages = new Package[256];
+    private int mSize;
+
+    /**
+     * Memory maps and indexes the given resources table
+     *
+     * @param file the resources.arsc file
+     */
+    public ResourceTable(final File file) throws IOException {
+        this(mapFile(file));
+    }
+
+    /**
+     * Indexes the resources table held by the given buffer (from its current position to its
+     * limit). The buffer content is read in place, and must not be modified afterwards.
+     *
+     * @param buffer the buffer holding the resources table
+     */
+    public ResourceTable(final ByteBuffer buffer) throws IOException {
+        if (buffer == null) {
+            throw new NullPointerException();
+        }
+
+        mData = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+        parseTable();
+    }
+
+    /**
+     * @return the number of named resources in this table
+     */
+    public int getSize() {
+        return mSize;
+    }
+
+    /**
+     * @param id the resource id
+     * @return the name of the resource, including its type (eg : string/app_name), or null if
+     * the resource is unknown
+     */
+    public String getResourceName(final int id) {
+        Package pkg = mPackages[id >>> 24];
+        if (pkg == null) {
+            return null;
+        }
+
+        int typeId = (id >> 16) & 0xFF;
+        int key = pkg.getKey(typeId, id & 0xFFFF);
+        if (key == NO_ENTRY) {
+            return null;
+        }
+
+        return pkg.mTypeStrings.get(typeId - 1) + '/' + pkg.mKeyStrings.get(key);
+    }
+
+    /**
+     * @param prefix the reference prefix ('@' or '?')
+     * @param id     the resource id
+     * @return the reference to the resource (eg : @string/app_name, ?android:attr/textColor), or
+     * null if the resource is unknown
+     */
+    String getReference(final char prefix, final int id) {
+        Package pkg = mPackages[id >>> 24];
+        if (pkg == null) {
+            return null;
+        }
+
+        int typeId = (id >> 16) & 0xFF;
+        int entry = id & 0xFFFF;
+        int key = pkg.getKey(typeId, entry);
+        if (key == NO_ENTRY) {
+            return null;
+        }
+
+        String[] references = (prefix == PREFIX_ID_REF) ? pkg.mIdReferences[typeId] : pkg.mAttrReferences[typeId];
+        String reference = references[entry];
+        if (reference == null) {
+            // two threads may build the same reference, which is harmless
+            StringBuilder builder = new StringBuilder(32);
+            builder.append(prefix);
+            if (pkg.mId != APPLICATION_PACKAGE_ID) {
+                builder.append(pkg.mName).append(':');
+            }
+            builder.append(pkg.mTypeStrings.get(typeId - 1)).append('/').append(pkg.mKeyStrings.get(key));
+            reference = builder.toString();
+            references[entry] = reference;
+        }
+        return reference;
+    }
+
+    /**
+     * A resources table starts with the following header :
+     * <ul>
+     * <li>0 : 0x0002 (type, 16 bits), header size (16 bits)</li>
+     * <li>1 : table size</li>
+     * <li>2 : number of packages</li>
+     * </ul>
+     * The header is followed by the global values string pool, and by one chunk per package
+     */
+    private void parseTable() throws IOException {
+        if ((mData.limit() < (3 * AXMLParser.WORD_SIZE)) || (getShort(0) != RES_TABLE_TYPE)) {
+            throw new IOException("This document doesn't seem to be a resources table");
+        }
+
+        int tableSize = getChunkSize(0, mData.limit());
+        int offset = getShort(2);
+        while (offset < tableSize) {
+            int chunkSize = getChunkSize(offset, tableSize);
+            if (getShort(offset) == RES_TABLE_PACKAGE_TYPE) {
+                parsePackage(offset, chunkSize);
+            }
+            offset += chunkSize;
+        }
+    }
+
+    /**
+     * A package chunk starts with the following header :
+     * <ul>
+     * <li>0 : 0x0200 (type, 16 bits), header size (16 bits)</li>
+     * <li>1 : package chunk size</li>
+     * <li>2 : package id</li>
+     * <li>3..66 : package name (128 UTF-16 chars)</li>
+     * <li>67 : offset of the types string pool</li>
+     * <li>68 : last public type</li>
+     * <li>69 : offset of the keys string pool</li>
+     * <li>70 : last public key</li>
+     * </ul>
+     * The header is followed by the string pools, and by the type spec and type chunks
+     */
+    private void parsePackage(final int start, final int size) throws IOException {
+        int headerSize = getShort(start + 2);
+        int nameStart = start + (3 * AXMLParser.WORD_SIZE);
+        int nameEnd = nameStart + (PACKAGE_NAME_LENGTH * 2);
+
+        int packageId = mData.getInt(start + 8) & 0xFF;
+        Package pkg = new Package(packageId, readPackageName(nameStart),
+                new StringPool(start + mData.getInt(nameEnd), start + size),
+                new StringPool(start + mData.getInt(nameEnd + 8), start + size));
+
+        int offset = start + headerSize;
+        int end = start + size;
+        while (offset < end) {
+            int chunkSize = getChunkSize(offset, end);
+            if (getShort(offset) == RES_TABLE_TYPE_TYPE) {
+                parseType(pkg, offset, chunkSize);
+            }
+            offset += chunkSize;
+        }
+
+        pkg.allocateReferences();
+        mPackages[packageId] = pkg;
+    }
+
+    /**
+     * A type chunk (the values of a type for one configuration) starts with the following
+     * header :
+     * <ul>
+     * <li>0 : 0x0201 (type, 16 bits), header size (16 bits)</li>
+     * <li>1 : type chunk size</li>
+     * <li>2 : type id (8 bits), flags (8 bits), reserved (16 bits)</li>
+     * <li>3 : entries count</li>
+     * <li>4 : offset of the entries</li>
+     * <li>5.. : configuration</li>
+     * </ul>
+     * The header is followed by the offset of each entry (or 0xFFFFFFFF if the entry is missing
+     * for this configuration). Each entry starts with its size and flags (16 bits each) and the
+     * index of its name in the keys string pool.
+     *
+     * @throws IOException if the offsets or the entries don't fit in the chunk
+     */
+    private void parseType(final Package pkg, final int start, final int size) throws IOException {
+        int headerSize = getShort(start + 2);
+        if ((headerSize < TYPE_HEADER_SIZE) || (headerSize > size)) {
+            throw invalidType("header size " + headerSize, start);
+        }
+
+        int typeId = mData.get(start + 8) & 0xFF;
+        if (typeId == 0) {
+            throw invalidType("type id 0", start);
+        }
+
+        boolean sparse = (mData.get(start + 9) & FLAG_SPARSE) != 0;
+        int entriesCount = mData.getInt(start + 12);
+        int entriesOffset = mData.getInt(start + 16);
+        if ((entriesCount < 0) || (entriesCount > ((size - headerSize) / AXMLParser.WORD_SIZE))) {
+            throw invalidType("entries count " + entriesCount, start);
+        }
+        if ((entriesOffset < (headerSize + (entriesCount * AXMLParser.WORD_SIZE))) || (entriesOffset > size)) {
+            throw invalidType("entries offset " + entriesOffset, start);
+        }
+
+        int offsets = start + headerSize;
+        int entriesStart = start + entriesOffset;
+        // the last offset at which an entry header (size, flags and key) fits in the chunk
+        int maxEntryOffset = size - entriesOffset - ENTRY_HEADER_SIZE;
+        int previousEntry = -1;
+        for (int i = 0; i < entriesCount; ++i) {
+            int entry, entryOffset;
+            if (sparse) {
+                // sparse entries : 16 bits index, 16 bits offset (in words), sorted by index
+                entry = getShort(offsets + (i * AXMLParser.WORD_SIZE));
+                entryOffset = getShort(offsets + (i * AXMLParser.WORD_SIZE) + 2) * AXMLParser.WORD_SIZE;
+                if (entry <= previousEntry) {
+                    throw invalidType("sparse entry index " + entry, start);
+                }
+                previousEntry = entry;
+            } else {
+                entry = i;
+                entryOffset = mData.getInt(offsets + (i * AXMLParser.WORD_SIZE));
+                if (entryOffset == NO_ENTRY) {
+                    continue;
+                }
+            }
+
+            if ((entryOffset < 0) || (entryOffset > maxEntryOffset)) {
+                throw invalidType("entry offset " + entryOffset, start);
+            }
+
+            if (pkg.setKey(typeId, entry, mData.getInt(entriesStart + entryOffset + 4))) {
+                mSize++;
+            }
+        }
+    }
+
+    private static IOException invalidType(final String detail, final int start) {
+        return new IOException("Invalid " + detail + " in the type chunk at position 0x"
+                + Integer.toHexString(start));
+    }
+
+    private String readPackageName(final int offset) {
+        char[] name = new char[PACKAGE_NAME_LENGTH];
+        int length = 0;
+        while (length < PACKAGE_NAME_LENGTH) {
+            char c = mData.getChar(offset + (length * 2));
+            if (c == 0) {
+                break;
+            }
+            name[length++] = c;
+        }
+        return new String(name, 0, length);
+    }
+
+    /**
+     * @return the size of the chunk starting at the given offset
+     * @throws IOException if the chunk doesn't fit in its parent
+     */
+    private int getChunkSize(final int offset, final int parentEnd) throws IOException {
+        int size = mData.getInt(offset + 4);
+        if ((size < CHUNK_HEADER_SIZE) || (size > (parentEnd - offset))) {
+            throw new IOException("Invalid chunk size " + size + " at position 0x"
+                    + Integer.toHexString(offset));
+        }
+        return size;
+    }
+
+    private int getShort(final int offset) {
+        return mData.getShort(offset) & 0xFFFF;
+    }
+
+    private static ByteBuffer mapFile(final File file) throws IOException {
+        if (file == null) {
+            throw new NullPointerException();
+        }
+
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = randomAccessFile.getChannel();
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            // the mapping stays valid once the file is closed
+            randomAccessFile.close();
+        }
+    }
+
+    /**
+     * The resources of a package, indexed by type id and entry index
+     */
+    private static final class Package {
+
+        final int mId;
+        final String mName;
+        final StringPool mTypeStrings;
+        final StringPool mKeyStrings;
+
+        final int[][] mKeys = new int[256][];
+        final String[][] mIdReferences = new String[256][];
+        final String[][] mAttrReferences = new String[256][];
+
+        Package(final int id, final String name, final StringPool typeStrings, final StringPool keyStrings) {
+            mId = id;
+            mName = name;
+            mTypeStrings = typeStrings;
+            mKeyStrings = keyStrings;
+        }
+
+        /**
+         * @return the index of the entry name in the keys string pool, or NO_ENTRY
+         */
+        int getKey(final int typeId, final int entry) {
+            int[] keys = mKeys[typeId];
+            if ((keys == null) || (entry >= keys.length)) {
+                return NO_ENTRY;
+            }
+            return keys[entry];
+        }
+
+        /**
+         * @return true if the entry was not indexed yet (by another configuration)
+         */
+        boolean setKey(final int typeId, final int entry, final int key) {
+            int[] keys = mKeys[typeId];
+            if ((keys == null) || (entry >= keys.length)) {
+                int length = (keys == null) ? 0 : keys.length;
+                int[] grown = new int[Math.max(entry + 1, length * 2)];
+                Arrays.fill(grown, length, grown.length, NO_ENTRY);
+                if (keys != null) {
+                    System.arraycopy(keys, 0, grown, 0, length);
+                }
+                keys = grown;
+                mKeys[typeId] = keys;
+            }
+
+            if (keys[entry] != NO_ENTRY) {
+                return false;
+            }
+            keys[entry] = key;
+            return true;
+        }
+
+        void allocateReferences() {
+            for (int typeId = 0; typeId < mKeys.length; ++typeId) {
+                if (mKeys[typeId] != null) {
+                    mIdReferences[typeId] = new String[mKeys[typeId].length];
+                    mAttrReferences[typeId] = new String[mKeys[typeId].length];
+                }
+            }
+        }
+    }
+
+    /**
+     * A string pool read in place :
+     * <ul>
+     * <li>0 : 0x0001 (type, 16 bits), header size (16 bits)</li>
+     * <li>1 : string pool size</li>
+     * <li>2 : number of strings</li>
+     * <li>3 : number of styles</li>
+     * <li>4 : flags (0x100 = UTF-8, otherwise UTF-16 Little Endian)</li>
+     * <li>5 : offset of the strings data</li>
+     * <li>6 : offset of the styles data</li>
+     * </ul>
+     * The header is followed by the offset of each string
+     */
+    private final class StringPool {
+
+        private final int mStart;
+        private final int mCount;
+        private final boolean mUtf8;
+        private final int mDataStart;
+        private final String[] mStrings;
+        // decodes from the mapped table, shared by the threads reading this table
+        private final StringPoolDecoder mDecoder = new StringPoolDecoder();
+
+        StringPool(final int start, final int parentEnd) throws IOException {
+            if ((start < 0) || (start > (parentEnd - (7 * AXMLParser.WORD_SIZE)))
+                    || (getShort(start) != RES_STRING_POOL_TYPE)) {
+                throw new IOException("Invalid string pool at position 0x" + Integer.toHexString(start));
+            }
+            getChunkSize(start, parentEnd);
+
+            mStart = start;
+            mCount = mData.getInt(start + 8);
+            mUtf8 = (mData.getInt(start + 16) & FLAG_UTF8) != 0;
+            mDataStart = start + mData.getInt(start + 20);
+            mStrings = new String[mCount];
+            mDecoder.setData(mData, mUtf8 ? AXMLParser.ENCODING_UTF8 : AXMLParser.ENCODING_UTF16_LE);
+        }
+
+        /**
+         * @param index the string index
+         * @return the decoded string (decoded once, then kept)
+         */
+        String get(final int index) {
+            if ((index < 0) || (index >= mCount)) {
+                return "0x" + Integer.toHexString(index);
+            }
+
+            String string = mStrings[index];
+            if (string == null) {
+                int offset = mDataStart + mData.getInt(mStart + getShort(mStart + 2) + (index * AXMLParser.WORD_SIZE));
+                synchronized (mDecoder) {
+                    string = mDecoder.decode(offset);
+                }
+                mStrings[index] = string;
+            }
+            return string;
+        }
+    }
+}
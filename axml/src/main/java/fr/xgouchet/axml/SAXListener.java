@@ -0,0 +1,214 @@
+package fr.xgouchet.axml;
+
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An AXMLParser.Listener implementation which forwards the parsing events to a SAX
+ * ContentHandler, so that existing SAX pipelines can consume compressed documents without
+ * building a DOM.
+ * <p/>
+ * The attributes of every element are given in a single reused AttributesImpl (only valid during
+ * the startElement call, as with most SAX parsers), and the qualified names are computed once per
+ * prefix and local name. A SAXException thrown by the handler stops the parsing, wrapped in an
+ * IOException.
+ * <p/>
+ * The namespace declarations are only reported as prefix mappings (as with the SAX
+ * "namespace-prefixes" feature disabled).
+ *
+ * @author Xavier Gouchet
+ */
+public class SAXListener implements AXMLParser.CursorListener {
+
+    private static final String CDATA = "CDATA";
+
+    // above this many qualified names, the cache is cleared
+    private static final int MAX_QUALIFIED_NAMES = 1024;
+
+    private final ContentHandler mHandler;
+    private final AttributesImpl mAttributes = new AttributesImpl();
+    private final Map<String, QualifiedName> mQualifiedNames = new HashMap<>();
+    private final List<String> mPendingStartPrefixes = new ArrayList<>();
+    private final List<String> mPendingStartUris = new ArrayList<>();
+    private final List<String> mPendingEndPrefixes = new ArrayList<>();
+    private char[] mChars = new char[256];
+
+    /**
+     * @param handler the SAX handler receiving the events
+     */
+    public SAXListener(final ContentHandler handler) {
+        if (handler == null) {
+            throw new NullPointerException();
+        }
+        mHandler = handler;
+    }
+
+    @Override
+    public void startDocument() throws IOException {
+        mPendingStartPrefixes.clear();
+        mPendingStartUris.clear();
+        mPendingEndPrefixes.clear();
+
+        try {
+            mHandler.startDocument();
+        } catch (SAXException e) {
+            throw new IOException(e);
+        }
+    }
+
+    @Override
+    public void endDocument() throws IOException {
+        try {
+            flushEndPrefixMappings();
+            mHandler.endDocument();
+        } catch (SAXException e) {
+            throw new IOException(e);
+        }
+    }
+
+    @Override
+    public void startPrefixMapping(final String prefix, final String uri) {
+        // the handler may throw, which is only possible in the next events
+        mPendingStartPrefixes.add(prefix);
+        mPendingStartUris.add(uri);
+    }
+
+    @Override
+    public void endPrefixMapping(final String prefix, final String uri) {
+        mPendingEndPrefixes.add(prefix);
+    }
+
+    @Override
+    public void startElement(final String localName,
+                             final Attribute[] attributes,
+                             final String uri,
+                             final String prefix) throws IOException {
+        mAttributes.clear();
+        for (Attribute attribute : attributes) {
+            mAttributes.addAttribute(nonNull(attribute.getNamespaceUri()),
+                    attribute.getName(),
+                    getQualifiedName(attribute.getPrefix(), attribute.getName()),
+                    CDATA,
+                    attribute.getValue());
+        }
+
+        startElement(localName, uri, prefix);
+    }
+
+    @Override
+    public void startElement(final String localName,
+                             final AttributeCursor attributes,
+                             final String uri,
+                             final String prefix) throws IOException {
+        mAttributes.clear();
+        int count = attributes.getCount();
+        for (int i = 0; i < count; ++i) {
+            String name = attributes.getName(i);
+            mAttributes.addAttribute(nonNull(attributes.getNamespaceUri(i)),
+                    name,
+                    getQualifiedName(attributes.getPrefix(i), name),
+                    CDATA,
+                    attributes.getValue(i));
+        }
+
+        startElement(localName, uri, prefix);
+    }
+
+    @Override
+    public void endElement(final String localName,
+                           final String uri,
+                           final String prefix) throws IOException {
+        try {
+            flushEndPrefixMappings();
+            mHandler.endElement(nonNull(uri), localName, getQualifiedName(prefix, localName));
+        } catch (SAXException e) {
+            throw new IOException(e);
+        }
+    }
+
+    @Override
+    public void text(final String data) throws IOException {
+        int length = data.length();
+        if (length > mChars.length) {
+            mChars = new char[Math.max(length, mChars.length * 2)];
+        }
+        data.getChars(0, length, mChars, 0);
+
+        try {
+            flushEndPrefixMappings();
+            mHandler.characters(mChars, 0, length);
+        } catch (SAXException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Forwards the start of an element, once its attributes are ready
+     */
+    private void startElement(final String localName,
+                              final String uri,
+                              final String prefix) throws IOException {
+        try {
+            flushEndPrefixMappings();
+            for (int i = 0; i < mPendingStartPrefixes.size(); ++i) {
+                mHandler.startPrefixMapping(mPendingStartPrefixes.get(i), mPendingStartUris.get(i));
+            }
+            mPendingStartPrefixes.clear();
+            mPendingStartUris.clear();
+
+            mHandler.startElement(nonNull(uri), localName, getQualifiedName(prefix, localName), mAttributes);
+        } catch (SAXException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private void flushEndPrefixMappings() throws SAXException {
+        for (int i = 0; i < mPendingEndPrefixes.size(); ++i) {
+            mHandler.endPrefixMapping(mPendingEndPrefixes.get(i));
+        }
+        mPendingEndPrefixes.clear();
+    }
+
+    /**
+     * @param prefix    the namespace prefix, or null
+     * @param localName the local name
+     * @return the qualified name (prefix:localName), computed once per prefix and local name
+     */
+    private String getQualifiedName(final String prefix, final String localName) {
+        if ((prefix == null) || (prefix.length() == 0)) {
+            return localName;
+        }
+
+        QualifiedName qualifiedName = mQualifiedNames.get(localName);
+        if ((qualifiedName == null) || !qualifiedName.mPrefix.equals(prefix)) {
+            if (mQualifiedNames.size() >= MAX_QUALIFIED_NAMES) {
+                mQualifiedNames.clear();
+            }
+            qualifiedName = new QualifiedName(prefix, prefix + ':' + localName);
+            mQualifiedNames.put(localName, qualifiedName);
+        }
+        return qualifiedName.mName;
+    }
+
+    private static String nonNull(final String string) {
+        return (string == null) ? "" : string;
+    }
+
+    private static final class QualifiedName {
+
+        final String mPrefix;
+        final String mName;
+
+        QualifiedName(final String prefix, final String name) {
+            mPrefix = prefix;
+            mName = name;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package fr.xgouchet.axml;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded set of canonical String instances, shared by several parsers so that the strings
+ * found in many documents (eg : <code>http://schemas.android.com/apk/res/android</code>,
+ * <code>layout_width</code>, <code>match_parent</code>) are kept only once in memory, however
+ * many decoded documents are retained.
+ * <p/>
+ * Lookups and insertions are lock free, so an interner can be shared across threads (eg : by all
+ * the parsers of an AXMLParserPool). Once the interner is full, or for long strings (which are
+ * rarely repeated), the decoded strings are returned as is.
+ *
+ * @author Xavier Gouchet
+ */
+public final class StringInterner {
+
+    public static final int DEFAULT_CAPACITY = 16 * 1024;
+
+    // the longer strings are mostly texts, which are rarely repeated
+    private static final int MAX_INTERNED_LENGTH = 128;
+
+    private static final int MAX_PROBES = 8;
+
+    private final AtomicReferenceArray<String> mStrings;
+    private final int mMask;
+    private final int mCapacity;
+    private final AtomicInteger mSize = new AtomicInteger();
+
+    /**
+     * Creates an interner holding up to DEFAULT_CAPACITY strings
+     */
+    public StringInterner() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity the maximum number of strings held in this interner
+     */
+    public StringInterner(final int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be at least 1");
+        }
+
+        // keep the table at most half full to keep the probe sequences short
+        int tableSize = Integer.highestOneBit(capacity) << 1;
+        if (tableSize < (capacity << 1)) {
+            tableSize <<= 1;
+        }
+        mStrings = new AtomicReferenceArray<>(tableSize);
+        mMask = tableSize - 1;
+        mCapacity = capacity;
+    }
+
+    /**
+     * @param string a string
+     * @return the canonical instance equal to the given string, or the string itself if it is the
+     * first of its value (or if it can't be interned)
+     */
+    public String intern(final String string) {
+        if ((string == null) || (string.length() > MAX_INTERNED_LENGTH)) {
+            return string;
+        }
+
+        int slot = hash(string);
+        for (int probe = 0; probe < MAX_PROBES; ++probe) {
+            String interned = mStrings.get(slot);
+            if (interned == null) {
+                if (mSize.get() >= mCapacity) {
+                    return string;
+                }
+                if (mStrings.compareAndSet(slot, null, string)) {
+                    mSize.incrementAndGet();
+                    return string;
+                }
+                // another thread took this slot, check it again
+                interned = mStrings.get(slot);
+                if (interned == null) {
+                    return string;
+                }
+            }
+            if (interned.equals(string)) {
+                return interned;
+            }
+            slot = (slot + 1) & mMask;
+        }
+        return string;
+    }
+
+    /**
+     * @return the number of strings currently interned
+     */
+    public int getSize() {
+        return mSize.get();
+    }
+
+    /**
+     * Removes all the interned strings
+     */
+    public void clear() {
+        for (int i = 0; i <= mMask; ++i) {
+            if (mStrings.getAndSet(i, null) != null) {
+                mSize.decrementAndGet();
+            }
+        }
+    }
+
+    private int hash(final String string) {
+        int hash = string.hashCode() * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & mMask;
+    }
+}
@@ -0,0 +1,163 @@
+package fr.xgouchet.axml;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Decodes the strings of an AXML string pool, as written by the aapt tools :
+ * <ul>
+ * <li>UTF-8 : the length in UTF-16 chars, then the length in bytes, each written on 1 byte, or 2
+ * bytes (big endian, the first one with its high bit set) above 0x7F, then the bytes</li>
+ * <li>UTF-16LE : the length in chars, written on 1 char, or 2 chars (the first one with its high
+ * bit set) above 0x7FFF, then the chars</li>
+ * </ul>
+ * The pure ASCII UTF-8 strings (the most common ones : names, ids, dimensions, ...) are built
+ * straight from the pool bytes ; the other ones go through a reused CharsetDecoder.
+ * <p/>
+ * This class is not thread safe, each parser uses its own decoder.
+ *
+ * @author Xavier Gouchet
+ */
+final class StringPoolDecoder {
+
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+
+    private final CharsetDecoder mUtf8Decoder = Charset.forName("UTF-8").newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+    private ByteBuffer mData;
+    private ByteBuffer mSource;
+    private int mEncoding;
+    private char[] mChars = new char[256];
+    private CharBuffer mCharBuffer = CharBuffer.wrap(mChars);
+
+    /**
+     * @param data     the string pool data, as a Little Endian buffer (or null to release it)
+     * @param encoding the pool encoding (AXMLParser.ENCODING_UTF8 or ENCODING_UTF16_LE)
+     */
+    void setData(final ByteBuffer data, final int encoding) {
+        mData = data;
+        mSource = (data == null) ? null : data.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        mEncoding = encoding;
+    }
+
+    /**
+     * @param offset the offset of the string (its length prefix) in the pool data
+     * @return the decoded string
+     */
+    String decode(final int offset) {
+        if (mEncoding == AXMLParser.ENCODING_UTF8) {
+            return decodeUtf8(offset);
+        } else {
+            return decodeUtf16(offset);
+        }
+    }
+
+    /**
+     * @param offset the offset of the string (its length prefix) in the pool data
+     * @return the length of the string in UTF-16 chars, as written in the pool
+     */
+    int getCharsCount(final int offset) {
+        if (mEncoding == AXMLParser.ENCODING_UTF8) {
+            return readUtf8Length(offset);
+        } else {
+            return readUtf16Length(offset);
+        }
+    }
+
+    /**
+     * @param offset the offset of a UTF-8 string (its length prefix) in the pool data
+     * @return the offset of the string bytes in the pool data
+     */
+    int getUtf8BytesOffset(final int offset) {
+        int bytesCountOffset = offset + getUtf8LengthSize(offset);
+        return bytesCountOffset + getUtf8LengthSize(bytesCountOffset);
+    }
+
+    /**
+     * @param offset the offset of a UTF-8 string (its length prefix) in the pool data
+     * @return the number of bytes of the string
+     */
+    int getUtf8BytesCount(final int offset) {
+        return readUtf8Length(offset + getUtf8LengthSize(offset));
+    }
+
+    private String decodeUtf8(final int offset) {
+        int charsCount = readUtf8Length(offset);
+        int bytesCountOffset = offset + getUtf8LengthSize(offset);
+        int bytesCount = readUtf8Length(bytesCountOffset);
+        int bytesOffset = bytesCountOffset + getUtf8LengthSize(bytesCountOffset);
+
+        // every multi bytes sequence decodes to less chars than bytes : this is pure ASCII
+        if (charsCount == bytesCount) {
+            if (mData.hasArray()) {
+                return new String(mData.array(), mData.arrayOffset() + bytesOffset, bytesCount, ASCII);
+            }
+
+            char[] chars = getChars(bytesCount);
+            for (int i = 0; i < bytesCount; ++i) {
+                chars[i] = (char) (mData.get(bytesOffset + i) & 0xFF);
+            }
+            return new String(chars, 0, bytesCount);
+        }
+
+        // a UTF-8 sequence never decodes to more UTF-16 chars than bytes
+        getChars(bytesCount);
+        mCharBuffer.clear();
+        mSource.limit(bytesOffset + bytesCount).position(bytesOffset);
+        mUtf8Decoder.reset();
+        mUtf8Decoder.decode(mSource, mCharBuffer, true);
+        mUtf8Decoder.flush(mCharBuffer);
+        mSource.clear();
+
+        return new String(mChars, 0, mCharBuffer.position());
+    }
+
+    private String decodeUtf16(final int offset) {
+        int charsCount = readUtf16Length(offset);
+        int charsOffset = offset + (((mData.getShort(offset) & 0x8000) == 0) ? 2 : 4);
+
+        char[] chars = getChars(charsCount);
+        for (int i = 0; i < charsCount; ++i) {
+            chars[i] = mData.getChar(charsOffset + (2 * i));
+        }
+        return new String(chars, 0, charsCount);
+    }
+
+    private int getUtf8LengthSize(final int offset) {
+        return ((mData.get(offset) & 0x80) == 0) ? 1 : 2;
+    }
+
+    private int readUtf8Length(final int offset) {
+        int length = mData.get(offset) & 0xFF;
+        if ((length & 0x80) != 0) {
+            length = ((length & 0x7F) << 8) | (mData.get(offset + 1) & 0xFF);
+        }
+        return length;
+    }
+
+    private int readUtf16Length(final int offset) {
+        int length = mData.getShort(offset) & 0xFFFF;
+        if ((length & 0x8000) != 0) {
+            length = ((length & 0x7FFF) << 16) | (mData.getShort(offset + 2) & 0xFFFF);
+        }
+        return length;
+    }
+
+    /**
+     * @param count the number of chars needed
+     * @return the reused chars array, grown if needed
+     */
+    private char[] getChars(final int count) {
+        if (count > mChars.length) {
+            mChars = new char[Math.max(count, mChars.length * 2)];
+            mCharBuffer = CharBuffer.wrap(mChars);
+        }
+        return mChars;
+    }
+}
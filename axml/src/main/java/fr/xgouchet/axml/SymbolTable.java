@@ -0,0 +1,59 @@
+package fr.xgouchet.axml;
+
+/**
+ * A read only view on the string pool of the document being parsed by an AXMLParser, given to an
+ * {@link AXMLParser.IndexedListener} before the first element.
+ * <p/>
+ * The indexed listener receives the names as string pool indices : it can look up the indices of
+ * the names it is interested in once per document, then compare ints instead of Strings. The
+ * table is reused for every document, so it is only valid until the end of the current one.
+ *
+ * @author Xavier Gouchet
+ */
+public final class SymbolTable {
+
+    public static final int NO_SYMBOL = -1;
+
+    private final AXMLParser mParser;
+
+    SymbolTable(final AXMLParser parser) {
+        mParser = parser;
+    }
+
+    /**
+     * @return the number of strings in the document string pool
+     */
+    public int getCount() {
+        return mParser.getStringsCount();
+    }
+
+    /**
+     * @param index a string pool index
+     * @return the matching string (decoded the first time it is needed), or null if the index is
+     * out of the pool (eg : NO_SYMBOL)
+     */
+    public String getString(final int index) {
+        return mParser.getString(index);
+    }
+
+    /**
+     * Finds a string in the pool. Each call goes through the whole pool, so the indices should be
+     * looked up once per document.
+     *
+     * @param string the string to look for
+     * @return the index of the string in the pool, or NO_SYMBOL
+     */
+    public int indexOf(final String string) {
+        if (string == null) {
+            throw new NullPointerException();
+        }
+
+        int count = getCount();
+        for (int i = 0; i < count; ++i) {
+            if (string.equals(mParser.getString(i))) {
+                return i;
+            }
+        }
+        return NO_SYMBOL;
+    }
+}
@@ -0,0 +1,295 @@
+package fr.xgouchet.axml;
+
+/**
+ * Renders the typed attribute values of a compressed XML document (dimensions, colors, resource
+ * references, ...) as they would appear in the original xml.
+ * <p/>
+ * The hexadecimal and decimal renderings are written in a reused char buffer instead of going
+ * through String.format, and the resource references are memoized in a ReferenceCache. When a
+ * ResourceTable is available, the references are resolved to the resources names instead. A
+ * formatter is not thread safe, but its ReferenceCache and ResourceTable can be shared.
+ *
+ * @author Xavier Gouchet
+ */
+final class TypedValueFormatter {
+
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+    private static final char PREFIX_ID_REF = '@';
+    private static final char PREFIX_ATTR_REF = '?';
+
+    // In the android.R class, this is the order the ids are set... apparently
+    // TODO test those values with files compiled for older versions of Android...
+    private static final String[] ANDROID_REF_TYPES = new String[]{
+            null, "attr", "id", "style", "string", "dimen", "color", "array", "drawable",
+            "layout", "anim", "animator", "interpolator", "mipmap", "integer", "transition"
+    };
+
+    // the complex values (dimensions, fractions) : a 24 bits signed mantissa, the radix (the
+    // position of the binary point in the mantissa) in bits 4-5, and the unit in bits 0-3
+    private static final int COMPLEX_MANTISSA_MASK = 0xFFFFFF00;
+    private static final int COMPLEX_RADIX_SHIFT = 4;
+    private static final int COMPLEX_RADIX_MASK = 0x3;
+    private static final int COMPLEX_UNIT_MASK = 0xF;
+    private static final int COMPLEX_MANTISSA_SHIFT = 8;
+    // the number of fraction bits in the mantissa, for the radix 23p0, 16p7, 8p15 and 0p23
+    private static final int[] COMPLEX_RADIX_FRACTION_BITS = new int[]{0, 7, 15, 23};
+    private static final int COMPLEX_MAX_FRACTION_BITS = 23;
+    private static final int COMPLEX_MAX_DECIMALS = 8;
+    private static final String[] FRACTION_UNIT = new String[]{"%", "%p"};
+
+    private static final String ANDROID_PREFIX = "android:";
+    private static final String DEFAULT_REF_TYPE = "id";
+
+    private final char[] mBuffer = new char[64];
+    private ReferenceCache mReferenceCache;
+    private ResourceTable mResourceTable;
+
+    TypedValueFormatter(final ReferenceCache referenceCache) {
+        setReferenceCache(referenceCache);
+    }
+
+    void setReferenceCache(final ReferenceCache referenceCache) {
+        if (referenceCache == null) {
+            throw new NullPointerException();
+        }
+        mReferenceCache = referenceCache;
+    }
+
+    ReferenceCache getReferenceCache() {
+        return mReferenceCache;
+    }
+
+    /**
+     * @param resourceTable the table used to resolve the references names, or null
+     */
+    void setResourceTable(final ResourceTable resourceTable) {
+        mResourceTable = resourceTable;
+    }
+
+    /**
+     * @param type the value type (one of the AXMLParser.TYPE_XXX constants, except TYPE_STRING)
+     * @param data the data word
+     * @return the typed value as a String, or null if the type is unknown
+     */
+    String format(final int type, final int data) {
+        switch (type) {
+            case AXMLParser.TYPE_ID_REF:
+                return formatReference(PREFIX_ID_REF, data);
+            case AXMLParser.TYPE_ATTR_REF:
+                return formatReference(PREFIX_ATTR_REF, data);
+            case AXMLParser.TYPE_FLOAT:
+                // keep the same bits, read them as float
+                return Float.toString(Float.intBitsToFloat(data));
+            case AXMLParser.TYPE_DIMEN:
+                return formatDimension(data);
+            case AXMLParser.TYPE_PERCENT:
+                return formatPercent(data);
+            case AXMLParser.TYPE_INT:
+            case AXMLParser.TYPE_FLAGS:
+                return Integer.toString(data);
+            case AXMLParser.TYPE_BOOL:
+                return (data == 0) ? "false" : "true";
+            case AXMLParser.TYPE_COLOR_AARRGGBB:
+                return formatColor(data, 8, 1);
+            case AXMLParser.TYPE_COLOR_RRGGBB:
+                return formatColor(data, 6, 1);
+            case AXMLParser.TYPE_COLOR_ARGB:
+                return formatColor(data, 4, 2);
+            case AXMLParser.TYPE_COLOR_RGB:
+                return formatColor(data, 3, 2);
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * @param type the unknown value type
+     * @param data the data word
+     * @return the raw type and data, as hexadecimal (eg : 0000002A/0x0000FF00)
+     */
+    String formatRaw(final int type, final int data) {
+        int length = writeHex(type, 8, 0);
+        mBuffer[length++] = '/';
+        mBuffer[length++] = '0';
+        mBuffer[length++] = 'x';
+        length = writeHex(data, 8, length);
+        return new String(mBuffer, 0, length);
+    }
+
+    /**
+     * @param prefix the reference prefix ('@' or '?')
+     * @param id     the resource id
+     * @return the reference (eg: @string/app_name) if the resource table knows the resource,
+     * otherwise the raw reference (eg: @android:drawable/0x01080042, @id/0x7f020193, ...). If the
+     * resource is an Android resource, it will return android:type/value. Otherwise, it will
+     * always be id/value
+     */
+    private String formatReference(final char prefix, final int id) {
+        String reference;
+        if (mResourceTable != null) {
+            // the resolved references are kept by the table itself, the cache may be shared with
+            // parsers using another table
+            reference = mResourceTable.getReference(prefix, id);
+            if (reference != null) {
+                return reference;
+            }
+        }
+
+        reference = mReferenceCache.get(prefix, id);
+        if (reference != null) {
+            return reference;
+        }
+
+        int length = 0;
+        mBuffer[length++] = prefix;
+
+        String type = DEFAULT_REF_TYPE;
+        if ((id >= 0x01010000) && (id < 0x01100000)) {
+            length = writeString(ANDROID_PREFIX, length);
+
+            int typeIndex = (id & 0x00FF0000) >> 16;
+            if ((typeIndex > 0) && (typeIndex < ANDROID_REF_TYPES.length)) {
+                type = ANDROID_REF_TYPES[typeIndex];
+            }
+        }
+        length = writeString(type, length);
+        mBuffer[length++] = '/';
+        mBuffer[length++] = '0';
+        mBuffer[length++] = 'x';
+        length = writeHex(id, 8, length);
+
+        reference = new String(mBuffer, 0, length);
+        mReferenceCache.put(prefix, id, reference);
+        return reference;
+    }
+
+    private String formatDimension(final int data) {
+        int unit = data & COMPLEX_UNIT_MASK;
+        if (unit >= AXMLParser.DIMENSION_UNIT.length) {
+            return null;
+        }
+        int length = writeComplexValue(data, 1);
+        length = writeString(AXMLParser.DIMENSION_UNIT[unit], length);
+        return new String(mBuffer, 0, length);
+    }
+
+    private String formatPercent(final int data) {
+        int unit = data & COMPLEX_UNIT_MASK;
+        if (unit >= FRACTION_UNIT.length) {
+            return null;
+        }
+        int length = writeComplexValue(data, 100);
+        length = writeString(FRACTION_UNIT[unit], length);
+        return new String(mBuffer, 0, length);
+    }
+
+    /**
+     * Writes the value of a complex data word (as Android's TypedValue.complexToFloat) with the
+     * fewest decimals which aapt would encode back to the same mantissa, so that the values
+     * rounded by the encoding are rendered as they were written (eg : 42% instead of 42.000002%)
+     *
+     * @param data  the complex data word
+     * @param scale the scale of the rendered value (100 for a percentage)
+     * @return the length written in the buffer
+     */
+    private int writeComplexValue(final int data, final int scale) {
+        int mantissa = (data & COMPLEX_MANTISSA_MASK) >> COMPLEX_MANTISSA_SHIFT;
+        int fractionBits = COMPLEX_RADIX_FRACTION_BITS[(data >> COMPLEX_RADIX_SHIFT) & COMPLEX_RADIX_MASK];
+        double value = ((double) mantissa / (1 << fractionBits)) * scale;
+
+        // an integral value is found on the first iteration, and the max decimals are always
+        // enough to encode back the 23 fraction bits
+        long unscaled = 0;
+        int decimals = 0;
+        double power = 1;
+        for (; decimals <= COMPLEX_MAX_DECIMALS; ++decimals) {
+            unscaled = Math.round(value * power);
+            if (encodeMantissa(unscaled / power / scale, fractionBits) == mantissa) {
+                break;
+            }
+            power *= 10;
+        }
+        decimals = Math.min(decimals, COMPLEX_MAX_DECIMALS);
+
+        // trim the trailing zeros
+        while ((decimals > 0) && ((unscaled % 10) == 0)) {
+            unscaled /= 10;
+            decimals--;
+        }
+
+        return writeDecimal(unscaled, decimals, 0);
+    }
+
+    /**
+     * @return the mantissa written by aapt for the given value : rounded with 23 fraction bits,
+     * then truncated to the radix precision
+     */
+    private static long encodeMantissa(final double value, final int fractionBits) {
+        long bits = (long) ((Math.abs(value) * (1 << COMPLEX_MAX_FRACTION_BITS)) + 0.5);
+        long mantissa = bits >> (COMPLEX_MAX_FRACTION_BITS - fractionBits);
+        return (value < 0) ? -mantissa : mantissa;
+    }
+
+    /**
+     * @param data        the color data word
+     * @param digits      the number of digits to write
+     * @param digitsShift the number of hex digits between two written digits (2 for the short
+     *                    #RGB / #ARGB notations, which keep the lower digit of each channel)
+     */
+    private String formatColor(final int data, final int digits, final int digitsShift) {
+        int length = 0;
+        mBuffer[length++] = '#';
+        for (int i = digits - 1; i >= 0; --i) {
+            mBuffer[length++] = HEX_DIGITS[(data >>> (i * digitsShift * 4)) & 0xF];
+        }
+        return new String(mBuffer, 0, length);
+    }
+
+    /**
+     * @param unscaled the value, multiplied by 10^decimals
+     * @param decimals the number of decimals to write
+     * @param offset   the offset in the buffer
+     * @return the length written in the buffer
+     */
+    private int writeDecimal(final long unscaled, final int decimals, final int offset) {
+        int length = offset;
+        long absolute = unscaled;
+        if (unscaled < 0) {
+            mBuffer[length++] = '-';
+            absolute = -unscaled;
+        }
+
+        // at least one digit before the decimal point
+        int digits = 1;
+        for (long rest = absolute / 10; rest > 0; rest /= 10) {
+            digits++;
+        }
+        digits = Math.max(digits, decimals + 1);
+
+        length += digits + ((decimals > 0) ? 1 : 0);
+        int position = length;
+        for (int i = 0; i < digits; ++i) {
+            if ((decimals > 0) && (i == decimals)) {
+                mBuffer[--position] = '.';
+            }
+            mBuffer[--position] = (char) ('0' + (absolute % 10));
+            absolute /= 10;
+        }
+        return length;
+    }
+
+    private int writeHex(final int value, final int digits, final int offset) {
+        int length = offset;
+        for (int i = digits - 1; i >= 0; --i) {
+            mBuffer[length++] = HEX_DIGITS[(value >>> (i * 4)) & 0xF];
+        }
+        return length;
+    }
+
+    private int writeString(final String value, final int offset) {
+        int length = value.length();
+        value.getChars(0, length, mBuffer, offset);
+        return offset + length;
+    }
+}
@@ -0,0 +1,116 @@
+package fr.xgouchet.axml;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static fr.xgouchet.axml.TestFiles.readFile;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AXMLBatchDecoderTest {
+
+    @Rule
+    public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    private File mArchive;
+
+    @Before
+    public void setUp() throws IOException {
+        mArchive = mTemporaryFolder.newFile("test.apk");
+
+        ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(mArchive));
+        addEntry(zip, "AndroidManifest.xml", readFile(new File("testres/axml/attributes.xml")));
+        addEntry(zip, "res/layout/text.xml", readFile(new File("testres/axml/text.xml")));
+        addEntry(zip, "res/raw/plain.xml", "<root/>".getBytes("UTF-8"));
+        addEntry(zip, "res/xml/broken.xml", new byte[]{0x03, 0x00, 0x08, 0x00, 0x42});
+        addEntry(zip, "res/xml/namespaces.xml", readFile(new File("testres/axml/namespaces.xml")));
+        zip.close();
+    }
+
+    @Test
+    public void shouldDecodeCompressedEntriesInOrder() throws IOException, InterruptedException {
+        File outputDir = mTemporaryFolder.newFolder("output");
+
+        List<AXMLBatchDecoder.EntryResult> results = new AXMLBatchDecoder(3).decode(mArchive, outputDir);
+
+        assertThat(results).hasSize(4);
+        assertThat(results.get(0).getEntryName()).isEqualTo("AndroidManifest.xml");
+        assertThat(results.get(1).getEntryName()).isEqualTo("res/layout/text.xml");
+        assertThat(results.get(2).getEntryName()).isEqualTo("res/xml/broken.xml");
+        assertThat(results.get(3).getEntryName()).isEqualTo("res/xml/namespaces.xml");
+
+        assertThat(results.get(0).isSuccessful()).isTrue();
+        assertThat(results.get(1).isSuccessful()).isTrue();
+        assertThat(results.get(2).isSuccessful()).isFalse();
+        assertThat(results.get(2).getError()).isNotNull();
+        assertThat(results.get(3).isSuccessful()).isTrue();
+
+        assertThat(new File(outputDir, "res/raw/plain.xml").exists()).isFalse();
+        assertThat(new String(readFile(new File(outputDir, "res/layout/text.xml")), "UTF-8"))
+                .isEqualTo(decode(new File("testres/axml/text.xml")));
+        assertThat(new String(readFile(new File(outputDir, "res/xml/namespaces.xml")), "UTF-8"))
+                .isEqualTo(decode(new File("testres/axml/namespaces.xml")));
+    }
+
+    @Test
+    public void shouldDecodeIntoSink() throws IOException, InterruptedException {
+        final ByteArrayOutputStream manifest = new ByteArrayOutputStream();
+
+        List<AXMLBatchDecoder.EntryResult> results = new AXMLBatchDecoder(1).decode(mArchive,
+                new AXMLBatchDecoder.EntrySink() {
+                    @Override
+                    public OutputStream openEntry(String entryName) {
+                        return "AndroidManifest.xml".equals(entryName) ? manifest : new ByteArrayOutputStream();
+                    }
+                });
+
+        assertThat(results).hasSize(4);
+        assertThat(new String(manifest.toByteArray(), "UTF-8"))
+                .isEqualTo(decode(new File("testres/axml/attributes.xml")));
+    }
+
+    @Test
+    public void shouldReuseParsersAcrossArchives() throws IOException, InterruptedException {
+        AXMLBatchDecoder decoder = new AXMLBatchDecoder(2);
+
+        for (int i = 0; i < 3; ++i) {
+            List<AXMLBatchDecoder.EntryResult> results = decoder.decode(mArchive,
+                    new AXMLBatchDecoder.EntrySink() {
+                        @Override
+                        public OutputStream openEntry(String entryName) {
+                            return new ByteArrayOutputStream();
+                        }
+                    });
+            assertThat(results).hasSize(4);
+        }
+
+        // 12 entries decoded by at most 2 workers at a time
+        AXMLParserPool pool = decoder.getParserPool();
+        assertThat(pool.getAcquiredCount()).isEqualTo(12);
+        assertThat(pool.getCreatedCount()).isLessThanOrEqualTo(2);
+    }
+
+    private static String decode(final File file) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        new AXMLParser().parse(new FileInputStream(file), output);
+        return new String(output.toByteArray(), "UTF-8");
+    }
+
+    private static void addEntry(final ZipOutputStream zip, final String name, final byte[] content)
+            throws IOException {
+        zip.putNextEntry(new ZipEntry(name));
+        zip.write(content);
+        zip.closeEntry();
+    }
+}
@@ -0,0 +1,252 @@
+package fr.xgouchet.axml;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AXMLEncoderTest {
+
+    @Test
+    public void shouldRoundTripFixtures() throws IOException {
+        for (File fixture : listFixtures()) {
+            String expected = decode(new FileInputStream(fixture));
+
+            ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+            new AXMLParser().parse(new FileInputStream(fixture), new AXMLEncoder(encoded));
+
+            assertThat(decode(new ByteArrayInputStream(encoded.toByteArray())))
+                    .as(fixture.getName())
+                    .isEqualTo(expected);
+        }
+    }
+
+    @Test
+    public void shouldRoundTripFixturesFromEvents() throws IOException {
+        for (File fixture : listFixtures()) {
+            String expected = decode(new FileInputStream(fixture));
+
+            // a plain listener only sees the rendered attribute values
+            ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+            new AXMLParser().parse(new FileInputStream(fixture),
+                    new ForwardingListener(new AXMLEncoder(encoded)));
+
+            assertThat(decode(new ByteArrayInputStream(encoded.toByteArray())))
+                    .as(fixture.getName())
+                    .isEqualTo(expected);
+        }
+    }
+
+    @Test
+    public void shouldRoundTripWithUtf8Pool() throws IOException {
+        for (File fixture : listFixtures()) {
+            String expected = decode(new FileInputStream(fixture));
+
+            ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+            AXMLEncoder encoder = new AXMLEncoder(encoded);
+            encoder.setStringsEncoding(AXMLParser.ENCODING_UTF8);
+            new AXMLParser().parse(new FileInputStream(fixture), encoder);
+
+            assertThat(decode(new ByteArrayInputStream(encoded.toByteArray())))
+                    .as(fixture.getName())
+                    .isEqualTo(expected);
+        }
+    }
+
+    @Test
+    public void shouldKeepAttributesResources() throws IOException {
+        for (File fixture : listFixtures()) {
+            List<String> expected = readNameResources(new FileInputStream(fixture));
+
+            ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+            new AXMLParser().parse(new FileInputStream(fixture), new AXMLEncoder(encoded));
+
+            assertThat(readNameResources(new ByteArrayInputStream(encoded.toByteArray())))
+                    .as(fixture.getName())
+                    .isEqualTo(expected);
+        }
+
+        // android:layout_width, android:layout_height, ...
+        assertThat(readNameResources(new FileInputStream("testres/axml/typed_attrs.xml")))
+                .contains("layout_width=0x010100f4");
+    }
+
+    @Test
+    public void shouldDeduplicateStrings() throws IOException {
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        AXMLEncoder encoder = new AXMLEncoder(encoded);
+
+        encoder.startDocument();
+        encoder.startElement("list", new Attribute[0], null, null);
+        for (int i = 0; i < 100; ++i) {
+            encoder.startElement("item", new Attribute[]{new Attribute("name", "value")}, null, null);
+            encoder.text("value");
+            encoder.endElement("item", null, null);
+        }
+        encoder.endElement("list", null, null);
+        encoder.endDocument();
+
+        ParserMetrics metrics = new ParserMetrics();
+        AXMLParser parser = new AXMLParser();
+        parser.setTracer(metrics);
+        parser.setStringsDecoding(AXMLParser.STRINGS_EAGER);
+        String decoded = decode(parser, new ByteArrayInputStream(encoded.toByteArray()));
+
+        // list, item, name, value
+        assertThat(metrics.getStringsDecoded()).isEqualTo(4);
+        assertThat(decoded).contains("<item name=\"value\">");
+    }
+
+    @Test
+    public void shouldRejectNullValues() throws IOException {
+        AXMLEncoder encoder = new AXMLEncoder(new ByteArrayOutputStream());
+        encoder.startDocument();
+
+        try {
+            encoder.startElement("item", new Attribute[]{new Attribute("name", null)}, null, null);
+            throw new AssertionError("Expected an IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage()).contains("name");
+        }
+
+        try {
+            encoder.text(null);
+            throw new AssertionError("Expected an IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage()).contains("text");
+        }
+    }
+
+    private static List<File> listFixtures() {
+        List<File> fixtures = new ArrayList<>();
+        for (String path : new String[]{"testres/axml", "testres/axml/samples"}) {
+            File[] files = new File(path).listFiles();
+            for (File file : files) {
+                if (file.isFile()) {
+                    fixtures.add(file);
+                }
+            }
+        }
+        return fixtures;
+    }
+
+    /**
+     * @return the "name=resource id" of all the attributes in the document
+     */
+    private static List<String> readNameResources(final InputStream input) throws IOException {
+        NameResourcesListener listener = new NameResourcesListener();
+        new AXMLParser().parse(input, listener);
+        return listener.mResources;
+    }
+
+    private static String decode(final InputStream input) throws IOException {
+        return decode(new AXMLParser(), input);
+    }
+
+    private static String decode(final AXMLParser parser, final InputStream input) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        parser.parse(input, output);
+        return output.toString("UTF-8");
+    }
+
+    /**
+     * Hides the CursorListener implementation of the delegate
+     */
+    private static class ForwardingListener implements AXMLParser.Listener {
+
+        private final AXMLParser.Listener mDelegate;
+
+        ForwardingListener(final AXMLParser.Listener delegate) {
+            mDelegate = delegate;
+        }
+
+        @Override
+        public void startDocument() throws IOException {
+            mDelegate.startDocument();
+        }
+
+        @Override
+        public void endDocument() throws IOException {
+            mDelegate.endDocument();
+        }
+
+        @Override
+        public void startPrefixMapping(final String prefix, final String uri) {
+            mDelegate.startPrefixMapping(prefix, uri);
+        }
+
+        @Override
+        public void endPrefixMapping(final String prefix, final String uri) {
+            mDelegate.endPrefixMapping(prefix, uri);
+        }
+
+        @Override
+        public void startElement(final String localName, final Attribute[] attributes,
+                                 final String uri, final String prefix) throws IOException {
+            mDelegate.startElement(localName, attributes, uri, prefix);
+        }
+
+        @Override
+        public void endElement(final String localName, final String uri, final String prefix) throws IOException {
+            mDelegate.endElement(localName, uri, prefix);
+        }
+
+        @Override
+        public void text(final String data) throws IOException {
+            mDelegate.text(data);
+        }
+    }
+
+    /**
+     * Lists the resource ids of the attribute names
+     */
+    private static class NameResourcesListener implements AXMLParser.CursorListener {
+
+        private final List<String> mResources = new ArrayList<>();
+
+        @Override
+        public void startElement(final String localName, final AttributeCursor attributes,
+                                 final String uri, final String prefix) {
+            for (int i = 0; i < attributes.getCount(); ++i) {
+                mResources.add(String.format("%s=0x%08x", attributes.getName(i), attributes.getNameResource(i)));
+            }
+        }
+
+        @Override
+        public void startDocument() {
+        }
+
+        @Override
+        public void endDocument() {
+        }
+
+        @Override
+        public void startPrefixMapping(final String prefix, final String uri) {
+        }
+
+        @Override
+        public void endPrefixMapping(final String prefix, final String uri) {
+        }
+
+        @Override
+        public void startElement(final String localName, final Attribute[] attributes,
+                                 final String uri, final String prefix) {
+        }
+
+        @Override
+        public void endElement(final String localName, final String uri, final String prefix) {
+        }
+
+        @Override
+        public void text(final String data) {
+        }
+    }
+}
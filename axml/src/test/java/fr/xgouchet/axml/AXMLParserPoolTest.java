@@ -0,0 +1,187 @@
+package fr.xgouchet.axml;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static fr.xgouchet.axml.TestFiles.readFile;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AXMLParserPoolTest {
+
+    private AXMLParserPool mPool;
+
+    @Before
+    public void setUp() {
+        mPool = new AXMLParserPool(2);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldFailOnEmptyPool() {
+        new AXMLParserPool(0);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void shouldFailOnNullRelease() {
+        mPool.release(null);
+    }
+
+    @Test
+    public void shouldReuseParsers() {
+        AXMLParser first = mPool.acquire();
+        mPool.release(first);
+        AXMLParser second = mPool.acquire();
+
+        assertThat(second).isSameAs(first);
+        assertThat(mPool.getCreatedCount()).isEqualTo(1);
+        assertThat(mPool.getAcquiredCount()).isEqualTo(2);
+        assertThat(mPool.getReusedCount()).isEqualTo(1);
+        assertThat(mPool.getIdleCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldDiscardParsersWhenFull() {
+        AXMLParser first = mPool.acquire();
+        AXMLParser second = mPool.acquire();
+        AXMLParser third = mPool.acquire();
+
+        mPool.release(first);
+        mPool.release(second);
+        mPool.release(third);
+
+        assertThat(mPool.getCreatedCount()).isEqualTo(3);
+        assertThat(mPool.getIdleCount()).isEqualTo(2);
+        assertThat(mPool.getDiscardedCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldResetConfiguration() throws IOException {
+        AXMLParser parser = mPool.acquire();
+        ParserMetrics metrics = new ParserMetrics();
+        parser.setTracer(metrics);
+        mPool.release(parser);
+
+        mPool.parse(new FileInputStream("testres/axml/typed_attrs.xml"), new OutputStreamListener(new ByteArrayOutputStream()));
+
+        assertThat(metrics.getDocuments()).isEqualTo(0);
+        assertThat(mPool.getReferenceCache().getSize()).isGreaterThan(0);
+    }
+
+    @Test
+    public void shouldResetParallelStringsDecoding() throws IOException {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        executor.shutdown();
+
+        AXMLParser parser = mPool.acquire();
+        parser.setParallelStringsDecoding(executor, 1);
+        mPool.release(parser);
+
+        // the executor of the previous user is shut down, and must not be used anymore
+        mPool.parse(new ByteArrayInputStream(buildManyStringsDocument()), new OutputStreamListener(new ByteArrayOutputStream()));
+
+        assertThat(mPool.getReusedCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldTrimGrownBuffers() throws IOException {
+        byte[] document = buildLargeDocument();
+
+        AXMLParser parser = mPool.acquire();
+        parser.parse(new ByteArrayInputStream(document), new OutputStreamListener(new ByteArrayOutputStream()));
+        assertThat(parser.getBufferSize()).isGreaterThan(256 * 1024);
+
+        mPool.release(parser);
+        assertThat(parser.getBufferSize()).isLessThanOrEqualTo(256 * 1024);
+    }
+
+    @Test
+    public void shouldDecodeConcurrently() throws Exception {
+        File[] samples = new File("testres/axml/samples").listFiles();
+        final List<byte[]> documents = new ArrayList<>();
+        List<String> expected = new ArrayList<>();
+        for (File sample : samples) {
+            byte[] content = readFile(sample);
+            documents.add(content);
+            expected.add(decode(new AXMLParser(), content));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 200; ++i) {
+                final byte[] content = documents.get(i % documents.size());
+                results.add(executor.submit(new Callable<String>() {
+                    @Override
+                    public String call() throws Exception {
+                        AXMLParser parser = mPool.acquire();
+                        try {
+                            return decode(parser, content);
+                        } finally {
+                            mPool.release(parser);
+                        }
+                    }
+                }));
+            }
+
+            for (int i = 0; i < results.size(); ++i) {
+                assertThat(results.get(i).get()).isEqualTo(expected.get(i % documents.size()));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(mPool.getAcquiredCount()).isEqualTo(200);
+        assertThat(mPool.getCreatedCount()).isLessThanOrEqualTo(4);
+        assertThat(mPool.getReusedCount()).isEqualTo(200 - mPool.getCreatedCount());
+    }
+
+    private static String decode(final AXMLParser parser, final byte[] content) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        parser.parse(new ByteArrayInputStream(content), output);
+        return new String(output.toByteArray(), "UTF-8");
+    }
+
+    /**
+     * @return a document with a single text, large enough to grow the parser buffers
+     */
+    private static byte[] buildManyStringsDocument() throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        AXMLEncoder encoder = new AXMLEncoder(output);
+        encoder.startDocument();
+        encoder.startElement("root", new Attribute[0], null, null);
+        for (int i = 0; i < 10000; ++i) {
+            encoder.startElement("item", new Attribute[]{new Attribute("id", "item_" + i)}, null, null);
+            encoder.endElement("item", null, null);
+        }
+        encoder.endElement("root", null, null);
+        encoder.endDocument();
+        return output.toByteArray();
+    }
+
+    private static byte[] buildLargeDocument() throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 100000; ++i) {
+            text.append("lorem ipsum ");
+        }
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        AXMLEncoder encoder = new AXMLEncoder(output);
+        encoder.startDocument();
+        encoder.startElement("root", new Attribute[0], null, null);
+        encoder.text(text.toString());
+        encoder.endElement("root", null, null);
+        encoder.endDocument();
+        return output.toByteArray();
+    }
+}
@@ -4,25 +4,39 @@ import org.junit.Before;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Matchers;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.w3c.dom.Document;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UnknownFormatFlagsException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import javax.xml.parsers.ParserConfigurationException;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.AdditionalMatchers.aryEq;
+import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Matchers.isNull;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
 
 public class AXMLParserTest {
 
@@ -64,6 +78,23 @@ public class AXMLParserTest {
         mParser.parse(inputStream, (OutputStream) null);
     }
 
+    @Test(expected = IOException.class, timeout = 5000)
+    public void shouldFailOnTruncatedDocument() throws IOException {
+        byte[] truncated = new byte[]{0x03, 0x00, 0x08, 0x00, 0x00, 0x01, 0x00, 0x00, 0x01, 0x00, 0x1C, 0x00};
+
+        mParser.parse(new ByteArrayInputStream(truncated), new ByteArrayOutputStream());
+    }
+
+    @Test(expected = IOException.class, timeout = 5000)
+    public void shouldFailOnEmptyBlock() throws IOException {
+        byte[] document = new byte[]{
+                0x03, 0x00, 0x08, 0x00, 0x40, 0x00, 0x00, 0x00,
+                0x01, 0x00, 0x1C, 0x00, 0x00, 0x00, 0x00, 0x00
+        };
+
+        mParser.parseBuffer(ByteBuffer.wrap(document), mMockListener);
+    }
+
     @Test
     public void shouldParseIntoOutputStream() throws IOException {
         // Select file
@@ -375,5 +406,629 @@ public class AXMLParserTest {
 
     }
 
+    @Test
+    public void shouldParseMappedFilesLikeStreams() throws IOException {
+        File dir = new File("testres/axml/samples");
+
+        for (File sample : dir.listFiles()) {
+            ByteArrayOutputStream streamOutput = new ByteArrayOutputStream();
+            mParser.parse(new FileInputStream(sample), streamOutput);
+
+            ByteArrayOutputStream mappedOutput = new ByteArrayOutputStream();
+            mParser.parseFile(sample, new OutputStreamListener(mappedOutput));
+
+            assertThat(new String(mappedOutput.toByteArray()))
+                    .isEqualTo(new String(streamOutput.toByteArray()));
+        }
+    }
+
+    @Test
+    public void shouldDecodeStringsEagerlyLikeLazily() throws IOException {
+        File dir = new File("testres/axml/samples");
+        AXMLParser eagerParser = new AXMLParser();
+        eagerParser.setStringsDecoding(AXMLParser.STRINGS_EAGER);
+
+        for (File sample : dir.listFiles()) {
+            ByteArrayOutputStream lazyOutput = new ByteArrayOutputStream();
+            mParser.parse(new FileInputStream(sample), lazyOutput);
+
+            ByteArrayOutputStream eagerOutput = new ByteArrayOutputStream();
+            eagerParser.parse(new FileInputStream(sample), eagerOutput);
+
+            assertThat(new String(eagerOutput.toByteArray()))
+                    .isEqualTo(new String(lazyOutput.toByteArray()));
+        }
+    }
+
+    @Test
+    public void shouldDecodeStringsInParallelLikeSequentially() throws IOException {
+        byte[] document = buildLargeStringPoolDocument(50000);
+        List<String> expected = readAllStrings(mParser, document);
+
+        AXMLParser parallelParser = new AXMLParser();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            parallelParser.setParallelStringsDecoding(executor, 1000);
+            parallelParser.setStringInterner(new StringInterner());
+
+            assertThat(readAllStrings(parallelParser, document)).isEqualTo(expected);
+            // the decoders are reused for the next documents
+            assertThat(readAllStrings(parallelParser, document)).isEqualTo(expected);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
 
-}
\ No newline at end of file
+    @Test
+    public void shouldDecodeSmallPoolsSequentially() throws IOException {
+        File dir = new File("testres/axml/samples");
+        ExecutorService executor = mock(ExecutorService.class);
+        mParser.setParallelStringsDecoding(executor, AXMLParser.DEFAULT_PARALLEL_STRINGS_THRESHOLD);
+
+        for (File sample : dir.listFiles()) {
+            mParser.parse(new FileInputStream(sample), new ByteArrayOutputStream());
+        }
+
+        verifyNoMoreInteractions(executor);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldFailWithInvalidParallelThreshold() {
+        mParser.setParallelStringsDecoding(Executors.newSingleThreadExecutor(), 0);
+    }
+
+    @Test
+    public void shouldParseByteBuffer() throws IOException {
+        byte[] document = buildLargeStringPoolDocument(8);
+
+        // add some garbage before the document, the buffer position should be honored
+        ByteBuffer buffer = ByteBuffer.allocate(document.length + 4);
+        buffer.putInt(0xCAFEBABE);
+        buffer.put(document);
+        buffer.position(4);
+
+        mParser.parseBuffer(buffer, mMockListener);
+
+        verify(mMockListener).startDocument();
+        verify(mMockListener).startElement(eq("string_7"), aryEq(new Attribute[]{}), isNull(String.class), isNull(String.class));
+        verify(mMockListener).endElement(eq("string_7"), isNull(String.class), isNull(String.class));
+        verify(mMockListener).endDocument();
+        assertThat(buffer.position()).isEqualTo(4);
+    }
+
+    @Test
+    public void shouldParseLargeStringPoolFromStream() throws IOException {
+        byte[] document = buildLargeStringPoolDocument(20000);
+
+        mParser.parse(new ByteArrayInputStream(document), mMockListener);
+
+        verify(mMockListener).startDocument();
+        verify(mMockListener).startElement(eq("string_19999"), aryEq(new Attribute[]{}), isNull(String.class), isNull(String.class));
+        verify(mMockListener).endElement(eq("string_19999"), isNull(String.class), isNull(String.class));
+        verify(mMockListener).endDocument();
+    }
+
+    @Test
+    public void shouldParseLargeStringPoolFromBuffer() throws IOException {
+        byte[] document = buildLargeStringPoolDocument(20000);
+
+        mParser.parseBuffer(ByteBuffer.wrap(document), mMockListener);
+
+        verify(mMockListener).startDocument();
+        verify(mMockListener).startElement(eq("string_19999"), aryEq(new Attribute[]{}), isNull(String.class), isNull(String.class));
+        verify(mMockListener).endElement(eq("string_19999"), isNull(String.class), isNull(String.class));
+        verify(mMockListener).endDocument();
+    }
+
+    @Test
+    public void shouldParseFedChunksLikeStreams() throws IOException {
+        File dir = new File("testres/axml/samples");
+
+        for (File sample : dir.listFiles()) {
+            ByteArrayOutputStream streamOutput = new ByteArrayOutputStream();
+            mParser.parse(new FileInputStream(sample), streamOutput);
+            String expected = new String(streamOutput.toByteArray());
+
+            ByteArrayOutputStream documentOutput = new ByteArrayOutputStream();
+            InputStream input = new FileInputStream(sample);
+            int read;
+            byte[] content = new byte[(int) sample.length()];
+            int offset = 0;
+            while ((read = input.read(content, offset, content.length - offset)) > 0) {
+                offset += read;
+            }
+            input.close();
+
+            for (int chunkSize : new int[]{1, 7, 1000}) {
+                ByteArrayOutputStream fedOutput = new ByteArrayOutputStream();
+                mParser.startFeed(new OutputStreamListener(fedOutput));
+                for (int start = 0; start < content.length; start += chunkSize) {
+                    mParser.feed(ByteBuffer.wrap(content, start, Math.min(chunkSize, content.length - start)));
+                }
+                mParser.endFeed();
+
+                assertThat(new String(fedOutput.toByteArray()))
+                        .as(sample.getName() + " / " + chunkSize)
+                        .isEqualTo(expected);
+            }
+        }
+    }
+
+    @Test
+    public void shouldTriggerEventsAsBlocksAreFed() throws IOException {
+        byte[] document = buildLargeStringPoolDocument(20000);
+
+        // everything but the end tag
+        mParser.startFeed(mMockListener);
+        mParser.feed(ByteBuffer.wrap(document, 0, document.length - 24));
+
+        verify(mMockListener).startDocument();
+        verify(mMockListener).startElement(eq("string_19999"), aryEq(new Attribute[]{}), isNull(String.class), isNull(String.class));
+        verify(mMockListener, never()).endDocument();
+        assertThat(mParser.isParsingComplete()).isFalse();
+
+        mParser.feed(ByteBuffer.wrap(document, document.length - 24, 24));
+
+        verify(mMockListener).endElement(eq("string_19999"), isNull(String.class), isNull(String.class));
+        verify(mMockListener).endDocument();
+        assertThat(mParser.isParsingComplete()).isTrue();
+
+        mParser.endFeed();
+    }
+
+    @Test(expected = IOException.class)
+    public void shouldFailOnIncompleteFeed() throws IOException {
+        byte[] document = buildLargeStringPoolDocument(8);
+
+        mParser.startFeed(mMockListener);
+        mParser.feed(ByteBuffer.wrap(document, 0, document.length - 4));
+        mParser.endFeed();
+    }
+
+    @Test
+    public void shouldFailOnOversizedFedBlock() throws IOException {
+        byte[] document = buildLargeStringPoolDocument(8);
+        // the end tag block claims to be larger than the rest of the document
+        ByteBuffer.wrap(document).order(ByteOrder.LITTLE_ENDIAN).putInt(document.length - 20, 0x7FFFFFF0);
+
+        mParser.startFeed(mMockListener);
+        try {
+            mParser.feed(ByteBuffer.wrap(document, 0, document.length - 16));
+            throw new AssertionError("Expected an IOException");
+        } catch (IOException e) {
+            assertThat(e.getMessage()).startsWith("Invalid block size");
+        }
+
+        // the feed is ended instead of buffering the next bytes, waiting for the block
+        verify(mMockListener, never()).endDocument();
+        try {
+            mParser.feed(ByteBuffer.wrap(new byte[1024]));
+            throw new AssertionError("Expected an IllegalStateException");
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage()).contains("startFeed");
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void shouldFailOnUndersizedFedBlock() throws IOException {
+        byte[] document = buildLargeStringPoolDocument(8);
+        ByteBuffer.wrap(document).order(ByteOrder.LITTLE_ENDIAN).putInt(document.length - 20, 4);
+
+        mParser.startFeed(mMockListener);
+        mParser.feed(ByteBuffer.wrap(document, 0, document.length - 16));
+    }
+
+    @Test
+    public void shouldFailOnFedDocumentWithoutStartBlock() throws IOException {
+        // an unknown first block, claiming to be 2 GB large
+        ByteBuffer header = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(0x00080110).putInt(0x7FFFFFF0);
+        header.flip();
+
+        mParser.startFeed(mMockListener);
+        try {
+            mParser.feed(header);
+            throw new AssertionError("Expected an UnknownFormatFlagsException");
+        } catch (UnknownFormatFlagsException e) {
+            assertThat(e.getMessage()).contains("Android XML document");
+        }
+        verify(mMockListener, never()).startDocument();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldFailOnFeedWithoutStart() throws IOException {
+        mParser.feed(ByteBuffer.wrap(new byte[8]));
+    }
+
+    @Test
+    public void shouldReportFilteredElementsOnly() throws IOException {
+        mParser.setElementFilter(new ElementFilter("root/withtext"));
+        mParser.parse(new FileInputStream("testres/axml/text.xml"), mMockListener);
+
+        verify(mMockListener).startDocument();
+        verify(mMockListener).startElement(eq("withtext"), aryEq(new Attribute[]{}), isNull(String.class), isNull(String.class));
+        verify(mMockListener).text("Lorem ipsum dolor sit amet");
+        verify(mMockListener).endElement(eq("withtext"), isNull(String.class), isNull(String.class));
+        verify(mMockListener).endDocument();
+        verifyNoMoreInteractions(mMockListener);
+    }
+
+    @Test
+    public void shouldSkipFilteredSubtrees() throws IOException {
+        mParser.setElementFilter(new ElementFilter("root/subTag"));
+        mParser.parse(new FileInputStream("testres/axml/namespaces.xml"), mMockListener);
+
+        verify(mMockListener).startElement(eq("subTag"), aryEq(new Attribute[]{}), isNull(String.class), isNull(String.class));
+        verify(mMockListener).endElement(eq("subTag"), isNull(String.class), isNull(String.class));
+        verify(mMockListener, never()).startElement(eq("tagWithNs"), any(Attribute[].class), anyString(), anyString());
+        verify(mMockListener, never()).startElement(eq("plop"), any(Attribute[].class), anyString(), anyString());
+        verify(mMockListener).endDocument();
+    }
+
+    @Test
+    public void shouldReportAllElementsWithWildcardFilter() throws IOException {
+        File dir = new File("testres/axml/samples");
+        AXMLParser filteredParser = new AXMLParser();
+        filteredParser.setElementFilter(new ElementFilter("//*"));
+
+        for (File sample : dir.listFiles()) {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            mParser.parse(new FileInputStream(sample), output);
+
+            ByteArrayOutputStream filteredOutput = new ByteArrayOutputStream();
+            filteredParser.parse(new FileInputStream(sample), filteredOutput);
+
+            assertThat(new String(filteredOutput.toByteArray()))
+                    .as(sample.getName())
+                    .isEqualTo(new String(output.toByteArray()));
+        }
+    }
+
+    @Test
+    public void shouldReportNestedFilteredElements() throws IOException {
+        mParser.setElementFilter(new ElementFilter("//RelativeLayout/TextView",
+                "FrameLayout/LinearLayout/LinearLayout/ImageView"));
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        mParser.parse(new FileInputStream("testres/axml/samples/item_target.xml"), new OutputStreamListener(output));
+        String result = new String(output.toByteArray(), "UTF-8");
+
+        assertThat(result.split("<TextView")).hasSize(4);
+        assertThat(result.split("<ImageView")).hasSize(3);
+        assertThat(result).doesNotContain("Layout").doesNotContain("<View");
+    }
+
+    @Test
+    public void shouldStopParsingFromListener() throws IOException {
+        byte[] document = buildManyElementsDocument(20000);
+        TrackingInputStream input = new TrackingInputStream(document);
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(final InvocationOnMock invocation) {
+                mParser.stopParsing();
+                return null;
+            }
+        }).when(mMockListener).startElement(eq("item"), any(Attribute[].class), anyString(), anyString());
+
+        mParser.parse(input, mMockListener);
+
+        verify(mMockListener).startDocument();
+        verify(mMockListener).startElement(eq("root"), aryEq(new Attribute[]{}), isNull(String.class), isNull(String.class));
+        verify(mMockListener).startElement(eq("item"), any(Attribute[].class), isNull(String.class), isNull(String.class));
+        verifyNoMoreInteractions(mMockListener);
+        assertThat(mParser.isParsingStopped()).isTrue();
+        assertThat(mParser.isParsingComplete()).isFalse();
+        assertThat(input.mClosed).isTrue();
+        assertThat(input.mReadBytes).isLessThan(document.length / 4);
+    }
+
+    @Test
+    public void shouldStopFeedFromListener() throws IOException {
+        byte[] document = buildManyElementsDocument(100);
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(final InvocationOnMock invocation) {
+                mParser.stopParsing();
+                return null;
+            }
+        }).when(mMockListener).startElement(eq("root"), any(Attribute[].class), anyString(), anyString());
+
+        mParser.startFeed(mMockListener);
+        mParser.feed(ByteBuffer.wrap(document, 0, document.length / 2));
+        mParser.feed(ByteBuffer.wrap(document, document.length / 2, document.length - (document.length / 2)));
+        mParser.endFeed();
+
+        verify(mMockListener).startDocument();
+        verify(mMockListener).startElement(eq("root"), aryEq(new Attribute[]{}), isNull(String.class), isNull(String.class));
+        verifyNoMoreInteractions(mMockListener);
+    }
+
+    @Test
+    public void shouldSkipSubtreeFromListener() throws IOException {
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(final InvocationOnMock invocation) {
+                mParser.skipSubtree();
+                return null;
+            }
+        }).when(mMockListener).startElement(eq("tagWithNs"), any(Attribute[].class), anyString(), anyString());
+
+        mParser.parse(new FileInputStream("testres/axml/namespaces.xml"), mMockListener);
+
+        verify(mMockListener).startElement(eq("subTag"), aryEq(new Attribute[]{}), isNull(String.class), isNull(String.class));
+        verify(mMockListener).startElement(eq("tagWithNs"), aryEq(new Attribute[]{}), isNull(String.class), isNull(String.class));
+        verify(mMockListener).endElement(eq("tagWithNs"), isNull(String.class), isNull(String.class));
+        verify(mMockListener, never()).startElement(eq("plop"), any(Attribute[].class), anyString(), anyString());
+        verify(mMockListener, never()).endElement(eq("plop"), anyString(), anyString());
+        verify(mMockListener).endElement(eq("root"), isNull(String.class), isNull(String.class));
+        verify(mMockListener).endDocument();
+    }
+
+    @Test
+    public void shouldSkipSubtreeWithFilter() throws IOException {
+        mParser.setElementFilter(new ElementFilter("//*"));
+        final AXMLParser parser = mParser;
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        mParser.parse(new FileInputStream("testres/axml/samples/item_target.xml"), new OutputStreamListener(output) {
+            @Override
+            public void startElement(final String localName, final AttributeCursor attributes,
+                                     final String uri, final String prefix) throws IOException {
+                super.startElement(localName, attributes, uri, prefix);
+                if ("RelativeLayout".equals(localName)) {
+                    parser.skipSubtree();
+                }
+            }
+        });
+        String result = new String(output.toByteArray(), "UTF-8");
+
+        assertThat(result).contains("<RelativeLayout").contains("</FrameLayout>").doesNotContain("<TextView");
+        assertThat(result.split("<ImageView")).hasSize(3);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldFailSkippingSubtreeOutsideStartElement() throws IOException {
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(final InvocationOnMock invocation) {
+                mParser.skipSubtree();
+                return null;
+            }
+        }).when(mMockListener).endElement(anyString(), anyString(), anyString());
+
+        mParser.parse(new FileInputStream("testres/axml/namespaces.xml"), mMockListener);
+    }
+
+    @Test
+    public void shouldSkipUnknownBlocksWithoutReadingThem() throws IOException {
+        byte[] document = buildManyElementsDocument(10);
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        mParser.parse(new ByteArrayInputStream(document), expected);
+
+        // a large block of an unknown type, and a start tag with an unexpected header size
+        ByteBuffer unknown = ByteBuffer.allocate(1024 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+        unknown.putInt(0x00080110).putInt(unknown.capacity());
+        ByteBuffer newer = ByteBuffer.allocate(40).order(ByteOrder.LITTLE_ENDIAN);
+        newer.putInt(0x00140102).putInt(newer.capacity());
+        byte[] extended = insertBeforeLastBlock(insertBeforeLastBlock(document, unknown.array()), newer.array());
+
+        ParserMetrics metrics = new ParserMetrics();
+        mParser.setTracer(metrics);
+        TrackingInputStream input = new TrackingInputStream(extended);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        mParser.parse(input, output);
+
+        assertThat(new String(output.toByteArray())).isEqualTo(new String(expected.toByteArray()));
+        assertThat(metrics.getUnknownChunks()).isEqualTo(2);
+        assertThat(input.mReadBytes).isLessThan(64 * 1024);
+
+        output = new ByteArrayOutputStream();
+        mParser.parseBuffer(ByteBuffer.wrap(extended), new OutputStreamListener(output));
+        assertThat(new String(output.toByteArray())).isEqualTo(new String(expected.toByteArray()));
+
+        output = new ByteArrayOutputStream();
+        mParser.startFeed(new OutputStreamListener(output));
+        for (int start = 0; start < extended.length; start += 4096) {
+            mParser.feed(ByteBuffer.wrap(extended, start, Math.min(4096, extended.length - start)));
+        }
+        mParser.endFeed();
+        assertThat(new String(output.toByteArray())).isEqualTo(new String(expected.toByteArray()));
+    }
+
+    @Test
+    public void shouldSkipTheEndOfLargerBlocks() throws IOException {
+        byte[] document = buildManyElementsDocument(10);
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        mParser.parse(new ByteArrayInputStream(document), expected);
+
+        // the last end tag, with 8 extra bytes
+        ByteBuffer larger = ByteBuffer.allocate(document.length + 8).order(ByteOrder.LITTLE_ENDIAN);
+        larger.put(document);
+        larger.putInt(4, larger.capacity());
+        larger.putInt(document.length - 20, 32);
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        mParser.parse(new ByteArrayInputStream(larger.array()), output);
+
+        assertThat(new String(output.toByteArray())).isEqualTo(new String(expected.toByteArray()));
+    }
+
+    @Test(expected = IOException.class)
+    public void shouldFailOnInvalidBlockSize() throws IOException {
+        ByteBuffer invalid = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+        invalid.putInt(0x00080110).putInt(4);
+        byte[] document = insertBeforeLastBlock(buildManyElementsDocument(10), invalid.array());
+
+        mParser.parse(new ByteArrayInputStream(document), mMockListener);
+    }
+
+    @Test
+    public void shouldFailOnBlockSmallerThanItsHeader() throws IOException {
+        byte[] document = buildLargeStringPoolDocument(8);
+        // the end tag block claims to be smaller than its 6 words
+        ByteBuffer.wrap(document).order(ByteOrder.LITTLE_ENDIAN).putInt(document.length - 20, 16);
+
+        try {
+            mParser.parseBuffer(ByteBuffer.wrap(document), mMockListener);
+            throw new AssertionError("Expected an IOException");
+        } catch (IOException e) {
+            assertThat(e.getMessage()).startsWith("Invalid block size 16");
+        }
+        verify(mMockListener, never()).endElement(anyString(), anyString(), anyString());
+    }
+
+    @Test
+    public void shouldFailOnInvalidAttributesCount() throws IOException {
+        int[] counts = new int[]{1, -1, 0x7FFFFFFF, 0x0CCCCCCD};
+        for (int count : counts) {
+            byte[] document = buildLargeStringPoolDocument(8);
+            // the attributes count of the single start tag, which has no room for attributes
+            ByteBuffer.wrap(document).order(ByteOrder.LITTLE_ENDIAN).putInt(document.length - 32, count);
+
+            try {
+                mParser.parse(new ByteArrayInputStream(document), mMockListener);
+                throw new AssertionError("Expected an IOException for " + count);
+            } catch (IOException e) {
+                assertThat(e.getMessage()).startsWith("Invalid attributes count");
+            }
+
+            try {
+                mParser.parseBuffer(ByteBuffer.wrap(document), new OutputStreamListener(new ByteArrayOutputStream()));
+                throw new AssertionError("Expected an IOException for " + count);
+            } catch (IOException e) {
+                assertThat(e.getMessage()).startsWith("Invalid attributes count");
+            }
+        }
+    }
+
+    /**
+     * @param document a document ending with an end tag block
+     * @param block    the block to insert
+     * @return a copy of the document, with the block inserted before the last end tag
+     */
+    private static byte[] insertBeforeLastBlock(final byte[] document, final byte[] block) {
+        int insertPosition = document.length - 24;
+        ByteBuffer result = ByteBuffer.allocate(document.length + block.length).order(ByteOrder.LITTLE_ENDIAN);
+        result.put(document, 0, insertPosition);
+        result.put(block);
+        result.put(document, insertPosition, 24);
+        result.putInt(4, result.capacity());
+        return result.array();
+    }
+
+    /**
+     * @param itemsCount the number of item elements
+     * @return a document with a root element holding many attributed item elements, with a small
+     * string pool
+     */
+    private static byte[] buildManyElementsDocument(final int itemsCount) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        AXMLEncoder encoder = new AXMLEncoder(output);
+        encoder.startDocument();
+        encoder.startElement("root", new Attribute[0], null, null);
+        for (int i = 0; i < itemsCount; ++i) {
+            encoder.startElement("item", new Attribute[]{new Attribute("index", Integer.toString(i % 10), null, null)}, null, null);
+            encoder.endElement("item", null, null);
+        }
+        encoder.endElement("root", null, null);
+        encoder.endDocument();
+        return output.toByteArray();
+    }
+
+    /**
+     * Counts the bytes read, and remembers whether it was closed
+     */
+    private static class TrackingInputStream extends ByteArrayInputStream {
+
+        int mReadBytes;
+        boolean mClosed;
+
+        TrackingInputStream(final byte[] content) {
+            super(content);
+        }
+
+        @Override
+        public synchronized int read(final byte[] buffer, final int offset, final int length) {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                mReadBytes += read;
+            }
+            return read;
+        }
+
+        @Override
+        public void close() throws IOException {
+            mClosed = true;
+            super.close();
+        }
+    }
+
+    /**
+     * Builds a document with a single element, named after the last string of a large (UTF-16)
+     * string pool
+     *
+     * @param stringsCount the number of strings in the pool
+     * @return the document bytes
+     */
+    /**
+     * @return all the strings of the document pool, as seen by an indexed listener
+     */
+    private static List<String> readAllStrings(final AXMLParser parser, final byte[] document) throws IOException {
+        final List<String> strings = new ArrayList<>();
+        AXMLParser.IndexedListener listener = mock(AXMLParser.IndexedListener.class);
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(final InvocationOnMock invocation) {
+                SymbolTable symbols = (SymbolTable) invocation.getArguments()[0];
+                for (int i = 0; i < symbols.getCount(); ++i) {
+                    strings.add(symbols.getString(i));
+                }
+                return null;
+            }
+        }).when(listener).symbolTable(any(SymbolTable.class));
+
+        parser.parseBuffer(ByteBuffer.wrap(document), listener);
+        return strings;
+    }
+
+    private static byte[] buildLargeStringPoolDocument(final int stringsCount) {
+        String[] strings = new String[stringsCount];
+        int dataSize = 0;
+        for (int i = 0; i < stringsCount; ++i) {
+            strings[i] = "string_" + i;
+            dataSize += 2 + (strings[i].length() * 2) + 2;
+        }
+        dataSize = (dataSize + 3) & ~3;
+
+        int poolSize = 28 + (stringsCount * 4) + dataSize;
+        int docSize = 8 + poolSize + 36 + 24;
+
+        ByteBuffer buffer = ByteBuffer.allocate(docSize).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(AXMLParser.WORD_START_DOCUMENT).putInt(docSize);
+
+        // string pool
+        buffer.putInt(AXMLParser.WORD_STRING_TABLE).putInt(poolSize);
+        buffer.putInt(stringsCount).putInt(0).putInt(AXMLParser.ENCODING_UTF16_LE);
+        buffer.putInt(28 + (stringsCount * 4)).putInt(0);
+        int offset = 0;
+        for (String string : strings) {
+            buffer.putInt(offset);
+            offset += 2 + (string.length() * 2) + 2;
+        }
+        for (String string : strings) {
+            buffer.putShort((short) string.length());
+            for (int c = 0; c < string.length(); ++c) {
+                buffer.putChar(string.charAt(c));
+            }
+            buffer.putShort((short) 0);
+        }
+        buffer.position(8 + poolSize);
+
+        // single element
+        buffer.putInt(AXMLParser.WORD_START_TAG).putInt(36).putInt(1).putInt(-1);
+        buffer.putInt(AXMLParser.DEFAULT_NAMESPACE).putInt(stringsCount - 1).putInt(0x00140014).putInt(0).putInt(0);
+        buffer.putInt(AXMLParser.WORD_END_TAG).putInt(24).putInt(1).putInt(-1);
+        buffer.putInt(AXMLParser.DEFAULT_NAMESPACE).putInt(stringsCount - 1);
+
+        return buffer.array();
+    }
+}
@@ -0,0 +1,201 @@
+package fr.xgouchet.axml;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AXMLPullParserTest {
+
+    private AXMLPullParser mParser;
+
+    @Before
+    public void setUp() {
+        mParser = new AXMLPullParser();
+    }
+
+    @Test(expected = XmlPullParserException.class)
+    public void shouldRejectReaders() throws XmlPullParserException {
+        mParser.setInput(new StringReader("<root/>"));
+    }
+
+    @Test
+    public void shouldPullEmptyDocument() throws XmlPullParserException, IOException {
+        mParser.setInput(new FileInputStream(new File("testres/axml/empty.xml")), null);
+
+        assertThat(mParser.getEventType()).isEqualTo(XmlPullParser.START_DOCUMENT);
+        assertThat(mParser.getDepth()).isEqualTo(0);
+
+        assertThat(mParser.next()).isEqualTo(XmlPullParser.START_TAG);
+        assertThat(mParser.getName()).isEqualTo("root");
+        assertThat(mParser.getDepth()).isEqualTo(1);
+        assertThat(mParser.getAttributeCount()).isEqualTo(0);
+
+        assertThat(mParser.next()).isEqualTo(XmlPullParser.END_TAG);
+        assertThat(mParser.getName()).isEqualTo("root");
+        assertThat(mParser.getDepth()).isEqualTo(1);
+
+        assertThat(mParser.next()).isEqualTo(XmlPullParser.END_DOCUMENT);
+        assertThat(mParser.getDepth()).isEqualTo(0);
+        assertThat(mParser.next()).isEqualTo(XmlPullParser.END_DOCUMENT);
+    }
+
+    @Test
+    public void shouldPullText() throws XmlPullParserException, IOException {
+        mParser.setInput(new FileInputStream(new File("testres/axml/text.xml")), null);
+
+        mParser.nextTag();
+        mParser.require(XmlPullParser.START_TAG, null, "root");
+
+        mParser.nextTag();
+        mParser.require(XmlPullParser.START_TAG, null, "withtext");
+        assertThat(mParser.nextText()).isEqualTo("Lorem ipsum dolor sit amet");
+        mParser.require(XmlPullParser.END_TAG, null, "withtext");
+
+        mParser.nextTag();
+        mParser.require(XmlPullParser.START_TAG, null, "withcdata");
+        assertThat(mParser.next()).isEqualTo(XmlPullParser.TEXT);
+        assertThat(mParser.getText()).isEqualTo("Plop");
+        assertThat(mParser.isWhitespace()).isFalse();
+    }
+
+    @Test
+    public void shouldPullAttributesWithNamespaces() throws XmlPullParserException, IOException {
+        mParser.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, true);
+        mParser.setInput(new FileInputStream(new File("testres/axml/attributes.xml")), null);
+
+        mParser.nextTag();
+        mParser.nextTag();
+        mParser.require(XmlPullParser.START_TAG, "", "attributed");
+        assertThat(mParser.getAttributeCount()).isEqualTo(1);
+        assertThat(mParser.getAttributeName(0)).isEqualTo("key");
+        assertThat(mParser.getAttributeNamespace(0)).isEqualTo("");
+        assertThat(mParser.getAttributeValue(null, "key")).isEqualTo("value");
+        mParser.nextTag();
+
+        mParser.nextTag();
+        mParser.require(XmlPullParser.START_TAG, "", "attributed_with_ns");
+        assertThat(mParser.getNamespaceCount(2)).isEqualTo(1);
+        assertThat(mParser.getNamespacePrefix(0)).isEqualTo("foo");
+        assertThat(mParser.getNamespace("foo")).isEqualTo("42");
+        assertThat(mParser.getAttributeCount()).isEqualTo(1);
+        assertThat(mParser.getAttributeName(0)).isEqualTo("key");
+        assertThat(mParser.getAttributePrefix(0)).isEqualTo("foo");
+        assertThat(mParser.getAttributeNamespace(0)).isEqualTo("42");
+        assertThat(mParser.getAttributeValue("42", "key")).isEqualTo("spam");
+
+        mParser.nextTag();
+        mParser.require(XmlPullParser.END_TAG, "", "attributed_with_ns");
+        mParser.nextTag();
+        mParser.require(XmlPullParser.END_TAG, "", "root");
+        assertThat(mParser.getNamespaceCount(1)).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldPullAttributesWithoutNamespaces() throws XmlPullParserException, IOException {
+        mParser.setInput(new FileInputStream(new File("testres/axml/namespaces.xml")), null);
+
+        mParser.nextTag();
+        mParser.require(XmlPullParser.START_TAG, "", "root");
+        assertThat(mParser.getAttributeCount()).isEqualTo(1);
+        assertThat(mParser.getAttributeName(0)).isEqualTo("xmlns:bar");
+        assertThat(mParser.getAttributeValue(0)).isEqualTo("42");
+
+        mParser.nextTag();
+        mParser.nextTag();
+        mParser.nextTag();
+        mParser.require(XmlPullParser.START_TAG, "", "tagWithNs");
+        mParser.nextTag();
+        mParser.require(XmlPullParser.START_TAG, "", "foo:plop");
+        assertThat(mParser.getPrefix()).isNull();
+    }
+
+    @Test
+    public void shouldSkipSubTree() throws XmlPullParserException, IOException {
+        mParser.setInput(new FileInputStream(new File("testres/axml/namespaces.xml")), null);
+
+        mParser.nextTag();
+        mParser.nextTag();
+        mParser.nextTag();
+        mParser.nextTag();
+        mParser.require(XmlPullParser.START_TAG, null, "tagWithNs");
+
+        mParser.skipSubTree();
+        mParser.require(XmlPullParser.END_TAG, null, "tagWithNs");
+        assertThat(mParser.getDepth()).isEqualTo(2);
+
+        mParser.nextTag();
+        mParser.require(XmlPullParser.END_TAG, null, "root");
+        assertThat(mParser.next()).isEqualTo(XmlPullParser.END_DOCUMENT);
+    }
+
+    @Test
+    public void shouldNotDecodeSkippedSubTree() throws XmlPullParserException, IOException {
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        AXMLEncoder encoder = new AXMLEncoder(encoded);
+        encoder.startDocument();
+        encoder.startElement("root", new Attribute[0], null, null);
+        encoder.startElement("skipped", new Attribute[0], null, null);
+        for (int i = 0; i < 100; ++i) {
+            encoder.startElement("child" + i, new Attribute[]{new Attribute("name" + i, "value" + i)}, null, null);
+            encoder.text("text" + i);
+            encoder.endElement("child" + i, null, null);
+        }
+        encoder.endElement("skipped", null, null);
+        encoder.startElement("kept", new Attribute[0], null, null);
+        encoder.endElement("kept", null, null);
+        encoder.endElement("root", null, null);
+        encoder.endDocument();
+
+        ParserMetrics metrics = new ParserMetrics();
+        AXMLParser parser = new AXMLParser();
+        parser.setTracer(metrics);
+        mParser = new AXMLPullParser(parser);
+        mParser.setInput(new ByteArrayInputStream(encoded.toByteArray()), null);
+
+        mParser.nextTag();
+        mParser.nextTag();
+        mParser.require(XmlPullParser.START_TAG, null, "skipped");
+        mParser.skipSubTree();
+        mParser.require(XmlPullParser.END_TAG, null, "skipped");
+
+        mParser.nextTag();
+        mParser.require(XmlPullParser.START_TAG, null, "kept");
+
+        // root, skipped and kept : none of the children strings
+        assertThat(metrics.getStringsDecoded()).isEqualTo(3);
+    }
+
+    @Test(expected = XmlPullParserException.class)
+    public void shouldFailToSkipTruncatedSubTree() throws XmlPullParserException, IOException {
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        AXMLEncoder encoder = new AXMLEncoder(encoded);
+        encoder.startDocument();
+        encoder.startElement("root", new Attribute[0], null, null);
+        encoder.startElement("child", new Attribute[0], null, null);
+        encoder.endElement("child", null, null);
+        encoder.endElement("root", null, null);
+        encoder.endDocument();
+
+        // drop the end tags
+        byte[] document = encoded.toByteArray();
+        byte[] truncated = Arrays.copyOf(document, document.length - (2 * 6 * AXMLParser.WORD_SIZE));
+        ByteBuffer.wrap(truncated).order(ByteOrder.LITTLE_ENDIAN).putInt(4, truncated.length);
+
+        mParser.setInput(new ByteArrayInputStream(truncated), null);
+        mParser.nextTag();
+        mParser.skipSubTree();
+    }
+}
@@ -0,0 +1,108 @@
+package fr.xgouchet.axml;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AttributeCursorTest {
+
+    private static final String ANDROID_NS = "http://schemas.android.com/apk/res/android";
+
+    private AXMLParser mParser;
+    private CapturingListener mListener;
+
+    @Before
+    public void setUp() {
+        mParser = new AXMLParser();
+        mListener = new CapturingListener();
+    }
+
+    @Test
+    public void shouldExposeRawTypedValues() throws IOException {
+        mParser.parse(new FileInputStream(new File("testres/axml/typed_attrs.xml")), mListener);
+
+        assertThat(mListener.mTypes.get("paddingTop")).isEqualTo(AXMLParser.TYPE_DIMEN);
+        assertThat(mListener.mData.get("paddingTop")).isEqualTo((8 << 8) | 1);
+        assertThat(mListener.mTypes.get("lines")).isEqualTo(AXMLParser.TYPE_INT);
+        assertThat(mListener.mData.get("lines")).isEqualTo(7);
+        assertThat(mListener.mTypes.get("textColor")).isEqualTo(AXMLParser.TYPE_COLOR_RRGGBB);
+        assertThat(mListener.mData.get("textColor") & 0xFFFFFF).isEqualTo(0x4488FF);
+        assertThat(mListener.mTypes.get("id")).isEqualTo(AXMLParser.TYPE_ID_REF);
+        assertThat(mListener.mData.get("id")).isEqualTo(0x7F060001);
+    }
+
+    @Test
+    public void shouldRenderValuesLikeAttributes() throws IOException {
+        mParser.parse(new FileInputStream(new File("testres/axml/typed_attrs.xml")), mListener);
+
+        assertThat(mListener.mAttributes)
+                .contains(new Attribute("paddingLeft", "4px", ANDROID_NS, "android"))
+                .contains(new Attribute("text", "@android:string/0x01040003", ANDROID_NS, "android"))
+                .contains(new Attribute("enabled", "true", ANDROID_NS, "android"))
+                .contains(new Attribute("textColorHint", "#80FF00FF", ANDROID_NS, "android"));
+    }
+
+    @Test
+    public void shouldExposeStringValues() throws IOException {
+        mParser.parse(new FileInputStream(new File("testres/axml/attributes.xml")), mListener);
+
+        assertThat(mListener.mAttributes)
+                .contains(new Attribute("key", "value"))
+                .contains(new Attribute("key", "spam", "42", "foo"));
+        assertThat(mListener.mTypes.get("key")).isEqualTo(AXMLParser.TYPE_STRING);
+    }
+
+    private static class CapturingListener implements AXMLParser.CursorListener {
+
+        private final List<Attribute> mAttributes = new ArrayList<>();
+        private final Map<String, Integer> mTypes = new HashMap<>();
+        private final Map<String, Integer> mData = new HashMap<>();
+
+        @Override
+        public void startElement(String localName, AttributeCursor attributes, String uri, String prefix) {
+            for (int i = 0; i < attributes.getCount(); ++i) {
+                mAttributes.add(attributes.toAttribute(i));
+                mTypes.put(attributes.getName(i), attributes.getValueType(i));
+                mData.put(attributes.getName(i), attributes.getValueData(i));
+            }
+        }
+
+        @Override
+        public void startElement(String localName, Attribute[] attributes, String uri, String prefix) {
+            throw new IllegalStateException("Cursor listeners should not receive Attribute arrays");
+        }
+
+        @Override
+        public void startDocument() {
+        }
+
+        @Override
+        public void endDocument() {
+        }
+
+        @Override
+        public void startPrefixMapping(String prefix, String uri) {
+        }
+
+        @Override
+        public void endPrefixMapping(String prefix, String uri) {
+        }
+
+        @Override
+        public void endElement(String localName, String uri, String prefix) {
+        }
+
+        @Override
+        public void text(String data) {
+        }
+    }
+}
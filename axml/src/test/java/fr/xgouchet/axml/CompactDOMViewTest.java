@@ -0,0 +1,167 @@
+package fr.xgouchet.axml;
+
+import org.junit.Test;
+import org.w3c.dom.Attr;
+import org.w3c.dom.DOMException;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+public class CompactDOMViewTest {
+
+    @Test
+    public void shouldMatchDOMListenerDocuments() throws IOException, ParserConfigurationException {
+        AXMLParser parser = new AXMLParser();
+        File dir = new File("testres/axml/samples");
+
+        for (File sample : dir.listFiles()) {
+            Document expected = parser.parse(new FileInputStream(sample));
+            Document actual = parser.parseCompact(new FileInputStream(sample)).asDocument();
+
+            assertSameNode(sample.getName(), expected.getDocumentElement(), actual.getDocumentElement());
+        }
+    }
+
+    @Test
+    public void shouldNavigateNodes() throws IOException {
+        Document doc = new AXMLParser().parseCompact(new FileInputStream("testres/axml/text.xml")).asDocument();
+
+        Element root = doc.getDocumentElement();
+        assertThat(root.getTagName()).isEqualTo("root");
+        assertThat(root.getParentNode()).isSameAs(doc);
+        assertThat(root.getOwnerDocument()).isSameAs(doc);
+        assertThat(doc.getFirstChild().isSameNode(root)).isTrue();
+
+        Element withText = (Element) root.getFirstChild();
+        Element withCData = (Element) root.getLastChild();
+        assertThat(withText.getTagName()).isEqualTo("withtext");
+        assertThat(withCData.getTagName()).isEqualTo("withcdata");
+        assertThat(withCData.getPreviousSibling()).isEqualTo(withText);
+        assertThat(withText.getPreviousSibling()).isNull();
+        assertThat(withText.getTextContent()).isEqualTo("Lorem ipsum dolor sit amet");
+        assertThat(withText.getFirstChild().getNodeType()).isEqualTo(Node.TEXT_NODE);
+        assertThat(withText.getFirstChild().getParentNode()).isEqualTo(withText);
+
+        NodeList children = root.getChildNodes();
+        assertThat(children.getLength()).isEqualTo(2);
+        assertThat(children.item(1)).isEqualTo(withCData);
+        assertThat(children.item(2)).isNull();
+    }
+
+    @Test
+    public void shouldFindElementsAndAttributes() throws IOException {
+        Document doc = new AXMLParser().parseCompact(new FileInputStream("testres/axml/namespaces.xml")).asDocument();
+
+        NodeList plops = doc.getElementsByTagNameNS("815", "plop");
+        assertThat(plops.getLength()).isEqualTo(1);
+        Element plop = (Element) plops.item(0);
+        assertThat(plop.getTagName()).isEqualTo("foo:plop");
+        assertThat(plop.getLocalName()).isEqualTo("plop");
+        assertThat(plop.getPrefix()).isEqualTo("foo");
+        assertThat(plop.lookupNamespaceURI("foo")).isEqualTo("815");
+        assertThat(plop.lookupPrefix("815")).isEqualTo("foo");
+
+        Element root = doc.getDocumentElement();
+        assertThat(root.getElementsByTagName("*").getLength()).isEqualTo(3);
+        assertThat(root.getElementsByTagName("subTag").getLength()).isEqualTo(1);
+        assertThat(((Element) root.getFirstChild()).getElementsByTagName("*").getLength()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldExposeAttributes() throws IOException {
+        CompactDocumentListener listener = new CompactDocumentListener();
+        listener.startDocument();
+        listener.startElement("foo", new Attribute[]{
+                new Attribute("x", "42", "urn:plop", "plop"),
+                new Attribute("y", "Lorem ipsum"),
+        }, null, null);
+        listener.endElement("foo", null, null);
+        listener.endDocument();
+
+        Element foo = listener.getDocument().asDocument().getDocumentElement();
+        assertThat(foo.hasAttributes()).isTrue();
+        assertThat(foo.getAttribute("plop:x")).isEqualTo("42");
+        assertThat(foo.getAttribute("x")).isEqualTo("");
+        assertThat(foo.getAttributeNS("urn:plop", "x")).isEqualTo("42");
+        assertThat(foo.getAttribute("y")).isEqualTo("Lorem ipsum");
+        assertThat(foo.hasAttribute("z")).isFalse();
+
+        NamedNodeMap attributes = foo.getAttributes();
+        assertThat(attributes.getLength()).isEqualTo(2);
+        Attr x = (Attr) attributes.item(0);
+        assertThat(x.getName()).isEqualTo("plop:x");
+        assertThat(x.getLocalName()).isEqualTo("x");
+        assertThat(x.getNamespaceURI()).isEqualTo("urn:plop");
+        assertThat(x.getValue()).isEqualTo("42");
+        assertThat(x.getOwnerElement()).isEqualTo(foo);
+        assertThat(attributes.getNamedItem("y").getNodeValue()).isEqualTo("Lorem ipsum");
+        assertThat(attributes.item(2)).isNull();
+    }
+
+    @Test
+    public void shouldBeReadOnly() throws IOException {
+        Document doc = new AXMLParser().parseCompact(new FileInputStream("testres/axml/text.xml")).asDocument();
+        Element root = doc.getDocumentElement();
+
+        try {
+            root.setAttribute("foo", "bar");
+            fail("Expected a DOMException");
+        } catch (DOMException e) {
+            assertThat(e.code).isEqualTo(DOMException.NO_MODIFICATION_ALLOWED_ERR);
+        }
+
+        try {
+            root.removeChild(root.getFirstChild());
+            fail("Expected a DOMException");
+        } catch (DOMException e) {
+            assertThat(e.code).isEqualTo(DOMException.NO_MODIFICATION_ALLOWED_ERR);
+        }
+
+        try {
+            doc.createElement("foo");
+            fail("Expected a DOMException");
+        } catch (DOMException e) {
+            assertThat(e.code).isEqualTo(DOMException.NO_MODIFICATION_ALLOWED_ERR);
+        }
+    }
+
+    private static void assertSameNode(final String description, final Node expected, final Node actual) {
+        assertThat(actual.getNodeType()).as(description).isEqualTo(expected.getNodeType());
+        assertThat(actual.getNodeName()).as(description).isEqualTo(expected.getNodeName());
+
+        if (expected.getNodeType() == Node.TEXT_NODE) {
+            assertThat(actual.getNodeValue()).as(description).isEqualTo(expected.getNodeValue());
+            return;
+        }
+
+        assertThat(actual.getNamespaceURI()).as(description).isEqualTo(expected.getNamespaceURI());
+
+        NamedNodeMap expectedAttributes = expected.getAttributes();
+        NamedNodeMap actualAttributes = actual.getAttributes();
+        assertThat(actualAttributes.getLength()).as(description).isEqualTo(expectedAttributes.getLength());
+        for (int i = 0; i < expectedAttributes.getLength(); ++i) {
+            Attr attribute = (Attr) expectedAttributes.item(i);
+            assertThat(((Element) actual).getAttribute(attribute.getName()))
+                    .as(description + " @" + attribute.getName())
+                    .isEqualTo(attribute.getValue());
+        }
+
+        NodeList expectedChildren = expected.getChildNodes();
+        NodeList actualChildren = actual.getChildNodes();
+        assertThat(actualChildren.getLength()).as(description).isEqualTo(expectedChildren.getLength());
+        for (int i = 0; i < expectedChildren.getLength(); ++i) {
+            assertSameNode(description, expectedChildren.item(i), actualChildren.item(i));
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package fr.xgouchet.axml;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+
+public class CompactDocumentListenerTest {
+
+    private CompactDocumentListener mListener;
+
+    @Before
+    public void setUp() {
+        mListener = new CompactDocumentListener();
+    }
+
+    @Test
+    public void shouldCreateEmptyDocument() {
+        mListener.startDocument();
+        assertThat(mListener.getDocument()).isNull();
+        mListener.endDocument();
+
+        CompactDocument doc = mListener.getDocument();
+        assertThat(doc).isNotNull();
+        assertThat(doc.getNodesCount()).isEqualTo(0);
+        assertThat(doc.getRoot()).isEqualTo(CompactDocument.NO_NODE);
+    }
+
+    /**
+     * Simulates the following structure :
+     * <pre><code>
+     * &lt;foo>
+     *   &lt;bar>
+     *     &lt;spam/&gt;
+     *   &lt;/bar>
+     *   &lt;bacon>
+     *   &lt;/bacon>
+     *  &lt;/foo>
+     * </code></pre>
+     */
+    @Test
+    public void shouldHandleNodeStructure() {
+        mListener.startDocument();
+        mListener.startElement("foo", new Attribute[0], null, null);
+        mListener.startElement("bar", new Attribute[0], null, null);
+        mListener.startElement("spam", new Attribute[0], null, null);
+        mListener.endElement("spam", null, null);
+        mListener.endElement("bar", null, null);
+        mListener.startElement("bacon", new Attribute[0], null, null);
+        mListener.endElement("bacon", null, null);
+        mListener.endElement("foo", null, null);
+        mListener.endDocument();
+
+        CompactDocument doc = mListener.getDocument();
+        assertThat(doc.getNodesCount()).isEqualTo(4);
+
+        int foo = doc.getRoot();
+        assertThat(doc.getName(foo)).isEqualTo("foo");
+        assertThat(doc.getParent(foo)).isEqualTo(CompactDocument.NO_NODE);
+        assertThat(doc.getNextSibling(foo)).isEqualTo(CompactDocument.NO_NODE);
+
+        int bar = doc.getFirstChild(foo);
+        assertThat(doc.getName(bar)).isEqualTo("bar");
+        assertThat(doc.getParent(bar)).isEqualTo(foo);
+
+        int spam = doc.getFirstChild(bar);
+        assertThat(doc.getName(spam)).isEqualTo("spam");
+        assertThat(doc.getFirstChild(spam)).isEqualTo(CompactDocument.NO_NODE);
+        assertThat(doc.getNextSibling(spam)).isEqualTo(CompactDocument.NO_NODE);
+
+        int bacon = doc.getNextSibling(bar);
+        assertThat(doc.getName(bacon)).isEqualTo("bacon");
+        assertThat(doc.getParent(bacon)).isEqualTo(foo);
+        assertThat(doc.getFirstChild(bacon)).isEqualTo(CompactDocument.NO_NODE);
+        assertThat(doc.getNextSibling(bacon)).isEqualTo(CompactDocument.NO_NODE);
+    }
+
+    @Test
+    public void shouldHandleNodeAttributes() {
+        Attribute[] attributes = new Attribute[]{
+                new Attribute("x", "42"),
+                new Attribute("y", "Lorem ipsum dolor sit amet"),
+                new Attribute("z", "42"),
+        };
+
+        mListener.startDocument();
+        mListener.startElement("foo", new Attribute[0], null, null);
+        mListener.startElement("bar", attributes, null, null);
+        mListener.endElement("bar", null, null);
+        mListener.endElement("foo", null, null);
+        mListener.endDocument();
+
+        CompactDocument doc = mListener.getDocument();
+        int foo = doc.getRoot();
+        assertThat(doc.getAttributesCount(foo)).isEqualTo(0);
+
+        int bar = doc.getFirstChild(foo);
+        assertThat(doc.getAttributesCount(bar)).isEqualTo(3);
+        assertThat(doc.getAttributeName(bar, 0)).isEqualTo("x");
+        assertThat(doc.getAttributeValue(bar, 0)).isEqualTo("42");
+        assertThat(doc.getAttributeValue(bar, null, "y")).isEqualTo("Lorem ipsum dolor sit amet");
+        assertThat(doc.getAttributeValue(bar, null, "z")).isEqualTo("42");
+        assertThat(doc.getAttributeValue(bar, null, "w")).isNull();
+
+        // each distinct string is stored once
+        assertThat(doc.getStringsCount()).isEqualTo(7);
+    }
+
+    @Test
+    public void shouldHandleNamespace() {
+        String prefix = "plop";
+        String uri = "http://www.namespace.com/custom/test";
+
+        Attribute[] attributes = new Attribute[]{
+                new Attribute("x", "42", uri, prefix),
+                new Attribute("y", "Lorem ipsum dolor sit amet"),
+        };
+
+        mListener.startDocument();
+        mListener.startPrefixMapping(prefix, uri);
+        mListener.startElement("foo", attributes, null, null);
+        mListener.startElement("bacon", new Attribute[0], uri, prefix);
+        mListener.endElement("bacon", uri, prefix);
+        mListener.endElement("foo", null, null);
+        mListener.endPrefixMapping(prefix, uri);
+        mListener.endDocument();
+
+        CompactDocument doc = mListener.getDocument();
+        int foo = doc.getRoot();
+        assertThat(doc.getNamespaceUri(foo)).isNull();
+        assertThat(doc.getPrefix(foo)).isNull();
+        assertThat(doc.getAttributeNamespaceUri(foo, 0)).isEqualTo(uri);
+        assertThat(doc.getAttributePrefix(foo, 0)).isEqualTo(prefix);
+        assertThat(doc.getAttributeValue(foo, uri, "x")).isEqualTo("42");
+        assertThat(doc.getAttributeValue(foo, null, "x")).isNull();
+        assertThat(doc.getAttributeNamespaceUri(foo, 1)).isNull();
+
+        int bacon = doc.getFirstChild(foo);
+        assertThat(doc.getName(bacon)).isEqualTo("bacon");
+        assertThat(doc.getNamespaceUri(bacon)).isEqualTo(uri);
+        assertThat(doc.getPrefix(bacon)).isEqualTo(prefix);
+    }
+
+    @Test
+    public void shouldHandleText() {
+        mListener.startDocument();
+        mListener.startElement("span", new Attribute[0], null, null);
+        mListener.text("Lorem ipsum ");
+        mListener.startElement("b", new Attribute[0], null, null);
+        mListener.text("dolor");
+        mListener.endElement("b", null, null);
+        mListener.text(" sit amet");
+        mListener.endElement("span", null, null);
+        mListener.endDocument();
+
+        CompactDocument doc = mListener.getDocument();
+        int span = doc.getRoot();
+
+        int first = doc.getFirstChild(span);
+        assertThat(doc.getNodeType(first)).isEqualTo(CompactDocument.TEXT_NODE);
+        assertThat(doc.getText(first)).isEqualTo("Lorem ipsum ");
+        assertThat(doc.getName(first)).isNull();
+
+        int b = doc.getNextSibling(first);
+        assertThat(doc.getNodeType(b)).isEqualTo(CompactDocument.ELEMENT_NODE);
+        assertThat(doc.getText(doc.getFirstChild(b))).isEqualTo("dolor");
+
+        int last = doc.getNextSibling(b);
+        assertThat(doc.getText(last)).isEqualTo(" sit amet");
+        assertThat(doc.getNextSibling(last)).isEqualTo(CompactDocument.NO_NODE);
+    }
+
+    @Test
+    public void shouldHandleDeepDocuments() {
+        mListener.startDocument();
+        for (int i = 0; i < 100; ++i) {
+            mListener.startElement("level" + i, new Attribute[]{new Attribute("depth", "" + i)}, null, null);
+        }
+        for (int i = 99; i >= 0; --i) {
+            mListener.endElement("level" + i, null, null);
+        }
+        mListener.endDocument();
+
+        CompactDocument doc = mListener.getDocument();
+        assertThat(doc.getNodesCount()).isEqualTo(100);
+
+        int node = doc.getRoot();
+        for (int i = 0; i < 100; ++i) {
+            assertThat(doc.getName(node)).isEqualTo("level" + i);
+            assertThat(doc.getAttributeValue(node, null, "depth")).isEqualTo("" + i);
+            node = doc.getFirstChild(node);
+        }
+        assertThat(node).isEqualTo(CompactDocument.NO_NODE);
+    }
+
+    @Test
+    public void shouldBuildFromParser() throws IOException {
+        CompactDocument doc = new AXMLParser().parseCompact(new FileInputStream("testres/axml/namespaces.xml"));
+
+        int root = doc.getRoot();
+        assertThat(doc.getName(root)).isEqualTo("root");
+
+        int tagWithNs = doc.getNextSibling(doc.getFirstChild(root));
+        assertThat(doc.getName(tagWithNs)).isEqualTo("tagWithNs");
+
+        int plop = doc.getFirstChild(tagWithNs);
+        assertThat(doc.getName(plop)).isEqualTo("plop");
+        assertThat(doc.getNamespaceUri(plop)).isEqualTo("815");
+        assertThat(doc.getPrefix(plop)).isEqualTo("foo");
+    }
+
+    @Test
+    public void shouldReuseListener() throws IOException {
+        AXMLParser parser = new AXMLParser();
+        parser.parse(new FileInputStream("testres/axml/namespaces.xml"), mListener);
+        CompactDocument first = mListener.getDocument();
+
+        parser.parse(new FileInputStream("testres/axml/text.xml"), mListener);
+        CompactDocument second = mListener.getDocument();
+
+        assertThat(second).isNotSameAs(first);
+        assertThat(first.getName(first.getRoot())).isEqualTo("root");
+        assertThat(first.getNodesCount()).isEqualTo(4);
+    }
+}
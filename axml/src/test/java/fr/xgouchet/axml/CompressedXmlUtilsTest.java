@@ -0,0 +1,34 @@
+package fr.xgouchet.axml;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CompressedXmlUtilsTest {
+
+    @Test
+    public void shouldDetectCompressedFiles() {
+        assertThat(CompressedXmlUtils.isCompressedXml(new File("testres/axml/attributes.xml"))).isTrue();
+        assertThat(CompressedXmlUtils.isCompressedXml(new File("testres/axel/empty.xml"))).isFalse();
+        assertThat(CompressedXmlUtils.isCompressedXml(new File("testres/axml/missing.xml"))).isFalse();
+    }
+
+    @Test
+    public void shouldDetectCompressedStreams() throws IOException {
+        assertThat(CompressedXmlUtils.isCompressedXml(new FileInputStream("testres/axml/text.xml"))).isTrue();
+        assertThat(CompressedXmlUtils.isCompressedXml(new ByteArrayInputStream("<root/>".getBytes("UTF-8")))).isFalse();
+        assertThat(CompressedXmlUtils.isCompressedXml(new ByteArrayInputStream(new byte[]{0x03, 0x00}))).isFalse();
+    }
+
+    @Test
+    public void shouldDetectCompressedContent() {
+        assertThat(CompressedXmlUtils.isCompressedXml(new byte[]{0x03, 0x00, 0x08, 0x00, 0x42})).isTrue();
+        assertThat(CompressedXmlUtils.isCompressedXml(new byte[]{0x03, 0x00, 0x08})).isFalse();
+        assertThat(CompressedXmlUtils.isCompressedXml(new byte[]{0x3C, 0x3F, 0x78, 0x6D})).isFalse();
+    }
+}
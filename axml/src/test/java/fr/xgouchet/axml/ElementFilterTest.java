@@ -0,0 +1,79 @@
+package fr.xgouchet.axml;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ElementFilterTest {
+
+    @Test(expected = NullPointerException.class)
+    public void shouldFailOnNullPattern() {
+        new ElementFilter("manifest", null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldFailOnEmptyStep() {
+        new ElementFilter("manifest//application");
+    }
+
+    @Test
+    public void shouldMatchAbsolutePaths() {
+        ElementFilter filter = new ElementFilter("manifest/uses-permission");
+
+        assertThat(filter.matches(path("manifest", "uses-permission"), 2)).isTrue();
+        assertThat(filter.matches(path("manifest"), 1)).isFalse();
+        assertThat(filter.matches(path("manifest", "application"), 2)).isFalse();
+        assertThat(filter.matches(path("manifest", "application", "uses-permission"), 3)).isFalse();
+        assertThat(filter.matches(path("root", "uses-permission"), 2)).isFalse();
+    }
+
+    @Test
+    public void shouldMatchWildcardSteps() {
+        ElementFilter filter = new ElementFilter("manifest/*/activity");
+
+        assertThat(filter.matches(path("manifest", "application", "activity"), 3)).isTrue();
+        assertThat(filter.matches(path("manifest", "other", "activity"), 3)).isTrue();
+        assertThat(filter.matches(path("manifest", "application", "service"), 3)).isFalse();
+    }
+
+    @Test
+    public void shouldMatchRelativePaths() {
+        ElementFilter filter = new ElementFilter("//menu/item");
+
+        assertThat(filter.matches(path("menu", "item"), 2)).isTrue();
+        assertThat(filter.matches(path("root", "group", "menu", "item"), 4)).isTrue();
+        assertThat(filter.matches(path("root", "item"), 2)).isFalse();
+        assertThat(filter.matches(path("item"), 1)).isFalse();
+    }
+
+    @Test
+    public void shouldMatchOnlyTheCurrentDepth() {
+        ElementFilter filter = new ElementFilter("//item");
+
+        // the path array may hold stale names past the current depth
+        assertThat(filter.matches(path("menu", "item"), 1)).isFalse();
+        assertThat(filter.matches(path("item", "menu"), 1)).isTrue();
+    }
+
+    @Test
+    public void shouldPruneSubtrees() {
+        ElementFilter filter = new ElementFilter("manifest/application/activity");
+
+        assertThat(filter.canMatchBelow(path("manifest"), 1)).isTrue();
+        assertThat(filter.canMatchBelow(path("manifest", "application"), 2)).isTrue();
+        assertThat(filter.canMatchBelow(path("manifest", "application", "activity"), 3)).isFalse();
+        assertThat(filter.canMatchBelow(path("manifest", "uses-sdk"), 2)).isFalse();
+        assertThat(filter.canMatchBelow(path("root"), 1)).isFalse();
+    }
+
+    @Test
+    public void shouldNeverPruneWithRelativePaths() {
+        ElementFilter filter = new ElementFilter("manifest/uses-sdk", "//activity");
+
+        assertThat(filter.canMatchBelow(path("root", "foo", "bar"), 3)).isTrue();
+    }
+
+    private static String[] path(final String... names) {
+        return names;
+    }
+}
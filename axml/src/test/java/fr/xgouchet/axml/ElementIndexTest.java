@@ -0,0 +1,349 @@
+package fr.xgouchet.axml;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static fr.xgouchet.axml.TestFiles.readFile;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ElementIndexTest {
+
+    private AXMLParser mParser;
+
+    @Before
+    public void setUp() {
+        mParser = new AXMLParser();
+    }
+
+    @Test
+    public void shouldIndexElements() throws IOException {
+        byte[] document = readFile(new File("testres/axml/namespaces.xml"));
+        ElementIndex index = ElementIndex.build(ByteBuffer.wrap(document));
+
+        assertThat(index.getCount()).isEqualTo(4);
+        assertThat(index.getDepth(0)).isEqualTo(0);
+        assertThat(index.getDepth(1)).isEqualTo(1);
+        assertThat(index.getDepth(2)).isEqualTo(1);
+        assertThat(index.getDepth(3)).isEqualTo(2);
+        assertThat(index.getSubtreeEnd(0)).isEqualTo(4);
+        assertThat(index.getSubtreeEnd(1)).isEqualTo(2);
+        assertThat(index.getSubtreeEnd(2)).isEqualTo(4);
+
+        for (int i = 0; i < index.getCount(); ++i) {
+            assertThat(index.getEndOffset(i)).isGreaterThan(index.getStartOffset(i));
+            assertThat(index.getEndOffset(i)).isLessThan(document.length);
+        }
+        assertThat(index.getEndOffset(0)).isGreaterThan(index.getEndOffset(2));
+        assertThat(index.getEndOffset(2)).isGreaterThan(index.getEndOffset(3));
+    }
+
+    @Test
+    public void shouldIndexNames() throws IOException {
+        File dir = new File("testres/axml/samples");
+
+        for (File sample : dir.listFiles()) {
+            byte[] document = readFile(sample);
+            ElementIndex index = ElementIndex.build(ByteBuffer.wrap(document));
+
+            NameIndicesListener listener = new NameIndicesListener();
+            mParser.parse(new ByteArrayInputStream(document), listener);
+
+            assertThat(index.getCount()).as(sample.getName()).isEqualTo(listener.mNameIndices.size());
+            for (int i = 0; i < index.getCount(); ++i) {
+                assertThat(index.getNameIndex(i)).as(sample.getName()).isEqualTo(listener.mNameIndices.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void shouldPersistIndex() throws IOException {
+        byte[] document = readFile(new File("testres/axml/namespaces.xml"));
+        ElementIndex index = ElementIndex.build(ByteBuffer.wrap(document));
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        index.write(output);
+        ElementIndex read = ElementIndex.read(new ByteArrayInputStream(output.toByteArray()));
+
+        assertThat(read.getCount()).isEqualTo(index.getCount());
+        assertThat(read.getDocumentSize()).isEqualTo(index.getDocumentSize());
+        assertThat(read.getPrologueSize()).isEqualTo(index.getPrologueSize());
+        assertThat(read.getNamespacesCount()).isEqualTo(index.getNamespacesCount());
+        for (int i = 0; i < index.getCount(); ++i) {
+            assertThat(read.getStartOffset(i)).isEqualTo(index.getStartOffset(i));
+            assertThat(read.getEndOffset(i)).isEqualTo(index.getEndOffset(i));
+            assertThat(read.getDepth(i)).isEqualTo(index.getDepth(i));
+            assertThat(read.getNameIndex(i)).isEqualTo(index.getNameIndex(i));
+        }
+        for (int i = 0; i < index.getNamespacesCount(); ++i) {
+            assertThat(read.getNamespaceStartOffset(i)).isEqualTo(index.getNamespaceStartOffset(i));
+            assertThat(read.getNamespaceEndOffset(i)).isEqualTo(index.getNamespaceEndOffset(i));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void shouldFailReadingInvalidIndex() throws IOException {
+        ElementIndex.read(new ByteArrayInputStream(new byte[]{1, 2, 3, 4, 5, 6, 7, 8}));
+    }
+
+    @Test
+    public void shouldFailReadingCorruptedIndex() throws IOException {
+        byte[] document = readFile(new File("testres/axml/namespaces.xml"));
+        ElementIndex index = ElementIndex.build(ByteBuffer.wrap(document));
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        index.write(output);
+        int namespacesCountPosition = 20 + (index.getCount() * 16);
+
+        // the position of the persisted int to corrupt, and the corrupted value
+        int[][] corruptions = new int[][]{
+                // document size
+                {8, 0},
+                // prologue size
+                {12, -1},
+                // elements count
+                {16, -1},
+                {16, 0x20000000},
+                // namespaces count
+                {namespacesCountPosition, -1},
+                {namespacesCountPosition, document.length},
+        };
+
+        for (int[] corruption : corruptions) {
+            byte[] persisted = output.toByteArray();
+            ByteBuffer.wrap(persisted).putInt(corruption[0], corruption[1]);
+
+            try {
+                ElementIndex.read(new ByteArrayInputStream(persisted));
+                throw new AssertionError("Expected an IOException for " + corruption[1] + " at " + corruption[0]);
+            } catch (IOException e) {
+                assertThat(e.getMessage()).startsWith("Invalid element index");
+            }
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void shouldFailIndexingTruncatedDocument() throws IOException {
+        byte[] document = readFile(new File("testres/axml/namespaces.xml"));
+        ElementIndex.build(ByteBuffer.wrap(document, 0, document.length - 24));
+    }
+
+    @Test
+    public void shouldParseSingleElementWithNamespacesInScope() throws IOException {
+        byte[] document = readFile(new File("testres/axml/namespaces.xml"));
+        ElementIndex index = ElementIndex.build(ByteBuffer.wrap(document));
+
+        RecordingListener listener = new RecordingListener();
+        mParser.parseElement(ByteBuffer.wrap(document), index, 2, listener);
+
+        assertThat(listener.mEvents).containsExactly(
+                "startDocument",
+                "startPrefixMapping bar=42",
+                "startPrefixMapping foo=815",
+                "startElement tagWithNs",
+                "startElement plop",
+                "endElement plop",
+                "endElement tagWithNs",
+                "endPrefixMapping foo=815",
+                "endPrefixMapping bar=42",
+                "endDocument");
+    }
+
+    @Test
+    public void shouldParseEveryElementLikeTheWholeDocument() throws IOException {
+        File dir = new File("testres/axml/samples");
+
+        for (File sample : dir.listFiles()) {
+            byte[] document = readFile(sample);
+            ElementIndex index = ElementIndex.build(ByteBuffer.wrap(document));
+
+            RecordingListener whole = new RecordingListener();
+            mParser.parseBuffer(ByteBuffer.wrap(document), whole);
+            List<String> wholeElements = whole.getElementEvents();
+
+            int position = 0;
+            for (int i = 0; i < index.getCount(); ++i) {
+                while (!wholeElements.get(position).startsWith("startElement")) {
+                    position++;
+                }
+
+                RecordingListener single = new RecordingListener();
+                mParser.parseElement(ByteBuffer.wrap(document), index, i, single);
+                List<String> singleElements = single.getElementEvents();
+
+                assertThat(singleElements).as(sample.getName() + " #" + i)
+                        .isEqualTo(wholeElements.subList(position, position + singleElements.size()));
+                assertThat(single.mEvents.get(single.mEvents.size() - 1)).isEqualTo("endDocument");
+                position++;
+            }
+        }
+    }
+
+    @Test
+    public void shouldStopParsingElementFromListener() throws IOException {
+        byte[] document = readFile(new File("testres/axml/namespaces.xml"));
+        ElementIndex index = ElementIndex.build(ByteBuffer.wrap(document));
+
+        RecordingListener listener = new RecordingListener() {
+            @Override
+            public void startElement(final String localName, final Attribute[] attributes,
+                                     final String uri, final String prefix) {
+                super.startElement(localName, attributes, uri, prefix);
+                mParser.stopParsing();
+            }
+        };
+        mParser.parseElement(ByteBuffer.wrap(document), index, 0, listener);
+
+        assertThat(listener.mEvents).containsExactly(
+                "startDocument",
+                "startPrefixMapping bar=42",
+                "startElement root");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldFailParsingWithMismatchingIndex() throws IOException {
+        ElementIndex index = ElementIndex.build(ByteBuffer.wrap(readFile(new File("testres/axml/namespaces.xml"))));
+
+        byte[] other = readFile(new File("testres/axml/attributes.xml"));
+        mParser.parseElement(ByteBuffer.wrap(other), index, 0, new RecordingListener());
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void shouldFailParsingInvalidElement() throws IOException {
+        byte[] document = readFile(new File("testres/axml/namespaces.xml"));
+        ElementIndex index = ElementIndex.build(ByteBuffer.wrap(document));
+
+        mParser.parseElement(ByteBuffer.wrap(document), index, 4, new RecordingListener());
+    }
+
+    /**
+     * Records the events as Strings
+     */
+    private static class RecordingListener implements AXMLParser.Listener {
+
+        final List<String> mEvents = new ArrayList<>();
+
+        /**
+         * @return the element and text events, without the document and namespaces ones
+         */
+        List<String> getElementEvents() {
+            List<String> events = new ArrayList<>();
+            for (String event : mEvents) {
+                if (event.startsWith("startElement") || event.startsWith("endElement") || event.startsWith("text")) {
+                    events.add(event);
+                }
+            }
+            return events;
+        }
+
+        @Override
+        public void startDocument() {
+            mEvents.add("startDocument");
+        }
+
+        @Override
+        public void endDocument() {
+            mEvents.add("endDocument");
+        }
+
+        @Override
+        public void startPrefixMapping(final String prefix, final String uri) {
+            mEvents.add("startPrefixMapping " + prefix + "=" + uri);
+        }
+
+        @Override
+        public void endPrefixMapping(final String prefix, final String uri) {
+            mEvents.add("endPrefixMapping " + prefix + "=" + uri);
+        }
+
+        @Override
+        public void startElement(final String localName, final Attribute[] attributes,
+                                 final String uri, final String prefix) {
+            StringBuilder event = new StringBuilder("startElement ").append(localName);
+            for (Attribute attribute : attributes) {
+                event.append(' ').append(attribute.getPrefix()).append(':')
+                        .append(attribute.getName()).append('=').append(attribute.getValue());
+            }
+            mEvents.add(event.toString());
+        }
+
+        @Override
+        public void endElement(final String localName, final String uri, final String prefix) {
+            mEvents.add("endElement " + localName);
+        }
+
+        @Override
+        public void text(final String data) {
+            mEvents.add("text " + data);
+        }
+    }
+
+    /**
+     * Records the name index of each element
+     */
+    private static class NameIndicesListener implements AXMLParser.IndexedListener {
+
+        final List<Integer> mNameIndices = new ArrayList<>();
+
+        @Override
+        public void symbolTable(final SymbolTable symbols) {
+        }
+
+        @Override
+        public void startPrefixMapping(final int prefixIndex, final int uriIndex) {
+        }
+
+        @Override
+        public void endPrefixMapping(final int prefixIndex, final int uriIndex) {
+        }
+
+        @Override
+        public void startElement(final int nameIndex, final AttributeCursor attributes,
+                                 final int uriIndex, final int prefixIndex) {
+            mNameIndices.add(nameIndex);
+        }
+
+        @Override
+        public void endElement(final int nameIndex, final int uriIndex, final int prefixIndex) {
+        }
+
+        @Override
+        public void text(final int dataIndex) {
+        }
+
+        @Override
+        public void startDocument() {
+        }
+
+        @Override
+        public void endDocument() {
+        }
+
+        @Override
+        public void startPrefixMapping(final String prefix, final String uri) {
+        }
+
+        @Override
+        public void endPrefixMapping(final String prefix, final String uri) {
+        }
+
+        @Override
+        public void startElement(final String localName, final Attribute[] attributes,
+                                 final String uri, final String prefix) {
+        }
+
+        @Override
+        public void endElement(final String localName, final String uri, final String prefix) {
+        }
+
+        @Override
+        public void text(final String data) {
+        }
+    }
+}
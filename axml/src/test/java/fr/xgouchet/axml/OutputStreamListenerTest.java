@@ -4,9 +4,13 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 
+import static fr.xgouchet.axml.TestFiles.readFile;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.AdditionalMatchers.aryEq;
 import static org.mockito.Matchers.anyString;
@@ -157,4 +161,81 @@ public class OutputStreamListenerTest {
 
 
     }
-}
\ No newline at end of file
+
+    @Test
+    public void shouldEscapeMarkup() throws IOException {
+        mListener.startDocument();
+        mListener.startElement("foo", new Attribute[]{new Attribute("x", "\"a\" & <b>")}, null, null);
+        mListener.text("1 < 2 & \"3\" > 0");
+        mListener.endElement("foo", null, null);
+        mListener.endDocument();
+
+        String result = new String(mOutputStream.toByteArray(), "UTF-8");
+
+        assertThat(result).isEqualTo(
+                "<?xml version=\"1.0\" encoding=\"utf-8\"?>\n" +
+                        "<foo x=\"&quot;a&quot; &amp; &lt;b&gt;\">1 &lt; 2 &amp; \"3\" &gt; 0</foo>\n");
+    }
+
+    @Test
+    public void shouldCopyUtf8Strings() throws IOException {
+        StringBuilder longText = new StringBuilder();
+        for (int i = 0; i < 100; ++i) {
+            longText.append("\u00e9t\u00e9 ");
+        }
+
+        byte[] document = encodeDocument(AXMLParser.ENCODING_UTF8,
+                longText + "& \ud83d\ude00", "caf\u00e9 <\"cr\u00e8me\">");
+        String expected = "<?xml version=\"1.0\" encoding=\"utf-8\"?>\n" +
+                "<foo x=\"caf\u00e9 &lt;&quot;cr\u00e8me&quot;&gt;\">" + longText + "&amp; \ud83d\ude00</foo>\n";
+
+        assertThat(decode(document, true)).isEqualTo(expected);
+        assertThat(decode(document, false)).isEqualTo(expected);
+    }
+
+    @Test
+    public void shouldCopyUtf8StringsFromFixtures() throws IOException {
+        File[] fixtures = new File("testres/axml").listFiles();
+        assertThat(fixtures).isNotEmpty();
+
+        for (File fixture : fixtures) {
+            if (!fixture.isFile()) {
+                continue;
+            }
+            String expected = decode(readFile(fixture), false);
+
+            // re encode the fixture with a UTF-8 pool, keeping the typed values
+            ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+            AXMLEncoder encoder = new AXMLEncoder(encoded);
+            encoder.setStringsEncoding(AXMLParser.ENCODING_UTF8);
+            new AXMLParser().parse(new FileInputStream(fixture), encoder);
+
+            assertThat(decode(encoded.toByteArray(), true))
+                    .as(fixture.getName())
+                    .isEqualTo(expected);
+        }
+    }
+
+    private static byte[] encodeDocument(final int encoding, final String text, final String value)
+            throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        AXMLEncoder encoder = new AXMLEncoder(output);
+        encoder.setStringsEncoding(encoding);
+
+        encoder.startDocument();
+        encoder.startElement("foo", new Attribute[]{new Attribute("x", value)}, null, null);
+        encoder.text(text);
+        encoder.endElement("foo", null, null);
+        encoder.endDocument();
+
+        return output.toByteArray();
+    }
+
+    private static String decode(final byte[] document, final boolean passthrough) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        OutputStreamListener listener = new OutputStreamListener(output);
+        listener.setUtf8Passthrough(passthrough);
+        new AXMLParser().parse(new ByteArrayInputStream(document), listener);
+        return new String(output.toByteArray(), "UTF-8");
+    }
+}
@@ -0,0 +1,62 @@
+package fr.xgouchet.axml;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ParserMetricsTest {
+
+    private AXMLParser mParser;
+    private ParserMetrics mMetrics;
+
+    @Before
+    public void setUp() {
+        mParser = new AXMLParser();
+        mMetrics = new ParserMetrics();
+        mParser.setTracer(mMetrics);
+    }
+
+    @Test
+    public void shouldCountChunks() throws IOException {
+        File file = new File("testres/axml/namespaces.xml");
+        mParser.parse(new FileInputStream(file), new ByteArrayOutputStream());
+
+        assertThat(mMetrics.getDocuments()).isEqualTo(1);
+        assertThat(mMetrics.getBytesConsumed()).isEqualTo(file.length());
+        assertThat(mMetrics.getChunkCount(AXMLParser.WORD_START_DOCUMENT)).isEqualTo(1);
+        assertThat(mMetrics.getChunkCount(AXMLParser.WORD_STRING_TABLE)).isEqualTo(1);
+        assertThat(mMetrics.getChunkCount(AXMLParser.WORD_START_NAMESPACE)).isEqualTo(2);
+        assertThat(mMetrics.getChunkCount(AXMLParser.WORD_END_NAMESPACE)).isEqualTo(2);
+        assertThat(mMetrics.getChunkCount(AXMLParser.WORD_START_TAG)).isEqualTo(4);
+        assertThat(mMetrics.getChunkCount(AXMLParser.WORD_END_TAG)).isEqualTo(4);
+        assertThat(mMetrics.getChunkCount(AXMLParser.WORD_TEXT)).isEqualTo(0);
+        assertThat(mMetrics.getUnknownChunks()).isEqualTo(0);
+        assertThat(mMetrics.getStringsDecoded()).isGreaterThan(0);
+        assertThat(mMetrics.getPhaseNanos(ParserMetrics.PHASE_ELEMENT_STREAM)).isGreaterThan(0L);
+    }
+
+    @Test
+    public void shouldAggregateDocuments() throws IOException {
+        File dir = new File("testres/axml/samples");
+        long bytes = 0;
+
+        File[] samples = dir.listFiles();
+        for (File sample : samples) {
+            mParser.parse(new FileInputStream(sample), new ByteArrayOutputStream());
+            bytes += sample.length();
+        }
+
+        assertThat(mMetrics.getDocuments()).isEqualTo(samples.length);
+        assertThat(mMetrics.getBytesConsumed()).isEqualTo(bytes);
+
+        mMetrics.reset();
+        assertThat(mMetrics.getDocuments()).isEqualTo(0);
+        assertThat(mMetrics.getChunkCount(AXMLParser.WORD_START_TAG)).isEqualTo(0);
+    }
+}
@@ -0,0 +1,77 @@
+package fr.xgouchet.axml;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ReferenceCacheTest {
+
+    @Test
+    public void shouldCacheReferences() {
+        ReferenceCache cache = new ReferenceCache();
+
+        cache.put('@', 0x7F020193, "@id/0x7F020193");
+        cache.put('?', 0x7F020193, "?id/0x7F020193");
+
+        assertThat(cache.get('@', 0x7F020193)).isEqualTo("@id/0x7F020193");
+        assertThat(cache.get('?', 0x7F020193)).isEqualTo("?id/0x7F020193");
+        assertThat(cache.get('@', 0x7F020194)).isNull();
+        assertThat(cache.getSize()).isEqualTo(2);
+
+        cache.clear();
+        assertThat(cache.get('@', 0x7F020193)).isNull();
+        assertThat(cache.getSize()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldBeBounded() {
+        ReferenceCache cache = new ReferenceCache(16);
+
+        for (int id = 0; id < 1000; ++id) {
+            cache.put('@', id, Integer.toString(id));
+        }
+
+        assertThat(cache.getSize()).isEqualTo(16);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectEmptyCapacity() {
+        new ReferenceCache(0);
+    }
+
+    @Test
+    public void shouldBeSharedAcrossThreads() throws Exception {
+        final ReferenceCache cache = new ReferenceCache();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+
+        List<Future<Boolean>> futures = new ArrayList<>();
+        for (int t = 0; t < 4; ++t) {
+            futures.add(executor.submit(new Callable<Boolean>() {
+                @Override
+                public Boolean call() {
+                    TypedValueFormatter formatter = new TypedValueFormatter(cache);
+                    boolean consistent = true;
+                    for (int id = 0; id < 2000; ++id) {
+                        String reference = formatter.format(AXMLParser.TYPE_ID_REF, 0x7F000000 + id);
+                        consistent &= reference.equals(String.format("@id/0x%08X", 0x7F000000 + id));
+                    }
+                    return consistent;
+                }
+            }));
+        }
+
+        for (Future<Boolean> future : futures) {
+            assertThat(future.get()).isTrue();
+        }
+        executor.shutdown();
+
+        assertThat(cache.getSize()).isGreaterThan(0).isLessThanOrEqualTo(2000);
+    }
+}
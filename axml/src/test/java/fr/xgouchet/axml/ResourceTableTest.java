@@ -0,0 +1,291 @@
+package fr.xgouchet.axml;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ResourceTableTest {
+
+    private static final String[] ANDROID_TYPES = new String[]{
+            "attr", "id", "style", "string", "dimen", "color", "array", "drawable"
+    };
+    private static final String[] APP_TYPES = new String[]{
+            "attr", "drawable", "layout", "anim", "string", "id"
+    };
+
+    @Rule
+    public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    private byte[] mTable;
+
+    @Before
+    public void setUp() {
+        byte[] android = buildPackage(0x01, "android", ANDROID_TYPES,
+                new String[]{"ok", "ic_menu", "colorAccent"},
+                // type id, entry, key
+                new int[][]{{4, 3, 0}, {8, 0xB2, 1}, {1, 0x39D, 2}});
+
+        byte[] application = buildPackage(0x7F, "com.example", APP_TYPES,
+                new String[]{"app_name", "title", "icon"},
+                // the app_name string is also declared for a second configuration
+                new int[][]{{5, 0, 0}, {6, 1, 1}, {2, 0, 2}, {5, 0, 0}});
+
+        mTable = buildTable(android, application);
+    }
+
+    @Test
+    public void shouldResolveResourceNames() throws IOException {
+        ResourceTable table = new ResourceTable(ByteBuffer.wrap(mTable));
+
+        assertThat(table.getSize()).isEqualTo(6);
+        assertThat(table.getResourceName(0x7F050000)).isEqualTo("string/app_name");
+        assertThat(table.getResourceName(0x7F060001)).isEqualTo("id/title");
+        assertThat(table.getResourceName(0x7F020000)).isEqualTo("drawable/icon");
+        assertThat(table.getResourceName(0x010800B2)).isEqualTo("drawable/ic_menu");
+    }
+
+    @Test
+    public void shouldResolveNonAsciiAndLongNames() throws IOException {
+        StringBuilder longName = new StringBuilder();
+        for (int i = 0; i < 30; ++i) {
+            longName.append("very_long");
+        }
+
+        byte[] application = buildPackage(0x7F, "com.example", APP_TYPES,
+                new String[]{"caf\u00e9_cr\u00e8me", longName.toString()},
+                new int[][]{{5, 0, 0}, {6, 0, 1}});
+        ResourceTable table = new ResourceTable(ByteBuffer.wrap(buildTable(application)));
+
+        assertThat(table.getResourceName(0x7F050000)).isEqualTo("string/caf\u00e9_cr\u00e8me");
+        assertThat(table.getResourceName(0x7F060000)).isEqualTo("id/" + longName);
+    }
+
+    @Test
+    public void shouldIgnoreUnknownResources() throws IOException {
+        ResourceTable table = new ResourceTable(ByteBuffer.wrap(mTable));
+
+        assertThat(table.getResourceName(0x7F060000)).isNull();
+        assertThat(table.getResourceName(0x7F060002)).isNull();
+        assertThat(table.getResourceName(0x7F030000)).isNull();
+        assertThat(table.getResourceName(0x02010000)).isNull();
+    }
+
+    @Test
+    public void shouldRenderReferences() throws IOException {
+        ResourceTable table = new ResourceTable(ByteBuffer.wrap(mTable));
+
+        assertThat(table.getReference('@', 0x7F050000)).isEqualTo("@string/app_name");
+        assertThat(table.getReference('@', 0x01040003)).isEqualTo("@android:string/ok");
+        assertThat(table.getReference('?', 0x0101039D)).isEqualTo("?android:attr/colorAccent");
+        assertThat(table.getReference('@', 0x7F050000)).isSameAs(table.getReference('@', 0x7F050000));
+    }
+
+    @Test
+    public void shouldMapFile() throws IOException {
+        File file = mTemporaryFolder.newFile("resources.arsc");
+        OutputStream output = new FileOutputStream(file);
+        output.write(mTable);
+        output.close();
+
+        ResourceTable table = new ResourceTable(file);
+
+        assertThat(table.getResourceName(0x7F060001)).isEqualTo("id/title");
+    }
+
+    @Test
+    public void shouldResolveReferencesInDocuments() throws IOException {
+        ResourceTable table = new ResourceTable(ByteBuffer.wrap(mTable));
+        AXMLParser parser = new AXMLParser();
+        parser.setResourceTable(table);
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        parser.parse(new FileInputStream("testres/axml/typed_attrs.xml"), output);
+        String result = new String(output.toByteArray(), "UTF-8");
+
+        assertThat(result).contains("android:id=\"@id/title\"")
+                .contains("android:background=\"@android:drawable/ic_menu\"")
+                .contains("android:text=\"@android:string/ok\"")
+                .contains("android:drawableTop=\"?android:attr/colorAccent\"");
+    }
+
+    @Test
+    public void shouldKeepRawReferencesWithoutTable() throws IOException {
+        AXMLParser parser = new AXMLParser();
+        parser.setResourceTable(new ResourceTable(ByteBuffer.wrap(mTable)));
+        parser.setResourceTable(null);
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        parser.parse(new FileInputStream("testres/axml/typed_attrs.xml"), output);
+        String result = new String(output.toByteArray(), "UTF-8");
+
+        assertThat(result).contains("android:id=\"@id/0x7F060001\"");
+    }
+
+    @Test(expected = IOException.class)
+    public void shouldFailOnInvalidTable() throws IOException {
+        new ResourceTable(ByteBuffer.wrap(new byte[]{2, 0, 12, 0, 0x7F, 0, 0, 0, 1, 0, 0, 0}));
+    }
+
+    @Test
+    public void shouldFailOnInvalidTypeChunks() throws IOException {
+        byte[] typeChunk = buildTypeChunk(1, 0, 0);
+        // the position of the type chunk field to corrupt, and the corrupted value
+        int[][] corruptions = new int[][]{
+                // type id (with the flags and reserved bytes)
+                {8, 0},
+                // entries count
+                {12, -1},
+                {12, 0x40000000},
+                // entries offset
+                {16, 0x7FFFFFF0},
+                {16, 0},
+                // offset of the first entry
+                {84, 12},
+                {84, -8},
+        };
+
+        for (int[] corruption : corruptions) {
+            byte[] table = buildTable(buildPackage(0x7F, "com.example", APP_TYPES,
+                    new String[]{"icon"}, new int[][]{{1, 0, 0}}));
+            int chunkStart = table.length - typeChunk.length;
+            ByteBuffer.wrap(table).order(ByteOrder.LITTLE_ENDIAN).putInt(chunkStart + corruption[0], corruption[1]);
+
+            try {
+                new ResourceTable(ByteBuffer.wrap(table));
+                throw new AssertionError("Expected an IOException for " + corruption[1] + " at " + corruption[0]);
+            } catch (IOException e) {
+                assertThat(e.getMessage()).contains("type chunk");
+            }
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void shouldFailOnOtherDocuments() throws IOException {
+        new ResourceTable(new File("testres/axml/typed_attrs.xml"));
+    }
+
+    private static byte[] buildTable(final byte[]... packages) {
+        byte[] globalPool = buildStringPool(new String[0], false);
+        int size = 12 + globalPool.length;
+        for (byte[] pkg : packages) {
+            size += pkg.length;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putShort((short) 0x0002).putShort((short) 12).putInt(size).putInt(packages.length);
+        buffer.put(globalPool);
+        for (byte[] pkg : packages) {
+            buffer.put(pkg);
+        }
+        return buffer.array();
+    }
+
+    /**
+     * @param entries the entries, as {type id, entry index, key index} ; each entry is written in
+     *                its own type chunk
+     */
+    private static byte[] buildPackage(final int id, final String name, final String[] types,
+                                       final String[] keys, final int[][] entries) {
+        byte[] typeStrings = buildStringPool(types, false);
+        byte[] keyStrings = buildStringPool(keys, true);
+
+        int headerSize = 288;
+        ByteArrayOutputStream chunks = new ByteArrayOutputStream();
+        for (int[] entry : entries) {
+            byte[] chunk = buildTypeChunk(entry[0], entry[1], entry[2]);
+            chunks.write(chunk, 0, chunk.length);
+        }
+
+        int size = headerSize + typeStrings.length + keyStrings.length + chunks.size();
+        ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putShort((short) 0x0200).putShort((short) headerSize).putInt(size).putInt(id);
+        for (int i = 0; i < 128; ++i) {
+            buffer.putChar((i < name.length()) ? name.charAt(i) : 0);
+        }
+        buffer.putInt(headerSize).putInt(types.length);
+        buffer.putInt(headerSize + typeStrings.length).putInt(keys.length);
+        buffer.putInt(0);
+        buffer.put(typeStrings).put(keyStrings).put(chunks.toByteArray());
+        return buffer.array();
+    }
+
+    private static byte[] buildTypeChunk(final int typeId, final int entryIndex, final int key) {
+        int configSize = 64;
+        int headerSize = 20 + configSize;
+        int entriesCount = entryIndex + 1;
+        int entriesStart = headerSize + (entriesCount * 4);
+        int size = entriesStart + 16;
+
+        ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putShort((short) 0x0201).putShort((short) headerSize).putInt(size);
+        buffer.put((byte) typeId).put((byte) 0).putShort((short) 0);
+        buffer.putInt(entriesCount).putInt(entriesStart);
+        buffer.putInt(configSize);
+        buffer.position(headerSize);
+        for (int i = 0; i < entriesCount; ++i) {
+            buffer.putInt((i == entryIndex) ? 0 : 0xFFFFFFFF);
+        }
+
+        // entry header and a simple value
+        buffer.putShort((short) 8).putShort((short) 0).putInt(key);
+        buffer.putShort((short) 8).put((byte) 0).put((byte) 0x10).putInt(42);
+        return buffer.array();
+    }
+
+    private static byte[] buildStringPool(final String[] strings, final boolean utf8) {
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        int[] offsets = new int[strings.length];
+        for (int i = 0; i < strings.length; ++i) {
+            offsets[i] = data.size();
+            if (utf8) {
+                byte[] bytes = strings[i].getBytes(Charset.forName("UTF-8"));
+                writeUtf8Length(data, strings[i].length());
+                writeUtf8Length(data, bytes.length);
+                data.write(bytes, 0, bytes.length);
+                data.write(0);
+            } else {
+                byte[] bytes = strings[i].getBytes(Charset.forName("UTF-16LE"));
+                data.write(strings[i].length());
+                data.write(0);
+                data.write(bytes, 0, bytes.length);
+                data.write(0);
+                data.write(0);
+            }
+        }
+        while ((data.size() % 4) != 0) {
+            data.write(0);
+        }
+
+        int stringsStart = 28 + (strings.length * 4);
+        int size = stringsStart + data.size();
+        ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putShort((short) 0x0001).putShort((short) 28).putInt(size);
+        buffer.putInt(strings.length).putInt(0).putInt(utf8 ? 0x100 : 0);
+        buffer.putInt(stringsStart).putInt(0);
+        for (int offset : offsets) {
+            buffer.putInt(offset);
+        }
+        buffer.put(data.toByteArray());
+        return buffer.array();
+    }
+
+    private static void writeUtf8Length(final ByteArrayOutputStream data, final int length) {
+        if (length > 0x7F) {
+            data.write(0x80 | (length >> 8));
+        }
+        data.write(length & 0xFF);
+    }
+}
@@ -0,0 +1,204 @@
+package fr.xgouchet.axml;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.xml.parsers.SAXParserFactory;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SAXListenerTest {
+
+    private AXMLParser mParser;
+    private RecordingHandler mHandler;
+
+    @Before
+    public void setUp() {
+        mParser = new AXMLParser();
+        mHandler = new RecordingHandler();
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void shouldFailOnNullHandler() {
+        new SAXListener(null);
+    }
+
+    @Test
+    public void shouldForwardNamespaces() throws IOException {
+        mParser.parse(new FileInputStream("testres/axml/namespaces.xml"), new SAXListener(mHandler));
+
+        assertThat(mHandler.mEvents).containsExactly(
+                "startDocument",
+                "startPrefixMapping bar=42",
+                "startElement {}root root",
+                "startElement {}subTag subTag",
+                "endElement {}subTag subTag",
+                "startPrefixMapping foo=815",
+                "startElement {}tagWithNs tagWithNs",
+                "startElement {815}plop foo:plop",
+                "endElement {815}plop foo:plop",
+                "endElement {}tagWithNs tagWithNs",
+                "endPrefixMapping foo",
+                "endElement {}root root",
+                "endPrefixMapping bar",
+                "endDocument");
+    }
+
+    @Test
+    public void shouldForwardAttributes() throws IOException {
+        mParser.parse(new FileInputStream("testres/axml/attributes.xml"), new SAXListener(mHandler));
+
+        assertThat(mHandler.mEvents).contains(
+                "startElement {}attributed attributed [{}key key=value]",
+                "startElement {}attributed_with_ns attributed_with_ns [{42}key foo:key=spam]");
+
+        // a single Attributes instance for all the elements
+        assertThat(mHandler.mAttributes).hasSize(1);
+    }
+
+    @Test
+    public void shouldForwardPlainEvents() throws IOException {
+        SAXListener listener = new SAXListener(mHandler);
+
+        listener.startDocument();
+        listener.startElement("foo", new Attribute[]{new Attribute("x", "42", "urn:bar", "bar")}, null, null);
+        listener.text("spam");
+        listener.endElement("foo", null, null);
+        listener.endDocument();
+
+        assertThat(mHandler.mEvents).containsExactly(
+                "startDocument",
+                "startElement {}foo foo [{urn:bar}x bar:x=42]",
+                "characters spam",
+                "endElement {}foo foo",
+                "endDocument");
+    }
+
+    @Test
+    public void shouldMatchTextParsing() throws Exception {
+        File dir = new File("testres/axml/samples");
+
+        for (File sample : dir.listFiles()) {
+            RecordingHandler expected = new RecordingHandler();
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            mParser.parse(new FileInputStream(sample), output);
+            SAXParserFactory factory = SAXParserFactory.newInstance();
+            factory.setNamespaceAware(true);
+            factory.newSAXParser().parse(new ByteArrayInputStream(output.toByteArray()), expected);
+
+            RecordingHandler actual = new RecordingHandler();
+            mParser.parse(new FileInputStream(sample), new SAXListener(actual));
+
+            // the text output doesn't keep the namespace declarations order
+            assertThat(withoutPrefixMappings(actual.mEvents)).as(sample.getName())
+                    .isEqualTo(withoutPrefixMappings(expected.mEvents));
+        }
+    }
+
+    @Test
+    public void shouldWrapHandlerErrors() throws IOException {
+        final SAXException error = new SAXException("stop");
+        DefaultHandler handler = new DefaultHandler() {
+            @Override
+            public void startElement(final String uri, final String localName, final String qName,
+                                     final Attributes attributes) throws SAXException {
+                throw error;
+            }
+        };
+
+        try {
+            mParser.parse(new FileInputStream("testres/axml/attributes.xml"), new SAXListener(handler));
+            throw new AssertionError("Expected an IOException");
+        } catch (IOException e) {
+            assertThat(e.getCause()).isSameAs(error);
+        }
+    }
+
+    private static List<String> withoutPrefixMappings(final List<String> events) {
+        List<String> result = new ArrayList<>();
+        for (String event : events) {
+            if (!event.contains("PrefixMapping")) {
+                result.add(event);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Records the SAX events as Strings, ignoring the whitespaces
+     */
+    private static class RecordingHandler extends DefaultHandler {
+
+        final List<String> mEvents = new ArrayList<>();
+        final Set<Attributes> mAttributes = new HashSet<>();
+
+        @Override
+        public void startDocument() {
+            mEvents.add("startDocument");
+        }
+
+        @Override
+        public void endDocument() {
+            mEvents.add("endDocument");
+        }
+
+        @Override
+        public void startPrefixMapping(final String prefix, final String uri) {
+            mEvents.add("startPrefixMapping " + prefix + "=" + uri);
+        }
+
+        @Override
+        public void endPrefixMapping(final String prefix) {
+            mEvents.add("endPrefixMapping " + prefix);
+        }
+
+        @Override
+        public void startElement(final String uri, final String localName, final String qName,
+                                 final Attributes attributes) {
+            mAttributes.add(attributes);
+
+            StringBuilder event = new StringBuilder("startElement {")
+                    .append(uri).append('}').append(localName).append(' ').append(qName);
+            if (attributes.getLength() > 0) {
+                event.append(" [");
+                for (int i = 0; i < attributes.getLength(); ++i) {
+                    if (i > 0) {
+                        event.append(", ");
+                    }
+                    event.append('{').append(attributes.getURI(i)).append('}')
+                            .append(attributes.getLocalName(i)).append(' ')
+                            .append(attributes.getQName(i)).append('=')
+                            .append(attributes.getValue(i));
+                }
+                event.append(']');
+            }
+            mEvents.add(event.toString());
+        }
+
+        @Override
+        public void endElement(final String uri, final String localName, final String qName) {
+            mEvents.add("endElement {" + uri + "}" + localName + " " + qName);
+        }
+
+        @Override
+        public void characters(final char[] ch, final int start, final int length) {
+            String text = new String(ch, start, length).trim();
+            if (text.length() > 0) {
+                mEvents.add("characters " + text);
+            }
+        }
+    }
+}
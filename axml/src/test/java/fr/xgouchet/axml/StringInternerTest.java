@@ -0,0 +1,157 @@
+package fr.xgouchet.axml;
+
+import org.junit.Test;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class StringInternerTest {
+
+    @Test
+    public void shouldInternStrings() {
+        StringInterner interner = new StringInterner();
+        String first = new String("layout_width");
+        String second = new String("layout_width");
+
+        assertThat(interner.intern(first)).isSameAs(first);
+        assertThat(interner.intern(second)).isSameAs(first);
+        assertThat(interner.intern(null)).isNull();
+        assertThat(interner.getSize()).isEqualTo(1);
+
+        interner.clear();
+        assertThat(interner.intern(second)).isSameAs(second);
+        assertThat(interner.getSize()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldBeBounded() {
+        StringInterner interner = new StringInterner(16);
+
+        for (int i = 0; i < 1000; ++i) {
+            interner.intern(Integer.toString(i));
+        }
+
+        assertThat(interner.getSize()).isEqualTo(16);
+    }
+
+    @Test
+    public void shouldNotInternLongStrings() {
+        StringInterner interner = new StringInterner();
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 200; ++i) {
+            builder.append('x');
+        }
+        String text = builder.toString();
+
+        assertThat(interner.intern(new String(text))).isNotSameAs(interner.intern(new String(text)));
+        assertThat(interner.getSize()).isEqualTo(0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectEmptyCapacity() {
+        new StringInterner(0);
+    }
+
+    @Test
+    public void shouldShareStringsAcrossParsers() throws IOException {
+        StringInterner interner = new StringInterner();
+        List<String> firstNames = new ArrayList<>();
+        List<String> secondNames = new ArrayList<>();
+
+        AXMLParser firstParser = new AXMLParser();
+        firstParser.setStringInterner(interner);
+        firstParser.parse(new FileInputStream("testres/axml/samples/item_target.xml"), new NamesListener(firstNames));
+        AXMLParser secondParser = new AXMLParser();
+        secondParser.setStringInterner(interner);
+        secondParser.parse(new FileInputStream("testres/axml/samples/item_target.xml"), new NamesListener(secondNames));
+
+        assertThat(secondNames).hasSameSizeAs(firstNames).isNotEmpty();
+        for (int i = 0; i < firstNames.size(); ++i) {
+            assertThat(secondNames.get(i)).isSameAs(firstNames.get(i));
+        }
+    }
+
+    @Test
+    public void shouldBeSharedAcrossThreads() throws Exception {
+        final StringInterner interner = new StringInterner();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+
+        List<Future<List<String>>> futures = new ArrayList<>();
+        for (int t = 0; t < 4; ++t) {
+            futures.add(executor.submit(new Callable<List<String>>() {
+                @Override
+                public List<String> call() {
+                    List<String> interned = new ArrayList<>();
+                    for (int i = 0; i < 2000; ++i) {
+                        interned.add(interner.intern(Integer.toString(i)));
+                    }
+                    return interned;
+                }
+            }));
+        }
+
+        List<String> reference = futures.get(0).get();
+        for (Future<List<String>> future : futures) {
+            List<String> interned = future.get();
+            for (int i = 0; i < interned.size(); ++i) {
+                assertThat(interned.get(i)).isEqualTo(reference.get(i)).isSameAs(reference.get(i));
+            }
+        }
+        executor.shutdown();
+
+        assertThat(interner.getSize()).isEqualTo(2000);
+    }
+
+    /**
+     * Collects the element and attribute names
+     */
+    private static class NamesListener implements AXMLParser.Listener {
+
+        private final List<String> mNames;
+
+        NamesListener(final List<String> names) {
+            mNames = names;
+        }
+
+        @Override
+        public void startDocument() {
+        }
+
+        @Override
+        public void endDocument() {
+        }
+
+        @Override
+        public void startPrefixMapping(final String prefix, final String uri) {
+        }
+
+        @Override
+        public void endPrefixMapping(final String prefix, final String uri) {
+        }
+
+        @Override
+        public void startElement(final String localName, final Attribute[] attributes,
+                                 final String uri, final String prefix) {
+            mNames.add(localName);
+            for (Attribute attribute : attributes) {
+                mNames.add(attribute.getName());
+            }
+        }
+
+        @Override
+        public void endElement(final String localName, final String uri, final String prefix) {
+        }
+
+        @Override
+        public void text(final String data) {
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package fr.xgouchet.axml;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class StringPoolDecoderTest {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final Charset UTF16LE = Charset.forName("UTF-16LE");
+
+    private StringPoolDecoder mDecoder;
+
+    @Before
+    public void setUp() {
+        mDecoder = new StringPoolDecoder();
+    }
+
+    @Test
+    public void shouldDecodeAsciiStrings() {
+        mDecoder.setData(utf8Pool("layout_width"), AXMLParser.ENCODING_UTF8);
+
+        assertThat(mDecoder.decode(0)).isEqualTo("layout_width");
+        assertThat(mDecoder.getCharsCount(0)).isEqualTo(12);
+    }
+
+    @Test
+    public void shouldDecodeLongUtf8Strings() {
+        String string = repeat("\u00e9t\u00e9 \ud83d\ude00 ", 40);
+        mDecoder.setData(utf8Pool(string), AXMLParser.ENCODING_UTF8);
+
+        assertThat(mDecoder.decode(0)).isEqualTo(string);
+        assertThat(mDecoder.getCharsCount(0)).isEqualTo(string.length());
+        assertThat(mDecoder.getUtf8BytesOffset(0)).isEqualTo(4);
+        assertThat(mDecoder.getUtf8BytesCount(0)).isEqualTo(string.getBytes(UTF8).length);
+    }
+
+    @Test
+    public void shouldDecodeLongAsciiStrings() {
+        String string = repeat("lorem ipsum ", 50);
+        ByteBuffer pool = utf8Pool(string);
+
+        mDecoder.setData(pool, AXMLParser.ENCODING_UTF8);
+        assertThat(mDecoder.decode(0)).isEqualTo(string);
+
+        mDecoder.setData(toDirect(pool), AXMLParser.ENCODING_UTF8);
+        assertThat(mDecoder.decode(0)).isEqualTo(string);
+    }
+
+    @Test
+    public void shouldDecodeUtf8StringsFromDirectBuffers() {
+        String string = repeat("caf\u00e9 ", 50);
+        mDecoder.setData(toDirect(utf8Pool(string)), AXMLParser.ENCODING_UTF8);
+
+        assertThat(mDecoder.decode(0)).isEqualTo(string);
+    }
+
+    @Test
+    public void shouldDecodeUtf16Strings() {
+        String string = "caf\u00e9 \ud83d\ude00";
+        mDecoder.setData(utf16Pool(string), AXMLParser.ENCODING_UTF16_LE);
+
+        assertThat(mDecoder.decode(0)).isEqualTo(string);
+        assertThat(mDecoder.getCharsCount(0)).isEqualTo(string.length());
+    }
+
+    @Test
+    public void shouldDecodeVeryLongUtf16Strings() {
+        String string = repeat("\u00e9t\u00e9 ", 10000);
+        mDecoder.setData(utf16Pool(string), AXMLParser.ENCODING_UTF16_LE);
+
+        assertThat(mDecoder.decode(0)).isEqualTo(string);
+        assertThat(mDecoder.getCharsCount(0)).isEqualTo(40000);
+    }
+
+    @Test
+    public void shouldParseLongStrings() throws IOException {
+        String text = repeat("Lorem \u00e9t\u00e9 ipsum, ", 30);
+        String value = repeat("x", 300);
+
+        for (int encoding : new int[]{AXMLParser.ENCODING_UTF8, AXMLParser.ENCODING_UTF16_LE}) {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            AXMLEncoder encoder = new AXMLEncoder(output);
+            encoder.setStringsEncoding(encoding);
+            encoder.startDocument();
+            encoder.startElement("string", new Attribute[]{new Attribute("name", value)}, null, null);
+            encoder.text(text);
+            encoder.endElement("string", null, null);
+            encoder.endDocument();
+
+            Attribute[][] attributes = new Attribute[1][];
+            String[] texts = new String[1];
+            new AXMLParser().parse(new ByteArrayInputStream(output.toByteArray()),
+                    new CapturingListener(attributes, texts));
+
+            assertThat(attributes[0][0].getValue()).isEqualTo(value);
+            assertThat(texts[0]).isEqualTo(text);
+        }
+    }
+
+    private static String repeat(final String string, final int count) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < count; ++i) {
+            builder.append(string);
+        }
+        return builder.toString();
+    }
+
+    private static ByteBuffer utf8Pool(final String string) {
+        byte[] data = string.getBytes(UTF8);
+        ByteBuffer pool = ByteBuffer.allocate(data.length + 5).order(ByteOrder.LITTLE_ENDIAN);
+        putUtf8Length(pool, string.length());
+        putUtf8Length(pool, data.length);
+        pool.put(data).put((byte) 0);
+        pool.clear();
+        return pool;
+    }
+
+    private static void putUtf8Length(final ByteBuffer pool, final int length) {
+        if (length > 0x7F) {
+            pool.put((byte) (0x80 | (length >> 8)));
+        }
+        pool.put((byte) length);
+    }
+
+    private static ByteBuffer utf16Pool(final String string) {
+        byte[] data = string.getBytes(UTF16LE);
+        ByteBuffer pool = ByteBuffer.allocate(data.length + 6).order(ByteOrder.LITTLE_ENDIAN);
+        int length = string.length();
+        if (length > 0x7FFF) {
+            pool.putShort((short) (0x8000 | (length >> 16)));
+        }
+        pool.putShort((short) length);
+        pool.put(data).putShort((short) 0);
+        pool.clear();
+        return pool;
+    }
+
+    private static ByteBuffer toDirect(final ByteBuffer pool) {
+        ByteBuffer direct = ByteBuffer.allocateDirect(pool.capacity()).order(ByteOrder.LITTLE_ENDIAN);
+        direct.put(pool.duplicate());
+        direct.clear();
+        return direct;
+    }
+
+    /**
+     * Captures the attributes and text of a single element
+     */
+    private static class CapturingListener implements AXMLParser.Listener {
+
+        private final Attribute[][] mAttributes;
+        private final String[] mTexts;
+
+        CapturingListener(final Attribute[][] attributes, final String[] texts) {
+            mAttributes = attributes;
+            mTexts = texts;
+        }
+
+        @Override
+        public void startDocument() {
+        }
+
+        @Override
+        public void endDocument() {
+        }
+
+        @Override
+        public void startPrefixMapping(final String prefix, final String uri) {
+        }
+
+        @Override
+        public void endPrefixMapping(final String prefix, final String uri) {
+        }
+
+        @Override
+        public void startElement(final String localName, final Attribute[] attributes,
+                                 final String uri, final String prefix) {
+            mAttributes[0] = attributes;
+        }
+
+        @Override
+        public void endElement(final String localName, final String uri, final String prefix) {
+        }
+
+        @Override
+        public void text(final String data) {
+            mTexts[0] = data;
+        }
+    }
+}
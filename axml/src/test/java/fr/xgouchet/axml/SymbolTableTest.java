@@ -0,0 +1,208 @@
+package fr.xgouchet.axml;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SymbolTableTest {
+
+    private AXMLParser mParser;
+
+    @Before
+    public void setUp() {
+        mParser = new AXMLParser();
+    }
+
+    @Test
+    public void shouldReportIndices() throws IOException {
+        RecordingIndexedListener listener = new RecordingIndexedListener();
+        mParser.parse(new FileInputStream("testres/axml/namespaces.xml"), listener);
+
+        assertThat(listener.mEvents).containsExactly(
+                "startDocument",
+                "startPrefixMapping bar=42",
+                "startElement {null}root null",
+                "startElement {null}subTag null",
+                "endElement {null}subTag null",
+                "startPrefixMapping foo=815",
+                "startElement {null}tagWithNs null",
+                "startElement {815}plop foo",
+                "endElement {815}plop foo",
+                "endElement {null}tagWithNs null",
+                "endPrefixMapping foo=815",
+                "endElement {null}root null",
+                "endPrefixMapping bar=42",
+                "endDocument");
+    }
+
+    @Test
+    public void shouldLookUpSymbols() throws IOException {
+        final List<Object> lookups = new ArrayList<>();
+        mParser.parse(new FileInputStream("testres/axml/namespaces.xml"), new RecordingIndexedListener() {
+            @Override
+            public void symbolTable(final SymbolTable symbols) {
+                super.symbolTable(symbols);
+                int index = symbols.indexOf("plop");
+                lookups.add(symbols.getString(index));
+                lookups.add(symbols.indexOf("missing"));
+                lookups.add(symbols.getString(SymbolTable.NO_SYMBOL));
+                lookups.add(symbols.getCount() > index);
+            }
+        });
+
+        assertThat(lookups).containsExactly("plop", SymbolTable.NO_SYMBOL, null, true);
+    }
+
+    @Test
+    public void shouldMatchStringEvents() throws IOException {
+        File dir = new File("testres/axml/samples");
+
+        for (File sample : dir.listFiles()) {
+            RecordingListener expected = new RecordingListener();
+            mParser.parse(new FileInputStream(sample), expected);
+
+            RecordingIndexedListener actual = new RecordingIndexedListener();
+            mParser.parse(new FileInputStream(sample), actual);
+
+            assertThat(actual.mEvents).as(sample.getName()).isEqualTo(expected.mEvents);
+        }
+    }
+
+    @Test
+    public void shouldRestoreShadowedNamespaces() throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        AXMLEncoder encoder = new AXMLEncoder(output);
+        encoder.startDocument();
+        encoder.startPrefixMapping("a", "urn:x");
+        encoder.startElement("root", new Attribute[0], null, null);
+        encoder.startPrefixMapping("b", "urn:x");
+        encoder.startElement("inner", new Attribute[]{new Attribute("key", "value", "urn:x", "b")}, "urn:x", "b");
+        encoder.endElement("inner", "urn:x", "b");
+        encoder.endPrefixMapping("b", "urn:x");
+        encoder.startElement("after", new Attribute[]{new Attribute("key", "value", "urn:x", "a")}, "urn:x", "a");
+        encoder.endElement("after", "urn:x", "a");
+        encoder.endElement("root", null, null);
+        encoder.endPrefixMapping("a", "urn:x");
+        encoder.endDocument();
+
+        RecordingListener listener = new RecordingListener();
+        mParser.parse(new ByteArrayInputStream(output.toByteArray()), listener);
+
+        assertThat(listener.mEvents).contains(
+                "startElement {urn:x}inner b [{urn:x}b:key=value]",
+                "startElement {urn:x}after a [{urn:x}a:key=value]");
+    }
+
+    /**
+     * Records the events of a plain listener as Strings
+     */
+    private static class RecordingListener implements AXMLParser.Listener {
+
+        final List<String> mEvents = new ArrayList<>();
+
+        @Override
+        public void startDocument() {
+            mEvents.add("startDocument");
+        }
+
+        @Override
+        public void endDocument() {
+            mEvents.add("endDocument");
+        }
+
+        @Override
+        public void startPrefixMapping(final String prefix, final String uri) {
+            mEvents.add("startPrefixMapping " + prefix + "=" + uri);
+        }
+
+        @Override
+        public void endPrefixMapping(final String prefix, final String uri) {
+            mEvents.add("endPrefixMapping " + prefix + "=" + uri);
+        }
+
+        @Override
+        public void startElement(final String localName, final Attribute[] attributes,
+                                 final String uri, final String prefix) {
+            StringBuilder event = new StringBuilder("startElement {")
+                    .append(uri).append('}').append(localName).append(' ').append(prefix);
+            for (int i = 0; i < attributes.length; ++i) {
+                event.append((i == 0) ? " [" : ", ");
+                Attribute attribute = attributes[i];
+                event.append('{').append(attribute.getNamespaceUri()).append('}')
+                        .append(attribute.getPrefix()).append(':').append(attribute.getName())
+                        .append('=').append(attribute.getValue());
+            }
+            if (attributes.length > 0) {
+                event.append(']');
+            }
+            mEvents.add(event.toString());
+        }
+
+        @Override
+        public void endElement(final String localName, final String uri, final String prefix) {
+            mEvents.add("endElement {" + uri + "}" + localName + " " + prefix);
+        }
+
+        @Override
+        public void text(final String data) {
+            mEvents.add("text " + data);
+        }
+    }
+
+    /**
+     * Records the events of an indexed listener as Strings, resolving the indices with the
+     * symbol table
+     */
+    private static class RecordingIndexedListener extends RecordingListener implements AXMLParser.IndexedListener {
+
+        SymbolTable mSymbols;
+
+        @Override
+        public void symbolTable(final SymbolTable symbols) {
+            mSymbols = symbols;
+        }
+
+        @Override
+        public void startPrefixMapping(final int prefixIndex, final int uriIndex) {
+            startPrefixMapping(mSymbols.getString(prefixIndex), mSymbols.getString(uriIndex));
+        }
+
+        @Override
+        public void endPrefixMapping(final int prefixIndex, final int uriIndex) {
+            endPrefixMapping(mSymbols.getString(prefixIndex), mSymbols.getString(uriIndex));
+        }
+
+        @Override
+        public void startElement(final int nameIndex, final AttributeCursor attributes,
+                                 final int uriIndex, final int prefixIndex) {
+            Attribute[] copy = new Attribute[attributes.getCount()];
+            for (int i = 0; i < copy.length; ++i) {
+                copy[i] = new Attribute(mSymbols.getString(attributes.getNameIndex(i)),
+                        attributes.getValue(i),
+                        mSymbols.getString(attributes.getNamespaceUriIndex(i)),
+                        mSymbols.getString(attributes.getPrefixIndex(i)));
+            }
+            startElement(mSymbols.getString(nameIndex), copy,
+                    mSymbols.getString(uriIndex), mSymbols.getString(prefixIndex));
+        }
+
+        @Override
+        public void endElement(final int nameIndex, final int uriIndex, final int prefixIndex) {
+            endElement(mSymbols.getString(nameIndex), mSymbols.getString(uriIndex), mSymbols.getString(prefixIndex));
+        }
+
+        @Override
+        public void text(final int dataIndex) {
+            text(mSymbols.getString(dataIndex));
+        }
+    }
+}
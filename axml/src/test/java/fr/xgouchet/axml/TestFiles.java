@@ -0,0 +1,35 @@
+package fr.xgouchet.axml;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads the test resources
+ */
+final class TestFiles {
+
+    private TestFiles() {
+    }
+
+    /**
+     * @param file the file to read
+     * @return the whole content of the file
+     */
+    static byte[] readFile(final File file) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream((int) file.length());
+        InputStream input = new FileInputStream(file);
+        try {
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                output.write(buffer, 0, read);
+            }
+        } finally {
+            input.close();
+        }
+        return output.toByteArray();
+    }
+}
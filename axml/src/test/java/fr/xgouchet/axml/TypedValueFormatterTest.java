@@ -0,0 +1,154 @@
+package fr.xgouchet.axml;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TypedValueFormatterTest {
+
+    private static final int SAMPLES = 10000;
+
+    private TypedValueFormatter mFormatter;
+    private ReferenceCache mCache;
+    private Random mRandom;
+
+    @Before
+    public void setUp() {
+        mCache = new ReferenceCache();
+        mFormatter = new TypedValueFormatter(mCache);
+        mRandom = new Random(42);
+    }
+
+    @Test
+    public void shouldFormatReferences() {
+        assertThat(mFormatter.format(AXMLParser.TYPE_ID_REF, 0x7f020193)).isEqualTo("@id/0x7F020193");
+        assertThat(mFormatter.format(AXMLParser.TYPE_ID_REF, 0x01080042)).isEqualTo("@android:drawable/0x01080042");
+        assertThat(mFormatter.format(AXMLParser.TYPE_ATTR_REF, 0x01010036)).isEqualTo("?android:attr/0x01010036");
+        assertThat(mFormatter.format(AXMLParser.TYPE_ID_REF, 0x01200000)).isEqualTo("@id/0x01200000");
+    }
+
+    @Test
+    public void shouldMemoizeReferences() {
+        String first = mFormatter.format(AXMLParser.TYPE_ID_REF, 0x01080042);
+        String attr = mFormatter.format(AXMLParser.TYPE_ATTR_REF, 0x01080042);
+
+        // a second formatter sharing the same cache
+        String second = new TypedValueFormatter(mCache).format(AXMLParser.TYPE_ID_REF, 0x01080042);
+
+        assertThat(second).isSameAs(first);
+        assertThat(attr).isEqualTo("?android:drawable/0x01080042");
+        assertThat(mCache.getSize()).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldMatchLegacyReferences() {
+        for (int i = 0; i < SAMPLES; ++i) {
+            int data = 0x01000000 + mRandom.nextInt(0x7F000000);
+            assertThat(mFormatter.format(AXMLParser.TYPE_ID_REF, data)).isEqualTo("@" + legacyIdReference(data));
+            assertThat(mFormatter.format(AXMLParser.TYPE_ATTR_REF, data)).isEqualTo("?" + legacyIdReference(data));
+        }
+    }
+
+    @Test
+    public void shouldMatchLegacyColors() {
+        for (int i = 0; i < SAMPLES; ++i) {
+            int data = mRandom.nextInt();
+            assertThat(mFormatter.format(AXMLParser.TYPE_COLOR_AARRGGBB, data))
+                    .isEqualTo(String.format("#%08X", data));
+            assertThat(mFormatter.format(AXMLParser.TYPE_COLOR_RRGGBB, data))
+                    .isEqualTo(String.format("#%06X", (data & 0x00FFFFFF)));
+            assertThat(mFormatter.format(AXMLParser.TYPE_COLOR_ARGB, data))
+                    .isEqualTo(String.format("#%X%X%X%X", (data >> 24) & 0xF, (data >> 16) & 0xF, (data >> 8) & 0xF, data & 0xF));
+            assertThat(mFormatter.format(AXMLParser.TYPE_COLOR_RGB, data))
+                    .isEqualTo(String.format("#%X%X%X", (data >> 16) & 0xF, (data >> 8) & 0xF, data & 0xF));
+        }
+    }
+
+    @Test
+    public void shouldMatchLegacyDimensions() {
+        for (int i = 0; i < SAMPLES; ++i) {
+            int data = (mRandom.nextInt() & 0xFFFFFF00) | mRandom.nextInt(AXMLParser.DIMENSION_UNIT.length);
+            assertThat(mFormatter.format(AXMLParser.TYPE_DIMEN, data))
+                    .isEqualTo(String.format("%d%s", data >> 8, AXMLParser.DIMENSION_UNIT[data & 0xFF]));
+        }
+    }
+
+    @Test
+    public void shouldMatchLegacyPercents() {
+        // the integer fractions (radix 23p0) were the only ones rendered properly
+        for (int i = 0; i < SAMPLES; ++i) {
+            int multiple = mRandom.nextInt() & 0xFFFFFF00;
+            assertThat(mFormatter.format(AXMLParser.TYPE_PERCENT, multiple))
+                    .isEqualTo(String.format("%d00%%", multiple >> 8));
+        }
+    }
+
+    @Test
+    public void shouldFormatComplexValuesWithRadix() {
+        // 1.5dp in 16p7 : mantissa 1.5 * 2^7
+        assertThat(mFormatter.format(AXMLParser.TYPE_DIMEN, (192 << 8) | (1 << 4) | 1)).isEqualTo("1.5dp");
+        // -2.25sp in 16p7
+        assertThat(mFormatter.format(AXMLParser.TYPE_DIMEN, (-288 << 8) | (1 << 4) | 2)).isEqualTo("-2.25sp");
+        // 0.125mm in 8p15
+        assertThat(mFormatter.format(AXMLParser.TYPE_DIMEN, (4096 << 8) | (2 << 4) | 5)).isEqualTo("0.125mm");
+        // -0.5dp in 16p7 and 0.0625in in 8p15 : values below 1, with leading zero decimals
+        assertThat(mFormatter.format(AXMLParser.TYPE_DIMEN, (-64 << 8) | (1 << 4) | 1)).isEqualTo("-0.5dp");
+        assertThat(mFormatter.format(AXMLParser.TYPE_DIMEN, (2048 << 8) | (2 << 4) | 4)).isEqualTo("0.0625in");
+        // 0.05dp as rounded by aapt in 0p23
+        assertThat(mFormatter.format(AXMLParser.TYPE_DIMEN, (419430 << 8) | (3 << 4) | 1)).isEqualTo("0.05dp");
+        // 12px in 8p15 : an integral value
+        assertThat(mFormatter.format(AXMLParser.TYPE_DIMEN, ((12 << 15) << 8) | (2 << 4))).isEqualTo("12px");
+
+        // 50% and 50%p in 0p23
+        assertThat(mFormatter.format(AXMLParser.TYPE_PERCENT, ((1 << 22) << 8) | (3 << 4))).isEqualTo("50%");
+        assertThat(mFormatter.format(AXMLParser.TYPE_PERCENT, ((1 << 22) << 8) | (3 << 4) | 1)).isEqualTo("50%p");
+        // 12.5% in 0p23
+        assertThat(mFormatter.format(AXMLParser.TYPE_PERCENT, ((1 << 20) << 8) | (3 << 4))).isEqualTo("12.5%");
+        // 150% in 8p15
+        assertThat(mFormatter.format(AXMLParser.TYPE_PERCENT, ((3 << 14) << 8) | (2 << 4))).isEqualTo("150%");
+        // 42% and -666% as rounded by aapt, in 0p23 and 8p15
+        assertThat(mFormatter.format(AXMLParser.TYPE_PERCENT, 0x35c28f30)).isEqualTo("42%");
+        assertThat(mFormatter.format(AXMLParser.TYPE_PERCENT, 0xfcab8620)).isEqualTo("-666%");
+    }
+
+    @Test
+    public void shouldNotFormatUnknownUnits() {
+        assertThat(mFormatter.format(AXMLParser.TYPE_DIMEN, (16 << 8) | 0x0F)).isNull();
+        assertThat(mFormatter.format(AXMLParser.TYPE_PERCENT, (16 << 8) | 0x02)).isNull();
+    }
+
+    @Test
+    public void shouldFormatSimpleValues() {
+        assertThat(mFormatter.format(AXMLParser.TYPE_INT, -42)).isEqualTo("-42");
+        assertThat(mFormatter.format(AXMLParser.TYPE_FLAGS, 0x30)).isEqualTo("48");
+        assertThat(mFormatter.format(AXMLParser.TYPE_BOOL, 0)).isEqualTo("false");
+        assertThat(mFormatter.format(AXMLParser.TYPE_BOOL, -1)).isEqualTo("true");
+        assertThat(mFormatter.format(AXMLParser.TYPE_FLOAT, Float.floatToIntBits(1.5f))).isEqualTo("1.5");
+    }
+
+    @Test
+    public void shouldFormatUnknownTypes() {
+        assertThat(mFormatter.format(0x2A, 0xFF00)).isNull();
+        assertThat(mFormatter.formatRaw(0x2A, 0xFF00)).isEqualTo("0000002A/0x0000FF00");
+    }
+
+    private static String legacyIdReference(final int value) {
+        String[] types = new String[]{
+                null, "attr", "id", "style", "string", "dimen", "color", "array", "drawable",
+                "layout", "anim", "animator", "interpolator", "mipmap", "integer", "transition"
+        };
+        String prefix, type;
+        int typeIndex = (value & 0x00FF0000) >> 16;
+        if ((value >= 0x01010000) && (value < 0x01100000)) {
+            prefix = "android:";
+            type = ((typeIndex > 0) && (typeIndex < types.length)) ? types[typeIndex] : "id";
+        } else {
+            prefix = "";
+            type = "id";
+        }
+        return String.format("%s%s/0x%08X", prefix, type, value);
+    }
+}
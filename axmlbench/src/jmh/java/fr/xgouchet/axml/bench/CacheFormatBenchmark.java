@@ -0,0 +1,102 @@
+package fr.xgouchet.axml.bench;
+
+import org.kxml2.io.KXmlParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import fr.xgouchet.axml.AXMLEncoder;
+import fr.xgouchet.axml.AXMLParser;
+import fr.xgouchet.axml.AXMLPullParser;
+import fr.xgouchet.axml.OutputStreamListener;
+
+/**
+ * Compares loading a document from its compressed form (as written by an AXMLEncoder) with
+ * parsing the equivalent xml text.
+ *
+ * @author Xavier Gouchet
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class CacheFormatBenchmark {
+
+    private static final int SYNTHETIC_ELEMENTS = 20000;
+    private static final int SYNTHETIC_ATTRIBUTES = 12;
+
+    /**
+     * The encoding of the compressed document string pool
+     */
+    @Param({"utf8", "utf16"})
+    public String encoding;
+
+    private byte[] mText;
+    private byte[] mCompressed;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        byte[] source = SyntheticDocuments.attributeHeavy(SYNTHETIC_ELEMENTS, SYNTHETIC_ATTRIBUTES, true);
+
+        ByteArrayOutputStream text = new ByteArrayOutputStream();
+        new AXMLParser().parseBuffer(ByteBuffer.wrap(source), new OutputStreamListener(text));
+        mText = text.toByteArray();
+
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        AXMLEncoder encoder = new AXMLEncoder(compressed);
+        encoder.setStringsEncoding("utf8".equals(encoding) ? AXMLParser.ENCODING_UTF8 : AXMLParser.ENCODING_UTF16_LE);
+        new AXMLParser().parseBuffer(ByteBuffer.wrap(source), encoder);
+        mCompressed = compressed.toByteArray();
+    }
+
+    @Benchmark
+    public void parseText(final Blackhole blackhole) throws IOException, XmlPullParserException {
+        KXmlParser parser = new KXmlParser();
+        parser.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, true);
+        parser.setInput(new ByteArrayInputStream(mText), "UTF-8");
+        consume(parser, blackhole);
+    }
+
+    @Benchmark
+    public void parseCompressed(final Blackhole blackhole) throws IOException, XmlPullParserException {
+        AXMLPullParser parser = new AXMLPullParser();
+        parser.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, true);
+        parser.setInput(ByteBuffer.wrap(mCompressed));
+        consume(parser, blackhole);
+    }
+
+    private static void consume(final XmlPullParser parser, final Blackhole blackhole)
+            throws IOException, XmlPullParserException {
+        int eventType;
+        while ((eventType = parser.next()) != XmlPullParser.END_DOCUMENT) {
+            if (eventType == XmlPullParser.START_TAG) {
+                blackhole.consume(parser.getName());
+                for (int i = 0; i < parser.getAttributeCount(); ++i) {
+                    blackhole.consume(parser.getAttributeValue(i));
+                }
+            } else if (eventType == XmlPullParser.TEXT) {
+                blackhole.consume(parser.getText());
+            }
+        }
+    }
+}
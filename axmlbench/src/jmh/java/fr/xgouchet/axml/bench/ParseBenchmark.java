@@ -0,0 +1,254 @@
+package fr.xgouchet.axml.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import fr.xgouchet.axml.AXMLParser;
+import fr.xgouchet.axml.Attribute;
+import fr.xgouchet.axml.DOMListener;
+import fr.xgouchet.axml.OutputStreamListener;
+
+/**
+ * Measures the AXMLParser throughput on the real test fixtures and on large synthetic documents,
+ * reading either from a stream or from an in memory buffer, with listeners of increasing cost.
+ * <p/>
+ * Run with <code>./gradlew :axmlbench:jmh</code> ; the allocation rate is reported by the gc
+ * profiler.
+ *
+ * @author Xavier Gouchet
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class ParseBenchmark {
+
+    public static final String FIXTURES_PROPERTY = "axml.fixtures";
+    private static final String DEFAULT_FIXTURES = "../testres/axml";
+
+    private static final int SYNTHETIC_ELEMENTS = 100000;
+    private static final int SYNTHETIC_DEPTH = 1000;
+    private static final int SYNTHETIC_ATTRIBUTES = 24;
+
+    /**
+     * The documents to parse : all the fixtures, or a single synthetic document
+     */
+    @Param({"samples", "flat_utf8", "flat_utf16", "deep_utf8", "deep_utf16", "attributes_utf8", "attributes_utf16"})
+    public String document;
+
+    /**
+     * The listener receiving the parser events ("output_decoded" writes the xml without copying
+     * the raw UTF-8 strings)
+     */
+    @Param({"noop", "dom", "output", "output_decoded"})
+    public String listener;
+
+    /**
+     * Where the parser reads the document from
+     */
+    @Param({"stream", "buffer"})
+    public String input;
+
+    private final List<byte[]> mDocuments = new ArrayList<>();
+    private AXMLParser mParser;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        mDocuments.clear();
+
+        switch (document) {
+            case "samples":
+                loadFixtures();
+                break;
+            case "flat_utf8":
+                mDocuments.add(SyntheticDocuments.flat(SYNTHETIC_ELEMENTS, true));
+                break;
+            case "flat_utf16":
+                mDocuments.add(SyntheticDocuments.flat(SYNTHETIC_ELEMENTS, false));
+                break;
+            case "deep_utf8":
+                mDocuments.add(SyntheticDocuments.deep(SYNTHETIC_ELEMENTS, SYNTHETIC_DEPTH, true));
+                break;
+            case "deep_utf16":
+                mDocuments.add(SyntheticDocuments.deep(SYNTHETIC_ELEMENTS, SYNTHETIC_DEPTH, false));
+                break;
+            case "attributes_utf8":
+                mDocuments.add(SyntheticDocuments.attributeHeavy(SYNTHETIC_ELEMENTS / 10, SYNTHETIC_ATTRIBUTES, true));
+                break;
+            case "attributes_utf16":
+                mDocuments.add(SyntheticDocuments.attributeHeavy(SYNTHETIC_ELEMENTS / 10, SYNTHETIC_ATTRIBUTES, false));
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown document " + document);
+        }
+
+        mParser = new AXMLParser();
+        mParser.setVerbosity(AXMLParser.LOG_NONE);
+    }
+
+    @Benchmark
+    public void parse(final Blackhole blackhole) throws IOException, ParserConfigurationException {
+        for (byte[] content : mDocuments) {
+            AXMLParser.Listener documentListener = createListener(blackhole);
+
+            if ("buffer".equals(input)) {
+                mParser.parseBuffer(ByteBuffer.wrap(content), documentListener);
+            } else {
+                mParser.parse(new ByteArrayInputStream(content), documentListener);
+            }
+
+            if (documentListener instanceof DOMListener) {
+                blackhole.consume(((DOMListener) documentListener).getDocument());
+            }
+        }
+    }
+
+    private AXMLParser.Listener createListener(final Blackhole blackhole)
+            throws ParserConfigurationException {
+        switch (listener) {
+            case "noop":
+                return new BlackholeListener(blackhole);
+            case "dom":
+                return new DOMListener();
+            case "output":
+                return new OutputStreamListener(new BlackholeOutputStream(blackhole));
+            case "output_decoded":
+                OutputStreamListener outputListener = new OutputStreamListener(new BlackholeOutputStream(blackhole));
+                outputListener.setUtf8Passthrough(false);
+                return outputListener;
+            default:
+                throw new IllegalArgumentException("Unknown listener " + listener);
+        }
+    }
+
+    private void loadFixtures() throws IOException {
+        File fixturesDir = new File(System.getProperty(FIXTURES_PROPERTY, DEFAULT_FIXTURES));
+        File[] files = fixturesDir.listFiles();
+        if (files == null) {
+            throw new IOException("Unable to list fixtures in " + fixturesDir.getAbsolutePath());
+        }
+
+        for (File file : files) {
+            if (file.isFile()) {
+                mDocuments.add(readFile(file));
+            }
+        }
+
+        if (mDocuments.isEmpty()) {
+            throw new IOException("No fixtures found in " + fixturesDir.getAbsolutePath());
+        }
+    }
+
+    private static byte[] readFile(final File file) throws IOException {
+        byte[] content = new byte[(int) file.length()];
+        InputStream input = new FileInputStream(file);
+        try {
+            int offset = 0, read;
+            while ((offset < content.length) && ((read = input.read(content, offset, content.length - offset)) != -1)) {
+                offset += read;
+            }
+        } finally {
+            input.close();
+        }
+        return content;
+    }
+
+    /**
+     * Consumes every event, so only the parser cost is measured
+     */
+    private static class BlackholeListener implements AXMLParser.Listener {
+
+        private final Blackhole mBlackhole;
+
+        BlackholeListener(final Blackhole blackhole) {
+            mBlackhole = blackhole;
+        }
+
+        @Override
+        public void startDocument() {
+        }
+
+        @Override
+        public void endDocument() {
+        }
+
+        @Override
+        public void startPrefixMapping(final String prefix, final String uri) {
+            mBlackhole.consume(prefix);
+            mBlackhole.consume(uri);
+        }
+
+        @Override
+        public void endPrefixMapping(final String prefix, final String uri) {
+            mBlackhole.consume(prefix);
+            mBlackhole.consume(uri);
+        }
+
+        @Override
+        public void startElement(final String localName, final Attribute[] attributes,
+                                 final String uri, final String prefix) {
+            mBlackhole.consume(localName);
+            mBlackhole.consume(attributes);
+            mBlackhole.consume(uri);
+            mBlackhole.consume(prefix);
+        }
+
+        @Override
+        public void endElement(final String localName, final String uri, final String prefix) {
+            mBlackhole.consume(localName);
+        }
+
+        @Override
+        public void text(final String data) {
+            mBlackhole.consume(data);
+        }
+    }
+
+    /**
+     * Discards the written bytes, feeding them to the black hole
+     */
+    private static class BlackholeOutputStream extends OutputStream {
+
+        private final Blackhole mBlackhole;
+
+        BlackholeOutputStream(final Blackhole blackhole) {
+            mBlackhole = blackhole;
+        }
+
+        @Override
+        public void write(final int b) {
+            mBlackhole.consume(b);
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) {
+            mBlackhole.consume(len);
+        }
+    }
+}
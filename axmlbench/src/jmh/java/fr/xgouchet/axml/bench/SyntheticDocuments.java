@@ -0,0 +1,229 @@
+package fr.xgouchet.axml.bench;
+
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import fr.xgouchet.axml.AXMLParser;
+
+/**
+ * Generates large compressed Android XML documents, shaped like android layouts
+ *
+ * @author Xavier Gouchet
+ */
+public final class SyntheticDocuments {
+
+    private static final String ANDROID_PREFIX = "android";
+    private static final String ANDROID_URI = "http://schemas.android.com/apk/res/android";
+
+    /**
+     * @param elements the number of elements
+     * @param utf8     use an UTF-8 string pool (or UTF-16LE)
+     * @return a document with a root element and (elements - 1) children
+     */
+    public static byte[] flat(final int elements, final boolean utf8) {
+        DocumentWriter writer = new DocumentWriter(utf8);
+        writer.startElement("LinearLayout", 2);
+        for (int i = 1; i < elements; ++i) {
+            writer.startElement("TextView", 2);
+            writer.endElement("TextView");
+        }
+        writer.endElement("LinearLayout");
+        return writer.toByteArray();
+    }
+
+    /**
+     * @param elements the number of elements
+     * @param depth    the depth of each sub tree
+     * @param utf8     use an UTF-8 string pool (or UTF-16LE)
+     * @return a document with a root element and deeply nested sub trees
+     */
+    public static byte[] deep(final int elements, final int depth, final boolean utf8) {
+        DocumentWriter writer = new DocumentWriter(utf8);
+        writer.startElement("FrameLayout", 1);
+        int count = 1;
+        while (count < elements) {
+            int subTreeDepth = Math.min(depth, elements - count);
+            for (int d = 0; d < subTreeDepth; ++d) {
+                writer.startElement("FrameLayout", 1);
+            }
+            for (int d = 0; d < subTreeDepth; ++d) {
+                writer.endElement("FrameLayout");
+            }
+            count += subTreeDepth;
+        }
+        writer.endElement("FrameLayout");
+        return writer.toByteArray();
+    }
+
+    /**
+     * @param elements   the number of elements
+     * @param attributes the number of attributes per element
+     * @param utf8       use an UTF-8 string pool (or UTF-16LE)
+     * @return a document with a root element and (elements - 1) children, all with many attributes
+     */
+    public static byte[] attributeHeavy(final int elements, final int attributes, final boolean utf8) {
+        DocumentWriter writer = new DocumentWriter(utf8);
+        writer.startElement("RelativeLayout", attributes);
+        for (int i = 1; i < elements; ++i) {
+            writer.startElement("Button", attributes);
+            writer.endElement("Button");
+        }
+        writer.endElement("RelativeLayout");
+        return writer.toByteArray();
+    }
+
+    /**
+     * Writes a document with the android namespace declared on the root element
+     */
+    private static class DocumentWriter {
+
+        private static final String[] ATTRIBUTE_NAMES = new String[]{
+                "layout_width", "layout_height", "text", "textSize", "textColor", "padding",
+                "id", "background", "gravity", "enabled", "alpha", "contentDescription"
+        };
+
+        private final boolean mUtf8;
+        private final Map<String, Integer> mStrings = new LinkedHashMap<>();
+        private int[] mWords = new int[1024];
+        private int mWordsCount;
+        private int mLine = 1;
+        private int mDepth = 0;
+
+        DocumentWriter(final boolean utf8) {
+            mUtf8 = utf8;
+            addWords(AXMLParser.WORD_START_NAMESPACE, 24, mLine, -1, index(ANDROID_PREFIX), index(ANDROID_URI));
+        }
+
+        void startElement(final String name, final int attributesCount) {
+            addWords(AXMLParser.WORD_START_TAG, 36 + (attributesCount * 20), mLine++, -1,
+                    AXMLParser.DEFAULT_NAMESPACE, index(name), 0x00140014, attributesCount, 0);
+
+            for (int a = 0; a < attributesCount; ++a) {
+                String attrName = ATTRIBUTE_NAMES[a % ATTRIBUTE_NAMES.length];
+                if (a >= ATTRIBUTE_NAMES.length) {
+                    attrName += (a / ATTRIBUTE_NAMES.length);
+                }
+
+                switch (a % 4) {
+                    case 0:
+                        addWords(index(ANDROID_URI), index(attrName), AXMLParser.ATTR_TYPED_VALUE,
+                                AXMLParser.TYPE_INT, -1);
+                        break;
+                    case 1:
+                        addWords(index(ANDROID_URI), index(attrName), AXMLParser.ATTR_TYPED_VALUE,
+                                AXMLParser.TYPE_DIMEN, (16 << 8) | 1);
+                        break;
+                    case 2:
+                        int value = index("value_" + (mLine % 64));
+                        addWords(index(ANDROID_URI), index(attrName), value, AXMLParser.TYPE_STRING, value);
+                        break;
+                    default:
+                        addWords(index(ANDROID_URI), index(attrName), AXMLParser.ATTR_TYPED_VALUE,
+                                AXMLParser.TYPE_ID_REF, 0x7F060000 + mLine);
+                        break;
+                }
+            }
+            mDepth++;
+        }
+
+        void endElement(final String name) {
+            addWords(AXMLParser.WORD_END_TAG, 24, mLine++, -1, AXMLParser.DEFAULT_NAMESPACE, index(name));
+            mDepth--;
+        }
+
+        byte[] toByteArray() {
+            if (mDepth != 0) {
+                throw new IllegalStateException("Unbalanced document");
+            }
+            addWords(AXMLParser.WORD_END_NAMESPACE, 24, mLine, -1, index(ANDROID_PREFIX), index(ANDROID_URI));
+
+            byte[] pool = stringPool();
+            int docSize = 8 + pool.length + (mWordsCount * 4);
+
+            ByteBuffer buffer = ByteBuffer.allocate(docSize).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(AXMLParser.WORD_START_DOCUMENT).putInt(docSize);
+            buffer.put(pool);
+            for (int i = 0; i < mWordsCount; ++i) {
+                buffer.putInt(mWords[i]);
+            }
+            return buffer.array();
+        }
+
+        private byte[] stringPool() {
+            List<byte[]> encoded = new ArrayList<>();
+            int dataSize = 0;
+            for (String string : mStrings.keySet()) {
+                byte[] bytes = encode(string);
+                encoded.add(bytes);
+                dataSize += bytes.length;
+            }
+            dataSize = (dataSize + 3) & ~3;
+
+            int count = encoded.size();
+            int blockSize = 28 + (count * 4) + dataSize;
+            ByteBuffer buffer = ByteBuffer.allocate(blockSize).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(AXMLParser.WORD_STRING_TABLE).putInt(blockSize);
+            buffer.putInt(count).putInt(0);
+            buffer.putInt(mUtf8 ? AXMLParser.ENCODING_UTF8 : AXMLParser.ENCODING_UTF16_LE);
+            buffer.putInt(28 + (count * 4)).putInt(0);
+
+            int offset = 0;
+            for (byte[] bytes : encoded) {
+                buffer.putInt(offset);
+                offset += bytes.length;
+            }
+            for (byte[] bytes : encoded) {
+                buffer.put(bytes);
+            }
+            return buffer.array();
+        }
+
+        private byte[] encode(final String string) {
+            try {
+                if (mUtf8) {
+                    byte[] data = string.getBytes("UTF-8");
+                    byte[] result = new byte[data.length + 3];
+                    result[0] = (byte) string.length();
+                    result[1] = (byte) data.length;
+                    System.arraycopy(data, 0, result, 2, data.length);
+                    return result;
+                } else {
+                    byte[] data = string.getBytes("UTF-16LE");
+                    byte[] result = new byte[data.length + 4];
+                    result[0] = (byte) (string.length() & 0xFF);
+                    result[1] = (byte) ((string.length() >> 8) & 0xFF);
+                    System.arraycopy(data, 0, result, 2, data.length);
+                    return result;
+                }
+            } catch (UnsupportedEncodingException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        private int index(final String string) {
+            Integer index = mStrings.get(string);
+            if (index == null) {
+                index = mStrings.size();
+                mStrings.put(string, index);
+            }
+            return index;
+        }
+
+        private void addWords(final int... words) {
+            if (mWordsCount + words.length > mWords.length) {
+                mWords = Arrays.copyOf(mWords, Math.max(mWords.length * 2, mWordsCount + words.length));
+            }
+            System.arraycopy(words, 0, mWords, mWordsCount, words.length);
+            mWordsCount += words.length;
+        }
+    }
+
+    private SyntheticDocuments() {
+    }
+}